@@ -21,8 +21,12 @@ import java.util.Map;
 @Controller
 public class UserController {
 
+    private final IUserService userService;
+
     @Autowired
-    private IUserService userService;
+    public UserController(IUserService userService) {
+        this.userService = userService;
+    }
 
     public IUserService getUserService() {
         return userService;
@@ -39,6 +43,33 @@ public class UserController {
         return new View("index.jsp").addModel("userList", userList);
     }
 
+    /**
+     * 导出用户, 边查询边输出 JSON 数组或 NDJSON（Accept: application/x-ndjson）
+     */
+    @RequestMapping(value = "/userExport", method = RequestMethod.GET)
+    public Data exportUser() {
+        return new Data(userService.getUserStream());
+    }
+
+    /**
+     * 分页获取用户, 参数 size 为每页数量, token 为上一页返回的 nextToken
+     */
+    @RequestMapping(value = "/userPage", method = RequestMethod.GET)
+    public Data getUserPage(Param param) {
+        String size = (String) param.getParamMap().get("size");
+        String token = (String) param.getParamMap().get("token");
+        return new Data(userService.getUserPage(size != null ? Integer.parseInt(size) : 20, token));
+    }
+
+    /**
+     * 用户简要信息列表, 参数 minAge 为最小年龄
+     */
+    @RequestMapping(value = "/userBrief", method = RequestMethod.GET)
+    public Data getUserBriefList(Param param) {
+        String minAge = (String) param.getParamMap().get("minAge");
+        return new Data(userService.getUserBriefList(minAge != null ? Integer.parseInt(minAge) : 0));
+    }
+
     /**
      * 用户详情
      *
@@ -1,10 +1,17 @@
 package cn.egret.domain;
 
+import cn.egret.annotation.Cacheable;
+import cn.egret.annotation.Id;
+import cn.egret.annotation.Table;
+
 /**
  * 用户
  * @author egret
  */
+@Table("user")
+@Cacheable(maxSize = 10000)
 public class User {
+    @Id
     private Integer id;
     private String name;
     private Integer age;
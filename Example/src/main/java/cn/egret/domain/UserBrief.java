@@ -0,0 +1,26 @@
+package cn.egret.domain;
+
+/**
+ * 用户简要信息, 只包含 id 和 name 的投影
+ * @author egret
+ */
+public class UserBrief {
+    private Integer id;
+    private String name;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -1,9 +1,12 @@
 package cn.egret.service;
 
+import cn.egret.bean.Page;
 import cn.egret.domain.User;
+import cn.egret.domain.UserBrief;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * @author egret
@@ -11,6 +14,12 @@ import java.util.Map;
 public interface IUserService {
     List<User> getAllUser();
 
+    List<UserBrief> getUserBriefList(int minAge);
+
+    Stream<User> getUserStream();
+
+    Page<User> getUserPage(int pageSize, String pageToken);
+
     User GetUserInfoById(Integer id);
 
     boolean updateUser(int id, Map<String, Object> fieldMap);
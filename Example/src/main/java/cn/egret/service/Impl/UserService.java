@@ -1,13 +1,17 @@
 package cn.egret.service.Impl;
 
 import cn.egret.domain.User;
+import cn.egret.domain.UserBrief;
 import cn.egret.annotation.Service;
 import cn.egret.annotation.Transactional;
+import cn.egret.bean.Page;
 import cn.egret.helper.DatabaseHelper;
+import cn.egret.jdbc.EntityQuery;
 import cn.egret.service.IUserService;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * @author egret
@@ -18,9 +22,34 @@ public class UserService implements IUserService {
      * 获取所有用户
      */
     @Override
+    @Transactional(readOnly = true)
     public List<User> getAllUser() {
+        return EntityQuery.from(User.class).list();
+    }
+
+    /**
+     * 获取年龄不小于 minAge 的用户的 id 和 name, 按 id 排序
+     */
+    @Override
+    public List<UserBrief> getUserBriefList(int minAge) {
+        return EntityQuery.from(User.class).where("age", ">=", minAge).orderBy("id", true).into(UserBrief.class).list();
+    }
+
+    /**
+     * 流式获取所有用户
+     */
+    @Override
+    public Stream<User> getUserStream() {
         String sql = "SELECT * FROM user";
-        return DatabaseHelper.queryEntityList(User.class, sql);
+        return DatabaseHelper.queryEntityStream(User.class, sql);
+    }
+
+    /**
+     * 分页获取用户, 第一页 pageToken 为 null
+     */
+    @Override
+    public Page<User> getUserPage(int pageSize, String pageToken) {
+        return DatabaseHelper.queryEntityPage(User.class, pageSize, pageToken);
     }
 
     /**
@@ -37,7 +66,7 @@ public class UserService implements IUserService {
      * 修改用户信息
      */
     @Override
-    @Transactional
+    @Transactional(groupCommit = true)
     public boolean updateUser(int id, Map<String, Object> fieldMap) {
         int a = 1/0;
         return DatabaseHelper.updateEntity(User.class, id, fieldMap);
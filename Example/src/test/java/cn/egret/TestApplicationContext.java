@@ -0,0 +1,72 @@
+package cn.egret;
+
+import cn.egret.circular.CircularConsumer;
+import cn.egret.circular.CycleA;
+import cn.egret.circular.CycleB;
+import cn.egret.controller.UserController;
+import cn.egret.service.Impl.UserService;
+import cn.egret.warmup.WarmUpService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 应用上下文测试
+ * 在多个线程中同时启动多个应用上下文, 每个上下文都应该拥有自己的 bean 实例, 互不影响
+ *
+ * @author egret
+ */
+public class TestApplicationContext {
+
+    @Test
+    public void testParallelContexts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ApplicationContext>> futureList = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futureList.add(executor.submit(() -> new ApplicationContext("cn.egret").refresh()));
+            }
+            List<ApplicationContext> contextList = new ArrayList<>();
+            for (Future<ApplicationContext> future : futureList) {
+                contextList.add(future.get());
+            }
+
+            for (ApplicationContext context : contextList) {
+                UserController userController = context.getBean(UserController.class);
+                Assert.assertSame(context.getBean(UserService.class), userController.getUserService());
+                Assert.assertNotNull(context.getHandler("GET", "/userList"));
+                for (ApplicationContext other : contextList) {
+                    if (other != context) {
+                        Assert.assertNotSame(other.getBean(UserController.class), userController);
+                    }
+                }
+            }
+            Assert.assertNotSame(HelperLoader.getApplicationContext(), contextList.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCircularDependency() {
+        ApplicationContext context = new ApplicationContext("cn.egret.circular").refresh();
+        Assert.assertEquals(1, context.getDependencyGraph().getCycleList().size());
+        CycleA cycleA = context.getBean(CycleA.class);
+        Assert.assertSame(context.getBean(CycleB.class), cycleA.getCycleB());
+        Assert.assertSame(cycleA, context.getBean(CycleB.class).getCycleA());
+        //构造器注入的依赖在循环依赖所在的层中先创建
+        Assert.assertSame(cycleA, context.getBean(CircularConsumer.class).getCycleA());
+    }
+
+    @Test
+    public void testHelperInBeanConstructor() {
+        //默认上下文启动期间, bean 构造器中调用 Helper 类的静态方法得到正在启动的上下文, 不会重复启动
+        ApplicationContext context = HelperLoader.getApplicationContext();
+        Assert.assertSame(context, context.getBean(WarmUpService.class).getContext());
+    }
+}
@@ -0,0 +1,139 @@
+package cn.egret;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Scope;
+import cn.egret.scope.FinalFieldService;
+import cn.egret.scope.LazyReport;
+import cn.egret.scope.PrototypeTask;
+import cn.egret.scope.RequestCart;
+import cn.egret.scope.ScopeRepository;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bean 作用域测试: 构造器注入, 原型, 请求作用域和延迟加载
+ * 使用只扫描 cn.egret.scope 的应用上下文
+ *
+ * @author egret
+ */
+public class TestBeanScope {
+
+    @Test
+    public void testConstructorInjection() {
+        ApplicationContext context = new ApplicationContext("cn.egret.scope").refresh();
+        FinalFieldService finalFieldService = context.getBean(FinalFieldService.class);
+        Assert.assertSame(context.getBean(ScopeRepository.class), finalFieldService.getRepository());
+        Assert.assertSame(finalFieldService, context.getBean(FinalFieldService.class));
+    }
+
+    @Test
+    public void testPrototype() {
+        ApplicationContext context = new ApplicationContext("cn.egret.scope").refresh();
+        PrototypeTask first = context.getBean(PrototypeTask.class);
+        PrototypeTask second = context.getBean(PrototypeTask.class);
+        Assert.assertNotSame(first, second);
+        //原型 bean 的依赖仍然是单例
+        Assert.assertSame(context.getBean(ScopeRepository.class), first.getRepository());
+        Assert.assertSame(first.getRepository(), second.getRepository());
+    }
+
+    @Test
+    public void testRequestScope() throws Exception {
+        ApplicationContext context = new ApplicationContext("cn.egret.scope").refresh();
+        try {
+            context.getBean(RequestCart.class);
+            Assert.fail("request scoped bean should not be available outside a request");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("no active request"));
+        }
+
+        context.beginRequest();
+        RequestCart cart;
+        try {
+            cart = context.getBean(RequestCart.class);
+            Assert.assertSame(cart, context.getBean(RequestCart.class));
+            Assert.assertSame(context.getBean(ScopeRepository.class), cart.getRepository());
+            //其它线程中的请求有自己的实例
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                RequestCart otherCart = executor.submit(() -> {
+                    context.beginRequest();
+                    try {
+                        return context.getBean(RequestCart.class);
+                    } finally {
+                        context.endRequest();
+                    }
+                }).get();
+                Assert.assertNotSame(cart, otherCart);
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            context.endRequest();
+        }
+
+        //下一个请求创建新实例, 请求结束后不能再获取
+        context.beginRequest();
+        try {
+            Assert.assertNotSame(cart, context.getBean(RequestCart.class));
+        } finally {
+            context.endRequest();
+        }
+        try {
+            context.getBean(RequestCart.class);
+            Assert.fail("request scoped bean should not be available after the request");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("no active request"));
+        }
+    }
+
+    @Test
+    public void testRequestIntoSingletonRejected() {
+        //这两个类没有 Controller/Service 注解, 不会被默认上下文扫描到, 只加入这个上下文
+        ApplicationContext context = new ApplicationContext("cn.egret.scope") {
+            @Override
+            public Set<Class<?>> getServiceClassSet() {
+                Set<Class<?>> serviceClassSet = super.getServiceClassSet();
+                serviceClassSet.add(RequestToken.class);
+                serviceClassSet.add(TokenHolder.class);
+                return serviceClassSet;
+            }
+        };
+        try {
+            context.refresh();
+            Assert.fail("request scoped bean should not be injected into a singleton");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("can not be injected into singleton bean"));
+        }
+    }
+
+    @Test
+    public void testLazy() {
+        ApplicationContext context = new ApplicationContext("cn.egret.scope").refresh();
+        int instanceCount = LazyReport.getInstanceCount();
+        Assert.assertTrue(context.isLazyBean(LazyReport.class));
+        Assert.assertFalse(context.getBeanMap().containsKey(LazyReport.class));
+
+        //第一次获取时创建, 之后都是同一个实例
+        LazyReport lazyReport = context.getBean(LazyReport.class);
+        Assert.assertEquals(instanceCount + 1, LazyReport.getInstanceCount());
+        Assert.assertSame(lazyReport, context.getBean(LazyReport.class));
+        Assert.assertEquals(instanceCount + 1, LazyReport.getInstanceCount());
+        Assert.assertFalse(context.isLazyBean(LazyReport.class));
+    }
+
+    @Scope(BeanScope.REQUEST)
+    public static class RequestToken {
+    }
+
+    public static class TokenHolder {
+
+        @Autowired
+        private RequestToken requestToken;
+    }
+}
@@ -0,0 +1,665 @@
+package cn.egret;
+
+import cn.egret.annotation.Column;
+import cn.egret.annotation.Id;
+import cn.egret.annotation.Table;
+import cn.egret.annotation.WriteBehind;
+import cn.egret.bean.Page;
+import cn.egret.cache.EntityCache;
+import cn.egret.cache.QueryCache;
+import cn.egret.domain.User;
+import cn.egret.domain.UserBrief;
+import cn.egret.helper.DatabaseHelper;
+import cn.egret.helper.DeadlineHelper;
+import cn.egret.jdbc.DatabaseExecutor;
+import cn.egret.jdbc.EntityBatchLoader;
+import cn.egret.jdbc.EntityMeta;
+import cn.egret.jdbc.EntityQuery;
+import cn.egret.jdbc.GroupCommitter;
+import cn.egret.jdbc.TransactionContext;
+import cn.egret.jdbc.TransactionContextExecutor;
+import cn.egret.jdbc.WriteBehindBuffer;
+import cn.egret.metrics.SqlStatistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 数据库操作测试
+ * 使用 H2 内存数据库（MySQL 模式）, 见 src/test/resources/handwritten.properties
+ *
+ * @author egret
+ */
+public class TestDatabaseHelper {
+
+    @Before
+    public void createTable() {
+        //重建表后清空实体缓存
+        EntityCache.clear(User.class);
+        DatabaseHelper.update("DROP TABLE IF EXISTS user");
+        DatabaseHelper.update("CREATE TABLE user (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), age INT)");
+        DatabaseHelper.update("INSERT INTO user (id, name, age) VALUES (1, 'tyshawn', 21), (2, '123', 321), (3, '999', NULL)");
+    }
+
+    @Test
+    public void testQueryEntity() {
+        User user = DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 1);
+        Assert.assertEquals(Integer.valueOf(1), user.getId());
+        Assert.assertEquals("tyshawn", user.getName());
+        Assert.assertEquals(Integer.valueOf(21), user.getAge());
+
+        Assert.assertNull(DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 100));
+    }
+
+    @Test
+    public void testQueryEntityList() {
+        List<User> userList = DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user ORDER BY id");
+        Assert.assertEquals(3, userList.size());
+        Assert.assertNull(userList.get(2).getAge());
+
+        //不同的列和别名使用另一个行映射器
+        userList = DatabaseHelper.queryEntityList(User.class, "SELECT name, id AS ID FROM user ORDER BY id");
+        Assert.assertEquals("123", userList.get(1).getName());
+        Assert.assertEquals(Integer.valueOf(2), userList.get(1).getId());
+        Assert.assertNull(userList.get(1).getAge());
+    }
+
+    @Test
+    public void testInsertUpdateDeleteEntity() {
+        Map<String, Object> fieldMap = new HashMap<>();
+        fieldMap.put("age", 30);
+        fieldMap.put("name", "egret");
+        Assert.assertTrue(DatabaseHelper.insertEntity(User.class, fieldMap));
+        User user = DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE name = ?", "egret");
+        Assert.assertEquals(Integer.valueOf(30), user.getAge());
+
+        fieldMap.clear();
+        fieldMap.put("age", 31);
+        Assert.assertTrue(DatabaseHelper.updateEntity(User.class, user.getId(), fieldMap));
+        Assert.assertEquals(Integer.valueOf(31), DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", user.getId()).getAge());
+
+        Assert.assertTrue(DatabaseHelper.deleteEntity(User.class, user.getId()));
+        Assert.assertNull(DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", user.getId()));
+    }
+
+    @Test
+    public void testEntityMetaTemplate() {
+        EntityMeta entityMeta = EntityMeta.of(User.class);
+        Assert.assertSame(entityMeta, EntityMeta.of(User.class));
+        //列集合相同时, 不论字段顺序, 使用同一条 SQL
+        Assert.assertSame(entityMeta.getInsertTemplate(Arrays.asList("name", "age")), entityMeta.getInsertTemplate(Arrays.asList("age", "name")));
+        Assert.assertEquals("INSERT INTO user (name, age) VALUES (?, ?)", entityMeta.getInsertTemplate(Arrays.asList("age", "name")).getSql());
+        Assert.assertEquals("UPDATE user SET age = ? WHERE id = ?", entityMeta.getUpdateTemplate(Arrays.asList("age")).getSql());
+        Assert.assertEquals("DELETE FROM user WHERE id = ?", entityMeta.getDeleteSql());
+    }
+
+    @Test
+    public void testColumnMapping() {
+        //fieldMap 的键可以是属性名或列名
+        Map<String, Object> fieldMap = new HashMap<>();
+        fieldMap.put("userId", 10);
+        fieldMap.put("name", "column");
+        Assert.assertTrue(DatabaseHelper.insertEntity(UserProfile.class, fieldMap));
+        //@Column 指定的列读回到对应的属性
+        UserProfile profile = DatabaseHelper.queryEntityById(UserProfile.class, 10);
+        Assert.assertEquals(Integer.valueOf(10), profile.getUserId());
+        Assert.assertEquals("column", profile.getUserName());
+        Assert.assertTrue(DatabaseHelper.updateEntity(UserProfile.class, 10, Collections.singletonMap("userName", "field")));
+        Assert.assertEquals("field", DatabaseHelper.loadEntity(UserProfile.class, 10).join().getUserName());
+        //既不是属性也不是列的键抛出异常
+        try {
+            DatabaseHelper.updateEntity(UserProfile.class, 10, Collections.singletonMap("nickname", "unknown"));
+            Assert.fail("unknown key should be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("nickname"));
+        }
+    }
+
+    /**
+     * 属性名与列名不同的 user 表
+     */
+    @Table("user")
+    public static class UserProfile {
+
+        @Id
+        @Column("id")
+        private Integer userId;
+
+        @Column("name")
+        private String userName;
+
+        private Integer age;
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Integer userId) {
+            this.userId = userId;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public void setUserName(String userName) {
+            this.userName = userName;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+    }
+
+    @Test
+    public void testBatchEntities() {
+        //测试配置中 batch_size=2, 不同列集合的行交错排列
+        List<Map<String, Object>> fieldMapList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> fieldMap = new HashMap<>();
+            fieldMap.put("name", "batch" + i);
+            if (i % 2 == 0) {
+                fieldMap.put("age", i);
+            }
+            fieldMapList.add(fieldMap);
+        }
+        DatabaseHelper.beginTransaction();
+        int[] counts = DatabaseHelper.insertEntities(User.class, fieldMapList);
+        DatabaseHelper.commitTransaction();
+        Assert.assertEquals(5, counts.length);
+        List<User> userList = DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user WHERE name LIKE 'batch%' ORDER BY name");
+        Assert.assertEquals(5, userList.size());
+        Assert.assertEquals(Integer.valueOf(4), userList.get(4).getAge());
+        Assert.assertNull(userList.get(3).getAge());
+
+        Map<Long, Map<String, Object>> idFieldMap = new LinkedHashMap<>();
+        idFieldMap.put(1L, new HashMap<String, Object>());
+        idFieldMap.get(1L).put("age", 50);
+        idFieldMap.put(100L, new HashMap<String, Object>());
+        idFieldMap.get(100L).put("age", 50);
+        idFieldMap.put(2L, new HashMap<String, Object>());
+        idFieldMap.get(2L).put("name", "updated");
+        Assert.assertArrayEquals(new int[]{1, 0, 1}, DatabaseHelper.updateEntities(User.class, idFieldMap));
+        Assert.assertEquals("updated", DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 2).getName());
+
+        Assert.assertArrayEquals(new int[]{1, 0, 1}, DatabaseHelper.deleteEntities(User.class, Arrays.asList(1L, 100L, 3L)));
+        Assert.assertEquals(6, DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").size());
+    }
+
+    @Test
+    public void testQueryEntityStream() {
+        List<String> nameList = new ArrayList<>();
+        DatabaseHelper.forEachEntity(User.class, user -> nameList.add(user.getName()), "SELECT * FROM user ORDER BY id");
+        Assert.assertEquals(Arrays.asList("tyshawn", "123", "999"), nameList);
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+
+        //提前结束遍历, 关闭 Stream 时释放连接
+        try (Stream<User> userStream = DatabaseHelper.queryEntityStream(User.class, "SELECT * FROM user WHERE id > ? ORDER BY id", 1)) {
+            Assert.assertEquals(1, DatabaseHelper.getLeasedConnectionCount());
+            Assert.assertEquals(Arrays.asList(2), userStream.limit(1).map(User::getId).collect(Collectors.toList()));
+        }
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+    }
+
+    @Test
+    public void testEntityCache() {
+        String sql = "SELECT * FROM user WHERE id = ?";
+        long hitCount = EntityCache.getStats(User.class).getHitCount();
+        User user = DatabaseHelper.queryEntity(User.class, sql, 1);
+        //返回的是副本, 修改不影响缓存
+        user.setName("changed");
+        Assert.assertEquals("tyshawn", DatabaseHelper.queryEntity(User.class, sql, 1).getName());
+        Assert.assertEquals(hitCount + 1, EntityCache.getStats(User.class).getHitCount());
+
+        Map<String, Object> fieldMap = new HashMap<>();
+        fieldMap.put("name", "egret");
+        DatabaseHelper.updateEntity(User.class, 1, fieldMap);
+        Assert.assertEquals("egret", DatabaseHelper.queryEntity(User.class, sql, 1).getName());
+
+        //回滚的修改不会进入缓存
+        DatabaseHelper.beginTransaction();
+        fieldMap.put("name", "rollback");
+        DatabaseHelper.updateEntity(User.class, 1, fieldMap);
+        Assert.assertEquals("rollback", DatabaseHelper.queryEntity(User.class, sql, 1).getName());
+        DatabaseHelper.rollbackTransaction();
+        Assert.assertEquals("egret", DatabaseHelper.queryEntity(User.class, sql, 1).getName());
+
+        DatabaseHelper.deleteEntity(User.class, 1);
+        Assert.assertNull(DatabaseHelper.queryEntityById(User.class, 1));
+    }
+
+    @Test
+    public void testQueryCache() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("user", "orders")),
+                QueryCache.getReadTables("SELECT u.* FROM `user` u JOIN db.orders o ON o.user_id = u.id WHERE o.id IN (SELECT id FROM orders)"));
+        Assert.assertEquals("user", QueryCache.getWriteTable("update USER set age = 1"));
+
+        String sql = "SELECT * FROM user WHERE age > ? ORDER BY id";
+        long hitCount = QueryCache.getStats().getHitCount();
+        Assert.assertEquals(2, DatabaseHelper.queryCachedEntityList(User.class, sql, 20).size());
+        Assert.assertEquals(2, DatabaseHelper.queryCachedEntityList(User.class, sql, 20).size());
+        Assert.assertEquals(hitCount + 1, QueryCache.getStats().getHitCount());
+
+        //修改读取的表后缓存失效
+        Map<String, Object> fieldMap = new HashMap<>();
+        fieldMap.put("name", "egret");
+        fieldMap.put("age", 30);
+        DatabaseHelper.insertEntity(User.class, fieldMap);
+        Assert.assertEquals(3, DatabaseHelper.queryCachedEntityList(User.class, sql, 20).size());
+
+        //事务中修改的表在事务结束后失效, 当前事务不使用缓存
+        DatabaseHelper.beginTransaction();
+        DatabaseHelper.update("DELETE FROM user WHERE age > ?", 100);
+        Assert.assertEquals(2, DatabaseHelper.queryCachedEntityList(User.class, sql, 20).size());
+        DatabaseHelper.commitTransaction();
+        Assert.assertEquals(2, DatabaseHelper.queryCachedEntityList(User.class, sql, 20).size());
+        Assert.assertTrue(QueryCache.getStats().getWeight() > 0);
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        //并行执行相互独立的查询
+        CompletableFuture<User> userFuture = DatabaseHelper.queryEntityAsync(User.class, "SELECT * FROM user WHERE id = ?", 1);
+        CompletableFuture<List<User>> userListFuture = DatabaseHelper.queryEntityListAsync(User.class, "SELECT * FROM user");
+        Assert.assertEquals("tyshawn", userFuture.get().getName());
+        Assert.assertEquals(3, userListFuture.get().size());
+
+        //事务中的异步操作使用事务的连接, 回滚后不生效
+        DatabaseHelper.beginTransaction();
+        Assert.assertEquals(Integer.valueOf(1), DatabaseHelper.updateAsync("DELETE FROM user WHERE id = ?", 1).get());
+        Assert.assertEquals(2, DatabaseHelper.queryEntityListAsync(User.class, "SELECT * FROM user").get().size());
+        DatabaseHelper.rollbackTransaction();
+        Assert.assertEquals(3, DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").size());
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+
+        //队列已满时拒绝
+        DatabaseExecutor executor = new DatabaseExecutor(1, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(() -> {
+            try {
+                return latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        CompletableFuture<Integer> queuedFuture = executor.submit(() -> 1);
+        CompletableFuture<Integer> rejectedFuture = executor.submit(() -> 2);
+        Assert.assertTrue(rejectedFuture.isCompletedExceptionally());
+        Assert.assertEquals(1, executor.getRejectedCount());
+        latch.countDown();
+        Assert.assertEquals(Integer.valueOf(1), queuedFuture.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTransactionContext() throws Exception {
+        ExecutorService executor = new TransactionContextExecutor(Executors.newFixedThreadPool(4));
+        DatabaseHelper.beginTransaction();
+        //子任务共用事务的连接, 语句依次执行
+        List<Callable<Integer>> taskList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            taskList.add(() -> DatabaseHelper.update("UPDATE user SET age = age + 1 WHERE id = 1"));
+        }
+        for (Future<Integer> future : executor.invokeAll(taskList)) {
+            Assert.assertEquals(Integer.valueOf(1), future.get());
+        }
+        Assert.assertEquals(Integer.valueOf(25), DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user WHERE id = 1").get(0).getAge());
+
+        //子任务不能提交事务
+        try {
+            executor.submit(DatabaseHelper::commitTransaction).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        DatabaseHelper.rollbackTransaction();
+        Assert.assertEquals(Integer.valueOf(21), DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user WHERE id = 1").get(0).getAge());
+
+        //提交之前等待子任务结束
+        DatabaseHelper.beginTransaction();
+        TransactionContext transactionContext = DatabaseHelper.getTransactionContext();
+        executor.execute(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            DatabaseHelper.update("DELETE FROM user WHERE id = 1");
+        });
+        DatabaseHelper.commitTransaction();
+        Assert.assertEquals(2, DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").size());
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+
+        //事务结束后不能再加入
+        try {
+            transactionContext.wrap(() -> DatabaseHelper.update("DELETE FROM user"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(transactionContext.isCompleted());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSqlStatistics() {
+        Assert.assertEquals("SELECT * FROM user WHERE name = ? AND id IN (?)",
+                SqlStatistics.normalize("SELECT *  FROM user\n WHERE name = 'a''b' AND id IN (1, 2, ?)"));
+
+        SqlStatistics.reset();
+        DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user WHERE id IN (1, 2)");
+        DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user WHERE id IN (3)");
+        DatabaseHelper.update("UPDATE user SET age = ? WHERE id = ?", 1, 1);
+        try {
+            DatabaseHelper.update("UPDATE user SET no_such_column = 1");
+        } catch (RuntimeException e) {
+            //失败的语句也计入统计
+        }
+        SqlStatistics.SqlStat sqlStat = SqlStatistics.getSqlStat("SELECT * FROM user WHERE id IN (?)", true);
+        Assert.assertEquals(2, sqlStat.getCount());
+        Assert.assertEquals(3, sqlStat.getRows());
+        Assert.assertTrue(sqlStat.getMaxMicros() > 0);
+        Assert.assertEquals(1, SqlStatistics.getSqlStat("UPDATE user SET no_such_column = ?", true).getErrorCount());
+        Assert.assertEquals(3, SqlStatistics.getTop(10).size());
+    }
+
+    @Test
+    public void testQueryEntityPage() {
+        Page<User> page = DatabaseHelper.queryEntityPage(User.class, 2, null);
+        Assert.assertEquals(2, page.getList().size());
+        Assert.assertTrue(page.hasNext());
+        page = DatabaseHelper.queryEntityPage(User.class, 2, page.getNextToken());
+        Assert.assertEquals(1, page.getList().size());
+        Assert.assertEquals(Integer.valueOf(3), page.getList().get(0).getId());
+        Assert.assertFalse(page.hasNext());
+
+        //按 name 降序: tyshawn, 999, 123
+        page = DatabaseHelper.queryEntityPage(User.class, "name", false, 2, null);
+        Assert.assertEquals("tyshawn", page.getList().get(0).getName());
+        String nextToken = page.getNextToken();
+        page = DatabaseHelper.queryEntityPage(User.class, "name", false, 2, nextToken);
+        Assert.assertEquals("123", page.getList().get(0).getName());
+        Assert.assertFalse(page.hasNext());
+        try {
+            DatabaseHelper.queryEntityPage(User.class, "name", true, 2, nextToken);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //令牌与排序不一致
+        }
+    }
+
+    @Test
+    public void testEntityQuery() {
+        EntityQuery<User, UserBrief> query = EntityQuery.from(User.class).where("age", ">", 1).orderBy("age", false).into(UserBrief.class);
+        //投影类型只查询它有的列
+        Assert.assertEquals("SELECT id, name FROM user WHERE age > ? ORDER BY age DESC", query.getSql());
+        List<UserBrief> briefList = query.list();
+        Assert.assertEquals(Arrays.asList("123", "tyshawn"), briefList.stream().map(UserBrief::getName).collect(Collectors.toList()));
+
+        //只查询选择的列, 其它属性为 null
+        User user = EntityQuery.from(User.class).select("id", "age").where("name", "=", "tyshawn").one();
+        Assert.assertEquals(Integer.valueOf(21), user.getAge());
+        Assert.assertNull(user.getName());
+        Assert.assertEquals(2, EntityQuery.from(User.class).orderBy("id", true).limit(2).list().size());
+        try {
+            EntityQuery.from(User.class).where("age", "; DROP", 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //不支持的运算符
+        }
+    }
+
+    @Test
+    public void testLoadEntity() {
+        EntityBatchLoader<User> loader = DatabaseHelper.getBatchLoader(User.class);
+        long batchCount = loader.getBatchCount();
+        //重复的主键只查询一次, 不存在的实体为 null
+        List<User> userList = DatabaseHelper.loadEntities(User.class, Arrays.asList(3, 1, 3L, 99));
+        Assert.assertEquals(Integer.valueOf(3), userList.get(0).getId());
+        Assert.assertEquals(Integer.valueOf(1), userList.get(1).getId());
+        Assert.assertEquals(Integer.valueOf(3), userList.get(2).getId());
+        Assert.assertNull(userList.get(3));
+        Assert.assertEquals(batchCount + 1, loader.getBatchCount());
+
+        //不 join 时在时间窗口结束后查询
+        CompletableFuture<String> nameFuture = DatabaseHelper.loadEntity(User.class, 2).thenApply(User::getName);
+        Assert.assertEquals("123", nameFuture.join());
+
+        //有截止时间时在当前线程查询, 不经过批量加载器, 受截止时间约束
+        EntityCache.clear(User.class);
+        batchCount = loader.getBatchCount();
+        DeadlineHelper.setTimeout(10000);
+        try {
+            userList = DatabaseHelper.loadEntities(User.class, Arrays.asList(3, 1, 99));
+            Assert.assertEquals(Integer.valueOf(3), userList.get(0).getId());
+            Assert.assertEquals(Integer.valueOf(1), userList.get(1).getId());
+            Assert.assertNull(userList.get(2));
+            Assert.assertEquals("123", DatabaseHelper.loadEntity(User.class, 2).join().getName());
+        } finally {
+            DeadlineHelper.clear();
+        }
+        Assert.assertEquals(batchCount, loader.getBatchCount());
+        EntityCache.clear(User.class);
+        DeadlineHelper.setTimeout(0);
+        try {
+            DatabaseHelper.queryEntityById(User.class, 1);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(DeadlineHelper.isDeadlineExceeded(e));
+        } finally {
+            DeadlineHelper.clear();
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        GroupCommitter groupCommitter = DatabaseHelper.getGroupCommitter();
+        long unitCount = groupCommitter.getUnitCount();
+        long groupCount = groupCommitter.getGroupCount();
+        int threads = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicBoolean firstUnit = new AtomicBoolean();
+        List<Future<Integer>> futureList = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int age = 100 + i;
+            futureList.add(executor.submit(() -> {
+                startLatch.await();
+                try {
+                    return DatabaseHelper.executeInGroupCommit(() -> {
+                        //第一个执行的单元等所有单元都加入后才结束, 组长此时还不能关闭这一组, 所有单元在同一组中
+                        if (firstUnit.compareAndSet(false, true)) {
+                            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                            while (groupCommitter.getUnitCount() - unitCount < threads && System.nanoTime() < deadline) {
+                                Thread.sleep(1);
+                            }
+                        }
+                        DatabaseHelper.update("UPDATE user SET age = ? WHERE id = ?", age, age % 3 + 1);
+                        if (age == 100) {
+                            throw new IllegalStateException("failed unit");
+                        }
+                        return age;
+                    });
+                } catch (Throwable e) {
+                    return -1;
+                }
+            }));
+        }
+        startLatch.countDown();
+        int failedCount = 0;
+        for (Future<Integer> future : futureList) {
+            failedCount += future.get() < 0 ? 1 : 0;
+        }
+        executor.shutdown();
+
+        //失败的单元只回滚自己的修改
+        Assert.assertEquals(1, failedCount);
+        Assert.assertEquals(threads, groupCommitter.getUnitCount() - unitCount);
+        Assert.assertEquals(1, groupCommitter.getGroupCount() - groupCount);
+        List<Integer> ageList = DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").stream()
+                .map(User::getAge).collect(Collectors.toList());
+        Assert.assertFalse(ageList.contains(100));
+        Assert.assertTrue(ageList.contains(103));
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+    }
+
+    @Test
+    public void testWriteBehind() {
+        WriteBehindBuffer writeBehindBuffer = DatabaseHelper.getWriteBehindBuffer(UserCounter.class);
+        Assert.assertNull(DatabaseHelper.getWriteBehindBuffer(User.class));
+        long flushCount = writeBehindBuffer.getFlushCount();
+        DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("age", 10));
+        DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("age", 11));
+        DatabaseHelper.updateEntity(UserCounter.class, 2, Collections.singletonMap("age", 20));
+        Assert.assertEquals(2, writeBehindBuffer.getPendingCount());
+        Assert.assertEquals(Integer.valueOf(21), DatabaseHelper.queryEntityById(User.class, 1).getAge());
+
+        //同一行的更新合并为一次写入
+        DatabaseHelper.flushWriteBehind();
+        Assert.assertEquals(0, writeBehindBuffer.getPendingCount());
+        Assert.assertEquals(flushCount + 1, writeBehindBuffer.getFlushCount());
+        //UserCounter 与 User 是同一张表, 写入只使 UserCounter 的实体缓存失效
+        EntityCache.clear(User.class);
+        Assert.assertEquals(Integer.valueOf(11), DatabaseHelper.queryEntityById(User.class, 1).getAge());
+        Assert.assertEquals(Integer.valueOf(20), DatabaseHelper.queryEntityById(User.class, 2).getAge());
+
+        //删除时丢弃未写入的更新
+        DatabaseHelper.updateEntity(UserCounter.class, 3, Collections.singletonMap("age", 30));
+        DatabaseHelper.deleteEntity(UserCounter.class, 3);
+        Assert.assertEquals(0, writeBehindBuffer.getPendingCount());
+    }
+
+    @Test
+    public void testWriteBehindRollback() {
+        WriteBehindBuffer writeBehindBuffer = DatabaseHelper.getWriteBehindBuffer(UserCounter.class);
+        DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("age", 50));
+        DatabaseHelper.beginTransaction();
+        try {
+            //事务中直接写入之前, 缓冲的更新先在事务外写入
+            DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("age", 60));
+            Assert.assertEquals(0, writeBehindBuffer.getPendingCount());
+        } finally {
+            DatabaseHelper.rollbackTransaction();
+        }
+        //事务回滚后缓冲的更新仍然有效
+        EntityCache.clear(User.class);
+        Assert.assertEquals(Integer.valueOf(50), DatabaseHelper.queryEntityById(User.class, 1).getAge());
+    }
+
+    @Test
+    public void testWriteBehindBadRow() {
+        WriteBehindBuffer writeBehindBuffer = DatabaseHelper.getWriteBehindBuffer(UserCounter.class);
+        //未知属性在进入缓冲区之前拒绝
+        try {
+            DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("unknown", 1));
+            Assert.fail("unknown field should be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertEquals(0, writeBehindBuffer.getPendingCount());
+        }
+        //写入失败的行被丢弃, 不阻塞同一批的其它行
+        long droppedCount = writeBehindBuffer.getDroppedCount();
+        DatabaseHelper.updateEntity(UserCounter.class, 1, Collections.singletonMap("age", 70));
+        DatabaseHelper.updateEntity(UserCounter.class, 2, Collections.singletonMap("age", "not a number"));
+        DatabaseHelper.updateEntity(UserCounter.class, 3, Collections.singletonMap("age", 90));
+        DatabaseHelper.flushWriteBehind();
+        Assert.assertEquals(0, writeBehindBuffer.getPendingCount());
+        Assert.assertEquals(droppedCount + 1, writeBehindBuffer.getDroppedCount());
+        EntityCache.clear(User.class);
+        Assert.assertEquals(Integer.valueOf(70), DatabaseHelper.queryEntityById(User.class, 1).getAge());
+        Assert.assertEquals(Integer.valueOf(321), DatabaseHelper.queryEntityById(User.class, 2).getAge());
+        Assert.assertEquals(Integer.valueOf(90), DatabaseHelper.queryEntityById(User.class, 3).getAge());
+    }
+
+    @Test
+    public void testWriteBehindFull() {
+        WriteBehindBuffer writeBehindBuffer = new WriteBehindBuffer(UserCounter.class, idFieldMap -> {
+            throw new RuntimeException("database is down");
+        }, 2, 2, 60000);
+        writeBehindBuffer.update(1, Collections.singletonMap("age", 10));
+        writeBehindBuffer.update(2, Collections.singletonMap("age", 20));
+        //已缓冲实体的更新总是合并, 写入失败不抛给更新的线程
+        writeBehindBuffer.update(1, Collections.singletonMap("age", 11));
+        try {
+            writeBehindBuffer.update(3, Collections.singletonMap("age", 30));
+            Assert.fail("write behind buffer should be full");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, writeBehindBuffer.getRejectedCount());
+        }
+        Assert.assertEquals(2, writeBehindBuffer.getPendingCount());
+        Assert.assertTrue(writeBehindBuffer.getFailedFlushCount() >= 1);
+    }
+
+    /**
+     * 延迟写入的 user 表
+     */
+    @Table("user")
+    @WriteBehind(flushInterval = 60000)
+    public static class UserCounter {
+
+        private Integer id;
+
+        private Integer age;
+    }
+
+    @Test
+    public void testDeadline() {
+        //剩余时间内正常执行
+        DeadlineHelper.setTimeout(10000);
+        try {
+            Assert.assertEquals(3, DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").size());
+        } finally {
+            DeadlineHelper.clear();
+        }
+
+        //超过截止时间后不再执行语句, 也不占用连接
+        DeadlineHelper.setTimeout(0);
+        try {
+            DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(DeadlineHelper.isDeadlineExceeded(e));
+        } finally {
+            DeadlineHelper.clear();
+        }
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+    }
+
+    @Test
+    public void testConnectionRelease() {
+        //事务外每条语句执行完就归还连接
+        DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user");
+        DatabaseHelper.update("UPDATE user SET age = 1 WHERE id = 1");
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+
+        //请求结束时归还线程上的连接, 并回滚未结束的事务
+        DatabaseHelper.beginTransaction();
+        DatabaseHelper.update("DELETE FROM user");
+        Assert.assertEquals(1, DatabaseHelper.getLeasedConnectionCount());
+        DatabaseHelper.closeConnection();
+        Assert.assertEquals(0, DatabaseHelper.getLeasedConnectionCount());
+        Assert.assertEquals(3, DatabaseHelper.queryEntityList(User.class, "SELECT * FROM user").size());
+    }
+}
@@ -0,0 +1,133 @@
+package cn.egret;
+
+import cn.egret.jdbc.pool.PoolMetrics;
+import cn.egret.jdbc.pool.PooledDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内置连接池测试
+ *
+ * @author egret
+ */
+public class TestPooledDataSource {
+
+    private PooledDataSource dataSource;
+
+    @Before
+    public void createPool() {
+        dataSource = new PooledDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxTotal(2);
+        dataSource.setMaxWaitMillis(100);
+    }
+
+    @After
+    public void closePool() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        Connection conn = dataSource.getConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+        Assert.assertTrue(conn.isClosed());
+
+        //同一个线程再次借出时优先拿到刚归还的连接, 归还时已恢复自动提交
+        Connection again = dataSource.getConnection();
+        Assert.assertTrue(again.getAutoCommit());
+        PoolMetrics metrics = dataSource.getMetrics();
+        Assert.assertEquals(1, metrics.getTotalConnections());
+        Assert.assertEquals(1, metrics.getActiveConnections());
+        again.close();
+        Assert.assertEquals(1, dataSource.getMetrics().getIdleConnections());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Connection conn1 = dataSource.getConnection();
+        Connection conn2 = dataSource.getConnection();
+        try {
+            dataSource.getConnection();
+            Assert.fail("pool should be exhausted");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(1, dataSource.getMetrics().getTimeoutCount());
+        }
+        conn1.close();
+        conn2.close();
+    }
+
+    @Test
+    public void testCallerCapsWait() throws Exception {
+        dataSource.setMaxWaitMillis(5000);
+        Connection conn1 = dataSource.getConnection();
+        Connection conn2 = dataSource.getConnection();
+        long startNanos = System.nanoTime();
+        try {
+            dataSource.getConnection(100);
+            Assert.fail("get connection should time out");
+        } catch (SQLTimeoutException e) {
+            //只等待调用者指定的时间, 不计入获取连接超时
+            Assert.assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(2));
+            Assert.assertEquals(0, dataSource.getMetrics().getTimeoutCount());
+        }
+        conn1.close();
+        conn2.close();
+    }
+
+    @Test
+    public void testConcurrentBorrow() throws Exception {
+        dataSource.setMaxWaitMillis(5000);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    for (int j = 0; j < 200; j++) {
+                        try (Connection conn = dataSource.getConnection()) {
+                            conn.createStatement().execute("SELECT 1");
+                        }
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        PoolMetrics metrics = dataSource.getMetrics();
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(threads * 200, metrics.getWaitCount());
+        Assert.assertTrue(metrics.getTotalConnections() <= 2);
+        Assert.assertEquals(0, metrics.getActiveConnections());
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        dataSource.setMaxLifetimeMillis(50);
+        dataSource.getConnection().close();
+        Thread.sleep(200);
+        //超过最大存活时间的连接被后台线程关闭
+        Assert.assertEquals(0, dataSource.getMetrics().getTotalConnections());
+        Assert.assertEquals(1, dataSource.getMetrics().getClosedCount());
+    }
+}
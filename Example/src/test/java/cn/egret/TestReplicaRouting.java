@@ -0,0 +1,158 @@
+package cn.egret;
+
+import cn.egret.cache.EntityCache;
+import cn.egret.domain.User;
+import cn.egret.helper.DatabaseHelper;
+import cn.egret.jdbc.ReplicaRoutingDataSource;
+import cn.egret.jdbc.pool.PooledDataSource;
+import cn.egret.service.IUserService;
+import cn.egret.service.Impl.UserService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 读写分离测试
+ * 从库使用另一个 H2 内存数据库, 见 src/test/resources/handwritten.properties
+ *
+ * @author egret
+ */
+public class TestReplicaRouting {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:handwritten_replica;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1";
+
+    @Before
+    public void createTable() throws Exception {
+        //重建表后清空实体缓存
+        EntityCache.clear(User.class);
+        DatabaseHelper.update("DROP TABLE IF EXISTS user");
+        DatabaseHelper.update("CREATE TABLE user (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), age INT)");
+        DatabaseHelper.update("INSERT INTO user (id, name, age) VALUES (1, 'primary', 1)");
+        try (Connection conn = DriverManager.getConnection(REPLICA_URL, "sa", ""); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS user");
+            stmt.execute("CREATE TABLE user (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), age INT)");
+            stmt.execute("INSERT INTO user (id, name, age) VALUES (1, 'replica', 1)");
+        }
+    }
+
+    @Test
+    public void testReadOnlyTransaction() {
+        DatabaseHelper.beginTransaction(true);
+        Assert.assertEquals("replica", DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 1).getName());
+        DatabaseHelper.commitTransaction();
+
+        //事务外和读写事务使用主库
+        Assert.assertEquals("primary", DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 1).getName());
+        DatabaseHelper.beginTransaction();
+        Assert.assertEquals("primary", DatabaseHelper.queryEntity(User.class, "SELECT * FROM user WHERE id = ?", 1).getName());
+        DatabaseHelper.commitTransaction();
+
+        //@Transactional(readOnly = true) 的方法使用从库
+        IUserService userService = HelperLoader.getApplicationContext().getBean(UserService.class);
+        Assert.assertEquals("replica", userService.getAllUser().get(0).getName());
+    }
+
+    @Test
+    public void testBalanceAndEjection() throws Exception {
+        PooledDataSource primary = createPool("jdbc:h2:mem:route_primary;DB_CLOSE_DELAY=-1");
+        PooledDataSource replicaA = createPool("jdbc:h2:mem:route_a;DB_CLOSE_DELAY=-1");
+        PooledDataSource replicaB = createPool("jdbc:h2:mem:route_b;DB_CLOSE_DELAY=-1");
+        //不存在的从库
+        PooledDataSource replicaDown = createPool("jdbc:h2:tcp://127.0.0.1:1/route_down");
+        List<DataSource> replicaList = Arrays.<DataSource>asList(replicaA, replicaDown, replicaB);
+        ReplicaRoutingDataSource router = new ReplicaRoutingDataSource(Arrays.asList("a", "down", "b"), replicaList, primary,
+                ReplicaRoutingDataSource.Balance.ROUND_ROBIN, 60000);
+
+        Set<String> urlSet = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            try (Connection conn = router.getConnection()) {
+                urlSet.add(conn.getMetaData().getURL());
+            }
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("jdbc:h2:mem:route_a", "jdbc:h2:mem:route_b")), urlSet);
+        Assert.assertEquals(0, router.getPrimaryFallbackCount());
+
+        //最少未完成请求: 持有 a 的连接时选择 b
+        router = new ReplicaRoutingDataSource(Arrays.asList("a", "b"), Arrays.<DataSource>asList(replicaA, replicaB), primary,
+                ReplicaRoutingDataSource.Balance.LEAST_OUTSTANDING, 60000);
+        List<Connection> connList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            connList.add(router.getConnection());
+        }
+        int countA = 0;
+        for (Connection conn : connList) {
+            if (conn.getMetaData().getURL().endsWith("route_a")) {
+                countA++;
+            }
+            conn.close();
+        }
+        Assert.assertEquals(2, countA);
+
+        //所有从库都不可用时使用主库
+        router = new ReplicaRoutingDataSource(Arrays.asList("down"), Arrays.<DataSource>asList(replicaDown), primary,
+                ReplicaRoutingDataSource.Balance.ROUND_ROBIN, 60000);
+        try (Connection conn = router.getConnection()) {
+            Assert.assertEquals("jdbc:h2:mem:route_primary", conn.getMetaData().getURL());
+        }
+        Assert.assertEquals(1, router.getPrimaryFallbackCount());
+
+        primary.close();
+        replicaA.close();
+        replicaB.close();
+        replicaDown.close();
+    }
+
+    @Test
+    public void testExhaustedReplicaNotEjected() throws Exception {
+        PooledDataSource primary = createPool("jdbc:h2:mem:route_primary;DB_CLOSE_DELAY=-1");
+        PooledDataSource replicaA = createPool("jdbc:h2:mem:route_a;DB_CLOSE_DELAY=-1");
+        PooledDataSource replicaB = createPool("jdbc:h2:mem:route_b;DB_CLOSE_DELAY=-1");
+        replicaA.setMaxTotal(1);
+        replicaA.setMaxWaitMillis(50);
+        ReplicaRoutingDataSource router = new ReplicaRoutingDataSource(Arrays.asList("a", "b"), Arrays.<DataSource>asList(replicaA, replicaB),
+                primary, ReplicaRoutingDataSource.Balance.ROUND_ROBIN, 60000);
+
+        //a 的连接池已满时改用 b, a 不被摘除
+        try (Connection held = replicaA.getConnection()) {
+            for (int i = 0; i < 2; i++) {
+                try (Connection conn = router.getConnection()) {
+                    Assert.assertEquals("jdbc:h2:mem:route_b", conn.getMetaData().getURL());
+                }
+            }
+        }
+        Assert.assertFalse(router.getStatus(), router.getStatus().contains("ejected=true"));
+        Assert.assertEquals(0, router.getPrimaryFallbackCount());
+
+        //连接池释放后 a 重新被选择
+        Set<String> urlSet = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            try (Connection conn = router.getConnection()) {
+                urlSet.add(conn.getMetaData().getURL());
+            }
+        }
+        Assert.assertTrue(urlSet.contains("jdbc:h2:mem:route_a"));
+
+        primary.close();
+        replicaA.close();
+        replicaB.close();
+    }
+
+    private static PooledDataSource createPool(String url) {
+        PooledDataSource dataSource = new PooledDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxWaitMillis(1000);
+        return dataSource;
+    }
+}
@@ -0,0 +1,226 @@
+package cn.egret;
+
+import cn.egret.annotation.Sharded;
+import cn.egret.annotation.Table;
+import cn.egret.bean.Page;
+import cn.egret.helper.DatabaseHelper;
+import cn.egret.jdbc.EntityQuery;
+import cn.egret.jdbc.shard.ConsistentHashShardFunction;
+import cn.egret.jdbc.shard.ModuloShardFunction;
+import cn.egret.jdbc.shard.ShardFunction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 分片测试
+ * 两个分片使用两个 H2 内存数据库, 按主键取模分片, 见 src/test/resources/handwritten.properties
+ *
+ * @author egret
+ */
+public class TestSharding {
+
+    private static final String[] SHARD_URLS = {
+            "jdbc:h2:mem:handwritten_shard0;MODE=MySQL;DB_CLOSE_DELAY=-1",
+            "jdbc:h2:mem:handwritten_shard1;MODE=MySQL;DB_CLOSE_DELAY=-1"
+    };
+
+    @Before
+    public void createTable() throws Exception {
+        for (String url : SHARD_URLS) {
+            try (Connection conn = DriverManager.getConnection(url, "sa", ""); Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS shard_user");
+                stmt.execute("CREATE TABLE shard_user (id INT PRIMARY KEY, name VARCHAR(255), age INT)");
+            }
+        }
+        for (int id = 1; id <= 5; id++) {
+            Map<String, Object> fieldMap = new HashMap<>();
+            fieldMap.put("id", id);
+            fieldMap.put("name", "user" + id);
+            fieldMap.put("age", id * 10);
+            Assert.assertTrue(DatabaseHelper.insertEntity(ShardUser.class, fieldMap));
+        }
+    }
+
+    @Test
+    public void testRouteById() {
+        Assert.assertEquals(2, DatabaseHelper.getShardRouter().getShardCount());
+        //按主键取模放到对应的分片
+        Assert.assertEquals(Arrays.asList(2, 4), ids(DatabaseHelper.onShard(0,
+                () -> DatabaseHelper.queryEntityList(ShardUser.class, "SELECT * FROM shard_user ORDER BY id"))));
+        Assert.assertEquals(Arrays.asList(1, 3, 5), ids(DatabaseHelper.onShard(1,
+                () -> DatabaseHelper.queryEntityList(ShardUser.class, "SELECT * FROM shard_user ORDER BY id"))));
+
+        Assert.assertEquals("user3", DatabaseHelper.queryEntityById(ShardUser.class, 3).getName());
+        Assert.assertEquals("user4", DatabaseHelper.queryEntity(ShardUser.class, "SELECT * FROM shard_user WHERE id = ?", 4).getName());
+        Assert.assertTrue(DatabaseHelper.updateEntity(ShardUser.class, 3, Collections.singletonMap("age", 33)));
+        Assert.assertEquals(Integer.valueOf(33), DatabaseHelper.queryEntityById(ShardUser.class, 3).getAge());
+        Assert.assertTrue(DatabaseHelper.deleteEntity(ShardUser.class, 4));
+        Assert.assertNull(DatabaseHelper.queryEntityById(ShardUser.class, 4));
+        List<ShardUser> loadedList = DatabaseHelper.loadEntities(ShardUser.class, Arrays.asList(3, 4, 5));
+        Assert.assertEquals(Integer.valueOf(3), loadedList.get(0).getId());
+        Assert.assertNull(loadedList.get(1));
+        Assert.assertEquals(Integer.valueOf(5), loadedList.get(2).getId());
+    }
+
+    @Test
+    public void testScatterGather() {
+        //不带分片键的查询合并所有分片的结果
+        List<ShardUser> userList = DatabaseHelper.queryEntityList(ShardUser.class, "SELECT * FROM shard_user WHERE age > ?", 15);
+        List<Integer> idList = ids(userList);
+        Collections.sort(idList);
+        Assert.assertEquals(Arrays.asList(2, 3, 4, 5), idList);
+        Assert.assertEquals(Integer.valueOf(4), DatabaseHelper.queryEntity(ShardUser.class, "SELECT * FROM shard_user WHERE name = ?", "user4").getId());
+
+        //批量操作按主键分到各分片, 返回的行数与输入顺序一致
+        List<Map<String, Object>> fieldMapList = new ArrayList<>();
+        for (int id = 6; id <= 8; id++) {
+            Map<String, Object> fieldMap = new HashMap<>();
+            fieldMap.put("id", id);
+            fieldMap.put("age", id * 10);
+            fieldMapList.add(fieldMap);
+        }
+        Assert.assertArrayEquals(new int[]{1, 1, 1}, DatabaseHelper.insertEntities(ShardUser.class, fieldMapList));
+        Map<Long, Map<String, Object>> idFieldMap = new LinkedHashMap<>();
+        idFieldMap.put(7L, Collections.singletonMap("name", "user7"));
+        idFieldMap.put(6L, Collections.singletonMap("name", "user6"));
+        idFieldMap.put(9L, Collections.singletonMap("name", "user9"));
+        Assert.assertArrayEquals(new int[]{1, 1, 0}, DatabaseHelper.updateEntities(ShardUser.class, idFieldMap));
+        Assert.assertEquals("user6", DatabaseHelper.queryEntityById(ShardUser.class, 6).getName());
+        Assert.assertArrayEquals(new int[]{0, 1}, DatabaseHelper.deleteEntities(ShardUser.class, Arrays.asList(9L, 8L)));
+
+        //分页合并各分片的一页
+        List<Integer> pagedIdList = new ArrayList<>();
+        String token = null;
+        do {
+            Page<ShardUser> page = DatabaseHelper.queryEntityPage(ShardUser.class, "age", false, 3, token);
+            pagedIdList.addAll(ids(page.getList()));
+            token = page.getNextToken();
+        } while (token != null);
+        Assert.assertEquals(Arrays.asList(7, 6, 5, 4, 3, 2, 1), pagedIdList);
+    }
+
+    @Test
+    public void testQueryStream() {
+        //依次流式查询每个分片, 结果按分片顺序
+        try (Stream<ShardUser> userStream = DatabaseHelper.queryEntityStream(ShardUser.class, "SELECT * FROM shard_user ORDER BY id")) {
+            Assert.assertEquals(Arrays.asList(2, 4, 1, 3, 5), userStream.map(ShardUser::getId).collect(Collectors.toList()));
+        }
+        //onShard 中只查询这个分片
+        List<Integer> idList = DatabaseHelper.onShard(1, () -> {
+            try (Stream<ShardUser> userStream = DatabaseHelper.queryEntityStream(ShardUser.class, "SELECT * FROM shard_user ORDER BY id")) {
+                return userStream.map(ShardUser::getId).collect(Collectors.toList());
+            }
+        });
+        Assert.assertEquals(Arrays.asList(1, 3, 5), idList);
+    }
+
+    @Test
+    public void testEntityQuery() {
+        //各分片的结果合并后按排序属性重新排序, 再截取 limit 行
+        List<ShardUser> userList = EntityQuery.from(ShardUser.class).select("id", "name").orderBy("age", false).limit(3).list();
+        Assert.assertEquals(Arrays.asList(5, 4, 3), ids(userList));
+        Assert.assertEquals(Integer.valueOf(50), userList.get(0).getAge());
+        Assert.assertEquals(Integer.valueOf(1), EntityQuery.from(ShardUser.class).where("age", ">", 0).orderBy("age", true).one().getId());
+    }
+
+    @Test
+    public void testWriteInTransaction() {
+        DatabaseHelper.beginTransaction();
+        try {
+            //分片上的语句不在事务中, 事务中写入分片时抛出异常
+            DatabaseHelper.updateEntity(ShardUser.class, 3, Collections.singletonMap("age", 33));
+            Assert.fail("sharded write in a transaction should be rejected");
+        } catch (IllegalStateException e) {
+            //分片查询不受限制
+            Assert.assertEquals(Integer.valueOf(30), DatabaseHelper.queryEntityById(ShardUser.class, 3).getAge());
+        } finally {
+            DatabaseHelper.rollbackTransaction();
+        }
+    }
+
+    @Test
+    public void testShardFunction() {
+        ShardFunction modulo = new ModuloShardFunction();
+        Assert.assertEquals(1, modulo.shard(-3L, 2));
+        Assert.assertEquals(2, modulo.shard(5, 3));
+
+        //一致性哈希: 增加一个分片时只有移到新分片的主键改变分片
+        ShardFunction fourShards = new ConsistentHashShardFunction();
+        ShardFunction fiveShards = new ConsistentHashShardFunction();
+        int[] counts = new int[4];
+        int moved = 0;
+        for (long id = 0; id < 10000; id++) {
+            int shard = fourShards.shard(id, 4);
+            int newShard = fiveShards.shard(id, 5);
+            counts[shard]++;
+            if (newShard != shard) {
+                Assert.assertEquals(4, newShard);
+                moved++;
+            }
+        }
+        for (int count : counts) {
+            Assert.assertTrue(count > 1500);
+        }
+        Assert.assertTrue(moved < 3000);
+    }
+
+    private static List<Integer> ids(List<ShardUser> userList) {
+        List<Integer> idList = new ArrayList<>();
+        for (ShardUser user : userList) {
+            idList.add(user.getId());
+        }
+        return idList;
+    }
+
+    /**
+     * 按主键分片的用户
+     */
+    @Table("shard_user")
+    @Sharded
+    public static class ShardUser {
+
+        private Integer id;
+
+        private String name;
+
+        private Integer age;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+    }
+}
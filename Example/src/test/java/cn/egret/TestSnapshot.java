@@ -0,0 +1,79 @@
+package cn.egret;
+
+import cn.egret.bean.BeanDefinition;
+import cn.egret.bean.ContainerSnapshot;
+import cn.egret.bean.Handler;
+import cn.egret.bean.Request;
+import cn.egret.controller.UserController;
+import cn.egret.helper.SnapshotHelper;
+import cn.egret.service.Impl.UserService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * 启动快照测试
+ * 保存扫描启动的上下文的快照, 再从快照启动第二个上下文, 两者的 bean, 切面和路由应该一致
+ *
+ * @author egret
+ */
+public class TestSnapshot {
+
+    private static final String CLASSPATH_HASH = "test-classpath";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File snapshotDir = Files.createTempDirectory("snapshot").toFile();
+        try {
+            ApplicationContext scanned = new ApplicationContext("cn.egret").refresh();
+            Assert.assertNull(scanned.getSnapshot());
+            SnapshotHelper.save(scanned, snapshotDir, CLASSPATH_HASH);
+
+            ContainerSnapshot snapshot = SnapshotHelper.load("cn.egret", snapshotDir, CLASSPATH_HASH);
+            Assert.assertNotNull(snapshot);
+            ApplicationContext restored = new ApplicationContext("cn.egret", snapshot).refresh();
+            Assert.assertSame(snapshot, restored.getSnapshot());
+
+            //bean 定义和启动时创建的 bean
+            Assert.assertEquals(scanned.getBeanDefinitionMap().keySet(), restored.getBeanDefinitionMap().keySet());
+            for (Map.Entry<Class<?>, BeanDefinition> beanEntry : scanned.getBeanDefinitionMap().entrySet()) {
+                BeanDefinition expected = beanEntry.getValue();
+                BeanDefinition actual = restored.getBeanDefinition(beanEntry.getKey());
+                Assert.assertEquals(expected.getScope(), actual.getScope());
+                Assert.assertEquals(expected.isLazy(), actual.isLazy());
+                Assert.assertEquals(expected.getConstructor(), actual.getConstructor());
+                Assert.assertEquals(expected.getConstructorDependencyList(), actual.getConstructorDependencyList());
+                Assert.assertEquals(expected.getInjectFieldMap(), actual.getInjectFieldMap());
+            }
+            Assert.assertEquals(scanned.getBeanMap().keySet(), restored.getBeanMap().keySet());
+            Assert.assertSame(restored.getBean(UserService.class), restored.getBean(UserController.class).getUserService());
+
+            //切面和路由
+            Assert.assertFalse(scanned.getAspectMap().isEmpty());
+            Assert.assertFalse(scanned.getRequestMap().isEmpty());
+            Assert.assertEquals(scanned.getAspectMap(), restored.getAspectMap());
+            Assert.assertEquals(scanned.getRequestMap().keySet(), restored.getRequestMap().keySet());
+            for (Map.Entry<Request, Handler> requestEntry : scanned.getRequestMap().entrySet()) {
+                Handler handler = restored.getRequestMap().get(requestEntry.getKey());
+                Assert.assertEquals(requestEntry.getValue().getControllerClass(), handler.getControllerClass());
+                Assert.assertEquals(requestEntry.getValue().getControllerMethod(), handler.getControllerMethod());
+            }
+
+            //类路径变化后不使用旧快照
+            Assert.assertNull(SnapshotHelper.load("cn.egret", snapshotDir, CLASSPATH_HASH + "-changed"));
+            //基础包名不同的上下文也不使用这个快照
+            Assert.assertNull(SnapshotHelper.load("cn.egret.circular", snapshotDir, CLASSPATH_HASH));
+        } finally {
+            File[] files = snapshotDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.delete(file.toPath());
+                }
+            }
+            Files.delete(snapshotDir.toPath());
+        }
+    }
+}
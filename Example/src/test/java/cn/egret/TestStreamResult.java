@@ -0,0 +1,177 @@
+package cn.egret;
+
+import cn.egret.stream.StreamController;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRegistration;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式返回测试
+ * 通过 DispatcherServlet.service 调用 cn.egret.stream.StreamController, 用记录输出的响应检查格式, 刷新和关闭.
+ * 测试配置中 stream_flush_rows=2
+ *
+ * @author egret
+ */
+public class TestStreamResult {
+
+    private static DispatcherServlet servlet;
+
+    @BeforeClass
+    public static void initServlet() {
+        ServletRegistration registration = proxy(ServletRegistration.class, Collections.singletonMap("addMapping", Collections.emptySet()));
+        ServletContext servletContext = proxy(ServletContext.class, Collections.singletonMap("getServletRegistration", registration));
+        servlet = new DispatcherServlet();
+        servlet.init(proxy(ServletConfig.class, Collections.singletonMap("getServletContext", servletContext)));
+    }
+
+    @Test
+    public void testJsonArray() throws Exception {
+        int closedCount = StreamController.getClosedCount();
+        RecordingResponse response = new RecordingResponse();
+        servlet.service(request("/streamRows", "application/json"), response.proxy);
+
+        Assert.assertEquals("application/json", response.contentType);
+        Assert.assertEquals("[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4},{\"id\":5}]", response.body.toString());
+        //第一个元素立即刷新, 之后每 2 个元素刷新一次
+        Assert.assertEquals("[{\"id\":1}", response.flushedList.get(0));
+        Assert.assertTrue(response.flushedList.toString(), response.flushedList.contains("[{\"id\":1},{\"id\":2},{\"id\":3}"));
+        Assert.assertTrue(response.closed);
+        Assert.assertEquals(closedCount + 1, StreamController.getClosedCount());
+    }
+
+    @Test
+    public void testNdjson() throws Exception {
+        int closedCount = StreamController.getClosedCount();
+        RecordingResponse response = new RecordingResponse();
+        servlet.service(request("/streamRows", "application/x-ndjson"), response.proxy);
+
+        Assert.assertEquals("application/x-ndjson", response.contentType);
+        Assert.assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n{\"id\":4}\n{\"id\":5}\n", response.body.toString());
+        Assert.assertEquals("{\"id\":1}\n", response.flushedList.get(0));
+        Assert.assertEquals(closedCount + 1, StreamController.getClosedCount());
+    }
+
+    @Test
+    public void testFailureMidStream() throws Exception {
+        int closedCount = StreamController.getClosedCount();
+        RecordingResponse response = new RecordingResponse();
+        servlet.service(request("/streamFailure", null), response.proxy);
+
+        //已经输出的元素保留, 不写结束的 ], 客户端得到不完整的 JSON
+        Assert.assertEquals("[{\"id\":1},{\"id\":2}", response.body.toString());
+        Assert.assertEquals(closedCount + 1, StreamController.getClosedCount());
+    }
+
+    @Test
+    public void testFailureBeforeOutput() throws Exception {
+        int closedCount = StreamController.getClosedCount();
+        RecordingResponse response = new RecordingResponse();
+        try {
+            servlet.service(request("/streamEmptyFailure", null), response.proxy);
+            Assert.fail("failure before any output should be thrown");
+        } catch (RuntimeException e) {
+            Assert.assertFalse(response.committed);
+        }
+        Assert.assertEquals(closedCount + 1, StreamController.getClosedCount());
+    }
+
+    private static HttpServletRequest request(String path, String accept) {
+        Map<String, Object> resultMap = new HashMap<>();
+        resultMap.put("getMethod", "GET");
+        resultMap.put("getPathInfo", path);
+        resultMap.put("getParameterNames", Collections.emptyEnumeration());
+        return (HttpServletRequest) Proxy.newProxyInstance(TestStreamResult.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (p, method, args) -> {
+                    if ("getHeader".equals(method.getName())) {
+                        return "Accept".equals(args[0]) ? accept : null;
+                    }
+                    return resultMap.containsKey(method.getName()) ? resultMap.get(method.getName()) : defaultValue(method.getReturnType());
+                });
+    }
+
+    /**
+     * 按方法名返回固定结果的代理, 其它方法返回 null 或基本类型的默认值
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> iface, Map<String, ?> resultMap) {
+        return (T) Proxy.newProxyInstance(TestStreamResult.class.getClassLoader(), new Class<?>[]{iface}, (p, method, args) -> {
+            if (resultMap.containsKey(method.getName())) {
+                return resultMap.get(method.getName());
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * 记录输出内容, 每次刷新时的内容以及是否关闭的响应
+     */
+    private static class RecordingResponse {
+
+        private final StringWriter body = new StringWriter();
+
+        private final List<String> flushedList = new ArrayList<>();
+
+        private String contentType;
+
+        private boolean committed;
+
+        private boolean closed;
+
+        private final PrintWriter writer = new PrintWriter(body) {
+            @Override
+            public void flush() {
+                super.flush();
+                flushedList.add(body.toString());
+                committed = true;
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                closed = true;
+            }
+        };
+
+        private final HttpServletResponse proxy = (HttpServletResponse) Proxy.newProxyInstance(TestStreamResult.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getWriter":
+                            return writer;
+                        case "setContentType":
+                            contentType = (String) args[0];
+                            return null;
+                        case "isCommitted":
+                            return committed;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+}
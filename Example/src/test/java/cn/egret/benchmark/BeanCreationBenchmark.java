@@ -0,0 +1,79 @@
+package cn.egret.benchmark;
+
+import cn.egret.ApplicationContext;
+import cn.egret.annotation.Autowired;
+import cn.egret.benchmark.bean.*;
+import cn.egret.util.ReflectionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原型和请求作用域 bean 的创建开销
+ * reflectionFieldInjection 是原来的做法（反射创建实例, 每个注入点 setAccessible + Field.set）, 作为对照.
+ *
+ * 运行: mvn test-compile exec:exec -Pjmh -Djmh.args=BeanCreationBenchmark
+ * @author egret
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BeanCreationBenchmark {
+
+    private ApplicationContext context;
+
+    private List<Field> injectFieldList;
+
+    @Setup
+    public void setup() {
+        context = new ApplicationContext("cn.egret.benchmark.bean").refresh();
+        injectFieldList = new ArrayList<>();
+        for (Field field : FieldPrototypeBean.class.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Autowired.class)) {
+                injectFieldList.add(field);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object reflectionFieldInjection() {
+        Object bean = ReflectionUtil.newInstance(FieldPrototypeBean.class);
+        for (Field field : injectFieldList) {
+            ReflectionUtil.setField(bean, field, context.getBean(field.getType()));
+        }
+        return bean;
+    }
+
+    @Benchmark
+    public Object prototypeFieldInjection() {
+        return context.getBean(FieldPrototypeBean.class);
+    }
+
+    @Benchmark
+    public Object prototypeConstructorInjection() {
+        return context.getBean(ConstructorPrototypeBean.class);
+    }
+
+    @Benchmark
+    public Object proxiedPrototype() {
+        return context.getBean(ProxiedPrototypeBean.class);
+    }
+
+    @Benchmark
+    public Object requestScope() {
+        context.beginRequest();
+        try {
+            //同一个请求内第二次获取直接返回第一次创建的实例
+            context.getBean(RequestBean.class);
+            return context.getBean(RequestBean.class);
+        } finally {
+            context.endRequest();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.egret.benchmark;
+
+import cn.egret.jdbc.pool.PooledDataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 16 个线程从 8 个连接的连接池中借出并归还连接的开销, 对比 DBCP 和内置连接池
+ *
+ * 运行: mvn test-compile exec:exec -Pjmh -Djmh.args=ConnectionPoolBenchmark
+ * @author egret
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:pool_benchmark;DB_CLOSE_DELAY=-1";
+
+    @Param({"dbcp", "builtin"})
+    public String pool;
+
+    private DataSource dataSource;
+
+    @Setup
+    public void setup() {
+        if ("builtin".equals(pool)) {
+            PooledDataSource pooledDataSource = new PooledDataSource();
+            pooledDataSource.setUrl(URL);
+            pooledDataSource.setUsername("sa");
+            pooledDataSource.setPassword("");
+            pooledDataSource.setMaxTotal(8);
+            dataSource = pooledDataSource;
+        } else {
+            BasicDataSource basicDataSource = new BasicDataSource();
+            basicDataSource.setUrl(URL);
+            basicDataSource.setUsername("sa");
+            basicDataSource.setPassword("");
+            basicDataSource.setMaxTotal(8);
+            basicDataSource.setMaxIdle(8);
+            dataSource = basicDataSource;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((AutoCloseable) dataSource).close();
+    }
+
+    @Benchmark
+    public boolean borrowAndReturn() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cn.egret.benchmark;
+
+import cn.egret.domain.User;
+import cn.egret.helper.DatabaseHelper;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 id 查询 User 的开销, 使用 H2 内存数据库
+ * beanHandler 是原来的做法（每次查询创建 BeanHandler, 反射匹配列名和属性）, 作为对照.
+ *
+ * 运行: mvn test-compile exec:exec -Pjmh -Djmh.args=RowMapperBenchmark
+ * @author egret
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowMapperBenchmark {
+
+    private static final String SQL = "SELECT * FROM user WHERE id = ?";
+
+    private final QueryRunner queryRunner = new QueryRunner();
+
+    @Setup
+    public void setup() {
+        DatabaseHelper.update("DROP TABLE IF EXISTS user");
+        DatabaseHelper.update("CREATE TABLE user (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), age INT)");
+        DatabaseHelper.update("INSERT INTO user (id, name, age) VALUES (1, 'tyshawn', 21)");
+    }
+
+    @Benchmark
+    public User beanHandler() throws SQLException {
+        return queryRunner.query(DatabaseHelper.getConnection(), SQL, new BeanHandler<>(User.class), 1);
+    }
+
+    @Benchmark
+    public User cachedRowMapper() {
+        return DatabaseHelper.queryEntity(User.class, SQL, 1);
+    }
+}
@@ -0,0 +1,96 @@
+package cn.egret.benchmark;
+
+import cn.egret.HelperLoader;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动基准测试
+ * 在不启动 Web 容器的情况下, 反复执行 HelperLoader.init(), 统计每次启动以及每个阶段耗时的分布.
+ *
+ * 默认应用上下文保存在静态变量里, 而且为了把类加载的耗时也统计进来, 每次启动都使用一个新的类加载器重新加载类路径上的所有类.
+ * 使用测试类路径（H2 内存数据库, 见 src/test/resources/handwritten.properties）, 不使用 JMH, 因为每次启动都要换类加载器.
+ *
+ * 运行: mvn test-compile exec:exec@startup -Pjmh -Dbenchmark.iterations=50
+ * @author egret
+ */
+public final class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int warmupIterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        URL[] urls = getClasspathUrls();
+        for (int i = 0; i < warmupIterations; i++) {
+            boot(urls);
+        }
+
+        //阶段名 - 每次启动的耗时(纳秒)
+        Map<String, List<Long>> samplesMap = new LinkedHashMap<>();
+        List<Long> totalSamples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            long startNanos = System.nanoTime();
+            Map<String, Long> phaseNanosMap = boot(urls);
+            totalSamples.add(System.nanoTime() - startNanos);
+            for (Map.Entry<String, Long> phaseEntry : phaseNanosMap.entrySet()) {
+                samplesMap.computeIfAbsent(phaseEntry.getKey(), k -> new ArrayList<>()).add(phaseEntry.getValue());
+            }
+        }
+        samplesMap.put("total", totalSamples);
+
+        System.out.printf("startup benchmark: %d iterations, %d warmup%n", iterations, warmupIterations);
+        System.out.printf("%-22s %10s %10s %10s %10s %10s %10s%n", "phase(ms)", "min", "p50", "p90", "p99", "max", "mean");
+        for (Map.Entry<String, List<Long>> samplesEntry : samplesMap.entrySet()) {
+            List<Long> samples = samplesEntry.getValue();
+            Collections.sort(samples);
+            long sum = 0;
+            for (long sample : samples) {
+                sum += sample;
+            }
+            System.out.printf("%-22s %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n", samplesEntry.getKey(),
+                    samples.get(0) / 1e6, percentile(samples, 0.5), percentile(samples, 0.9), percentile(samples, 0.99),
+                    samples.get(samples.size() - 1) / 1e6, sum / 1e6 / samples.size());
+        }
+    }
+
+    /**
+     * 用新的类加载器启动一次, 返回每个阶段的耗时
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> boot(URL[] urls) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader originalClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent())) {
+            thread.setContextClassLoader(classLoader);
+            Class<?> helperLoaderClass = classLoader.loadClass(HelperLoader.class.getName());
+            helperLoaderClass.getMethod("init").invoke(null);
+            Object timeline = helperLoaderClass.getMethod("getStartupTimeline").invoke(null);
+            Method getPhaseNanosMap = timeline.getClass().getMethod("getPhaseNanosMap");
+            return (Map<String, Long>) getPhaseNanosMap.invoke(timeline);
+        } finally {
+            thread.setContextClassLoader(originalClassLoader);
+        }
+    }
+
+    private static URL[] getClasspathUrls() throws Exception {
+        String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            urls[i] = new File(paths[i]).toURI().toURL();
+        }
+        return urls;
+    }
+
+    private static double percentile(List<Long> sortedSamples, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedSamples.size()) - 1;
+        return sortedSamples.get(Math.max(index, 0)) / 1e6;
+    }
+}
@@ -0,0 +1,15 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Controller;
+
+/**
+ * 基准测试用的单例 bean（不带代理）
+ * @author egret
+ */
+@Controller
+public class BenchmarkCache {
+
+    public String get(long id) {
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Service;
+
+/**
+ * 基准测试用的单例 bean（带事务代理）
+ * @author egret
+ */
+@Service
+public class BenchmarkRepository {
+
+    public String find(long id) {
+        return "entity-" + id;
+    }
+}
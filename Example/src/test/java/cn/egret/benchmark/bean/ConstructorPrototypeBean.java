@@ -0,0 +1,33 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Controller;
+import cn.egret.annotation.Scope;
+
+/**
+ * 构造器注入的原型 bean
+ * @author egret
+ */
+@Controller
+@Scope(BeanScope.PROTOTYPE)
+public class ConstructorPrototypeBean {
+
+    private final BenchmarkRepository repository;
+
+    private final BenchmarkCache cache;
+
+    @Autowired
+    public ConstructorPrototypeBean(BenchmarkRepository repository, BenchmarkCache cache) {
+        this.repository = repository;
+        this.cache = cache;
+    }
+
+    public BenchmarkRepository getRepository() {
+        return repository;
+    }
+
+    public BenchmarkCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,29 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Controller;
+import cn.egret.annotation.Scope;
+
+/**
+ * 属性注入的原型 bean
+ * @author egret
+ */
+@Controller
+@Scope(BeanScope.PROTOTYPE)
+public class FieldPrototypeBean {
+
+    @Autowired
+    private BenchmarkRepository repository;
+
+    @Autowired
+    private BenchmarkCache cache;
+
+    public BenchmarkRepository getRepository() {
+        return repository;
+    }
+
+    public BenchmarkCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,22 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Scope;
+import cn.egret.annotation.Service;
+
+/**
+ * 带事务代理的原型 bean
+ * @author egret
+ */
+@Service
+@Scope(BeanScope.PROTOTYPE)
+public class ProxiedPrototypeBean {
+
+    @Autowired
+    private BenchmarkRepository repository;
+
+    public BenchmarkRepository getRepository() {
+        return repository;
+    }
+}
@@ -0,0 +1,25 @@
+package cn.egret.benchmark.bean;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Controller;
+import cn.egret.annotation.Scope;
+
+/**
+ * 请求作用域的 bean
+ * @author egret
+ */
+@Controller
+@Scope(BeanScope.REQUEST)
+public class RequestBean {
+
+    @Autowired
+    private BenchmarkRepository repository;
+
+    @Autowired
+    private BenchmarkCache cache;
+
+    public BenchmarkRepository getRepository() {
+        return repository;
+    }
+}
@@ -0,0 +1,23 @@
+package cn.egret.circular;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.Service;
+
+/**
+ * 构造器注入循环依赖中的 bean, 与循环依赖在同一层, 必须在 CycleA 之后实例化
+ * @author egret
+ */
+@Service
+public class CircularConsumer {
+
+    private final CycleA cycleA;
+
+    @Autowired
+    public CircularConsumer(CycleA cycleA) {
+        this.cycleA = cycleA;
+    }
+
+    public CycleA getCycleA() {
+        return cycleA;
+    }
+}
@@ -0,0 +1,19 @@
+package cn.egret.circular;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.Service;
+
+/**
+ * 与 CycleA 属性注入的循环依赖
+ * @author egret
+ */
+@Service
+public class CycleB {
+
+    @Autowired
+    private CycleA cycleA;
+
+    public CycleA getCycleA() {
+        return cycleA;
+    }
+}
@@ -0,0 +1,23 @@
+package cn.egret.scope;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.Service;
+
+/**
+ * 通过构造器把依赖注入到 final 字段的单例 bean
+ * @author egret
+ */
+@Service
+public class FinalFieldService {
+
+    private final ScopeRepository repository;
+
+    @Autowired
+    public FinalFieldService(ScopeRepository repository) {
+        this.repository = repository;
+    }
+
+    public ScopeRepository getRepository() {
+        return repository;
+    }
+}
@@ -0,0 +1,25 @@
+package cn.egret.scope;
+
+import cn.egret.annotation.Lazy;
+import cn.egret.annotation.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 延迟加载的 bean, 记录创建的实例数
+ * @author egret
+ */
+@Service
+@Lazy
+public class LazyReport {
+
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    public LazyReport() {
+        INSTANCE_COUNT.incrementAndGet();
+    }
+
+    public static int getInstanceCount() {
+        return INSTANCE_COUNT.get();
+    }
+}
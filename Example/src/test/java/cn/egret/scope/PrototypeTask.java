@@ -0,0 +1,22 @@
+package cn.egret.scope;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Scope;
+import cn.egret.annotation.Service;
+
+/**
+ * 原型 bean, 每次获取都是新实例
+ * @author egret
+ */
+@Service
+@Scope(BeanScope.PROTOTYPE)
+public class PrototypeTask {
+
+    @Autowired
+    private ScopeRepository repository;
+
+    public ScopeRepository getRepository() {
+        return repository;
+    }
+}
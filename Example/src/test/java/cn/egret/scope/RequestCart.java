@@ -0,0 +1,22 @@
+package cn.egret.scope;
+
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Scope;
+import cn.egret.annotation.Service;
+
+/**
+ * 请求作用域的 bean, 每个请求一个实例
+ * @author egret
+ */
+@Service
+@Scope(BeanScope.REQUEST)
+public class RequestCart {
+
+    @Autowired
+    private ScopeRepository repository;
+
+    public ScopeRepository getRepository() {
+        return repository;
+    }
+}
@@ -0,0 +1,11 @@
+package cn.egret.scope;
+
+import cn.egret.annotation.Service;
+
+/**
+ * 作用域测试中被其它 bean 依赖的单例 bean
+ * @author egret
+ */
+@Service
+public class ScopeRepository {
+}
@@ -0,0 +1,56 @@
+package cn.egret.stream;
+
+import cn.egret.annotation.Controller;
+import cn.egret.annotation.RequestMapping;
+import cn.egret.annotation.RequestMethod;
+import cn.egret.bean.Data;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * 流式返回测试使用的控制器, 记录返回的流被关闭的次数
+ * @author egret
+ */
+@Controller
+public class StreamController {
+
+    private static final AtomicInteger CLOSED_COUNT = new AtomicInteger();
+
+    public static int getClosedCount() {
+        return CLOSED_COUNT.get();
+    }
+
+    /**
+     * 返回 5 个元素
+     */
+    @RequestMapping(value = "/streamRows", method = RequestMethod.GET)
+    public Data streamRows() {
+        return new Data(IntStream.rangeClosed(1, 5).mapToObj(i -> Collections.singletonMap("id", i))
+                .onClose(CLOSED_COUNT::incrementAndGet));
+    }
+
+    /**
+     * 输出两个元素后失败
+     */
+    @RequestMapping(value = "/streamFailure", method = RequestMethod.GET)
+    public Data streamFailure() {
+        return new Data(IntStream.rangeClosed(1, 5).mapToObj(i -> {
+            if (i == 3) {
+                throw new IllegalStateException("stream row failure");
+            }
+            return Collections.singletonMap("id", i);
+        }).onClose(CLOSED_COUNT::incrementAndGet));
+    }
+
+    /**
+     * 第一个元素就失败
+     */
+    @RequestMapping(value = "/streamEmptyFailure", method = RequestMethod.GET)
+    public Data streamEmptyFailure() {
+        return new Data(IntStream.rangeClosed(1, 5).mapToObj(i -> {
+            throw new IllegalStateException("stream row failure");
+        }).onClose(CLOSED_COUNT::incrementAndGet));
+    }
+}
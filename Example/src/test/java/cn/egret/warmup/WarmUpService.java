@@ -0,0 +1,30 @@
+package cn.egret.warmup;
+
+import cn.egret.ApplicationContext;
+import cn.egret.HelperLoader;
+import cn.egret.annotation.Service;
+import cn.egret.helper.BeanHelper;
+
+import java.util.Map;
+
+/**
+ * 在构造器中预热的 bean: 通过 Helper 类的静态方法访问默认的应用上下文
+ * @author egret
+ */
+@Service
+public class WarmUpService {
+
+    private final ApplicationContext context;
+
+    public WarmUpService() {
+        Map<Class<?>, Object> beanMap = BeanHelper.getBeanMap();
+        this.context = HelperLoader.getApplicationContext();
+        if (beanMap != context.getBeanMap()) {
+            throw new IllegalStateException("bean map does not belong to the default context");
+        }
+    }
+
+    public ApplicationContext getContext() {
+        return context;
+    }
+}
@@ -0,0 +1,555 @@
+package cn.egret;
+
+import cn.egret.annotation.Controller;
+import cn.egret.annotation.Service;
+import cn.egret.bean.BeanDefinition;
+import cn.egret.bean.BeanInjector;
+import cn.egret.bean.ContainerSnapshot;
+import cn.egret.bean.Handler;
+import cn.egret.bean.Request;
+import cn.egret.helper.*;
+import cn.egret.metrics.StartupTimeline;
+import cn.egret.proxy.Proxy;
+import cn.egret.proxy.ProxyFactory;
+import cn.egret.util.ClassUtil;
+import cn.egret.util.ReflectionUtil;
+import org.apache.commons.collections4.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 应用上下文
+ * 应用上下文拥有容器的全部状态: 类集合, bean 定义和 bean 容器, 切面, 以及 "请求-处理器" 映射.
+ * 调用 refresh() 时依次执行各个启动阶段: 读取启动快照, 扫描类, 建立切面映射, 创建 bean（需要代理时直接创建代理对象）, 依赖注入, 建立路由表,
+ * 每个阶段的具体逻辑仍由对应的 Helper 类实现.
+ *
+ * 应用上下文之间互相隔离, 同一个 JVM 里可以创建多个, 也可以在多个线程中同时创建.
+ * Helper 类的静态方法都委托给默认的应用上下文, 见 HelperLoader.getApplicationContext().
+ * @author egret
+ */
+public class ApplicationContext {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApplicationContext.class);
+
+    /**
+     * 当前线程正在启动的应用上下文（启动线程和并行初始化 bean 的线程）, 见 HelperLoader.getApplicationContext()
+     */
+    private static final ThreadLocal<ApplicationContext> REFRESHING_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 基础包名
+     */
+    private final String basePackage;
+
+    /**
+     * 启动时间线
+     */
+    private final StartupTimeline startupTimeline = new StartupTimeline();
+
+    /**
+     * 启动快照, 没有可用快照时为 null
+     */
+    private ContainerSnapshot snapshot;
+
+    /**
+     * 基础包名下的所有类, 从启动快照启动时, 直到第一次使用才根据快照中的类名加载
+     */
+    private volatile Set<Class<?>> classSet;
+
+    /**
+     * "bean类-bean定义" 的映射, 包括延迟加载的bean
+     */
+    private final Map<Class<?>, BeanDefinition> beanDefinitionMap = new HashMap<>();
+
+    /**
+     * bean容器, 拥有所有bean的实例
+     */
+    private final Map<Class<?>, Object> beanMap = new ConcurrentHashMap<>();
+
+    /**
+     * 启动时创建的bean的依赖图
+     */
+    private BeanDependencyGraph dependencyGraph;
+
+    /**
+     * 切面类-目标类集合的映射
+     */
+    private final Map<Class<?>, Set<Class<?>>> aspectMap = new LinkedHashMap<>();
+
+    /**
+     * 目标类-切面对象列表的映射
+     */
+    private final Map<Class<?>, List<Proxy>> targetMap = new HashMap<>();
+
+    /**
+     * "请求-处理器" 的映射
+     */
+    private final Map<Request, Handler> requestMap = new HashMap<>();
+
+    /**
+     * 创建延迟加载bean时使用的锁
+     */
+    private final Object lazyLock = new Object();
+
+    /**
+     * 当前线程正在创建的延迟加载bean, 用于处理延迟加载bean之间的循环依赖
+     */
+    private final ThreadLocal<Map<Class<?>, Object>> creatingBeanHolder = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * 当前线程正在构造的单例 bean, 用于发现延迟加载 bean 构造器注入的循环依赖
+     */
+    private final ThreadLocal<Set<Class<?>>> constructingBeanHolder = ThreadLocal.withInitial(HashSet::new);
+
+    /**
+     * 注入时查找依赖的函数, 避免每次注入都创建方法引用
+     */
+    private final Function<Class<?>, Object> beanLookup = this::findBean;
+
+    /**
+     * 当前请求的请求作用域 bean, 不在请求中时为 null
+     */
+    private final ThreadLocal<Map<Class<?>, Object>> requestBeanHolder = new ThreadLocal<>();
+
+    /**
+     * 非单例 bean 的代理对象模板
+     */
+    private final Map<Class<?>, Object> proxyTemplateMap = new ConcurrentHashMap<>();
+
+    private volatile boolean refreshed;
+
+    /**
+     * 使用配置文件中的基础包名
+     */
+    public ApplicationContext() {
+        this(ConfigHelper.getAppBasePackage());
+    }
+
+    public ApplicationContext(String basePackage) {
+        this.basePackage = basePackage;
+    }
+
+    /**
+     * 从指定的启动快照启动, 不扫描类路径, 也不再读取或保存配置目录中的快照
+     */
+    public ApplicationContext(String basePackage, ContainerSnapshot snapshot) {
+        this.basePackage = basePackage;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 依次执行各个启动阶段, 同一个应用上下文只会执行一次
+     */
+    public synchronized ApplicationContext refresh() {
+        if (refreshed) {
+            return this;
+        }
+        runRefreshing(() -> {
+            if (snapshot == null) {
+                runPhase("SnapshotHelper", () -> snapshot = SnapshotHelper.load(basePackage));
+            }
+            runPhase("ClassHelper", this::loadClassSet);
+            runPhase("AopHelper", () -> AopHelper.weave(this));
+            runPhase("BeanHelper", () -> BeanHelper.createBeans(this));
+            runPhase("IocHelper", () -> IocHelper.inject(this));
+            runPhase("ControllerHelper", () -> ControllerHelper.createRequestMap(this));
+            //所有阶段成功后保存启动快照（开启了启动快照, 且不是从快照启动时）
+            if (SnapshotHelper.isEnabled() && snapshot == null) {
+                runPhase("SnapshotHelper.save", () -> SnapshotHelper.save(this));
+            }
+        });
+        refreshed = true;
+        startupTimeline.logReport();
+        return this;
+    }
+
+    /**
+     * 把当前线程标记为正在启动这个应用上下文, 再执行启动任务; 并行初始化 bean 的线程也通过它标记
+     */
+    public void runRefreshing(Runnable action) {
+        ApplicationContext previous = REFRESHING_HOLDER.get();
+        REFRESHING_HOLDER.set(this);
+        try {
+            action.run();
+        } finally {
+            if (previous != null) {
+                REFRESHING_HOLDER.set(previous);
+            } else {
+                REFRESHING_HOLDER.remove();
+            }
+        }
+    }
+
+    /**
+     * 获取当前线程正在启动的应用上下文, 不在启动中时返回 null
+     */
+    public static ApplicationContext getRefreshingContext() {
+        return REFRESHING_HOLDER.get();
+    }
+
+    private void runPhase(String name, Runnable action) {
+        StartupTimeline.Phase phase = startupTimeline.beginPhase(name);
+        try {
+            action.run();
+        } finally {
+            phase.end();
+        }
+    }
+
+    /**
+     * 加载类集合: 没有启动快照时扫描基础包名下的所有类, 否则推迟到第一次使用时加载
+     */
+    private void loadClassSet() {
+        if (snapshot == null) {
+            classSet = ClassUtil.getClassSet(basePackage);
+            startupTimeline.setItemCount(classSet.size());
+        } else {
+            startupTimeline.setItemCount(snapshot.getClassNameList().size());
+        }
+    }
+
+    public String getBasePackage() {
+        return basePackage;
+    }
+
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    public ContainerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 获取基础包名下的所有类
+     */
+    public Set<Class<?>> getClassSet() {
+        Set<Class<?>> result = classSet;
+        if (result == null) {
+            synchronized (this) {
+                if (classSet == null) {
+                    classSet = SnapshotHelper.loadClassSet(snapshot.getClassNameList());
+                }
+                result = classSet;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取基础包名下所有 Service 类
+     */
+    public Set<Class<?>> getServiceClassSet() {
+        if (snapshot != null) {
+            return SnapshotHelper.loadClassSet(snapshot.getServiceClassNameList());
+        }
+        return getClassSetByAnnotation(Service.class);
+    }
+
+    /**
+     * 获取基础包名下所有 Controller 类
+     */
+    public Set<Class<?>> getControllerClassSet() {
+        if (snapshot != null) {
+            return SnapshotHelper.loadClassSet(snapshot.getControllerClassNameList());
+        }
+        return getClassSetByAnnotation(Controller.class);
+    }
+
+    /**
+     * 获取基础包名下所有 Bean 类（包括：Controller、Service）
+     */
+    public Set<Class<?>> getBeanClassSet() {
+        Set<Class<?>> beanClassSet = new HashSet<>();
+        beanClassSet.addAll(getServiceClassSet());
+        beanClassSet.addAll(getControllerClassSet());
+        return beanClassSet;
+    }
+
+    /**
+     * 获取基础包名下某父类的所有子类 或某接口的所有实现类
+     */
+    public Set<Class<?>> getClassSetBySuper(Class<?> superClass) {
+        Set<Class<?>> result = new HashSet<>();
+        for (Class<?> cls : getClassSet()) {
+            //isAssignableFrom() 指 superClass 和 cls 是否相同或 superClass 是否是 cls 的父类/接口
+            if (superClass.isAssignableFrom(cls) && !superClass.equals(cls)) {
+                result.add(cls);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取基础包名下带有某注解的所有类
+     */
+    public Set<Class<?>> getClassSetByAnnotation(Class<? extends Annotation> annotationClass) {
+        Set<Class<?>> result = new HashSet<>();
+        for (Class<?> cls : getClassSet()) {
+            if (cls.isAnnotationPresent(annotationClass)) {
+                result.add(cls);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取接口对应的实现类
+     * 如果有多个实现类, 优先选择 bean 类（Controller、Service）
+     */
+    public Class<?> findImplementClass(Class<?> interfaceClass) {
+        if (ClassHelper.isBeanClass(interfaceClass)) {
+            return interfaceClass;
+        }
+        Class<?> implementClass = interfaceClass;
+        //接口对应的所有实现类
+        Set<Class<?>> classSetBySuper = getClassSetBySuper(interfaceClass);
+        if (CollectionUtils.isNotEmpty(classSetBySuper)) {
+            //获取第一个实现类
+            implementClass = classSetBySuper.iterator().next();
+            for (Class<?> cls : classSetBySuper) {
+                if (ClassHelper.isBeanClass(cls)) {
+                    implementClass = cls;
+                    break;
+                }
+            }
+        }
+        return implementClass;
+    }
+
+    /**
+     * 获取 Bean 容器
+     */
+    public Map<Class<?>, Object> getBeanMap() {
+        return beanMap;
+    }
+
+    /**
+     * 获取所有 Bean 定义
+     */
+    public Map<Class<?>, BeanDefinition> getBeanDefinitionMap() {
+        return beanDefinitionMap;
+    }
+
+    /**
+     * 获取 Bean 定义
+     */
+    public BeanDefinition getBeanDefinition(Class<?> cls) {
+        return beanDefinitionMap.get(cls);
+    }
+
+    /**
+     * 获取 Bean 依赖图
+     */
+    public BeanDependencyGraph getDependencyGraph() {
+        return dependencyGraph;
+    }
+
+    public void setDependencyGraph(BeanDependencyGraph dependencyGraph) {
+        this.dependencyGraph = dependencyGraph;
+    }
+
+    /**
+     * 是否为尚未创建的延迟加载 Bean
+     */
+    public boolean isLazyBean(Class<?> cls) {
+        BeanDefinition beanDefinition = beanDefinitionMap.get(cls);
+        return beanDefinition != null && beanDefinition.isLazy() && !beanMap.containsKey(cls);
+    }
+
+    /**
+     * 获取 Bean 实例
+     * 延迟加载的 Bean 在第一次获取时创建, 原型 Bean 每次获取都创建新实例, 请求作用域的 Bean 每个请求创建一次
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getBean(Class<T> cls) {
+        Object bean = findBean(cls);
+        if (bean == null) {
+            if (!refreshed && beanDefinitionMap.containsKey(cls)) {
+                throw new RuntimeException("bean is not created yet, application context is refreshing: " + cls
+                        + ", inject it by constructor to create it first");
+            }
+            throw new RuntimeException("can not get bean by class: " + cls);
+        }
+        return (T) bean;
+    }
+
+    /**
+     * 设置 Bean 实例
+     */
+    public void setBean(Class<?> cls, Object obj) {
+        beanMap.put(cls, obj);
+    }
+
+    /**
+     * 查找 Bean 实例, 找不到时返回 null
+     */
+    public Object findBean(Class<?> cls) {
+        Object bean = beanMap.get(cls);
+        if (bean != null) {
+            return bean;
+        }
+        BeanDefinition beanDefinition = beanDefinitionMap.get(cls);
+        if (beanDefinition == null) {
+            return null;
+        }
+        switch (beanDefinition.getScope()) {
+            case PROTOTYPE:
+                return createScopedBean(beanDefinition);
+            case REQUEST:
+                Map<Class<?>, Object> requestBeanMap = requestBeanHolder.get();
+                if (requestBeanMap == null) {
+                    throw new RuntimeException("no active request for request scoped bean: " + cls.getName());
+                }
+                bean = requestBeanMap.get(cls);
+                if (bean == null) {
+                    bean = createScopedBean(beanDefinition);
+                    requestBeanMap.put(cls, bean);
+                }
+                return bean;
+            default:
+                return beanDefinition.isLazy() ? createLazyBean(beanDefinition) : null;
+        }
+    }
+
+    /**
+     * 开始一个请求作用域, 由 DispatcherServlet 在处理请求前调用
+     */
+    public void beginRequest() {
+        requestBeanHolder.set(new HashMap<>());
+    }
+
+    /**
+     * 结束请求作用域, 丢弃本次请求创建的请求作用域 Bean
+     */
+    public void endRequest() {
+        requestBeanHolder.remove();
+    }
+
+    /**
+     * 创建延迟加载的 Bean: 实例化（需要代理时创建代理对象）, 注入依赖, 再放入 bean 容器
+     */
+    private Object createLazyBean(BeanDefinition beanDefinition) {
+        Class<?> beanClass = beanDefinition.getBeanClass();
+        Map<Class<?>, Object> creatingBeanMap = creatingBeanHolder.get();
+        synchronized (lazyLock) {
+            Object bean = beanMap.get(beanClass);
+            if (bean == null) {
+                bean = creatingBeanMap.get(beanClass);
+            }
+            if (bean != null) {
+                return bean;
+            }
+            bean = createInstance(beanDefinition);
+            creatingBeanMap.put(beanClass, bean);
+            try {
+                beanDefinition.getInjector().injectFields(bean, beanLookup);
+            } finally {
+                creatingBeanMap.remove(beanClass);
+            }
+            beanMap.put(beanClass, bean);
+            LOGGER.debug("create lazy bean: {}", beanClass.getName());
+            return bean;
+        }
+    }
+
+    /**
+     * 创建原型或请求作用域的 Bean: 实例化并注入依赖, 不放入 bean 容器.
+     * 非单例 bean 之间的循环依赖在启动时已经检查过, 这里不再检查
+     */
+    private Object createScopedBean(BeanDefinition beanDefinition) {
+        Object bean = newInstance(beanDefinition);
+        beanDefinition.getInjector().injectFields(bean, beanLookup);
+        return bean;
+    }
+
+    /**
+     * 创建 bean 实例（只进行构造器注入）, 如果该类有切面则直接创建代理对象
+     */
+    public Object createInstance(BeanDefinition beanDefinition) {
+        Class<?> beanClass = beanDefinition.getBeanClass();
+        Set<Class<?>> constructingBeanSet = constructingBeanHolder.get();
+        if (!constructingBeanSet.add(beanClass)) {
+            throw new RuntimeException("circular dependency through constructor injection: " + beanClass.getName());
+        }
+        try {
+            return newInstance(beanDefinition);
+        } finally {
+            constructingBeanSet.remove(beanClass);
+        }
+    }
+
+    private Object newInstance(BeanDefinition beanDefinition) {
+        Class<?> beanClass = beanDefinition.getBeanClass();
+        BeanInjector injector = beanDefinition.getInjector();
+        Object[] args = injector.resolveArguments(beanLookup);
+        List<Proxy> proxyList = targetMap.get(beanClass);
+        if (proxyList == null) {
+            return injector.newInstance(args);
+        }
+        if (beanDefinition.isSingleton()) {
+            return ProxyFactory.createProxy(beanClass, proxyList, injector.getParameterTypes(), args);
+        }
+        //原型和请求作用域的 bean 以第一个代理对象为模板创建, 不再经过 Enhancer
+        Object proxyTemplate = proxyTemplateMap.get(beanClass);
+        if (proxyTemplate == null) {
+            Object proxy = ProxyFactory.createProxy(beanClass, proxyList, injector.getParameterTypes(), args);
+            proxyTemplateMap.putIfAbsent(beanClass, proxy);
+            return proxy;
+        }
+        return ProxyFactory.newProxyInstance(proxyTemplate, injector.getParameterTypes(), args);
+    }
+
+    /**
+     * 创建 bean 实例, 如果该类有切面则直接创建代理对象
+     */
+    public Object createBean(Class<?> beanClass) {
+        BeanDefinition beanDefinition = beanDefinitionMap.get(beanClass);
+        if (beanDefinition != null) {
+            return createInstance(beanDefinition);
+        }
+        List<Proxy> proxyList = targetMap.get(beanClass);
+        if (proxyList == null) {
+            return ReflectionUtil.newInstance(beanClass);
+        }
+        return ProxyFactory.createProxy(beanClass, proxyList);
+    }
+
+    /**
+     * 获取切面类-目标类集合的映射
+     */
+    public Map<Class<?>, Set<Class<?>>> getAspectMap() {
+        return aspectMap;
+    }
+
+    /**
+     * 获取目标类-切面对象列表的映射
+     */
+    public Map<Class<?>, List<Proxy>> getTargetMap() {
+        return targetMap;
+    }
+
+    /**
+     * 获取 "请求-处理器" 映射
+     */
+    public Map<Request, Handler> getRequestMap() {
+        return requestMap;
+    }
+
+    /**
+     * 获取 Handler
+     */
+    public Handler getHandler(String requestMethod, String requestPath) {
+        return requestMap.get(new Request(requestMethod, requestPath));
+    }
+}
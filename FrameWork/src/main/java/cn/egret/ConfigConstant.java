@@ -18,6 +18,43 @@ public interface ConfigConstant {
     String JDBC_URL = "handwritten.framework.jdbc.url";
     String JDBC_USERNAME = "handwritten.framework.jdbc.username";
     String JDBC_PASSWORD = "handwritten.framework.jdbc.password";
+    String JDBC_POOL_PREPARED_STATEMENTS = "handwritten.framework.jdbc.pool_prepared_statements";
+    String JDBC_MAX_OPEN_PREPARED_STATEMENTS = "handwritten.framework.jdbc.max_open_prepared_statements";
+    String JDBC_BATCH_SIZE = "handwritten.framework.jdbc.batch_size";
+    String JDBC_FETCH_SIZE = "handwritten.framework.jdbc.fetch_size";
+    String JDBC_POOL = "handwritten.framework.jdbc.pool";
+    String JDBC_MAX_TOTAL = "handwritten.framework.jdbc.max_total";
+    String JDBC_MIN_IDLE = "handwritten.framework.jdbc.min_idle";
+    String JDBC_IDLE_TIMEOUT = "handwritten.framework.jdbc.idle_timeout";
+    String JDBC_MAX_LIFETIME = "handwritten.framework.jdbc.max_lifetime";
+    String JDBC_VALIDATION_QUERY = "handwritten.framework.jdbc.validation_query";
+    String JDBC_VALIDATION_TIMEOUT = "handwritten.framework.jdbc.validation_timeout";
+    String JDBC_MAX_WAIT = "handwritten.framework.jdbc.max_wait";
+    String JDBC_CONNECTION_SCOPE = "handwritten.framework.jdbc.connection_scope";
+    String JDBC_LEAK_DETECTION_THRESHOLD = "handwritten.framework.jdbc.leak_detection_threshold";
+    String JDBC_LEAK_DETECTION_STACK_SAMPLE = "handwritten.framework.jdbc.leak_detection_stack_sample";
+    String JDBC_QUERY_CACHE_MAX_SIZE = "handwritten.framework.jdbc.query_cache_max_size";
+    String JDBC_ASYNC_THREADS = "handwritten.framework.jdbc.async_threads";
+    String JDBC_ASYNC_QUEUE_SIZE = "handwritten.framework.jdbc.async_queue_size";
+    String JDBC_SQL_STATS = "handwritten.framework.jdbc.sql_stats";
+    String JDBC_SLOW_QUERY_THRESHOLD = "handwritten.framework.jdbc.slow_query_threshold";
+    String JDBC_BATCH_LOAD_WINDOW = "handwritten.framework.jdbc.batch_load_window";
+    String JDBC_GROUP_COMMIT_WINDOW = "handwritten.framework.jdbc.group_commit_window";
+    String JDBC_GROUP_COMMIT_MAX_SIZE = "handwritten.framework.jdbc.group_commit_max_size";
+
+    /**
+     * 从库
+     */
+    String JDBC_REPLICA_URLS = "handwritten.framework.jdbc.replica.urls";
+    String JDBC_REPLICA_USERNAME = "handwritten.framework.jdbc.replica.username";
+    String JDBC_REPLICA_PASSWORD = "handwritten.framework.jdbc.replica.password";
+    String JDBC_REPLICA_BALANCE = "handwritten.framework.jdbc.replica.balance";
+    String JDBC_REPLICA_EJECT_TIME = "handwritten.framework.jdbc.replica.eject_time";
+    String JDBC_REPLICA_NON_TRANSACTIONAL_READ = "handwritten.framework.jdbc.replica.non_transactional_read";
+    String JDBC_SHARD_URLS = "handwritten.framework.jdbc.shard.urls";
+    String JDBC_SHARD_USERNAME = "handwritten.framework.jdbc.shard.username";
+    String JDBC_SHARD_PASSWORD = "handwritten.framework.jdbc.shard.password";
+    String JDBC_SHARD_FUNCTION = "handwritten.framework.jdbc.shard.function";
 
     /**
      * 文件地址
@@ -25,4 +62,28 @@ public interface ConfigConstant {
     String APP_BASE_PACKAGE = "handwritten.framework.app.base_package";
     String APP_JSP_PATH = "handwritten.framework.app.jsp_path";
     String APP_ASSET_PATH = "handwritten.framework.app.asset_path";
+
+    /**
+     * 容器
+     */
+    String APP_BEAN_INIT_THREADS = "handwritten.framework.app.bean_init_threads";
+    String APP_SNAPSHOT_DIR = "handwritten.framework.app.snapshot_dir";
+
+    /**
+     * 流式响应
+     */
+    String APP_STREAM_FLUSH_ROWS = "handwritten.framework.app.stream_flush_rows";
+    String APP_STREAM_FLUSH_INTERVAL = "handwritten.framework.app.stream_flush_interval";
+
+    /**
+     * 管理接口
+     */
+    String APP_SQL_STATS_PATH = "handwritten.framework.app.sql_stats_path";
+    String APP_SQL_STATS_TOKEN = "handwritten.framework.app.sql_stats_token";
+
+    /**
+     * 请求截止时间
+     */
+    String APP_REQUEST_TIMEOUT = "handwritten.framework.app.request_timeout";
+    String APP_DEADLINE_HEADER = "handwritten.framework.app.deadline_header";
 }
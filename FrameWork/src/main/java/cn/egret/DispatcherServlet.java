@@ -6,12 +6,17 @@ import cn.egret.bean.Data;
 import cn.egret.bean.Handler;
 import cn.egret.bean.Param;
 import cn.egret.bean.View;
-import cn.egret.helper.BeanHelper;
+import cn.egret.annotation.RequestMapping;
 import cn.egret.helper.ConfigHelper;
-import cn.egret.helper.ControllerHelper;
+import cn.egret.helper.DatabaseHelper;
+import cn.egret.helper.DeadlineHelper;
 import cn.egret.helper.RequestHelper;
+import cn.egret.metrics.SqlStatistics;
 import cn.egret.util.ReflectionUtil;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -24,7 +29,14 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * 请求转发器
@@ -59,10 +71,26 @@ import java.util.Map;
 @WebServlet(urlPatterns = "/*", loadOnStartup = 0)
 public class DispatcherServlet extends HttpServlet {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DispatcherServlet.class);
+
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private static final int DEFAULT_SQL_STATS_TOP = 20;
+
+    private static final int MAX_SQL_STATS_TOP = 1000;
+
+    private static final String SQL_STATS_TOKEN_HEADER = "X-Sql-Stats-Token";
+
+    /**
+     * 应用上下文
+     */
+    private ApplicationContext applicationContext;
+
     @Override
     public void init(ServletConfig servletConfig) {
         //初始化相关的helper类
         HelperLoader.init();
+        applicationContext = HelperLoader.getApplicationContext();
 
         //获取ServletContext对象, 用于注册Servlet
         ServletContext servletContext = servletConfig.getServletContext();
@@ -71,6 +99,14 @@ public class DispatcherServlet extends HttpServlet {
         registerServlet(servletContext);
     }
 
+    /**
+     * 应用关闭时写入延迟写入缓冲区中的更新
+     */
+    @Override
+    public void destroy() {
+        DatabaseHelper.flushWriteBehind();
+    }
+
     /**
      * DefaultServlet和JspServlet都是由Web容器创建
      * org.apache.catalina.servlets.DefaultServlet
@@ -109,39 +145,105 @@ public class DispatcherServlet extends HttpServlet {
             requestPath = "/" + splits[2];
         }
 
+        //SQL 统计管理接口, 返回总耗时最多的 top 条 SQL
+        if ("GET".equals(requestMethod) && requestPath.equals(ConfigHelper.getAppSqlStatsPath())) {
+            if (!isSqlStatsAllowed(request)) {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            int top = NumberUtils.toInt(request.getParameter("top"), DEFAULT_SQL_STATS_TOP);
+            top = Math.max(1, Math.min(top, MAX_SQL_STATS_TOP));
+            handleDataResult(new Data(SqlStatistics.getTop(top)), request, response);
+            return;
+        }
+
         //根据请求获取处理器(这里类似于SpringMVC中的映射处理器)
-        Handler handler = ControllerHelper.getHandler(requestMethod, requestPath);
+        Handler handler = applicationContext.getHandler(requestMethod, requestPath);
         if (handler != null) {
-            // 获取controller类
-            Class<?> controllerClass = handler.getControllerClass();
-            // 从spring容器中获取been
-            Object controllerBean = BeanHelper.getBean(controllerClass);
-
-            //初始化参数
-            Param param = RequestHelper.createParam(request);
-
-            //调用与请求对应的方法(这里类似于SpringMVC中的处理器适配器)
-            Object result;
-            // 获取控制器方法
-            Method actionMethod = handler.getControllerMethod();
-            if (param == null || param.isEmpty()) {
-                // http请求没有携带参数
-                result = ReflectionUtil.invokeMethod(controllerBean, actionMethod);
-            } else {
-                // http请求有携带参数
-                // Controller方法的参数都封装到Param类中了
-                result = ReflectionUtil.invokeMethod(controllerBean, actionMethod, param);
+            //开始请求作用域, 请求作用域的 bean 在本次请求内共用一个实例
+            applicationContext.beginRequest();
+            //请求截止时间, 数据库语句的查询超时不超过剩余时间
+            long timeout = getRequestTimeout(handler, request);
+            if (timeout > 0) {
+                DeadlineHelper.setTimeout(timeout);
             }
+            try {
+                // 获取controller类
+                Class<?> controllerClass = handler.getControllerClass();
+                // 从spring容器中获取been
+                Object controllerBean = applicationContext.getBean(controllerClass);
 
-            //跳转页面或返回json数据(这里类似于SpringMVC中的视图解析器)
-            if (result instanceof View) {
-                handleViewResult((View) result, request, response);
-            } else if (result instanceof Data) {
-                handleDataResult((Data) result, response);
+                //初始化参数
+                Param param = RequestHelper.createParam(request);
+
+                //调用与请求对应的方法(这里类似于SpringMVC中的处理器适配器)
+                Object result;
+                // 获取控制器方法
+                Method actionMethod = handler.getControllerMethod();
+                if (param == null || param.isEmpty()) {
+                    // http请求没有携带参数
+                    result = ReflectionUtil.invokeMethod(controllerBean, actionMethod);
+                } else {
+                    // http请求有携带参数
+                    // Controller方法的参数都封装到Param类中了
+                    result = ReflectionUtil.invokeMethod(controllerBean, actionMethod, param);
+                }
+
+                //跳转页面或返回json数据(这里类似于SpringMVC中的视图解析器)
+                if (result instanceof View) {
+                    handleViewResult((View) result, request, response);
+                } else if (result instanceof Data) {
+                    handleDataResult((Data) result, request, response);
+                } else if (result instanceof Stream || result instanceof Iterator) {
+                    handleDataResult(new Data(result), request, response);
+                }
+            } catch (RuntimeException e) {
+                if (!DeadlineHelper.isDeadlineExceeded(e)) {
+                    throw e;
+                }
+                LOGGER.warn("request deadline exceeded: {} {}", requestMethod, requestPath);
+                if (!response.isCommitted()) {
+                    response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT, "request deadline exceeded");
+                }
+            } finally {
+                DeadlineHelper.clear();
+                applicationContext.endRequest();
+                //归还请求内绑定到线程上的数据库连接
+                DatabaseHelper.closeConnection();
             }
         }
     }
 
+    /**
+     * 请求超时毫秒数: @RequestMapping(timeout), 没有设置时使用配置的默认值; 请求头中的超时更短时使用请求头的
+     */
+    private static long getRequestTimeout(Handler handler, HttpServletRequest request) {
+        RequestMapping requestMapping = handler.getControllerMethod().getAnnotation(RequestMapping.class);
+        long timeout = requestMapping != null && requestMapping.timeout() > 0 ? requestMapping.timeout() : ConfigHelper.getAppRequestTimeout();
+        long headerTimeout = NumberUtils.toLong(request.getHeader(ConfigHelper.getAppDeadlineHeader()), 0);
+        if (headerTimeout > 0 && (timeout <= 0 || headerTimeout < timeout)) {
+            timeout = headerTimeout;
+        }
+        return timeout;
+    }
+
+    /**
+     * SQL 统计管理接口的访问控制: 配置了令牌时请求头 X-Sql-Stats-Token 必须与令牌一致, 否则只允许本机访问
+     */
+    private static boolean isSqlStatsAllowed(HttpServletRequest request) {
+        String token = ConfigHelper.getAppSqlStatsToken();
+        if (StringUtils.isNotEmpty(token)) {
+            String requestToken = request.getHeader(SQL_STATS_TOKEN_HEADER);
+            return requestToken != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    requestToken.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
     /**
      * 跳转页面
      */
@@ -164,10 +266,26 @@ public class DispatcherServlet extends HttpServlet {
 
     /**
      * 返回JSON数据
+     * 模型为 Stream 或 Iterator 时, 边遍历边写出
      */
-    private void handleDataResult(Data data, HttpServletResponse response) throws IOException {
+    private void handleDataResult(Data data, HttpServletRequest request, HttpServletResponse response) throws IOException {
         Object model = data.getModel();
-        if (model != null) {
+        if (model instanceof Stream) {
+            Stream<?> stream = (Stream<?>) model;
+            try {
+                handleStreamResult(stream.iterator(), request, response);
+            } finally {
+                stream.close();
+            }
+        } else if (model instanceof Iterator) {
+            try {
+                handleStreamResult((Iterator<?>) model, request, response);
+            } finally {
+                if (model instanceof AutoCloseable) {
+                    closeQuietly((AutoCloseable) model);
+                }
+            }
+        } else if (model != null) {
             response.setContentType("application/json");
             response.setCharacterEncoding("UTF-8");
             PrintWriter writer = response.getWriter();
@@ -177,4 +295,66 @@ public class DispatcherServlet extends HttpServlet {
             writer.close();
         }
     }
+
+    /**
+     * 流式返回JSON数据
+     * Accept 包含 application/x-ndjson 时每行一个 JSON 对象, 否则输出一个 JSON 数组.
+     * 不设置 Content-Length, 每写 stream_flush_rows 个元素或距离上次刷新超过 stream_flush_interval 毫秒时刷新一次,
+     * Web 容器以 chunked 编码输出, 第一个元素写出后客户端就能收到响应.
+     * 已经开始输出后出现异常时无法再返回错误状态码, 只记录日志, 不写结束的 ], 客户端得到的是不完整的 JSON.
+     */
+    private void handleStreamResult(Iterator<?> iterator, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String accept = request.getHeader("Accept");
+        boolean ndjson = accept != null && (accept.contains(NDJSON_CONTENT_TYPE) || accept.contains("application/ndjson"));
+        response.setContentType(ndjson ? NDJSON_CONTENT_TYPE : "application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        int flushRows = Math.max(ConfigHelper.getAppStreamFlushRows(), 1);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ConfigHelper.getAppStreamFlushInterval());
+        PrintWriter writer = response.getWriter();
+        if (!ndjson) {
+            writer.write('[');
+        }
+        int unflushedRows = 0;
+        long lastFlushNanos = System.nanoTime();
+        long rows = 0;
+        try {
+            while (iterator.hasNext()) {
+                String json = JSON.toJSONString(iterator.next());
+                if (!ndjson && rows > 0) {
+                    writer.write(',');
+                }
+                writer.write(json);
+                if (ndjson) {
+                    writer.write('\n');
+                }
+                //第一个元素立即刷新, 之后按行数或时间间隔刷新
+                if (rows++ == 0 || ++unflushedRows >= flushRows || System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+                    writer.flush();
+                    unflushedRows = 0;
+                    lastFlushNanos = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!response.isCommitted()) {
+                throw e;
+            }
+            LOGGER.error(String.format("stream result failure after %d rows: %s", rows, request.getPathInfo()), e);
+            writer.flush();
+            return;
+        }
+        if (!ndjson) {
+            writer.write(']');
+        }
+        writer.flush();
+        writer.close();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOGGER.error("close stream result failure", e);
+        }
+    }
 }
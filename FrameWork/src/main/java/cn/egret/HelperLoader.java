@@ -1,27 +1,64 @@
 package cn.egret;
 
-import cn.egret.helper.*;
-import cn.egret.util.ClassUtil;
+import cn.egret.metrics.StartupTimeline;
 
 /**
  * 加载相应的 Helper 类
+ * 启动默认的应用上下文, 各个 Helper 类的静态方法都委托给它. 需要互相隔离的多个容器时, 直接创建 ApplicationContext 即可.
  * @author egret
  */
 public final class HelperLoader {
 
     /**
-     * 加载这五个类, 目的是为了执行类里的静态代码块
+     * 默认的应用上下文, 使用配置文件中的基础包名
+     */
+    private static volatile ApplicationContext applicationContext;
+
+    /**
+     * 启动默认的应用上下文, 重复调用时不会重复启动
      */
     public static void init() {
-        Class<?>[] classList = {
-            ClassHelper.class,
-            BeanHelper.class,
-            AopHelper.class,
-            IocHelper.class,
-            ControllerHelper.class
-        };
-        for (Class<?> cls : classList) {
-            ClassUtil.loadClass(cls.getName());
+        getApplicationContext();
+    }
+
+    /**
+     * 正在启动的默认应用上下文
+     */
+    private static volatile ApplicationContext refreshingContext;
+
+    /**
+     * 获取默认的应用上下文, 第一次获取时启动
+     * 启动期间（如 bean 构造器中）在启动它的线程或并行初始化 bean 的线程里调用时, 返回正在启动的上下文, 不会重复启动或死锁;
+     * 这时只能获取已经创建的 bean
+     */
+    public static ApplicationContext getApplicationContext() {
+        ApplicationContext context = applicationContext;
+        if (context != null) {
+            return context;
+        }
+        ApplicationContext refreshing = ApplicationContext.getRefreshingContext();
+        if (refreshing != null && refreshing == refreshingContext) {
+            return refreshing;
+        }
+        synchronized (HelperLoader.class) {
+            if (applicationContext == null) {
+                ApplicationContext newContext = new ApplicationContext();
+                refreshingContext = newContext;
+                try {
+                    newContext.refresh();
+                } finally {
+                    refreshingContext = null;
+                }
+                applicationContext = newContext;
+            }
+            return applicationContext;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取默认应用上下文的启动时间线
+     */
+    public static StartupTimeline getStartupTimeline() {
+        return getApplicationContext().getStartupTimeline();
+    }
+}
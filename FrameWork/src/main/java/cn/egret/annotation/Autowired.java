@@ -7,9 +7,10 @@ import java.lang.annotation.Target;
 
 /**
  * 依赖注入注解
+ * 可以标注在属性上, 也可以标注在构造器上（构造器注入, 依赖可以声明为 final 属性）, 一个类最多有一个带该注解的构造器.
  * @author egret
  */
-@Target(ElementType.FIELD)
+@Target({ElementType.FIELD, ElementType.CONSTRUCTOR})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Autowired {
 }
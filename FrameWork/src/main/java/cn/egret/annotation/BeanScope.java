@@ -0,0 +1,22 @@
+package cn.egret.annotation;
+
+
+/**
+ * Bean 作用域枚举
+ * @author egret
+ */
+
+public enum BeanScope {
+    /**
+     * 单例, 整个应用上下文只有一个实例
+     */
+    SINGLETON,
+    /**
+     * 原型, 每次获取或注入时都创建一个新实例
+     */
+    PROTOTYPE,
+    /**
+     * 请求, 每个 HTTP 请求一个实例, 只能在 DispatcherServlet 处理请求期间获取
+     */
+    REQUEST
+}
@@ -0,0 +1,31 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实体缓存注解
+ * 带有该注解的实体类按主键查询时使用实体缓存, 见 EntityCache.
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    /**
+     * 最多缓存的实体数量
+     */
+    int maxSize() default 1000;
+
+    /**
+     * 缓存过期秒数, 小于等于 0 时不过期
+     */
+    int expireSeconds() default 0;
+
+    /**
+     * 超过最大数量时的淘汰策略
+     */
+    Eviction eviction() default Eviction.LRU;
+}
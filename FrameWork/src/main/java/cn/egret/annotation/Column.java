@@ -0,0 +1,21 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实体属性注解, 指定属性对应的列名（默认为属性名）
+ * @author egret
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Column {
+
+    /**
+     * 列名
+     * @return
+     */
+    String value();
+}
@@ -0,0 +1,16 @@
+package cn.egret.annotation;
+
+/**
+ * 缓存淘汰策略枚举
+ * @author egret
+ */
+public enum Eviction {
+    /**
+     * 淘汰最久未访问的
+     */
+    LRU,
+    /**
+     * 淘汰最早放入的
+     */
+    FIFO
+}
@@ -0,0 +1,17 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 延迟加载注解
+ * 带有该注解的 bean 不在启动时创建, 而是在第一次 BeanHelper.getBean 时才创建.
+ * 如果非延迟的 bean 通过 @Autowired 依赖了它, 它仍会在启动时创建.
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Lazy {
+}
@@ -24,4 +24,11 @@ public @interface RequestMapping {
      * @return
      */
     RequestMethod method() default RequestMethod.GET;
+
+    /**
+     * 请求超时毫秒数, 0 表示使用配置 handwritten.framework.app.request_timeout
+     * 超时后不再执行数据库语句, 请求返回 504
+     * @return
+     */
+    int timeout() default 0;
 }
@@ -0,0 +1,22 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bean 作用域注解
+ * 没有该注解的 bean 为单例.
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Scope {
+
+    /**
+     * 作用域
+     * @return
+     */
+    BeanScope value() default BeanScope.SINGLETON;
+}
@@ -0,0 +1,18 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 分片注解
+ * 配置了 jdbc.shard.urls 时, 带有该注解的实体类按主键分布在多个分片中, 见 ShardRouter.
+ * 按主键的查询, 插入, 更新和删除只访问主键所在的分片; 其它查询并行访问所有分片并合并结果.
+ * 分片上的语句自动提交, 不加入当前线程的事务: 事务中插入, 更新或删除分片实体时抛出 IllegalStateException.
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Sharded {
+}
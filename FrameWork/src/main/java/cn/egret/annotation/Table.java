@@ -0,0 +1,21 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实体类注解, 指定实体对应的表名（默认为类名）
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Table {
+
+    /**
+     * 表名
+     * @return
+     */
+    String value();
+}
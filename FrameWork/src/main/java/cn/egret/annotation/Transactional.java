@@ -12,4 +12,15 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Transactional {
+
+    /**
+     * 是否只读事务, 配置了从库时只读事务使用从库
+     */
+    boolean readOnly() default false;
+
+    /**
+     * 是否组提交: 与其它线程同时执行的小事务合并为一个数据库事务提交, 失败时只回滚本方法的修改, 见 GroupCommitter
+     * 只读事务不使用组提交
+     */
+    boolean groupCommit() default false;
 }
\ No newline at end of file
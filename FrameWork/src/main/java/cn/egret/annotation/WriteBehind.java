@@ -0,0 +1,32 @@
+package cn.egret.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 延迟写入注解
+ * 带有该注解的实体类在事务外调用 updateEntity 时, 更新先合并到内存缓冲区, 再批量写入数据库, 见 WriteBehindBuffer.
+ * 适合同一行被频繁更新（计数器, 最后访问时间等）并且可以容忍短暂延迟和进程崩溃时丢失少量更新的实体.
+ * @author egret
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WriteBehind {
+
+    /**
+     * 缓冲的实体数量达到该值时写入
+     */
+    int flushSize() default 500;
+
+    /**
+     * 最多缓冲的实体数量（包括正在写入的）, 达到时新实体的更新由更新的线程同步写入一次, 仍然没有空间时抛出 IllegalStateException
+     */
+    int maxSize() default 10000;
+
+    /**
+     * 定时写入的间隔毫秒数
+     */
+    long flushInterval() default 1000;
+}
@@ -0,0 +1,144 @@
+package cn.egret.bean;
+
+import cn.egret.annotation.BeanScope;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BeanDefinition类封装了一个bean的元数据: bean的Class对象, 作用域, 是否延迟加载, 注入构造器以及所有 @Autowired 注入点.
+ * @author egret
+ */
+public class BeanDefinition {
+
+    /**
+     * bean 类
+     */
+    private final Class<?> beanClass;
+
+    /**
+     * 是否延迟加载
+     */
+    private final boolean lazy;
+
+    /**
+     * 作用域
+     */
+    private final BeanScope scope;
+
+    /**
+     * 带 @Autowired 注解的构造器, 没有时为 null（使用无参构造器）
+     */
+    private Constructor<?> constructor;
+
+    /**
+     * 构造器参数依赖的 bean 类
+     */
+    private final List<Class<?>> constructorDependencyList = new ArrayList<>();
+
+    /**
+     * 注入点, 属性 - 依赖的 bean 类
+     */
+    private final Map<Field, Class<?>> injectFieldMap = new LinkedHashMap<>();
+
+    /**
+     * 注入器, 第一次使用时生成
+     */
+    private volatile BeanInjector injector;
+
+    public BeanDefinition(Class<?> beanClass, boolean lazy) {
+        this(beanClass, lazy, BeanScope.SINGLETON);
+    }
+
+    public BeanDefinition(Class<?> beanClass, boolean lazy, BeanScope scope) {
+        this.beanClass = beanClass;
+        this.lazy = lazy;
+        this.scope = scope;
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public BeanScope getScope() {
+        return scope;
+    }
+
+    /**
+     * 是否为单例
+     */
+    public boolean isSingleton() {
+        return scope == BeanScope.SINGLETON;
+    }
+
+    public Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    public List<Class<?>> getConstructorDependencyList() {
+        return constructorDependencyList;
+    }
+
+    /**
+     * 设置注入构造器, 以及每个参数依赖的 bean 类
+     */
+    public void setConstructor(Constructor<?> constructor, List<Class<?>> dependencyList) {
+        this.constructor = constructor;
+        constructorDependencyList.clear();
+        constructorDependencyList.addAll(dependencyList);
+    }
+
+    public Map<Field, Class<?>> getInjectFieldMap() {
+        return injectFieldMap;
+    }
+
+    /**
+     * 添加注入点
+     */
+    public void addInjectField(Field field, Class<?> dependencyClass) {
+        injectFieldMap.put(field, dependencyClass);
+    }
+
+    /**
+     * 获取依赖的 bean 类（构造器参数和属性）
+     */
+    public Collection<Class<?>> getDependencyClasses() {
+        if (constructorDependencyList.isEmpty()) {
+            return injectFieldMap.values();
+        }
+        List<Class<?>> dependencyList = new ArrayList<>(constructorDependencyList);
+        dependencyList.addAll(injectFieldMap.values());
+        return Collections.unmodifiableList(dependencyList);
+    }
+
+    /**
+     * 获取注入器, 每个 bean 定义只生成一次
+     */
+    public BeanInjector getInjector() {
+        BeanInjector result = injector;
+        if (result == null) {
+            synchronized (this) {
+                if (injector == null) {
+                    injector = BeanInjector.create(this);
+                }
+                result = injector;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return beanClass.getName();
+    }
+}
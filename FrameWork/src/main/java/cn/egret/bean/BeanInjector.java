@@ -0,0 +1,163 @@
+package cn.egret.bean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bean 注入器
+ * 根据 bean 定义生成一次, 之后每次创建 bean 和注入属性都直接调用 MethodHandle,
+ * 不再在每个注入点上调用 setAccessible 和 Field.set. 原型和请求作用域的 bean 在运行期间会被反复创建, 这一点尤其重要.
+ *
+ * 构造器句柄被适配为 (Object[])Object, 属性句柄被适配为 (Object, Object)void, 都可以用 invokeExact 调用.
+ * @author egret
+ */
+public final class BeanInjector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanInjector.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final Class<?> beanClass;
+
+    /**
+     * 构造器句柄
+     */
+    private final MethodHandle constructorHandle;
+
+    /**
+     * 构造器参数类型
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * 构造器参数依赖的 bean 类
+     */
+    private final Class<?>[] constructorDependencies;
+
+    /**
+     * 属性句柄
+     */
+    private final MethodHandle[] setterHandles;
+
+    /**
+     * 属性依赖的 bean 类
+     */
+    private final Class<?>[] fieldDependencies;
+
+    private BeanInjector(Class<?> beanClass, MethodHandle constructorHandle, Class<?>[] parameterTypes, Class<?>[] constructorDependencies,
+                         MethodHandle[] setterHandles, Class<?>[] fieldDependencies) {
+        this.beanClass = beanClass;
+        this.constructorHandle = constructorHandle;
+        this.parameterTypes = parameterTypes;
+        this.constructorDependencies = constructorDependencies;
+        this.setterHandles = setterHandles;
+        this.fieldDependencies = fieldDependencies;
+    }
+
+    /**
+     * 根据 bean 定义生成注入器
+     */
+    public static BeanInjector create(BeanDefinition beanDefinition) {
+        Class<?> beanClass = beanDefinition.getBeanClass();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<?> constructor = beanDefinition.getConstructor();
+            if (constructor == null) {
+                constructor = beanClass.getDeclaredConstructor();
+            }
+            constructor.setAccessible(true);
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            MethodHandle constructorHandle = lookup.unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(CONSTRUCTOR_TYPE);
+            List<Class<?>> constructorDependencyList = beanDefinition.getConstructorDependencyList();
+
+            Map<Field, Class<?>> injectFieldMap = beanDefinition.getInjectFieldMap();
+            MethodHandle[] setterHandles = new MethodHandle[injectFieldMap.size()];
+            Class<?>[] fieldDependencies = new Class<?>[injectFieldMap.size()];
+            int i = 0;
+            for (Map.Entry<Field, Class<?>> fieldEntry : injectFieldMap.entrySet()) {
+                Field field = fieldEntry.getKey();
+                // 去除私有权限, 只在生成时调用一次
+                field.setAccessible(true);
+                setterHandles[i] = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                fieldDependencies[i] = fieldEntry.getValue();
+                i++;
+            }
+            return new BeanInjector(beanClass, constructorHandle, parameterTypes.length == 0 ? EMPTY_TYPES : parameterTypes,
+                    constructorDependencyList.toArray(new Class<?>[0]), setterHandles, fieldDependencies);
+        } catch (Exception e) {
+            LOGGER.error("create bean injector failure: " + beanClass.getName(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 获取构造器参数类型, 用于创建代理对象
+     */
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * 查找构造器参数, 找不到依赖时抛出异常
+     */
+    public Object[] resolveArguments(Function<Class<?>, Object> beanLookup) {
+        if (constructorDependencies.length == 0) {
+            return EMPTY_ARGS;
+        }
+        Object[] args = new Object[constructorDependencies.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = beanLookup.apply(constructorDependencies[i]);
+            if (args[i] == null) {
+                throw new RuntimeException("can not resolve constructor dependency " + constructorDependencies[i].getName()
+                        + " of bean " + beanClass.getName());
+            }
+        }
+        return args;
+    }
+
+    /**
+     * 调用构造器创建实例
+     */
+    public Object newInstance(Object[] args) {
+        try {
+            return (Object) constructorHandle.invokeExact(args);
+        } catch (Throwable e) {
+            LOGGER.error("new instance failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 为 bean 实例的所有 @Autowired 属性注入依赖, 找不到依赖的属性保持不变
+     */
+    public void injectFields(Object bean, Function<Class<?>, Object> beanLookup) {
+        for (int i = 0; i < setterHandles.length; i++) {
+            Object dependency = beanLookup.apply(fieldDependencies[i]);
+            if (dependency != null) {
+                try {
+                    setterHandles[i].invokeExact(bean, dependency);
+                } catch (Throwable e) {
+                    LOGGER.error("set field failure", e);
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package cn.egret.bean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ContainerSnapshot类封装了启动快照, 即 Helper 类在启动时计算出的所有容器元数据:
+ * 类集合, bean 类, bean 的注入计划, 切面-目标类映射, 以及 "请求-处理器" 映射.
+ * 所有的类, 属性和方法都以名称保存, 由 SnapshotHelper 负责读写.
+ * @author egret
+ */
+public class ContainerSnapshot {
+
+    /**
+     * 类路径的哈希值, 类路径不变时快照才可以复用
+     */
+    private final String classpathHash;
+
+    /**
+     * 基础包名下的所有类
+     */
+    private final List<String> classNameList = new ArrayList<>();
+
+    /**
+     * Service 类
+     */
+    private final List<String> serviceClassNameList = new ArrayList<>();
+
+    /**
+     * Controller 类
+     */
+    private final List<String> controllerClassNameList = new ArrayList<>();
+
+    /**
+     * bean 定义（注入计划）
+     */
+    private final List<BeanRecord> beanRecordList = new ArrayList<>();
+
+    /**
+     * 切面类 - 目标类列表
+     */
+    private final Map<String, List<String>> aspectMap = new LinkedHashMap<>();
+
+    /**
+     * 路由表
+     */
+    private final List<RouteRecord> routeRecordList = new ArrayList<>();
+
+    public ContainerSnapshot(String classpathHash) {
+        this.classpathHash = classpathHash;
+    }
+
+    public String getClasspathHash() {
+        return classpathHash;
+    }
+
+    public List<String> getClassNameList() {
+        return classNameList;
+    }
+
+    public List<String> getServiceClassNameList() {
+        return serviceClassNameList;
+    }
+
+    public List<String> getControllerClassNameList() {
+        return controllerClassNameList;
+    }
+
+    public List<BeanRecord> getBeanRecordList() {
+        return beanRecordList;
+    }
+
+    public Map<String, List<String>> getAspectMap() {
+        return aspectMap;
+    }
+
+    public List<RouteRecord> getRouteRecordList() {
+        return routeRecordList;
+    }
+
+    /**
+     * 一个 bean 的定义: bean 类, 是否延迟加载, 作用域, 注入构造器（参数类型 - 依赖类）, 注入点（属性名 - 依赖类）
+     */
+    public static class BeanRecord {
+
+        private final String beanClassName;
+
+        private final boolean lazy;
+
+        private final String scope;
+
+        /**
+         * 注入构造器的参数类型, 没有注入构造器时为空
+         */
+        private final List<String> constructorParameterTypeNameList = new ArrayList<>();
+
+        private final List<String> constructorDependencyNameList = new ArrayList<>();
+
+        private final Map<String, String> injectFieldMap = new LinkedHashMap<>();
+
+        public BeanRecord(String beanClassName, boolean lazy, String scope) {
+            this.beanClassName = beanClassName;
+            this.lazy = lazy;
+            this.scope = scope;
+        }
+
+        public String getBeanClassName() {
+            return beanClassName;
+        }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public List<String> getConstructorParameterTypeNameList() {
+            return constructorParameterTypeNameList;
+        }
+
+        public List<String> getConstructorDependencyNameList() {
+            return constructorDependencyNameList;
+        }
+
+        public Map<String, String> getInjectFieldMap() {
+            return injectFieldMap;
+        }
+    }
+
+    /**
+     * 一条路由: 请求方法, 请求路径, Controller 类, Controller 方法名及参数类型
+     */
+    public static class RouteRecord {
+
+        private final String requestMethod;
+
+        private final String requestPath;
+
+        private final String controllerClassName;
+
+        private final String methodName;
+
+        private final List<String> parameterTypeNameList;
+
+        public RouteRecord(String requestMethod, String requestPath, String controllerClassName, String methodName, List<String> parameterTypeNameList) {
+            this.requestMethod = requestMethod;
+            this.requestPath = requestPath;
+            this.controllerClassName = controllerClassName;
+            this.methodName = methodName;
+            this.parameterTypeNameList = parameterTypeNameList;
+        }
+
+        public String getRequestMethod() {
+            return requestMethod;
+        }
+
+        public String getRequestPath() {
+            return requestPath;
+        }
+
+        public String getControllerClassName() {
+            return controllerClassName;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public List<String> getParameterTypeNameList() {
+            return parameterTypeNameList;
+        }
+    }
+}
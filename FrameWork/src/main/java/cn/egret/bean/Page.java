@@ -0,0 +1,37 @@
+package cn.egret.bean;
+
+import java.util.List;
+
+/**
+ * Page类封装分页查询的一页结果和取下一页用的令牌.
+ * @author egret
+ */
+public class Page<T> {
+
+    /**
+     * 本页数据
+     */
+    private List<T> list;
+
+    /**
+     * 下一页令牌, 没有下一页时为 null
+     */
+    private String nextToken;
+
+    public Page(List<T> list, String nextToken) {
+        this.list = list;
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getList() {
+        return list;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,263 @@
+package cn.egret.cache;
+
+import cn.egret.annotation.Eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 有界缓存区域
+ * 按键的哈希值分为多个段, 每段是一个按访问顺序（LRU）或插入顺序（FIFO）排列的 LinkedHashMap, 只在段内加锁.
+ * 每个条目有一个权重（默认为 1, 即按数量限制, 也可以是估算的字节数）, 段内总权重超过上限时淘汰最前面的条目.
+ * @author egret
+ */
+public class CacheRegion<K, V> {
+
+    private static final int MAX_SEGMENT_COUNT = 16;
+
+    private final String name;
+
+    private final Segment<K, V>[] segments;
+
+    private final long expireNanos;
+
+    private final long maxWeight;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder putCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * 失效版本, 每次失效时加一, 见 getVersion()
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public CacheRegion(String name, long maxWeight, long expireMillis, Eviction eviction) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.expireNanos = TimeUnit.MILLISECONDS.toNanos(expireMillis);
+        int segmentCount = maxWeight >= MAX_SEGMENT_COUNT * 4 ? MAX_SEGMENT_COUNT : 1;
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(Math.max(maxWeight / segmentCount, 1), eviction == Eviction.LRU);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取缓存值, 不存在或已过期时返回 null
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.map.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, 1);
+    }
+
+    /**
+     * 放入缓存值, 权重超过单段上限的值不缓存
+     */
+    public void put(K key, V value, int weight) {
+        Segment<K, V> segment = segmentFor(key);
+        if (weight > segment.maxWeight) {
+            return;
+        }
+        long expireAt = expireNanos > 0 ? System.nanoTime() + expireNanos : 0;
+        int evicted;
+        synchronized (segment) {
+            evicted = segment.put(key, new Entry<>(value, weight, expireAt));
+        }
+        putCount.increment();
+        evictionCount.add(evicted);
+    }
+
+    /**
+     * 获取当前失效版本
+     * 从数据库加载之前获取版本, 加载之后通过 putIfVersion 放入: 加载期间发生过失效时不放入, 避免把旧值放回缓存.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 失效版本未变化时放入缓存值
+     */
+    public void putIfVersion(K key, V value, int weight, long expectedVersion) {
+        if (version.get() == expectedVersion) {
+            put(key, value, weight);
+            //放入期间发生了失效, 删除刚放入的值
+            if (version.get() != expectedVersion) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * 使一个缓存值失效
+     */
+    public void invalidate(K key) {
+        version.incrementAndGet();
+        invalidationCount.increment();
+        remove(key);
+    }
+
+    /**
+     * 使满足条件的缓存值失效
+     */
+    public void invalidateIf(Predicate<? super V> predicate) {
+        version.incrementAndGet();
+        invalidationCount.increment();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Map.Entry<K, Entry<V>>> iterator = segment.map.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> mapEntry = iterator.next();
+                    if (predicate.test(mapEntry.getValue().value)) {
+                        segment.weight -= mapEntry.getValue().weight;
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        invalidateIf(value -> true);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public CacheStats getStats() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return new CacheStats(name, size(), weight, maxWeight, hitCount.sum(), missCount.sum(), putCount.sum(),
+                evictionCount.sum(), invalidationCount.sum());
+    }
+
+    private void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * 缓存段, 只能在持有段的锁时访问
+     */
+    private static final class Segment<K, V> {
+
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        private final long maxWeight;
+
+        private long weight;
+
+        Segment(long maxWeight, boolean accessOrder) {
+            this.maxWeight = maxWeight;
+            this.map = new LinkedHashMap<>(16, 0.75f, accessOrder);
+        }
+
+        /**
+         * 放入条目, 返回淘汰的条目数量
+         */
+        int put(K key, Entry<V> entry) {
+            Entry<V> previous = map.put(key, entry);
+            weight += entry.weight - (previous != null ? previous.weight : 0);
+            int evicted = 0;
+            Iterator<Entry<V>> iterator = map.values().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                Entry<V> eldest = iterator.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                weight -= eldest.weight;
+                iterator.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        void remove(K key) {
+            Entry<V> entry = map.remove(key);
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final int weight;
+
+        /**
+         * 过期时间, 0 表示不过期
+         */
+        private final long expireAt;
+
+        Entry(V value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt != 0 && now - expireAt > 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.egret.cache;
+
+/**
+ * 缓存统计快照
+ * @author egret
+ */
+public class CacheStats {
+
+    private final String name;
+
+    private final int size;
+
+    private final long weight;
+
+    private final long maxWeight;
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long putCount;
+
+    private final long evictionCount;
+
+    private final long invalidationCount;
+
+    CacheStats(String name, int size, long weight, long maxWeight, long hitCount, long missCount, long putCount,
+               long evictionCount, long invalidationCount) {
+        this.name = name;
+        this.size = size;
+        this.weight = weight;
+        this.maxWeight = maxWeight;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 当前总权重（条目数量或估算的字节数）
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 命中率, 没有访问时为 0
+     */
+    public double getHitRatio() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[size=%d, weight=%d/%d, hits=%d, misses=%d, hitRatio=%.3f, puts=%d, evictions=%d, invalidations=%d]",
+                name, size, weight, maxWeight, hitCount, missCount, getHitRatio(), putCount, evictionCount, invalidationCount);
+    }
+}
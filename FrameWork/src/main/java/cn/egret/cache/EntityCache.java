@@ -0,0 +1,203 @@
+package cn.egret.cache;
+
+import cn.egret.annotation.Cacheable;
+import cn.egret.jdbc.EntityMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 实体缓存（二级缓存）
+ * 以 (实体类, 主键) 为键缓存带有 @Cacheable 注解的实体, 每个实体类一个缓存区域, 按注解配置数量上限, 过期时间和淘汰策略.
+ * 缓存中保存实体的副本, 取出时也返回副本, 调用方修改实体不会影响缓存.
+ *
+ * 失效与事务: 按主键更新或删除时立即使缓存失效; 在事务中时, 还会记录失效的键, 事务提交或回滚后再失效一次,
+ * 事务期间其它线程读到的旧值不会在提交后留在缓存里. 事务中不放入缓存, 事务中修改过的实体也不从缓存读取,
+ * 所以未提交（之后可能回滚）的数据不会进入缓存.
+ * @author egret
+ */
+public final class EntityCache {
+
+    /**
+     * 实体类 - 缓存区域, 没有 @Cacheable 注解的实体类为 empty
+     */
+    private static final ConcurrentMap<Class<?>, Optional<CacheRegion<Object, Object>>> REGION_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 当前事务中失效的键: 实体类 - 主键
+     */
+    private static final ThreadLocal<Map<Class<?>, Set<Object>>> TRANSACTION_INVALIDATION_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 实体类是否使用实体缓存
+     */
+    public static boolean isCacheable(Class<?> entityClass) {
+        return getRegion(entityClass) != null;
+    }
+
+    /**
+     * 获取缓存的实体副本, 未缓存时返回 null
+     */
+    public static <T> T get(Class<T> entityClass, Object id) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        if (region == null) {
+            return null;
+        }
+        Object key = toKey(id);
+        Map<Class<?>, Set<Object>> invalidationMap = TRANSACTION_INVALIDATION_HOLDER.get();
+        if (invalidationMap != null) {
+            Set<Object> keySet = invalidationMap.get(entityClass);
+            if (keySet != null && keySet.contains(key)) {
+                return null;
+            }
+        }
+        T entity = entityClass.cast(region.get(key));
+        return entity != null ? EntityMeta.of(entityClass).copy(entity) : null;
+    }
+
+    /**
+     * 获取实体类缓存区域的失效版本, 从数据库加载实体之前调用
+     */
+    public static long getVersion(Class<?> entityClass) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        return region != null ? region.getVersion() : 0;
+    }
+
+    /**
+     * 放入从数据库加载的实体（保存副本）, 加载期间发生过失效或者在事务中时不放入
+     * @param version 加载之前的失效版本
+     * @param inTransaction 是否在事务中加载
+     */
+    public static <T> void put(Class<T> entityClass, Object id, T entity, long version, boolean inTransaction) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        if (region == null || entity == null || inTransaction) {
+            return;
+        }
+        region.putIfVersion(toKey(id), EntityMeta.of(entityClass).copy(entity), 1, version);
+    }
+
+    /**
+     * 使实体缓存失效
+     * @param inTransaction 是否在事务中修改, 是则在事务结束后再失效一次
+     */
+    public static void invalidate(Class<?> entityClass, Object id, boolean inTransaction) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        if (region == null) {
+            return;
+        }
+        Object key = toKey(id);
+        region.invalidate(key);
+        if (inTransaction) {
+            getInvalidationMap().computeIfAbsent(entityClass, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    /**
+     * 事务结束（提交或回滚）后调用, 再次使事务中修改过的实体失效
+     */
+    public static void afterCompletion() {
+        Map<Class<?>, Set<Object>> invalidationMap = TRANSACTION_INVALIDATION_HOLDER.get();
+        if (invalidationMap == null) {
+            return;
+        }
+        TRANSACTION_INVALIDATION_HOLDER.remove();
+        for (Map.Entry<Class<?>, Set<Object>> invalidationEntry : invalidationMap.entrySet()) {
+            CacheRegion<Object, Object> region = getRegion(invalidationEntry.getKey());
+            for (Object key : invalidationEntry.getValue()) {
+                region.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * 获取当前线程的事务失效记录（不存在时创建）, 用于在其它线程中继续执行同一个事务, 见 setTransactionState
+     */
+    public static Object getTransactionState() {
+        return getInvalidationMap();
+    }
+
+    /**
+     * 把事务失效记录绑定到当前线程, null 表示解除绑定
+     */
+    @SuppressWarnings("unchecked")
+    public static void setTransactionState(Object state) {
+        if (state == null) {
+            TRANSACTION_INVALIDATION_HOLDER.remove();
+        } else {
+            TRANSACTION_INVALIDATION_HOLDER.set((Map<Class<?>, Set<Object>>) state);
+        }
+    }
+
+    /**
+     * 清空实体类的缓存
+     */
+    public static void clear(Class<?> entityClass) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        if (region != null) {
+            region.clear();
+        }
+    }
+
+    /**
+     * 获取所有实体类缓存的统计
+     */
+    public static List<CacheStats> getStatsList() {
+        List<CacheStats> statsList = new ArrayList<>();
+        for (Optional<CacheRegion<Object, Object>> region : REGION_MAP.values()) {
+            region.ifPresent(r -> statsList.add(r.getStats()));
+        }
+        return statsList;
+    }
+
+    /**
+     * 获取实体类的缓存统计, 没有 @Cacheable 注解时返回 null
+     */
+    public static CacheStats getStats(Class<?> entityClass) {
+        CacheRegion<Object, Object> region = getRegion(entityClass);
+        return region != null ? region.getStats() : null;
+    }
+
+    /**
+     * 获取当前线程的事务失效记录, 不存在时创建; 同一个事务可能有多个线程（见 TransactionContext）, 所以使用并发集合
+     */
+    private static Map<Class<?>, Set<Object>> getInvalidationMap() {
+        Map<Class<?>, Set<Object>> invalidationMap = TRANSACTION_INVALIDATION_HOLDER.get();
+        if (invalidationMap == null) {
+            invalidationMap = new ConcurrentHashMap<>();
+            TRANSACTION_INVALIDATION_HOLDER.set(invalidationMap);
+        }
+        return invalidationMap;
+    }
+
+    private static CacheRegion<Object, Object> getRegion(Class<?> entityClass) {
+        Optional<CacheRegion<Object, Object>> region = REGION_MAP.get(entityClass);
+        if (region == null) {
+            region = REGION_MAP.computeIfAbsent(entityClass, EntityCache::createRegion);
+        }
+        return region.orElse(null);
+    }
+
+    private static Optional<CacheRegion<Object, Object>> createRegion(Class<?> entityClass) {
+        Cacheable cacheable = entityClass.getAnnotation(Cacheable.class);
+        if (cacheable == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new CacheRegion<>(entityClass.getName(), cacheable.maxSize(),
+                cacheable.expireSeconds() * 1000L, cacheable.eviction()));
+    }
+
+    /**
+     * 整数类型的主键统一为 Long, 使 1 和 1L 是同一个键
+     */
+    private static Object toKey(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+}
@@ -0,0 +1,341 @@
+package cn.egret.cache;
+
+import cn.egret.annotation.Eviction;
+import cn.egret.helper.ConfigHelper;
+import cn.egret.jdbc.EntityMeta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 查询结果缓存
+ * 以 (实体类, SQL, 参数) 为键缓存实体列表, 每个结果记录它读取的表. 更新语句按它修改的表使缓存失效:
+ * 每个表有一个版本号, 修改时加一, 读取缓存时表的版本号与放入时不同则视为失效; 在事务中修改时事务结束后才加一,
+ * 事务期间其它线程仍然可以使用已提交数据的缓存, 而当前事务读取它修改过的表时不使用缓存.
+ * 内存按结果的估算字节数限制, 超过上限时淘汰最久未使用的结果.
+ *
+ * 表名从 SQL 中解析（FROM, JOIN 之后的表和更新语句的目标表）, 无法解析目标表的更新语句使所有缓存失效.
+ * @author egret
+ */
+public final class QueryCache {
+
+    /**
+     * 读取的表: FROM 或 JOIN 之后, 到下一个子句为止的表列表
+     */
+    private static final Pattern TABLE_LIST_PATTERN = Pattern.compile("\\b(?:FROM|JOIN)\\s+", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern TABLE_LIST_END_PATTERN = Pattern.compile(
+            "\\b(?:WHERE|JOIN|INNER|LEFT|RIGHT|FULL|CROSS|NATURAL|ON|USING|GROUP|ORDER|HAVING|LIMIT|OFFSET|UNION|EXCEPT" +
+                    "|INTERSECT|FOR|WINDOW|SET|VALUES)\\b|[();]", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 更新语句的目标表
+     */
+    private static final Pattern WRITE_TABLE_PATTERN = Pattern.compile(
+            "^\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|MERGE\\s+INTO|UPDATE|DELETE\\s+FROM|TRUNCATE\\s+(?:TABLE\\s+)?" +
+                    "|DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?|CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?|ALTER\\s+TABLE)" +
+                    "\\s+([`\"\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 事务中执行了无法解析目标表的更新语句
+     */
+    private static final String ALL_TABLES = "*";
+
+    private static final long MAX_SIZE = ConfigHelper.getJdbcQueryCacheMaxSize();
+
+    private static final CacheRegion<Key, Result> REGION = new CacheRegion<>("query", Math.max(MAX_SIZE, 1), 0, Eviction.LRU);
+
+    /**
+     * 表名 - 版本号
+     */
+    private static final ConcurrentMap<String, AtomicLong> TABLE_VERSION_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 所有表的版本号, 无法解析目标表的更新语句执行后加一
+     */
+    private static final AtomicLong GLOBAL_VERSION = new AtomicLong();
+
+    /**
+     * 当前事务中修改过的表
+     */
+    private static final ThreadLocal<Set<String>> TRANSACTION_TABLE_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 是否使用查询结果缓存
+     */
+    public static boolean isEnabled() {
+        return MAX_SIZE > 0;
+    }
+
+    /**
+     * 查询实体列表, 缓存中有有效的结果时返回结果的副本, 否则通过 loader 查询并放入缓存（在事务中时不放入）
+     */
+    public static <T> List<T> query(Class<T> entityClass, String sql, Object[] params, boolean inTransaction,
+                                    Supplier<List<T>> loader) {
+        Key key = new Key(entityClass, sql, params);
+        Result result = REGION.get(key);
+        boolean stale = result != null && isStale(result);
+        if (result != null && !stale && !isWrittenInTransaction(result.tables)) {
+            return copy(entityClass, result.entityList);
+        }
+
+        String[] tables = result != null ? result.tables : getReadTables(sql).toArray(new String[0]);
+        if (stale) {
+            REGION.invalidate(key);
+        }
+        if (inTransaction) {
+            //事务中的结果可能包含未提交的数据, 不放入缓存
+            return loader.get();
+        }
+        long globalVersion = GLOBAL_VERSION.get();
+        long[] tableVersions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            tableVersions[i] = getTableVersion(tables[i]).get();
+        }
+        List<T> entityList = loader.get();
+        long size = estimateSize(entityClass, entityList);
+        if (size <= Integer.MAX_VALUE) {
+            REGION.put(key, new Result(copy(entityClass, entityList), tables, tableVersions, globalVersion), (int) size);
+        }
+        return entityList;
+    }
+
+    /**
+     * 执行更新语句之后调用, 使读取了目标表的缓存失效
+     * @param inTransaction 是否在事务中执行, 是则在事务结束后才失效
+     */
+    public static void invalidate(String sql, boolean inTransaction) {
+        String table = getWriteTable(sql);
+        if (!inTransaction) {
+            invalidateTable(table);
+            return;
+        }
+        getWrittenTableSet().add(table != null ? table : ALL_TABLES);
+    }
+
+    /**
+     * 事务结束（提交或回滚）后调用, 使事务中修改过的表的缓存失效
+     */
+    public static void afterCompletion() {
+        Set<String> writtenTableSet = TRANSACTION_TABLE_HOLDER.get();
+        if (writtenTableSet == null) {
+            return;
+        }
+        TRANSACTION_TABLE_HOLDER.remove();
+        for (String table : writtenTableSet) {
+            invalidateTable(table);
+        }
+    }
+
+    /**
+     * 获取当前线程的事务修改记录（不存在时创建）, 用于在其它线程中继续执行同一个事务, 见 setTransactionState
+     */
+    public static Object getTransactionState() {
+        return getWrittenTableSet();
+    }
+
+    /**
+     * 把事务修改记录绑定到当前线程, null 表示解除绑定
+     */
+    @SuppressWarnings("unchecked")
+    public static void setTransactionState(Object state) {
+        if (state == null) {
+            TRANSACTION_TABLE_HOLDER.remove();
+        } else {
+            TRANSACTION_TABLE_HOLDER.set((Set<String>) state);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        REGION.clear();
+    }
+
+    /**
+     * 获取缓存统计, 权重为估算的字节数
+     */
+    public static CacheStats getStats() {
+        return REGION.getStats();
+    }
+
+    /**
+     * 解析查询读取的表, 表名转换为小写并去掉库名和引号
+     */
+    public static Set<String> getReadTables(String sql) {
+        Set<String> tableSet = new HashSet<>();
+        Matcher matcher = TABLE_LIST_PATTERN.matcher(sql);
+        Matcher endMatcher = TABLE_LIST_END_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            int start = matcher.end();
+            endMatcher.region(start, sql.length());
+            String tableList = endMatcher.find() ? sql.substring(start, endMatcher.start()) : sql.substring(start);
+            for (String tableItem : tableList.split(",")) {
+                String[] words = tableItem.trim().split("\\s+");
+                if (!words[0].isEmpty()) {
+                    tableSet.add(normalizeTable(words[0]));
+                }
+            }
+        }
+        return tableSet;
+    }
+
+    /**
+     * 解析更新语句的目标表, 无法解析时返回 null
+     */
+    public static String getWriteTable(String sql) {
+        Matcher matcher = WRITE_TABLE_PATTERN.matcher(sql);
+        return matcher.find() ? normalizeTable(matcher.group(1)) : null;
+    }
+
+    /**
+     * 获取当前线程的事务修改记录, 不存在时创建; 同一个事务可能有多个线程（见 TransactionContext）, 所以使用并发集合
+     */
+    private static Set<String> getWrittenTableSet() {
+        Set<String> writtenTableSet = TRANSACTION_TABLE_HOLDER.get();
+        if (writtenTableSet == null) {
+            writtenTableSet = ConcurrentHashMap.newKeySet();
+            TRANSACTION_TABLE_HOLDER.set(writtenTableSet);
+        }
+        return writtenTableSet;
+    }
+
+    private static void invalidateTable(String table) {
+        if (table != null && !ALL_TABLES.equals(table)) {
+            getTableVersion(table).incrementAndGet();
+        } else {
+            GLOBAL_VERSION.incrementAndGet();
+        }
+    }
+
+    /**
+     * 放入缓存之后是否修改过结果读取的表
+     */
+    private static boolean isStale(Result result) {
+        if (result.globalVersion != GLOBAL_VERSION.get()) {
+            return true;
+        }
+        for (int i = 0; i < result.tables.length; i++) {
+            if (getTableVersion(result.tables[i]).get() != result.tableVersions[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 当前事务是否修改过这些表, 是则缓存中是事务开始前的数据, 当前事务不能使用
+     */
+    private static boolean isWrittenInTransaction(String[] tables) {
+        Set<String> writtenTableSet = TRANSACTION_TABLE_HOLDER.get();
+        if (writtenTableSet == null) {
+            return false;
+        }
+        if (writtenTableSet.contains(ALL_TABLES)) {
+            return true;
+        }
+        for (String table : tables) {
+            if (writtenTableSet.contains(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static AtomicLong getTableVersion(String table) {
+        AtomicLong version = TABLE_VERSION_MAP.get(table);
+        if (version == null) {
+            version = TABLE_VERSION_MAP.computeIfAbsent(table, k -> new AtomicLong());
+        }
+        return version;
+    }
+
+    private static String normalizeTable(String table) {
+        String name = table.replace("`", "").replace("\"", "").toLowerCase();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static <T> long estimateSize(Class<T> entityClass, List<T> entityList) {
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        long size = 64 + 8L * entityList.size();
+        for (T entity : entityList) {
+            size += entityMeta.estimateSize(entity);
+        }
+        return size;
+    }
+
+    private static <T> List<T> copy(Class<T> entityClass, List<?> entityList) {
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        List<T> copyList = new ArrayList<>(entityList.size());
+        for (Object entity : entityList) {
+            copyList.add(entityClass.cast(entityMeta.copy(entity)));
+        }
+        return copyList;
+    }
+
+    private static final class Key {
+
+        private final Class<?> entityClass;
+
+        private final String sql;
+
+        private final Object[] params;
+
+        private final int hash;
+
+        Key(Class<?> entityClass, String sql, Object[] params) {
+            this.entityClass = entityClass;
+            this.sql = sql;
+            this.params = params;
+            this.hash = 31 * (31 * entityClass.hashCode() + sql.hashCode()) + Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return entityClass == key.entityClass && sql.equals(key.sql) && Arrays.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Result {
+
+        private final List<?> entityList;
+
+        private final String[] tables;
+
+        /**
+         * 查询之前各表的版本号, 与 tables 顺序相同
+         */
+        private final long[] tableVersions;
+
+        private final long globalVersion;
+
+        Result(List<?> entityList, String[] tables, long[] tableVersions, long globalVersion) {
+            this.entityList = entityList;
+            this.tables = tables;
+            this.tableVersions = tableVersions;
+            this.globalVersion = globalVersion;
+        }
+    }
+}
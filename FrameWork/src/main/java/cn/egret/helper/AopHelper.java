@@ -1,10 +1,12 @@
 package cn.egret.helper;
 
+import cn.egret.ApplicationContext;
+import cn.egret.HelperLoader;
 import cn.egret.annotation.Aspect;
 import cn.egret.annotation.Service;
+import cn.egret.bean.ContainerSnapshot;
 import cn.egret.proxy.AspectProxy;
 import cn.egret.proxy.Proxy;
-import cn.egret.proxy.ProxyFactory;
 import cn.egret.proxy.TransactionProxy;
 import cn.egret.util.ClassUtil;
 import org.slf4j.Logger;
@@ -17,56 +19,73 @@ import java.util.*;
  * AopHelper 助手类用来初始化整个AOP框架, 逻辑如下:
  *
  * 框架中所有Bean的实例都是从Bean容器中获取, 然后再执行该实例的方法, 基于此,
- * 初始化AOP框架实际上就是用代理对象覆盖掉Bean容器中的目标对象, 这样根据目标类的Class对象从Bean容器中获取到的就是代理对象, 从而达到了对目标对象增强的目的.
+ * 初始化AOP框架实际上就是让Bean容器中的目标对象都是代理对象, 这样根据目标类的Class对象从Bean容器中获取到的就是代理对象, 从而达到了对目标对象增强的目的.
+ * 代理对象在创建 bean 时直接创建, 见 ApplicationContext.createInstance().
  * @author egret
  */
 public final class AopHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AopHelper.class);
 
-    static {
+    /**
+     * 为应用上下文建立切面映射: 切面类-目标类集合, 以及目标类-切面对象列表.
+     * 这一阶段在创建 bean 之前执行, 有切面的 bean 在实例化时就直接创建为代理对象（构造器注入的依赖也传给代理对象的构造器）
+     */
+    public static void weave(ApplicationContext context) {
         try {
             //切面类-目标类集合的映射
-            Map<Class<?>, Set<Class<?>>> aspectMap = createAspectMap();
-            //目标类-切面对象列表的映射
+            Map<Class<?>, Set<Class<?>>> aspectMap = createAspectMap(context);
+            context.getAspectMap().putAll(aspectMap);
+            //目标类-切面对象列表的映射, 创建 bean 时根据它创建代理对象
             Map<Class<?>, List<Proxy>> targetMap = createTargetMap(aspectMap);
-
-            //把切面对象织入到目标类中, 创建代理对象
-            for (Map.Entry<Class<?>, List<Proxy>> targetEntry : targetMap.entrySet()) {
-                // 获取目标类
-                Class<?> targetClass = targetEntry.getKey();
-                // 获取切面对象列表
-                List<Proxy> proxyList = targetEntry.getValue();
-
-                // 创建代理类
-                Object proxy = ProxyFactory.createProxy(targetClass, proxyList);
-
-                //覆盖Bean容器里目标类对应的实例, 下次从Bean容器获取的就是代理对象了
-                BeanHelper.setBean(targetClass, proxy);
-            }
+            context.getTargetMap().putAll(targetMap);
+            context.getStartupTimeline().setItemCount(targetMap.size());
         } catch (Exception e) {
             LOGGER.error("aop failure", e);
+            throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 创建 bean 实例, 如果该类有切面则直接创建代理对象
+     */
+    public static Object createBean(Class<?> beanClass) {
+        return HelperLoader.getApplicationContext().createBean(beanClass);
+    }
+
+    /**
+     * 获取切面类-目标类集合的映射
+     */
+    public static Map<Class<?>, Set<Class<?>>> getAspectMap() {
+        return HelperLoader.getApplicationContext().getAspectMap();
+    }
+
     /**
      * 获取切面类-目标类集合的映射
      */
-    private static Map<Class<?>, Set<Class<?>>> createAspectMap() throws Exception {
+    private static Map<Class<?>, Set<Class<?>>> createAspectMap(ApplicationContext context) throws Exception {
         Map<Class<?>, Set<Class<?>>> aspectMap = new HashMap<>();
+        ContainerSnapshot snapshot = context.getSnapshot();
+        if (snapshot != null) {
+            // 从启动快照中读取, 不需要再查找切面类和目标类
+            for (Map.Entry<String, List<String>> aspectEntry : snapshot.getAspectMap().entrySet()) {
+                aspectMap.put(SnapshotHelper.loadClass(aspectEntry.getKey()), SnapshotHelper.loadClassSet(aspectEntry.getValue()));
+            }
+            return aspectMap;
+        }
         // 获取普通切面类-目标类集合的映射
-        addAspectProxy(aspectMap);
+        addAspectProxy(context, aspectMap);
         // 获取事务切面类-目标类集合的映射
-        addTransactionProxy(aspectMap);
+        addTransactionProxy(context, aspectMap);
         return aspectMap;
     }
 
     /**
      *  获取普通切面类-目标类集合的映射
      */
-    private static void addAspectProxy(Map<Class<?>, Set<Class<?>>> aspectMap) throws Exception {
+    private static void addAspectProxy(ApplicationContext context, Map<Class<?>, Set<Class<?>>> aspectMap) throws Exception {
         //所有实现了AspectProxy抽象类的切面
-        Set<Class<?>> aspectClassSet = ClassHelper.getClassSetBySuper(AspectProxy.class);
+        Set<Class<?>> aspectClassSet = context.getClassSetBySuper(AspectProxy.class);
 
         for (Class<?> aspectClass : aspectClassSet) {
             // 实现了AspectProxy抽象类并且上面有@Aspect注解
@@ -87,8 +106,8 @@ public final class AopHelper {
      *  从Bean容器中得到的都是代理对象, 我们在执行代理方法时会判断目标方法上是否存在 @Transactional 注解,
      *  有就加上事务管理, 没有就直接执行.
      */
-    private static void addTransactionProxy(Map<Class<?>, Set<Class<?>>> aspectMap) {
-        Set<Class<?>> serviceClassSet = ClassHelper.getClassSetByAnnotation(Service.class);
+    private static void addTransactionProxy(ApplicationContext context, Map<Class<?>, Set<Class<?>>> aspectMap) {
+        Set<Class<?>> serviceClassSet = context.getClassSetByAnnotation(Service.class);
         aspectMap.put(TransactionProxy.class, serviceClassSet);
     }
 
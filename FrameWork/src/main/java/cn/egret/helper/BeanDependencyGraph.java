@@ -0,0 +1,370 @@
+package cn.egret.helper;
+
+import cn.egret.ApplicationContext;
+import cn.egret.bean.BeanDefinition;
+import cn.egret.metrics.StartupTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Bean 依赖图
+ * 根据 @Autowired 注入点（构造器和属性）建立 bean 之间的依赖关系, 并将 bean 按层级排列: 每一层的 bean 只依赖于前面层级的 bean,
+ * 因此同一层的 bean 之间互不依赖, 可以并行地实例化和注入. 依赖原型或请求作用域的 bean 时, 依赖关系会穿过它们传递下去.
+ *
+ * 属性注入的循环依赖会被报告出来, 并放到最后一层; 构造器注入参与的循环依赖无法创建, 直接启动失败.
+ * 最后一层的 bean 之间可能有依赖, 按构造器依赖排序后依次实例化（属性注入在所有 bean 实例化之后, 仍然并行）.
+ * @author egret
+ */
+public final class BeanDependencyGraph {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanDependencyGraph.class);
+
+    /**
+     * 按层级排列的 bean 定义
+     */
+    private final List<List<BeanDefinition>> levelList;
+
+    /**
+     * 检测到的循环依赖
+     */
+    private final List<List<Class<?>>> cycleList;
+
+    /**
+     * 最后一层是否是循环依赖所在的层, 这一层需要依次实例化
+     */
+    private final boolean cyclicLevel;
+
+    private BeanDependencyGraph(List<List<BeanDefinition>> levelList, List<List<Class<?>>> cycleList, boolean cyclicLevel) {
+        this.levelList = levelList;
+        this.cycleList = cycleList;
+        this.cyclicLevel = cyclicLevel;
+    }
+
+    /**
+     * 根据 bean 定义建立依赖图
+     * @param beanDefinitions 需要创建的 bean 定义
+     * @param allDefinitionMap 所有 bean 定义, 用于穿过不在图中的非单例 bean 查找依赖
+     */
+    public static BeanDependencyGraph build(Collection<BeanDefinition> beanDefinitions, Map<Class<?>, BeanDefinition> allDefinitionMap) {
+        Map<Class<?>, BeanDefinition> definitionMap = new HashMap<>();
+        for (BeanDefinition beanDefinition : beanDefinitions) {
+            definitionMap.put(beanDefinition.getBeanClass(), beanDefinition);
+        }
+
+        //入度: bean 还有多少个依赖没有创建
+        Map<Class<?>, Integer> inDegreeMap = new HashMap<>();
+        //依赖 - 依赖它的 bean 列表
+        Map<Class<?>, List<Class<?>>> dependentMap = new HashMap<>();
+        for (BeanDefinition beanDefinition : beanDefinitions) {
+            Class<?> beanClass = beanDefinition.getBeanClass();
+            Set<Class<?>> dependencySet = getDependencySet(beanDefinition, definitionMap, allDefinitionMap);
+            inDegreeMap.put(beanClass, dependencySet.size());
+            for (Class<?> dependencyClass : dependencySet) {
+                dependentMap.computeIfAbsent(dependencyClass, k -> new ArrayList<>()).add(beanClass);
+            }
+        }
+
+        //拓扑排序, 逐层剥离入度为 0 的 bean
+        List<List<BeanDefinition>> levelList = new ArrayList<>();
+        List<Class<?>> currentLevel = new ArrayList<>();
+        for (Map.Entry<Class<?>, Integer> entry : inDegreeMap.entrySet()) {
+            if (entry.getValue() == 0) {
+                currentLevel.add(entry.getKey());
+            }
+        }
+        while (!currentLevel.isEmpty()) {
+            levelList.add(toDefinitionList(currentLevel, definitionMap));
+            List<Class<?>> nextLevel = new ArrayList<>();
+            for (Class<?> beanClass : currentLevel) {
+                inDegreeMap.remove(beanClass);
+                List<Class<?>> dependentList = dependentMap.get(beanClass);
+                if (dependentList == null) {
+                    continue;
+                }
+                for (Class<?> dependentClass : dependentList) {
+                    int inDegree = inDegreeMap.get(dependentClass) - 1;
+                    inDegreeMap.put(dependentClass, inDegree);
+                    if (inDegree == 0) {
+                        nextLevel.add(dependentClass);
+                    }
+                }
+            }
+            currentLevel = nextLevel;
+        }
+
+        //剩下的 bean 处于循环依赖中（或依赖了循环中的 bean）, 报告后放到最后一层
+        List<List<Class<?>>> cycleList = new ArrayList<>();
+        if (!inDegreeMap.isEmpty()) {
+            cycleList = findCycles(inDegreeMap.keySet(), definitionMap, allDefinitionMap);
+            for (List<Class<?>> cycle : cycleList) {
+                if (hasConstructorDependency(cycle, definitionMap)) {
+                    throw new RuntimeException("circular dependency through constructor injection: " + formatCycle(cycle));
+                }
+                LOGGER.warn("circular dependency detected: {}", formatCycle(cycle));
+            }
+            levelList.add(sortByConstructorDependency(inDegreeMap.keySet(), definitionMap, allDefinitionMap));
+        }
+        return new BeanDependencyGraph(levelList, cycleList, !inDegreeMap.isEmpty());
+    }
+
+    /**
+     * 获取按层级排列的 bean 定义
+     */
+    public List<List<BeanDefinition>> getLevelList() {
+        return levelList;
+    }
+
+    /**
+     * 获取检测到的循环依赖
+     */
+    public List<List<Class<?>>> getCycleList() {
+        return cycleList;
+    }
+
+    /**
+     * 逐层并行地实例化 bean（进行构造器注入, 有切面时直接创建代理对象）, 并放入 bean 容器中
+     */
+    public void instantiate(final ApplicationContext context) {
+        final StartupTimeline timeline = context.getStartupTimeline();
+        //循环依赖所在的层按构造器依赖的顺序依次实例化
+        forEachLevel(context, "instantiate bean", cyclicLevel, beanDefinition -> {
+            Class<?> beanClass = beanDefinition.getBeanClass();
+            String stepType = context.getTargetMap().containsKey(beanClass) ? "proxy" : "bean";
+            StartupTimeline.Step step = timeline.beginStep(stepType, beanClass.getName());
+            context.setBean(beanClass, context.createInstance(beanDefinition));
+            step.end();
+        });
+    }
+
+    /**
+     * 逐层并行地为 bean 容器里的 bean 注入属性
+     */
+    public void inject(final ApplicationContext context) {
+        final StartupTimeline timeline = context.getStartupTimeline();
+        final Map<Class<?>, Object> beanMap = context.getBeanMap();
+        forEachLevel(context, "inject bean", false, beanDefinition -> {
+            Object bean = beanMap.get(beanDefinition.getBeanClass());
+            if (bean != null) {
+                StartupTimeline.Step step = timeline.beginStep("inject", beanDefinition.getBeanClass().getName());
+                beanDefinition.getInjector().injectFields(bean, context::findBean);
+                step.end();
+            }
+        });
+    }
+
+    /**
+     * 逐层执行任务, 同一层的任务并行执行, 一层全部完成后才进入下一层
+     * @param sequentialLastLevel 最后一层是否按顺序在当前线程中执行
+     */
+    private void forEachLevel(ApplicationContext context, String phase, boolean sequentialLastLevel, Consumer<BeanDefinition> action) {
+        int threads = ConfigHelper.getAppBeanInitThreads();
+        ExecutorService executor = null;
+        try {
+            for (int i = 0; i < levelList.size(); i++) {
+                List<BeanDefinition> level = levelList.get(i);
+                if (threads <= 1 || level.size() <= 1 || (sequentialLastLevel && i == levelList.size() - 1)) {
+                    for (BeanDefinition beanDefinition : level) {
+                        action.accept(beanDefinition);
+                    }
+                    continue;
+                }
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(threads, new BeanInitThreadFactory());
+                }
+                List<Future<?>> futureList = new ArrayList<>();
+                for (BeanDefinition beanDefinition : level) {
+                    //工作线程也标记为正在启动这个上下文, bean 构造器中调用 Helper 类的静态方法时不会重复启动或死锁
+                    futureList.add(executor.submit(() -> context.runRefreshing(() -> action.accept(beanDefinition))));
+                }
+                for (Future<?> future : futureList) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            LOGGER.error(phase + " failure", e.getCause());
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 获取 bean 在依赖图中的依赖（不包括自身）, 遇到不在图中的非单例 bean 时继续查找它的依赖
+     */
+    private static Set<Class<?>> getDependencySet(BeanDefinition beanDefinition, Map<Class<?>, BeanDefinition> definitionMap,
+                                                  Map<Class<?>, BeanDefinition> allDefinitionMap) {
+        Set<Class<?>> dependencySet = new HashSet<>();
+        Set<Class<?>> visitedSet = new HashSet<>();
+        Deque<Class<?>> pendingDeque = new ArrayDeque<>(beanDefinition.getDependencyClasses());
+        while (!pendingDeque.isEmpty()) {
+            Class<?> dependencyClass = pendingDeque.pop();
+            if (!visitedSet.add(dependencyClass) || dependencyClass.equals(beanDefinition.getBeanClass())) {
+                continue;
+            }
+            if (definitionMap.containsKey(dependencyClass)) {
+                dependencySet.add(dependencyClass);
+            } else {
+                BeanDefinition dependency = allDefinitionMap.get(dependencyClass);
+                if (dependency != null && !dependency.isSingleton()) {
+                    pendingDeque.addAll(dependency.getDependencyClasses());
+                }
+            }
+        }
+        return dependencySet;
+    }
+
+    /**
+     * 循环依赖所在的层按构造器依赖拓扑排序, 使构造器的参数先于 bean 创建（同一轮按类名排序）;
+     * 经过非单例 bean 的依赖同样计入, 因为非单例 bean 在构造时创建, 需要它的依赖已经存在
+     */
+    private static List<BeanDefinition> sortByConstructorDependency(Set<Class<?>> remainingSet, Map<Class<?>, BeanDefinition> definitionMap,
+                                                                    Map<Class<?>, BeanDefinition> allDefinitionMap) {
+        Map<Class<?>, Set<Class<?>>> dependencyMap = new HashMap<>();
+        for (Class<?> beanClass : remainingSet) {
+            Set<Class<?>> dependencySet = new HashSet<>();
+            Set<Class<?>> visitedSet = new HashSet<>();
+            Deque<Class<?>> pendingDeque = new ArrayDeque<>(definitionMap.get(beanClass).getConstructorDependencyList());
+            while (!pendingDeque.isEmpty()) {
+                Class<?> dependencyClass = pendingDeque.pop();
+                if (!visitedSet.add(dependencyClass) || dependencyClass.equals(beanClass)) {
+                    continue;
+                }
+                if (remainingSet.contains(dependencyClass)) {
+                    dependencySet.add(dependencyClass);
+                } else if (!definitionMap.containsKey(dependencyClass)) {
+                    BeanDefinition dependency = allDefinitionMap.get(dependencyClass);
+                    if (dependency != null && !dependency.isSingleton()) {
+                        pendingDeque.addAll(dependency.getDependencyClasses());
+                    }
+                }
+            }
+            dependencyMap.put(beanClass, dependencySet);
+        }
+
+        List<BeanDefinition> definitionList = new ArrayList<>();
+        Set<Class<?>> createdSet = new HashSet<>();
+        List<Class<?>> pendingList = sortByName(remainingSet);
+        while (!pendingList.isEmpty()) {
+            List<Class<?>> readyList = new ArrayList<>();
+            for (Class<?> beanClass : pendingList) {
+                if (createdSet.containsAll(dependencyMap.get(beanClass))) {
+                    readyList.add(beanClass);
+                }
+            }
+            if (readyList.isEmpty()) {
+                throw new RuntimeException("circular dependency through constructor injection: " + formatCycle(pendingList));
+            }
+            for (Class<?> beanClass : readyList) {
+                definitionList.add(definitionMap.get(beanClass));
+            }
+            createdSet.addAll(readyList);
+            pendingList.removeAll(readyList);
+        }
+        return definitionList;
+    }
+
+    /**
+     * 循环中是否有构造器注入的依赖
+     */
+    private static boolean hasConstructorDependency(List<Class<?>> cycle, Map<Class<?>, BeanDefinition> definitionMap) {
+        for (int i = 0; i < cycle.size() - 1; i++) {
+            if (definitionMap.get(cycle.get(i)).getConstructorDependencyList().contains(cycle.get(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在剩余的 bean 中找出所有循环依赖（深度优先遍历, 遇到栈上的节点即为一个环）
+     */
+    private static List<List<Class<?>>> findCycles(Set<Class<?>> remainingSet, Map<Class<?>, BeanDefinition> definitionMap,
+                                                   Map<Class<?>, BeanDefinition> allDefinitionMap) {
+        List<List<Class<?>>> cycleList = new ArrayList<>();
+        Set<Class<?>> visitedSet = new HashSet<>();
+        for (Class<?> beanClass : sortByName(remainingSet)) {
+            findCycles(beanClass, new ArrayList<>(), visitedSet, remainingSet, definitionMap, allDefinitionMap, cycleList);
+        }
+        return cycleList;
+    }
+
+    private static void findCycles(Class<?> beanClass, List<Class<?>> path, Set<Class<?>> visitedSet, Set<Class<?>> remainingSet,
+                                   Map<Class<?>, BeanDefinition> definitionMap, Map<Class<?>, BeanDefinition> allDefinitionMap,
+                                   List<List<Class<?>>> cycleList) {
+        int index = path.indexOf(beanClass);
+        if (index >= 0) {
+            List<Class<?>> cycle = new ArrayList<>(path.subList(index, path.size()));
+            cycle.add(beanClass);
+            cycleList.add(cycle);
+            return;
+        }
+        if (!visitedSet.add(beanClass)) {
+            return;
+        }
+        path.add(beanClass);
+        for (Class<?> dependencyClass : getDependencySet(definitionMap.get(beanClass), definitionMap, allDefinitionMap)) {
+            if (remainingSet.contains(dependencyClass)) {
+                findCycles(dependencyClass, path, visitedSet, remainingSet, definitionMap, allDefinitionMap, cycleList);
+            }
+        }
+        path.remove(path.size() - 1);
+    }
+
+    private static String formatCycle(List<Class<?>> cycle) {
+        StringBuilder builder = new StringBuilder();
+        for (Class<?> beanClass : cycle) {
+            if (builder.length() > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(beanClass.getName());
+        }
+        return builder.toString();
+    }
+
+    private static List<BeanDefinition> toDefinitionList(Collection<Class<?>> classes, Map<Class<?>, BeanDefinition> definitionMap) {
+        List<BeanDefinition> definitionList = new ArrayList<>();
+        for (Class<?> beanClass : sortByName(classes)) {
+            definitionList.add(definitionMap.get(beanClass));
+        }
+        return definitionList;
+    }
+
+    private static List<Class<?>> sortByName(Collection<Class<?>> classes) {
+        List<Class<?>> classList = new ArrayList<>(classes);
+        classList.sort(Comparator.comparing(Class::getName));
+        return classList;
+    }
+
+    /**
+     * bean 初始化线程工厂, 创建守护线程, 避免阻止 JVM 退出
+     */
+    private static class BeanInitThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "bean-init-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }
+    }
+}
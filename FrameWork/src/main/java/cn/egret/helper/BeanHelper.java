@@ -1,55 +1,207 @@
 package cn.egret.helper;
 
-import cn.egret.util.ReflectionUtil;
+import cn.egret.ApplicationContext;
+import cn.egret.HelperLoader;
+import cn.egret.annotation.Autowired;
+import cn.egret.annotation.BeanScope;
+import cn.egret.annotation.Lazy;
+import cn.egret.annotation.Scope;
+import cn.egret.bean.BeanDefinition;
+import cn.egret.bean.ContainerSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Bean 助手类
+ *
+ * 启动时根据 @Autowired 注入点（构造器和属性）建立 bean 依赖图, 按层级并行地实例化所有非延迟加载的单例 bean;
+ * 带 @Lazy 注解的 bean 在第一次 getBean 时才创建, @Scope 为原型或请求作用域的 bean 在获取或注入时创建.
+ * bean 容器由应用上下文持有, 这里的静态方法都委托给默认的应用上下文.
  * @author egret
  */
 public final class BeanHelper {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanHelper.class);
+
     /**
-     * BEAN_MAP相当于一个bean容器, 拥有项目所有bean的实例
+     * 生成应用上下文中所有 bean 的定义, 建立依赖图, 将非延迟加载的 bean 逐层并行实例化, 并放入 bean 容器中
      */
-    private static final Map<Class<?>, Object> BEAN_MAP = new ConcurrentHashMap<>();
-
-    static {
-        //获取所有bean
-        Set<Class<?>> beanClassSet = ClassHelper.getBeanClassSet();
-        //将bean实例化, 并放入bean容器中
-        for (Class<?> beanClass : beanClassSet) {
-            Object obj = ReflectionUtil.newInstance(beanClass);
-            BEAN_MAP.put(beanClass, obj);
+    public static void createBeans(ApplicationContext context) {
+        Map<Class<?>, BeanDefinition> beanDefinitionMap = context.getBeanDefinitionMap();
+        ContainerSnapshot snapshot = context.getSnapshot();
+        if (snapshot != null) {
+            //从启动快照中读取bean定义
+            for (ContainerSnapshot.BeanRecord beanRecord : snapshot.getBeanRecordList()) {
+                BeanDefinition beanDefinition = SnapshotHelper.toBeanDefinition(beanRecord);
+                beanDefinitionMap.put(beanDefinition.getBeanClass(), beanDefinition);
+            }
+        } else {
+            //获取所有bean, 并生成bean定义
+            Set<Class<?>> beanClassSet = context.getBeanClassSet();
+            for (Class<?> beanClass : beanClassSet) {
+                beanDefinitionMap.put(beanClass, createBeanDefinition(context, beanClass));
+            }
         }
+        checkScopes(beanDefinitionMap);
+        //建立依赖图, 将bean逐层并行实例化, 并放入bean容器中
+        BeanDependencyGraph dependencyGraph = BeanDependencyGraph.build(getEagerDefinitions(beanDefinitionMap), beanDefinitionMap);
+        context.setDependencyGraph(dependencyGraph);
+        dependencyGraph.instantiate(context);
     }
 
     /**
      * 获取 Bean 容器
      */
     public static Map<Class<?>, Object> getBeanMap() {
-        return BEAN_MAP;
+        return HelperLoader.getApplicationContext().getBeanMap();
+    }
+
+    /**
+     * 获取 Bean 依赖图
+     */
+    public static BeanDependencyGraph getDependencyGraph() {
+        return HelperLoader.getApplicationContext().getDependencyGraph();
     }
 
     /**
-     * 获取 Bean 实例
+     * 获取所有 Bean 定义
+     */
+    public static Map<Class<?>, BeanDefinition> getBeanDefinitionMap() {
+        return HelperLoader.getApplicationContext().getBeanDefinitionMap();
+    }
+
+    /**
+     * 获取 Bean 定义
+     */
+    public static BeanDefinition getBeanDefinition(Class<?> cls) {
+        return HelperLoader.getApplicationContext().getBeanDefinition(cls);
+    }
+
+    /**
+     * 是否为尚未创建的延迟加载 Bean
+     */
+    public static boolean isLazyBean(Class<?> cls) {
+        return HelperLoader.getApplicationContext().isLazyBean(cls);
+    }
+
+    /**
+     * 获取 Bean 实例, 延迟加载的 Bean 在第一次获取时创建
      */
-    @SuppressWarnings("unchecked")
     public static <T> T getBean(Class<T> cls) {
-        if (!BEAN_MAP.containsKey(cls)) {
-            throw new RuntimeException("can not get bean by class: " + cls);
-        }
-        return (T) BEAN_MAP.get(cls);
+        return HelperLoader.getApplicationContext().getBean(cls);
     }
 
     /**
      * 设置 Bean 实例
      */
     public static void setBean(Class<?> cls, Object obj) {
-        BEAN_MAP.put(cls, obj);
+        HelperLoader.getApplicationContext().setBean(cls, obj);
+    }
+
+    /**
+     * 根据作用域, 带 @Autowired 注解的构造器和 @Autowired 注入点生成 bean 定义
+     */
+    private static BeanDefinition createBeanDefinition(ApplicationContext context, Class<?> beanClass) {
+        Scope scope = beanClass.getAnnotation(Scope.class);
+        BeanDefinition beanDefinition = new BeanDefinition(beanClass, beanClass.isAnnotationPresent(Lazy.class),
+                scope != null ? scope.value() : BeanScope.SINGLETON);
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Autowired.class)) {
+                if (beanDefinition.getConstructor() != null) {
+                    throw new RuntimeException("more than one @Autowired constructor in bean: " + beanClass.getName());
+                }
+                List<Class<?>> dependencyList = new ArrayList<>();
+                for (Class<?> parameterType : constructor.getParameterTypes()) {
+                    dependencyList.add(context.findImplementClass(parameterType));
+                }
+                beanDefinition.setConstructor(constructor, dependencyList);
+            }
+        }
+        for (Field beanField : beanClass.getDeclaredFields()) {
+            if (beanField.isAnnotationPresent(Autowired.class)) {
+                //如果属性类型是接口, 就获取接口对应的实现类
+                beanDefinition.addInjectField(beanField, context.findImplementClass(beanField.getType()));
+            }
+        }
+        return beanDefinition;
+    }
+
+    /**
+     * 检查作用域:
+     * 请求作用域的 bean 不能注入到单例 bean 中, 否则单例 bean 会一直持有第一个请求的实例;
+     * 非单例 bean 之间不能有循环依赖, 否则创建时会无限递归
+     */
+    private static void checkScopes(Map<Class<?>, BeanDefinition> beanDefinitionMap) {
+        Set<Class<?>> checkedSet = new HashSet<>();
+        for (BeanDefinition beanDefinition : beanDefinitionMap.values()) {
+            if (!beanDefinition.isSingleton()) {
+                checkScopedCycle(beanDefinition, new ArrayList<>(), checkedSet, beanDefinitionMap);
+                continue;
+            }
+            for (Class<?> dependencyClass : beanDefinition.getDependencyClasses()) {
+                BeanDefinition dependency = beanDefinitionMap.get(dependencyClass);
+                if (dependency != null && dependency.getScope() == BeanScope.REQUEST) {
+                    throw new RuntimeException("request scoped bean " + dependencyClass.getName()
+                            + " can not be injected into singleton bean " + beanDefinition);
+                }
+            }
+        }
+    }
+
+    private static void checkScopedCycle(BeanDefinition beanDefinition, List<Class<?>> path, Set<Class<?>> checkedSet,
+                                         Map<Class<?>, BeanDefinition> beanDefinitionMap) {
+        Class<?> beanClass = beanDefinition.getBeanClass();
+        if (path.contains(beanClass)) {
+            throw new RuntimeException("circular dependency between non-singleton beans: " + path + " -> " + beanClass.getName());
+        }
+        if (checkedSet.contains(beanClass)) {
+            return;
+        }
+        path.add(beanClass);
+        for (Class<?> dependencyClass : beanDefinition.getDependencyClasses()) {
+            BeanDefinition dependency = beanDefinitionMap.get(dependencyClass);
+            if (dependency != null && !dependency.isSingleton()) {
+                checkScopedCycle(dependency, path, checkedSet, beanDefinitionMap);
+            }
+        }
+        path.remove(path.size() - 1);
+        checkedSet.add(beanClass);
+    }
+
+    /**
+     * 获取启动时需要创建的 bean: 所有非延迟加载的单例 bean, 以及被它们依赖的延迟加载单例 bean.
+     * 原型和请求作用域的 bean 不在启动时创建
+     */
+    private static List<BeanDefinition> getEagerDefinitions(Map<Class<?>, BeanDefinition> beanDefinitionMap) {
+        Map<Class<?>, BeanDefinition> eagerMap = new LinkedHashMap<>();
+        List<BeanDefinition> pendingList = new ArrayList<>();
+        for (BeanDefinition beanDefinition : beanDefinitionMap.values()) {
+            if (beanDefinition.isSingleton() && !beanDefinition.isLazy()) {
+                pendingList.add(beanDefinition);
+            }
+        }
+        while (!pendingList.isEmpty()) {
+            BeanDefinition beanDefinition = pendingList.remove(pendingList.size() - 1);
+            if (eagerMap.put(beanDefinition.getBeanClass(), beanDefinition) != null) {
+                continue;
+            }
+            for (Class<?> dependencyClass : beanDefinition.getDependencyClasses()) {
+                BeanDefinition dependency = beanDefinitionMap.get(dependencyClass);
+                if (dependency != null && dependency.isSingleton() && dependency.isLazy() && !eagerMap.containsKey(dependencyClass)) {
+                    LOGGER.debug("lazy bean {} is required by {}, create it at startup", dependencyClass.getName(), beanDefinition);
+                    pendingList.add(dependency);
+                }
+            }
+        }
+        return new ArrayList<>(eagerMap.values());
     }
 }
@@ -1,98 +1,73 @@
 package cn.egret.helper;
 
+import cn.egret.HelperLoader;
 import cn.egret.annotation.Controller;
 import cn.egret.annotation.Service;
-import cn.egret.util.ClassUtil;
 
 import java.lang.annotation.Annotation;
-import java.util.HashSet;
 import java.util.Set;
 
 /**
  * 类操作助手类
+ * 类集合由应用上下文在启动时加载, 这里的方法都委托给默认的应用上下文
  * @author egret
  */
 public final class ClassHelper {
 
-    /**
-     * 定义类集合（存放基础包名下的所有类）
-     */
-    private static final Set<Class<?>> CLASS_SET;
-
-    static {
-        //获取基础包名
-        String basePackage = ConfigHelper.getAppBasePackage();
-        //获取基础包名下所有类
-        CLASS_SET = ClassUtil.getClassSet(basePackage);
-    }
-
     /**
      * 获取基础包名下的所有类
      */
     public static Set<Class<?>> getClassSet() {
-        return CLASS_SET;
+        return HelperLoader.getApplicationContext().getClassSet();
     }
 
     /**
      * 获取基础包名下所有 Service 类
      */
     public static Set<Class<?>> getServiceClassSet() {
-        Set<Class<?>> classSet = new HashSet<>();
-        for (Class<?> cls : CLASS_SET) {
-            if (cls.isAnnotationPresent(Service.class)) {
-                classSet.add(cls);
-            }
-        }
-        return classSet;
+        return HelperLoader.getApplicationContext().getServiceClassSet();
     }
 
     /**
      * 获取基础包名下所有 Controller 类
      */
     public static Set<Class<?>> getControllerClassSet() {
-        Set<Class<?>> classSet = new HashSet<>();
-        for (Class<?> cls : CLASS_SET) {
-            if (cls.isAnnotationPresent(Controller.class)) {
-                classSet.add(cls);
-            }
-        }
-        return classSet;
+        return HelperLoader.getApplicationContext().getControllerClassSet();
     }
 
     /**
      * 获取基础包名下所有 Bean 类（包括：Controller、Service）
      */
     public static Set<Class<?>> getBeanClassSet() {
-        Set<Class<?>> beanClassSet = new HashSet<>();
-        beanClassSet.addAll(getServiceClassSet());
-        beanClassSet.addAll(getControllerClassSet());
-        return beanClassSet;
+        return HelperLoader.getApplicationContext().getBeanClassSet();
     }
 
     /**
      * 获取基础包名下某父类的所有子类 或某接口的所有实现类
      */
     public static Set<Class<?>> getClassSetBySuper(Class<?> superClass) {
-        Set<Class<?>> classSet = new HashSet<>();
-        for (Class<?> cls : CLASS_SET) {
-            //isAssignableFrom() 指 superClass 和 cls 是否相同或 superClass 是否是 cls 的父类/接口
-            if (superClass.isAssignableFrom(cls) && !superClass.equals(cls)) {
-                classSet.add(cls);
-            }
-        }
-        return classSet;
+        return HelperLoader.getApplicationContext().getClassSetBySuper(superClass);
     }
 
     /**
      * 获取基础包名下带有某注解的所有类
      */
     public static Set<Class<?>> getClassSetByAnnotation(Class<? extends Annotation> annotationClass) {
-        Set<Class<?>> classSet = new HashSet<>();
-        for (Class<?> cls : CLASS_SET) {
-            if (cls.isAnnotationPresent(annotationClass)) {
-                classSet.add(cls);
-            }
-        }
-        return classSet;
+        return HelperLoader.getApplicationContext().getClassSetByAnnotation(annotationClass);
+    }
+
+    /**
+     * 获取接口对应的实现类
+     * 如果有多个实现类, 优先选择 bean 类（Controller、Service）
+     */
+    public static Class<?> findImplementClass(Class<?> interfaceClass) {
+        return HelperLoader.getApplicationContext().findImplementClass(interfaceClass);
+    }
+
+    /**
+     * 判断是否为 Bean 类（Controller、Service）
+     */
+    public static boolean isBeanClass(Class<?> cls) {
+        return cls.isAnnotationPresent(Service.class) || cls.isAnnotationPresent(Controller.class);
     }
 }
@@ -46,6 +46,237 @@ public final class ConfigHelper {
         return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_PASSWORD);
     }
 
+    /**
+     * 是否缓存连接上的预编译语句（默认开启）
+     */
+    public static boolean isJdbcPoolPreparedStatements() {
+        return PropsUtil.getBoolean(CONFIG_PROPS, ConfigConstant.JDBC_POOL_PREPARED_STATEMENTS, true);
+    }
+
+    /**
+     * 获取每个连接最多缓存的预编译语句数量（默认 100）
+     */
+    public static int getJdbcMaxOpenPreparedStatements() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_MAX_OPEN_PREPARED_STATEMENTS, 100);
+    }
+
+    /**
+     * 获取批量写入时每次 executeBatch 的行数（默认 1000）
+     */
+    public static int getJdbcBatchSize() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_BATCH_SIZE, 1000);
+    }
+
+    /**
+     * 获取流式查询的 fetch size（默认 0, 表示按数据库自动选择）
+     */
+    public static int getJdbcFetchSize() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_FETCH_SIZE, 0);
+    }
+
+    /**
+     * 获取连接池实现: dbcp（默认）或 builtin（内置连接池）
+     */
+    public static String getJdbcPool() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_POOL, "dbcp");
+    }
+
+    /**
+     * 获取连接池最大连接数（默认 8）
+     */
+    public static int getJdbcMaxTotal() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_MAX_TOTAL, 8);
+    }
+
+    /**
+     * 获取连接池最少空闲连接数（默认 0）
+     */
+    public static int getJdbcMinIdle() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_MIN_IDLE, 0);
+    }
+
+    /**
+     * 获取连接空闲多少毫秒后被关闭（默认 600000）
+     */
+    public static int getJdbcIdleTimeout() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_IDLE_TIMEOUT, 600000);
+    }
+
+    /**
+     * 获取连接的最大存活毫秒数（默认 1800000）
+     */
+    public static int getJdbcMaxLifetime() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_MAX_LIFETIME, 1800000);
+    }
+
+    /**
+     * 获取校验连接的 SQL（默认为空, 使用 Connection.isValid()）
+     */
+    public static String getJdbcValidationQuery() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_VALIDATION_QUERY, null);
+    }
+
+    /**
+     * 获取校验连接的超时秒数（默认 5）
+     */
+    public static int getJdbcValidationTimeout() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_VALIDATION_TIMEOUT, 5);
+    }
+
+    /**
+     * 获取从连接池获取连接的最长等待毫秒数（默认 30000）
+     */
+    public static int getJdbcMaxWait() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_MAX_WAIT, 30000);
+    }
+
+    /**
+     * 获取事务外连接的作用范围: statement（默认, 每条语句执行完归还）或 request（请求结束时归还）
+     */
+    public static String getJdbcConnectionScope() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_CONNECTION_SCOPE, "statement");
+    }
+
+    /**
+     * 获取连接泄漏检测阈值, 连接持有超过该毫秒数时报告（默认 0, 即不检测）
+     */
+    public static long getJdbcLeakDetectionThreshold() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_LEAK_DETECTION_THRESHOLD, 0);
+    }
+
+    /**
+     * 获取连接泄漏检测记录借出调用栈的采样间隔, 每借出该数量的连接记录一次（默认 16; 1 为每次都记录, 0 为不记录）
+     */
+    public static int getJdbcLeakDetectionStackSample() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_LEAK_DETECTION_STACK_SAMPLE, 16);
+    }
+
+    /**
+     * 获取查询结果缓存的内存上限（估算的字节数）, 默认为 0, 即不使用查询结果缓存
+     */
+    public static long getJdbcQueryCacheMaxSize() {
+        return PropsUtil.getLong(CONFIG_PROPS, ConfigConstant.JDBC_QUERY_CACHE_MAX_SIZE, 0);
+    }
+
+    /**
+     * 获取执行异步数据库操作的线程数, 默认与连接池大小相同
+     */
+    public static int getJdbcAsyncThreads() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_ASYNC_THREADS, getJdbcMaxTotal());
+    }
+
+    /**
+     * 获取异步数据库操作的等待队列长度, 队列已满时拒绝新的操作
+     */
+    public static int getJdbcAsyncQueueSize() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_ASYNC_QUEUE_SIZE, 1000);
+    }
+
+    /**
+     * 是否统计 SQL 的执行次数和耗时（默认开启）
+     */
+    public static boolean isJdbcSqlStats() {
+        return PropsUtil.getBoolean(CONFIG_PROPS, ConfigConstant.JDBC_SQL_STATS, true);
+    }
+
+    /**
+     * 获取慢查询阈值, 执行超过该毫秒数的语句写入慢查询日志（默认 1000, 0 表示不记录）
+     */
+    public static int getJdbcSlowQueryThreshold() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_SLOW_QUERY_THRESHOLD, 1000);
+    }
+
+    /**
+     * 获取按主键查询的合并时间窗口毫秒数, 默认为 0, 即 queryEntity 不合并（DatabaseHelper.loadEntity 仍然合并, 至少等待 1 毫秒）
+     */
+    public static int getJdbcBatchLoadWindow() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_BATCH_LOAD_WINDOW, 0);
+    }
+
+    /**
+     * 获取组提交的时间窗口微秒数（默认 500）, 0 表示不使用组提交, @Transactional(groupCommit = true) 的方法作为单独的事务执行
+     */
+    public static int getJdbcGroupCommitWindow() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_GROUP_COMMIT_WINDOW, 500);
+    }
+
+    /**
+     * 获取一次组提交最多合并的事务单元数量（默认 64）
+     */
+    public static int getJdbcGroupCommitMaxSize() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_GROUP_COMMIT_MAX_SIZE, 64);
+    }
+
+    /**
+     * 获取从库 URL, 多个从库以逗号分隔（默认为空, 即不使用从库）
+     */
+    public static String getJdbcReplicaUrls() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_URLS);
+    }
+
+    /**
+     * 获取从库用户名（默认与主库相同）
+     */
+    public static String getJdbcReplicaUsername() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_USERNAME, getJdbcUsername());
+    }
+
+    /**
+     * 获取从库密码（默认与主库相同）
+     */
+    public static String getJdbcReplicaPassword() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_PASSWORD, getJdbcPassword());
+    }
+
+    /**
+     * 获取从库选择策略: round_robin（默认）或 least_outstanding
+     */
+    public static String getJdbcReplicaBalance() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_BALANCE, "round_robin");
+    }
+
+    /**
+     * 获取从库不可用时被摘除的毫秒数（默认 30000）
+     */
+    public static int getJdbcReplicaEjectTime() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_EJECT_TIME, 30000);
+    }
+
+    /**
+     * 事务外的查询是否也使用从库（默认 false, 只有只读事务使用从库）
+     */
+    public static boolean isJdbcReplicaNonTransactionalRead() {
+        return PropsUtil.getBoolean(CONFIG_PROPS, ConfigConstant.JDBC_REPLICA_NON_TRANSACTIONAL_READ, false);
+    }
+
+    /**
+     * 获取分片 URL, 多个分片以逗号分隔, 顺序即分片下标（默认为空, 即不分片）
+     */
+    public static String getJdbcShardUrls() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_SHARD_URLS);
+    }
+
+    /**
+     * 获取分片用户名（默认与主库相同）
+     */
+    public static String getJdbcShardUsername() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_SHARD_USERNAME, getJdbcUsername());
+    }
+
+    /**
+     * 获取分片密码（默认与主库相同）
+     */
+    public static String getJdbcShardPassword() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_SHARD_PASSWORD, getJdbcPassword());
+    }
+
+    /**
+     * 获取分片函数: modulo（默认）, consistent_hash 或 ShardFunction 实现类的全名
+     */
+    public static String getJdbcShardFunction() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.JDBC_SHARD_FUNCTION, "modulo");
+    }
+
     /**
      * 获取应用基础包名
      */
@@ -67,6 +298,62 @@ public final class ConfigHelper {
         return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.APP_ASSET_PATH, "/asset/");
     }
 
+    /**
+     * 获取并行初始化 bean 的线程数（默认为 CPU 核数）
+     */
+    public static int getAppBeanInitThreads() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.APP_BEAN_INIT_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 获取启动快照目录（默认为空, 即不开启启动快照）
+     */
+    public static String getAppSnapshotDir() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.APP_SNAPSHOT_DIR);
+    }
+
+    /**
+     * 获取流式响应每写多少个元素刷新一次（默认 100）
+     */
+    public static int getAppStreamFlushRows() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.APP_STREAM_FLUSH_ROWS, 100);
+    }
+
+    /**
+     * 获取流式响应距离上次刷新超过多少毫秒后刷新（默认 200）
+     */
+    public static int getAppStreamFlushInterval() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.APP_STREAM_FLUSH_INTERVAL, 200);
+    }
+
+    /**
+     * 获取 SQL 统计管理接口的路径（如 /sqlStats）, 默认为空, 即不开放
+     */
+    public static String getAppSqlStatsPath() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.APP_SQL_STATS_PATH, "");
+    }
+
+    /**
+     * 获取访问 SQL 统计管理接口的令牌, 默认为空, 即只允许本机访问
+     */
+    public static String getAppSqlStatsToken() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.APP_SQL_STATS_TOKEN, "");
+    }
+
+    /**
+     * 获取默认的请求超时毫秒数, @RequestMapping 没有设置 timeout 时使用, 默认为 0, 即不限制
+     */
+    public static int getAppRequestTimeout() {
+        return PropsUtil.getInt(CONFIG_PROPS, ConfigConstant.APP_REQUEST_TIMEOUT, 0);
+    }
+
+    /**
+     * 获取传递请求超时毫秒数的请求头（默认 X-Request-Timeout）, 请求头只能缩短超时
+     */
+    public static String getAppDeadlineHeader() {
+        return PropsUtil.getString(CONFIG_PROPS, ConfigConstant.APP_DEADLINE_HEADER, "X-Request-Timeout");
+    }
+
     /**
      * 根据属性名获取 String 类型的属性值
      */
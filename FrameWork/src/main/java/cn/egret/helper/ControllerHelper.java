@@ -1,13 +1,15 @@
 package cn.egret.helper;
 
+import cn.egret.ApplicationContext;
+import cn.egret.HelperLoader;
 import cn.egret.annotation.RequestMapping;
+import cn.egret.bean.ContainerSnapshot;
 import cn.egret.bean.Handler;
 import cn.egret.bean.Request;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ArrayUtils;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,19 +19,41 @@ import java.util.Set;
  *
  * 首先通过 ClassHelper 工具类获取到应用中所有Controller的Class对象, 然后遍历Controller及其所有方法,
  * 将所有带 @RequestMapping 注解的方法封装为处理器,
- * 将 @RequestMapping 注解里的请求路径和请求方法封装成请求对象, 然后存入 REQUEST_MAP 中.
+ * 将 @RequestMapping 注解里的请求路径和请求方法封装成请求对象, 然后存入应用上下文的 "请求-处理器" 映射中.
  * @author egret
  */
 public final class ControllerHelper {
 
     /**
-     * REQUEST_MAP为 "请求-处理器" 的映射
+     * 为应用上下文建立 "请求-处理器" 的映射
      */
-    private static final Map<Request, Handler> REQUEST_MAP = new HashMap<>();
+    public static void createRequestMap(ApplicationContext context) {
+        Map<Request, Handler> requestMap = context.getRequestMap();
+        ContainerSnapshot snapshot = context.getSnapshot();
+        if (snapshot != null) {
+            //从启动快照中读取路由表
+            for (ContainerSnapshot.RouteRecord routeRecord : snapshot.getRouteRecordList()) {
+                Request request = new Request(routeRecord.getRequestMethod(), routeRecord.getRequestPath());
+                requestMap.put(request, SnapshotHelper.toHandler(routeRecord));
+            }
+        } else {
+            loadRequestMap(context.getControllerClassSet(), requestMap);
+        }
+        context.getStartupTimeline().setItemCount(requestMap.size());
+    }
 
-    static {
+    /**
+     * 获取 "请求-处理器" 映射
+     */
+    public static Map<Request, Handler> getRequestMap() {
+        return HelperLoader.getApplicationContext().getRequestMap();
+    }
+
+    /**
+     * 扫描所有Controller类, 建立 "请求-处理器" 映射
+     */
+    private static void loadRequestMap(Set<Class<?>> controllerClassSet, Map<Request, Handler> requestMap) {
         //遍历所有Controller类
-        Set<Class<?>> controllerClassSet = ClassHelper.getControllerClassSet();
         if (CollectionUtils.isNotEmpty(controllerClassSet)) {
             for (Class<?> controllerClass : controllerClassSet) {
                 //暴力反射获取所有方法
@@ -49,7 +73,7 @@ public final class ControllerHelper {
                             Request request = new Request(requestMethod, requestPath);
                             Handler handler = new Handler(controllerClass, method);
                             // Request的equals方法已重写，键可保证唯一
-                            REQUEST_MAP.put(request, handler);
+                            requestMap.put(request, handler);
                         }
                     }
                 }
@@ -61,7 +85,6 @@ public final class ControllerHelper {
      * 获取 Handler
      */
     public static Handler getHandler(String requestMethod, String requestPath) {
-        Request request = new Request(requestMethod, requestPath);
-        return REQUEST_MAP.get(request);
+        return HelperLoader.getApplicationContext().getHandler(requestMethod, requestPath);
     }
 }
@@ -1,19 +1,70 @@
 package cn.egret.helper;
 
+import cn.egret.annotation.Sharded;
+import cn.egret.annotation.WriteBehind;
+import cn.egret.bean.Page;
+import cn.egret.cache.EntityCache;
+import cn.egret.cache.QueryCache;
+import cn.egret.jdbc.ConnectionLeakDetector;
+import cn.egret.jdbc.DatabaseExecutor;
+import cn.egret.jdbc.EntityBatchLoader;
+import cn.egret.jdbc.EntityHandler;
+import cn.egret.jdbc.EntityListHandler;
+import cn.egret.jdbc.EntityMeta;
+import cn.egret.jdbc.GroupCommitter;
+import cn.egret.jdbc.ReplicaRoutingDataSource;
+import cn.egret.jdbc.ResultSetSpliterator;
+import cn.egret.jdbc.SqlTemplate;
+import cn.egret.jdbc.TransactionContext;
+import cn.egret.jdbc.WriteBehindBuffer;
+import cn.egret.jdbc.pool.PooledDataSource;
+import cn.egret.jdbc.shard.ConsistentHashShardFunction;
+import cn.egret.jdbc.shard.ModuloShardFunction;
+import cn.egret.jdbc.shard.ShardFunction;
+import cn.egret.jdbc.shard.ShardRouter;
+import cn.egret.metrics.SqlStatistics;
+import cn.egret.util.ReflectionUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
-import org.apache.commons.dbutils.handlers.BeanHandler;
-import org.apache.commons.dbutils.handlers.BeanListHandler;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 数据库操作助手类
@@ -26,18 +77,190 @@ public final class DatabaseHelper {
 
     private static final QueryRunner QUERY_RUNNER;
 
-    private static final BasicDataSource DATA_SOURCE;
+    private static final DataSource DATA_SOURCE;
+
+    /**
+     * 从库路由数据源, 未配置从库时为 null
+     */
+    private static final ReplicaRoutingDataSource READ_DATA_SOURCE;
+
+    /**
+     * 分片路由, 未配置分片时为 null
+     */
+    private static final ShardRouter SHARD_ROUTER;
+
+    /**
+     * 当前线程正在访问的分片, 见 onShard
+     */
+    private static final ThreadLocal<DataSource> SHARD_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 事务外的查询是否也使用从库
+     */
+    private static final boolean NON_TRANSACTIONAL_READ;
+
+    private static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+
+    private static final int STREAM_FETCH_SIZE;
+
+    /**
+     * 批量执行时慢查询日志最多记录的参数行数
+     */
+    private static final int MAX_LOGGED_BATCH_ROWS = 3;
+
+    /**
+     * 是否在整个请求内共用一个连接, 否则每条语句执行完就归还连接（事务内除外）
+     */
+    private static final boolean REQUEST_SCOPED_CONNECTION;
+
+    /**
+     * 连接泄漏检测, 未配置阈值时为 null
+     */
+    private static final ConnectionLeakDetector LEAK_DETECTOR;
+
+    /**
+     * 当前线程的事务上下文, 第一次获取时创建, 或者由其它线程的事务加入, 见 TransactionContext
+     */
+    private static final ThreadLocal<TransactionContext> TRANSACTION_CONTEXT_HOLDER = new ThreadLocal<>();
+
+    /**
+     * queryEntity 按主键查询的合并时间窗口（毫秒）, 0 表示不合并
+     */
+    private static final int BATCH_LOAD_WINDOW = ConfigHelper.getJdbcBatchLoadWindow();
+
+    /**
+     * 当前线程是否在执行组提交的单元
+     */
+    private static final ThreadLocal<Boolean> GROUP_COMMIT_UNIT_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 实体类 - 延迟写入缓冲区, 没有 @WriteBehind 注解的实体类为 Optional.empty()
+     */
+    private static final ConcurrentMap<Class<?>, Optional<WriteBehindBuffer>> WRITE_BEHIND_BUFFER_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类 - 批量加载器
+     */
+    private static final ConcurrentMap<Class<?>, EntityBatchLoader<?>> BATCH_LOADER_MAP = new ConcurrentHashMap<>();
 
     static {
         CONNECTION_HOLDER = new ThreadLocal<Connection>();
 
-        QUERY_RUNNER = new QueryRunner();
+        QUERY_RUNNER = new QueryRunner() {
+            /**
+             * 执行语句之前检查请求截止时间, 并设置查询超时
+             */
+            @Override
+            protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+                DeadlineHelper.check("preparing statement");
+                PreparedStatement stmt = super.prepareStatement(conn, sql);
+                try {
+                    DeadlineHelper.applyQueryTimeout(stmt);
+                } catch (RuntimeException e) {
+                    DbUtils.closeQuietly(stmt);
+                    throw e;
+                }
+                return stmt;
+            }
+        };
+
+        DATA_SOURCE = createDataSource(ConfigHelper.getJdbcUrl(), ConfigHelper.getJdbcUsername(), ConfigHelper.getJdbcPassword());
+
+        READ_DATA_SOURCE = createReadDataSource();
+        NON_TRANSACTIONAL_READ = ConfigHelper.isJdbcReplicaNonTransactionalRead();
+
+        SHARD_ROUTER = createShardRouter();
+
+        STREAM_FETCH_SIZE = getStreamFetchSize();
+
+        REQUEST_SCOPED_CONNECTION = "request".equalsIgnoreCase(ConfigHelper.getJdbcConnectionScope());
+
+        long leakDetectionThreshold = ConfigHelper.getJdbcLeakDetectionThreshold();
+        LEAK_DETECTOR = leakDetectionThreshold > 0
+                ? new ConnectionLeakDetector(leakDetectionThreshold, ConfigHelper.getJdbcLeakDetectionStackSample()) : null;
+    }
+
+    /**
+     * 创建数据源: 配置 handwritten.framework.jdbc.pool=builtin 时使用内置连接池, 否则使用 DBCP
+     */
+    private static DataSource createDataSource(String url, String username, String password) {
+        if ("builtin".equalsIgnoreCase(ConfigHelper.getJdbcPool())) {
+            PooledDataSource dataSource = new PooledDataSource();
+            dataSource.setDriverClassName(ConfigHelper.getJdbcDriver());
+            dataSource.setUrl(url);
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaxTotal(ConfigHelper.getJdbcMaxTotal());
+            dataSource.setMinIdle(ConfigHelper.getJdbcMinIdle());
+            dataSource.setMaxWaitMillis(ConfigHelper.getJdbcMaxWait());
+            dataSource.setIdleTimeoutMillis(ConfigHelper.getJdbcIdleTimeout());
+            dataSource.setMaxLifetimeMillis(ConfigHelper.getJdbcMaxLifetime());
+            dataSource.setValidationQuery(ConfigHelper.getJdbcValidationQuery());
+            dataSource.setValidationTimeoutSeconds(ConfigHelper.getJdbcValidationTimeout());
+            return dataSource;
+        }
+
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setDriverClassName(ConfigHelper.getJdbcDriver());
+        dataSource.setUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        //缓存连接上的预编译语句, 配合 EntityMeta 生成的稳定 SQL, 同一条 SQL 只需要预编译一次
+        dataSource.setPoolPreparedStatements(ConfigHelper.isJdbcPoolPreparedStatements());
+        dataSource.setMaxOpenPreparedStatements(ConfigHelper.getJdbcMaxOpenPreparedStatements());
+        dataSource.setMaxTotal(ConfigHelper.getJdbcMaxTotal());
+        dataSource.setMinIdle(ConfigHelper.getJdbcMinIdle());
+        dataSource.setMaxWaitMillis(ConfigHelper.getJdbcMaxWait());
+        dataSource.setMinEvictableIdleTimeMillis(ConfigHelper.getJdbcIdleTimeout());
+        dataSource.setTimeBetweenEvictionRunsMillis(30000);
+        dataSource.setMaxConnLifetimeMillis(ConfigHelper.getJdbcMaxLifetime());
+        dataSource.setValidationQuery(ConfigHelper.getJdbcValidationQuery());
+        dataSource.setValidationQueryTimeout(ConfigHelper.getJdbcValidationTimeout());
+        return dataSource;
+    }
+
+    /**
+     * 创建从库路由数据源: 每个从库一个连接池, 连接池配置与主库相同
+     */
+    private static ReplicaRoutingDataSource createReadDataSource() {
+        String[] urls = StringUtils.split(ConfigHelper.getJdbcReplicaUrls(), ',');
+        if (ArrayUtils.isEmpty(urls)) {
+            return null;
+        }
+        List<String> nameList = new ArrayList<>();
+        List<DataSource> replicaList = new ArrayList<>();
+        for (String url : urls) {
+            nameList.add(url.trim());
+            replicaList.add(createDataSource(url.trim(), ConfigHelper.getJdbcReplicaUsername(), ConfigHelper.getJdbcReplicaPassword()));
+        }
+        ReplicaRoutingDataSource.Balance balance = ReplicaRoutingDataSource.Balance.valueOf(ConfigHelper.getJdbcReplicaBalance().toUpperCase());
+        return new ReplicaRoutingDataSource(nameList, replicaList, DATA_SOURCE, balance, ConfigHelper.getJdbcReplicaEjectTime());
+    }
 
-        DATA_SOURCE = new BasicDataSource();
-        DATA_SOURCE.setDriverClassName(ConfigHelper.getJdbcDriver());
-        DATA_SOURCE.setUrl(ConfigHelper.getJdbcUrl());
-        DATA_SOURCE.setUsername(ConfigHelper.getJdbcUsername());
-        DATA_SOURCE.setPassword(ConfigHelper.getJdbcPassword());
+    /**
+     * 创建分片路由: 每个分片一个连接池, 连接池配置与主库相同
+     */
+    private static ShardRouter createShardRouter() {
+        String[] urls = StringUtils.split(ConfigHelper.getJdbcShardUrls(), ',');
+        if (ArrayUtils.isEmpty(urls)) {
+            return null;
+        }
+        List<String> nameList = new ArrayList<>();
+        List<DataSource> shardList = new ArrayList<>();
+        for (String url : urls) {
+            nameList.add(url.trim());
+            shardList.add(createDataSource(url.trim(), ConfigHelper.getJdbcShardUsername(), ConfigHelper.getJdbcShardPassword()));
+        }
+        String function = ConfigHelper.getJdbcShardFunction();
+        ShardFunction shardFunction;
+        if ("modulo".equalsIgnoreCase(function)) {
+            shardFunction = new ModuloShardFunction();
+        } else if ("consistent_hash".equalsIgnoreCase(function)) {
+            shardFunction = new ConsistentHashShardFunction();
+        } else {
+            shardFunction = (ShardFunction) ReflectionUtil.newInstance(function);
+        }
+        return new ShardRouter(nameList, shardList, shardFunction);
     }
 
     /**
@@ -47,31 +270,176 @@ public final class DatabaseHelper {
         return DATA_SOURCE;
     }
 
+    /**
+     * 获取从库路由数据源, 未配置从库时返回 null
+     */
+    public static ReplicaRoutingDataSource getReadDataSource() {
+        return READ_DATA_SOURCE;
+    }
+
+    /**
+     * 获取分片路由, 未配置分片时返回 null
+     */
+    public static ShardRouter getShardRouter() {
+        return SHARD_ROUTER;
+    }
+
+    /**
+     * 在指定分片上执行数据库操作: 操作中的语句（包括 update 等不按实体路由的语句）都在这个分片上执行, 不使用当前线程的事务
+     * 分片上的语句自动提交, 不随事务回滚, 因此在事务中执行分片写入时抛出 IllegalStateException; 分片查询不受限制
+     */
+    public static <T> T onShard(int shard, Supplier<T> action) {
+        if (SHARD_ROUTER == null) {
+            throw new IllegalStateException("no shard is configured");
+        }
+        DataSource previous = SHARD_HOLDER.get();
+        SHARD_HOLDER.set(SHARD_ROUTER.getShard(shard));
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                SHARD_HOLDER.set(previous);
+            } else {
+                SHARD_HOLDER.remove();
+            }
+        }
+    }
+
+    /**
+     * 实体类是否需要按分片路由: 带有 @Sharded 注解, 配置了分片, 并且当前不在 onShard 中
+     */
+    private static boolean isSharded(Class<?> entityClass) {
+        return SHARD_ROUTER != null && SHARD_HOLDER.get() == null && entityClass.isAnnotationPresent(Sharded.class);
+    }
+
+    /**
+     * 分散到多个分片并行执行, 结果与 shardList 一一对应
+     * 第一个分片在当前线程中执行, 其它分片提交到数据库线程池; 线程池已满或者当前线程就是线程池的线程时在当前线程中执行.
+     */
+    private static <R> List<R> scatter(List<Integer> shardList, IntFunction<R> action) {
+        DatabaseExecutor executor = DatabaseExecutorHolder.EXECUTOR;
+        boolean parallel = shardList.size() > 1 && !executor.isExecutorThread();
+        List<CompletableFuture<R>> futureList = new ArrayList<>(shardList.size());
+        for (int i = 1; i < shardList.size() && parallel; i++) {
+            int shard = shardList.get(i);
+            futureList.add(executor.submit(DeadlineHelper.wrap(() -> onShard(shard, () -> action.apply(shard)))));
+        }
+        List<R> resultList = new ArrayList<>(shardList.size());
+        for (int i = 0; i < shardList.size(); i++) {
+            int shard = shardList.get(i);
+            if (i == 0 || !parallel) {
+                resultList.add(onShard(shard, () -> action.apply(shard)));
+                continue;
+            }
+            try {
+                resultList.add(futureList.get(i - 1).join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    resultList.add(onShard(shard, () -> action.apply(shard)));
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else {
+                    throw e;
+                }
+            }
+        }
+        return resultList;
+    }
+
+    /**
+     * 所有分片的下标
+     */
+    private static List<Integer> allShards() {
+        List<Integer> shardList = new ArrayList<>(SHARD_ROUTER.getShardCount());
+        for (int i = 0; i < SHARD_ROUTER.getShardCount(); i++) {
+            shardList.add(i);
+        }
+        return shardList;
+    }
+
+    /**
+     * 分片实体的主键, 插入分片实体时必须指定主键
+     */
+    private static Object getShardKey(EntityMeta entityMeta, Map<String, Object> fieldMap) {
+        Object id = fieldMap != null ? fieldMap.get(entityMeta.getIdFieldName()) : null;
+        if (id == null && fieldMap != null) {
+            id = fieldMap.get(entityMeta.getIdColumn());
+        }
+        if (id == null) {
+            throw new IllegalArgumentException("id is required to insert sharded entity " + entityMeta.getEntityClass().getName());
+        }
+        return id;
+    }
+
     /**
      * 获取数据库连接
+     * 连接绑定到当前线程, 直到事务结束或者调用 closeConnection()（DispatcherServlet 在每个请求结束时调用）
      */
     public static Connection getConnection() {
+        checkTransactionOwner("get connection");
         Connection conn = CONNECTION_HOLDER.get();
         if (conn == null) {
-            try {
-                conn = DATA_SOURCE.getConnection();
-            } catch (SQLException e) {
-                LOGGER.error("get connection failure", e);
-                throw new RuntimeException(e);
-            } finally {
-                CONNECTION_HOLDER.set(conn);
-            }
+            conn = borrowConnection(DATA_SOURCE);
+            CONNECTION_HOLDER.set(conn);
         }
         return conn;
     }
 
+    /**
+     * 归还当前线程绑定的连接, 未结束的事务会被回滚
+     */
+    public static void closeConnection() {
+        completeTransactionContext(false);
+        Connection conn = CONNECTION_HOLDER.get();
+        if (conn == null) {
+            return;
+        }
+        try {
+            if (!conn.getAutoCommit()) {
+                LOGGER.warn("transaction is not finished when closing connection, rollback");
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("rollback unfinished transaction failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            returnBoundConnection(conn);
+        }
+    }
+
+    /**
+     * 获取当前借出未归还的连接数量, 未开启泄漏检测时返回 -1
+     */
+    public static int getLeasedConnectionCount() {
+        return LEAK_DETECTOR != null ? LEAK_DETECTOR.getLeasedCount() : -1;
+    }
+
     /**
      * 开启事务
      */
     public static void beginTransaction() {
-        Connection conn = getConnection();
+        beginTransaction(false);
+    }
+
+    /**
+     * 开启事务
+     * @param readOnly 是否只读事务, 配置了从库时只读事务使用从库的连接
+     */
+    public static void beginTransaction(boolean readOnly) {
+        checkTransactionOwner("begin transaction");
+        checkNotGroupCommitUnit("begin transaction");
+        Connection conn = CONNECTION_HOLDER.get();
+        if (conn == null && readOnly && READ_DATA_SOURCE != null) {
+            conn = borrowConnection(READ_DATA_SOURCE);
+            CONNECTION_HOLDER.set(conn);
+        } else if (conn == null) {
+            conn = getConnection();
+        }
         if (conn != null) {
             try {
+                if (readOnly) {
+                    conn.setReadOnly(true);
+                }
                 conn.setAutoCommit(false);
             } catch (SQLException e) {
                 LOGGER.error("begin transaction failure", e);
@@ -86,16 +454,17 @@ public final class DatabaseHelper {
      * 提交事务
      */
     public static void commitTransaction() {
+        checkNotGroupCommitUnit("commit transaction");
+        completeTransactionContext(true);
         Connection conn = getConnection();
         if (conn != null) {
             try {
                 conn.commit();
-                conn.close();
             } catch (SQLException e) {
                 LOGGER.error("commit transaction failure", e);
                 throw new RuntimeException(e);
             } finally {
-                CONNECTION_HOLDER.remove();
+                returnBoundConnection(conn);
             }
         }
     }
@@ -104,119 +473,1190 @@ public final class DatabaseHelper {
      * 回滚事务
      */
     public static void rollbackTransaction() {
+        checkNotGroupCommitUnit("rollback transaction");
+        completeTransactionContext(false);
         Connection conn = getConnection();
         if (conn != null) {
             try {
                 conn.rollback();
-                conn.close();
             } catch (SQLException e) {
                 LOGGER.error("rollback transaction failure", e);
                 throw new RuntimeException(e);
             } finally {
-                CONNECTION_HOLDER.remove();
+                returnBoundConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * 以组提交的方式执行事务单元, 见 GroupCommitter
+     * 与其它线程在时间窗口（group_commit_window 微秒）内执行的单元合并为一个数据库事务, 提交后返回;
+     * 单元抛出异常时回滚到单元开始时的保存点, 不影响同一组的其它单元.
+     * 已经在事务中时直接执行, 加入当前事务; 组提交的时间窗口配置为 0 时作为单独的事务执行.
+     */
+    public static <T> T executeInGroupCommit(GroupCommitter.Unit<T> unit) throws Throwable {
+        if (isTransactionActive()) {
+            return unit.execute();
+        }
+        if (ConfigHelper.getJdbcGroupCommitWindow() <= 0) {
+            beginTransaction();
+            try {
+                T result = unit.execute();
+                commitTransaction();
+                return result;
+            } catch (Throwable e) {
+                rollbackTransaction();
+                throw e;
             }
         }
+        try {
+            return GroupCommitterHolder.COMMITTER.execute(unit);
+        } finally {
+            //提交后再使单元中修改的缓存失效一次
+            EntityCache.afterCompletion();
+            QueryCache.afterCompletion();
+        }
+    }
+
+    /**
+     * 当前线程是否在执行组提交的单元
+     */
+    public static boolean isGroupCommitUnit() {
+        return GROUP_COMMIT_UNIT_HOLDER.get() != null;
+    }
+
+    /**
+     * 获取组提交, 用于查看组和单元的数量
+     */
+    public static GroupCommitter getGroupCommitter() {
+        return GroupCommitterHolder.COMMITTER;
+    }
+
+    /**
+     * 获取当前线程的事务上下文, 不在事务中时返回 null
+     * 其它线程可以通过事务上下文加入这个事务, 见 TransactionContext 和 TransactionContextExecutor
+     */
+    public static TransactionContext getTransactionContext() {
+        TransactionContext transactionContext = TRANSACTION_CONTEXT_HOLDER.get();
+        if (transactionContext == null && isTransactionActive()) {
+            transactionContext = new TransactionContext(CONNECTION_HOLDER.get(), EntityCache.getTransactionState(),
+                    QueryCache.getTransactionState());
+            TRANSACTION_CONTEXT_HOLDER.set(transactionContext);
+        }
+        return transactionContext;
+    }
+
+    /**
+     * 当前线程加入其它线程的事务, 当前线程已经在这个事务中时返回 false
+     */
+    public static boolean attachTransactionContext(TransactionContext transactionContext) {
+        if (TRANSACTION_CONTEXT_HOLDER.get() == transactionContext) {
+            return false;
+        }
+        if (CONNECTION_HOLDER.get() != null) {
+            throw new IllegalStateException("can not join transaction: current thread is already bound to a connection");
+        }
+        if (transactionContext.isCompleted()) {
+            throw new IllegalStateException("can not join transaction: transaction is already completed");
+        }
+        CONNECTION_HOLDER.set(transactionContext.getConnection());
+        TRANSACTION_CONTEXT_HOLDER.set(transactionContext);
+        EntityCache.setTransactionState(transactionContext.getEntityCacheState());
+        QueryCache.setTransactionState(transactionContext.getQueryCacheState());
+        return true;
+    }
+
+    /**
+     * 当前线程退出加入的事务
+     */
+    public static void detachTransactionContext() {
+        CONNECTION_HOLDER.remove();
+        TRANSACTION_CONTEXT_HOLDER.remove();
+        EntityCache.setTransactionState(null);
+        QueryCache.setTransactionState(null);
     }
 
     /**
      * 查询实体
+     * 带有 @Cacheable 注解的实体类按主键查询（SELECT * FROM 表名 WHERE 主键列 = ?）时使用实体缓存
      */
     public static <T> T queryEntity(Class<T> entityClass, String sql, Object... params) {
-        T entity;
+        boolean sharded = isSharded(entityClass);
+        if (params.length == 1 && (BATCH_LOAD_WINDOW > 0 || EntityCache.isCacheable(entityClass) || sharded)
+                && EntityMeta.of(entityClass).isSelectByIdSql(sql)) {
+            return queryEntityById(entityClass, params[0]);
+        }
+        if (sharded) {
+            //不按主键的查询在所有分片上执行, 返回第一个分片中查到的实体
+            for (T entity : scatter(allShards(), shard -> doQueryEntity(entityClass, sql, params))) {
+                if (entity != null) {
+                    return entity;
+                }
+            }
+            return null;
+        }
+        return doQueryEntity(entityClass, sql, params);
+    }
+
+    /**
+     * 按主键查询实体, 带有 @Cacheable 注解的实体类先查询实体缓存
+     * 配置了 batch_load_window 时, 事务外并且没有截止时间的查询与其它线程在时间窗口内的查询合并为一条 IN 查询, 见 loadEntity
+     */
+    public static <T> T queryEntityById(Class<T> entityClass, Object id) {
+        if (BATCH_LOAD_WINDOW > 0 && !isTransactionActive() && !DeadlineHelper.hasDeadline()) {
+            CompletableFuture<T> future = loadEntity(entityClass, id);
+            return future instanceof EntityBatchLoader.LoadFuture ? ((EntityBatchLoader.LoadFuture<T>) future).await() : future.join();
+        }
+        if (isSharded(entityClass)) {
+            return onShard(SHARD_ROUTER.route(id), () -> queryEntityById(entityClass, id));
+        }
+        if (!EntityCache.isCacheable(entityClass)) {
+            return doQueryEntity(entityClass, EntityMeta.of(entityClass).getSelectByIdSql(), id);
+        }
+        T entity = EntityCache.get(entityClass, id);
+        if (entity == null) {
+            long version = EntityCache.getVersion(entityClass);
+            entity = doQueryEntity(entityClass, EntityMeta.of(entityClass).getSelectByIdSql(), id);
+            EntityCache.put(entityClass, id, entity, version, isTransactionActive());
+        }
+        return entity;
+    }
+
+    /**
+     * 按主键加载实体, 与其它线程以及本线程随后的 loadEntity 合并为一条 WHERE 主键 IN (...) 查询, 见 EntityBatchLoader
+     * 先对多个主键调用 loadEntity 再逐个 join, 只查询一次数据库. 带有 @Cacheable 注解的实体类先查询实体缓存;
+     * 事务中直接查询, 以便读到事务内的修改; 有截止时间时也直接查询, 合并查询在其它线程中执行, 不受调用者的截止时间约束.
+     */
+    public static <T> CompletableFuture<T> loadEntity(Class<T> entityClass, Object id) {
+        if (isTransactionActive() || DeadlineHelper.hasDeadline()) {
+            return CompletableFuture.completedFuture(queryEntityById(entityClass, id));
+        }
+        T entity = EntityCache.get(entityClass, id);
+        if (entity != null) {
+            return CompletableFuture.completedFuture(entity);
+        }
+        return getBatchLoader(entityClass).load(id);
+    }
+
+    /**
+     * 按主键列表加载实体, 只查询一次数据库, 返回的列表与主键列表一一对应, 不存在的实体为 null
+     * 有截止时间时在当前线程中执行 IN 查询, 不经过批量加载器
+     */
+    public static <T> List<T> loadEntities(Class<T> entityClass, Collection<?> idList) {
+        List<T> entityList = new ArrayList<>(idList.size());
+        if (isTransactionActive()) {
+            for (Object id : idList) {
+                entityList.add(queryEntityById(entityClass, id));
+            }
+            return entityList;
+        }
+        //缓存中没有的主键一次加入批量加载器
+        List<Object> missingIdList = new ArrayList<>();
+        for (Object id : idList) {
+            T entity = EntityCache.get(entityClass, id);
+            entityList.add(entity);
+            if (entity == null) {
+                missingIdList.add(id);
+            }
+        }
+        if (missingIdList.isEmpty()) {
+            return entityList;
+        }
+        if (DeadlineHelper.hasDeadline()) {
+            Map<Object, T> entityMap = new HashMap<>();
+            EntityMeta entityMeta = EntityMeta.of(entityClass);
+            for (int from = 0; from < missingIdList.size(); from += EntityBatchLoader.MAX_BATCH_SIZE) {
+                List<Object> batchIdList = missingIdList.subList(from, Math.min(from + EntityBatchLoader.MAX_BATCH_SIZE, missingIdList.size()));
+                for (T entity : queryEntitiesById(entityClass, batchIdList)) {
+                    entityMap.put(EntityBatchLoader.toKey(entityMeta.getFieldValue(entity, entityMeta.getIdFieldName())), entity);
+                }
+            }
+            for (int i = 0, missing = 0; i < entityList.size(); i++) {
+                if (entityList.get(i) == null) {
+                    entityList.set(i, entityMap.get(EntityBatchLoader.toKey(missingIdList.get(missing++))));
+                }
+            }
+            return entityList;
+        }
+        List<EntityBatchLoader.LoadFuture<T>> futureList = getBatchLoader(entityClass).loadAll(missingIdList);
+        for (int i = 0, missing = 0; i < entityList.size(); i++) {
+            if (entityList.get(i) == null) {
+                entityList.set(i, futureList.get(missing++).join());
+            }
+        }
+        return entityList;
+    }
+
+    /**
+     * 获取实体类的批量加载器
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityBatchLoader<T> getBatchLoader(Class<T> entityClass) {
+        return (EntityBatchLoader<T>) BATCH_LOADER_MAP.computeIfAbsent(entityClass, k -> new EntityBatchLoader<>(entityClass,
+                idList -> queryEntitiesById(entityClass, idList), Math.max(BATCH_LOAD_WINDOW, 1),
+                //在数据库线程池中执行, 线程池已满时在定时器线程中执行
+                command -> supplyAsync(() -> {
+                    command.run();
+                    return null;
+                }).whenComplete((result, e) -> {
+                    if (e != null) {
+                        command.run();
+                    }
+                })));
+    }
+
+    /**
+     * 执行批量加载器合并后的查询, IN 列表长度补齐到 2 的幂（重复最后一个主键）, 减少不同的 SQL
+     * 分片实体按主键所在的分片分组, 各分片并行查询
+     */
+    private static <T> List<T> queryEntitiesById(Class<T> entityClass, List<Object> idList) {
+        if (isSharded(entityClass)) {
+            Map<Integer, List<Object>> shardIdMap = new LinkedHashMap<>();
+            for (Object id : idList) {
+                shardIdMap.computeIfAbsent(SHARD_ROUTER.route(id), k -> new ArrayList<>()).add(id);
+            }
+            List<T> entityList = new ArrayList<>(idList.size());
+            for (List<T> shardEntityList : scatter(new ArrayList<>(shardIdMap.keySet()),
+                    shard -> queryEntitiesById(entityClass, shardIdMap.get(shard)))) {
+                entityList.addAll(shardEntityList);
+            }
+            return entityList;
+        }
+        long version = EntityCache.getVersion(entityClass);
+        int paddedSize = Integer.highestOneBit(idList.size());
+        if (paddedSize < idList.size()) {
+            paddedSize <<= 1;
+        }
+        Object[] params = new Object[paddedSize];
+        for (int i = 0; i < paddedSize; i++) {
+            params[i] = idList.get(Math.min(i, idList.size() - 1));
+        }
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        List<T> entityList = queryEntityList(entityClass, entityMeta.getSelectByIdsSql(paddedSize), params);
+        if (EntityCache.isCacheable(entityClass)) {
+            for (T entity : entityList) {
+                EntityCache.put(entityClass, entityMeta.getFieldValue(entity, entityMeta.getIdFieldName()), entity, version, false);
+            }
+        }
+        return entityList;
+    }
+
+    private static <T> T doQueryEntity(Class<T> entityClass, String sql, Object... params) {
+        T entity = null;
+        Connection conn = acquireReadConnection();
+        long startNanos = System.nanoTime();
+        long rows = -1;
         try {
-            Connection conn = getConnection();
-            entity = QUERY_RUNNER.query(conn, sql, new BeanHandler<T>(entityClass), params);
+            entity = QUERY_RUNNER.query(conn, sql, new EntityHandler<T>(entityClass), params);
+            rows = entity != null ? 1 : 0;
         } catch (SQLException e) {
             LOGGER.error("query entity failure", e);
             throw new RuntimeException(e);
+        } finally {
+            releaseConnection(conn);
+            SqlStatistics.record(sql, params, startNanos, rows);
         }
         return entity;
     }
 
     /**
      * 查询实体列表
+     * 分片实体在所有分片上并行查询, 依次合并各分片的结果, 所以 ORDER BY 和 LIMIT 只在每个分片内有效
      */
     public static <T> List<T> queryEntityList(Class<T> entityClass, String sql, Object... params) {
-        List<T> entityList;
+        return queryList(entityClass, new EntityListHandler<T>(entityClass), sql, params);
+    }
+
+    /**
+     * 查询实体类对应的表, 用指定的结果集处理器把结果集转换为列表（如投影类型的列表, 见 EntityQuery）
+     * 与 queryEntityList 相同, 分片实体在所有分片上并行查询并合并结果
+     */
+    public static <R> List<R> queryList(Class<?> entityClass, ResultSetHandler<List<R>> handler, String sql, Object... params) {
+        if (isSharded(entityClass)) {
+            List<R> entityList = new ArrayList<>();
+            for (List<R> shardEntityList : scatter(allShards(), shard -> queryList(entityClass, handler, sql, params))) {
+                entityList.addAll(shardEntityList);
+            }
+            return entityList;
+        }
+        List<R> entityList = null;
+        Connection conn = acquireReadConnection();
+        long startNanos = System.nanoTime();
         try {
-            Connection conn = getConnection();
-            entityList = QUERY_RUNNER.query(conn, sql, new BeanListHandler<T>(entityClass), params);
+            entityList = QUERY_RUNNER.query(conn, sql, handler, params);
         } catch (SQLException e) {
             LOGGER.error("query entity list failure", e);
             throw new RuntimeException(e);
+        } finally {
+            releaseConnection(conn);
+            SqlStatistics.record(sql, params, startNanos, entityList != null ? entityList.size() : -1);
         }
         return entityList;
     }
 
     /**
-     * 执行更新语句（包括：update、insert、delete）
+     * 按主键分页查询实体, 见 queryEntityPage(Class, String, boolean, int, String)
      */
-    public static int update(String sql, Object... params) {
-        int rows;
-        try {
-            Connection conn = getConnection();
-            rows = QUERY_RUNNER.update(conn, sql, params);
-        } catch (SQLException e) {
-            LOGGER.error("execute update failure", e);
-            throw new RuntimeException(e);
-        }
-        return rows;
+    public static <T> Page<T> queryEntityPage(Class<T> entityClass, int pageSize, String pageToken) {
+        return queryEntityPage(entityClass, EntityMeta.of(entityClass).getIdFieldName(), true, pageSize, pageToken);
     }
 
     /**
-     * 插入实体
+     * 键集分页查询实体
+     * 按 orderField 和主键排序, 每页从上一页最后一行之后开始（WHERE 列 > 上一页最后的值）而不是 OFFSET, 所以翻到多深代价都相同.
+     * orderField 对应的列应该有索引（最好是该列和主键的联合索引）, 并且不能为 NULL.
+     * pageToken 为上一页的 nextToken, 第一页为 null; 令牌只能用于相同的 orderField 和排序方向.
+     * 分片实体在每个分片上各查一页, 合并排序后取前 pageSize 行.
      */
-    public static <T> boolean insertEntity(Class<T> entityClass, Map<String, Object> fieldMap) {
-        if (MapUtils.isEmpty(fieldMap)) {
-            LOGGER.error("can not insert entity: fieldMap is empty");
-            return false;
+    public static <T> Page<T> queryEntityPage(Class<T> entityClass, String orderField, boolean ascending, int pageSize, String pageToken) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive: " + pageSize);
         }
-
-        String sql = "INSERT INTO " + entityClass.getSimpleName();
-        StringBuilder columns = new StringBuilder("(");
-        StringBuilder values = new StringBuilder("(");
-        for (String fieldName : fieldMap.keySet()) {
-            columns.append(fieldName).append(", ");
-            values.append("?, ");
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        //多查一行, 判断是否有下一页
+        List<T> entityList;
+        if (pageToken == null) {
+            entityList = queryEntityList(entityClass, entityMeta.getKeysetSql(orderField, ascending, true), pageSize + 1);
+        } else {
+            Object[] lastKey = decodePageToken(entityMeta, orderField, ascending, pageToken);
+            Object[] params = orderField.equals(entityMeta.getIdFieldName())
+                    ? new Object[]{lastKey[1], pageSize + 1} : new Object[]{lastKey[0], lastKey[0], lastKey[1], pageSize + 1};
+            entityList = queryEntityList(entityClass, entityMeta.getKeysetSql(orderField, ascending, false), params);
         }
-        columns.replace(columns.lastIndexOf(", "), columns.length(), ")");
-        values.replace(values.lastIndexOf(", "), values.length(), ")");
-        sql += columns + " VALUES " + values;
-
-        Object[] params = fieldMap.values().toArray();
-
-        return update(sql, params) == 1;
+        if (isSharded(entityClass)) {
+            sortPage(entityMeta, orderField, ascending, entityList);
+        }
+        if (entityList.size() <= pageSize) {
+            return new Page<>(entityList, null);
+        }
+        entityList = new ArrayList<>(entityList.subList(0, pageSize));
+        return new Page<>(entityList, encodePageToken(entityMeta, orderField, ascending, entityList.get(pageSize - 1)));
     }
 
     /**
-     * 更新实体
+     * 合并多个分片的一页时, 按排序属性和主键重新排序
      */
-    public static <T> boolean updateEntity(Class<T> entityClass, long id, Map<String, Object> fieldMap) {
-        if (MapUtils.isEmpty(fieldMap)) {
-            LOGGER.error("can not update entity: fieldMap is empty");
-            return false;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void sortPage(EntityMeta entityMeta, String orderField, boolean ascending, List<?> entityList) {
+        String idFieldName = entityMeta.getIdFieldName();
+        Comparator<Object> comparator = Comparator.comparing(entity -> (Comparable) entityMeta.getFieldValue(entity, orderField));
+        if (!orderField.equals(idFieldName)) {
+            comparator = comparator.thenComparing(entity -> (Comparable) entityMeta.getFieldValue(entity, idFieldName));
         }
+        entityList.sort(ascending ? comparator : comparator.reversed());
+    }
 
-        String sql = "UPDATE " + entityClass.getSimpleName() + " SET ";
-        StringBuilder columns = new StringBuilder();
-        for (String fieldName : fieldMap.keySet()) {
-            columns.append(fieldName).append(" = ?, ");
-        }
-        sql += columns.substring(0, columns.lastIndexOf(", ")) + " WHERE id = ?";
+    /**
+     * 分页令牌: 排序属性, 排序方向, 最后一行的排序值和主键组成的 JSON 数组, 再做 URL 安全的 Base64 编码
+     */
+    private static String encodePageToken(EntityMeta entityMeta, String orderField, boolean ascending, Object lastEntity) {
+        Object orderValue = entityMeta.getFieldValue(lastEntity, orderField);
+        if (orderValue == null) {
+            throw new RuntimeException("order field " + orderField + " of entity " + entityMeta.getEntityClass().getName() + " is null");
+        }
+        Object id = entityMeta.getFieldValue(lastEntity, entityMeta.getIdFieldName());
+        String json = JSON.toJSONString(new Object[]{orderField, ascending, orderValue, id});
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析分页令牌, 返回最后一行的排序值和主键
+     */
+    private static Object[] decodePageToken(EntityMeta entityMeta, String orderField, boolean ascending, String pageToken) {
+        List<Object> key;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            key = JSON.parseArray(json, new Type[]{String.class, Boolean.class,
+                    entityMeta.getFieldType(orderField), entityMeta.getFieldType(entityMeta.getIdFieldName())});
+        } catch (IllegalArgumentException | JSONException e) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken, e);
+        }
+        if (key == null || key.size() != 4 || key.get(2) == null || key.get(3) == null) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken);
+        }
+        if (!orderField.equals(key.get(0)) || !Boolean.valueOf(ascending).equals(key.get(1))) {
+            throw new IllegalArgumentException("page token does not match order " + orderField + (ascending ? " ASC" : " DESC"));
+        }
+        return new Object[]{key.get(2), key.get(3)};
+    }
+
+    /**
+     * 查询实体列表, 使用查询结果缓存
+     * 以 SQL 和参数为键缓存结果, 更新语句（包括 insertEntity, updateEntity 等）修改了查询读取的表时缓存失效,
+     * 在事务中修改时事务结束后失效. 适合频繁执行且读取的表很少修改的查询, 见 QueryCache.
+     * 查询结果缓存默认关闭, 配置了 query_cache_max_size 才使用, 否则直接查询.
+     */
+    public static <T> List<T> queryCachedEntityList(Class<T> entityClass, String sql, Object... params) {
+        if (!QueryCache.isEnabled()) {
+            return queryEntityList(entityClass, sql, params);
+        }
+        return QueryCache.query(entityClass, sql, params, isTransactionActive(), () -> queryEntityList(entityClass, sql, params));
+    }
+
+    /**
+     * 流式查询实体
+     * 不把结果集全部读入内存, 而是在遍历 Stream 时逐行读取, 每次从数据库取 fetch_size 行（MySQL 默认使用流式结果集）.
+     * 当前线程开启了事务时使用事务的连接, 否则单独获取一个连接; 读完最后一行或者关闭 Stream 时释放结果集和单独获取的连接,
+     * 所以提前结束遍历时必须关闭 Stream（如使用 try-with-resources）.
+     * 分片实体依次查询每个分片: 遍历到一个分片时才在这个分片上执行查询, 同一时间只占用一个分片的连接, 结果按分片顺序而不是整体排序;
+     * 在 onShard 中时只查询这个分片.
+     */
+    public static <T> Stream<T> queryEntityStream(Class<T> entityClass, String sql, Object... params) {
+        if (isSharded(entityClass)) {
+            return allShards().stream().flatMap(shard -> onShard(shard, () -> queryEntityStream(entityClass, sql, params)));
+        }
+        checkTransactionOwner("query entity stream");
+        DeadlineHelper.check("query entity stream");
+        DataSource shard = SHARD_HOLDER.get();
+        Connection txConn = CONNECTION_HOLDER.get();
+        Connection conn;
+        try {
+            if (shard != null) {
+                conn = borrowConnection(shard);
+            } else {
+                conn = txConn != null && !txConn.getAutoCommit() ? txConn : borrowConnection(getReadDataSourceOutsideTransaction());
+            }
+        } catch (SQLException e) {
+            LOGGER.error("query entity stream failure", e);
+            throw new RuntimeException(e);
+        }
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        long startNanos = System.nanoTime();
+        //流式结果集读完之前连接上不能执行其它语句, 所以事务外不使用线程上的连接
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            DeadlineHelper.applyQueryTimeout(stmt);
+            QUERY_RUNNER.fillStatement(stmt, params);
+            rs = stmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.error("query entity stream failure", e);
+            SqlStatistics.record(sql, params, startNanos, -1);
+            DbUtils.closeQuietly(stmt);
+            DbUtils.closeQuietly(rs);
+            if (conn != txConn) {
+                returnConnection(conn);
+            }
+            throw new RuntimeException(e);
+        }
 
-        List<Object> paramList = new ArrayList<Object>();
-        paramList.addAll(fieldMap.values());
-        paramList.add(id);
-        Object[] params = paramList.toArray();
+        //统计执行查询的耗时（不包括遍历的时间）, 行数在关闭时计入
+        long executeNanos = System.nanoTime() - startNanos;
+        Connection streamConn = conn == txConn ? null : conn;
+        ResultSet streamRs = rs;
+        PreparedStatement streamStmt = stmt;
+        ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(entityClass, rs, rowCount -> {
+            SqlStatistics.record(sql, params, System.nanoTime() - executeNanos, rowCount);
+            DbUtils.closeQuietly(streamRs);
+            DbUtils.closeQuietly(streamStmt);
+            if (streamConn != null) {
+                returnConnection(streamConn);
+            }
+        });
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
 
-        return update(sql, params) == 1;
+    /**
+     * 流式遍历实体, 遍历结束（包括出错）后释放资源
+     */
+    public static <T> void forEachEntity(Class<T> entityClass, Consumer<? super T> action, String sql, Object... params) {
+        try (Stream<T> entityStream = queryEntityStream(entityClass, sql, params)) {
+            entityStream.forEach(action);
+        }
+    }
+
+    /**
+     * 执行更新语句（包括：update、insert、delete）
+     */
+    public static int update(String sql, Object... params) {
+        checkNoShardWriteInTransaction();
+        int rows = -1;
+        Connection conn = acquireConnection();
+        long startNanos = System.nanoTime();
+        try {
+            rows = QUERY_RUNNER.update(conn, sql, params);
+        } catch (SQLException e) {
+            LOGGER.error("execute update failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            releaseConnection(conn);
+            SqlStatistics.record(sql, params, startNanos, rows);
+        }
+        invalidateQueryCache(sql);
+        return rows;
+    }
+
+    /**
+     * 插入实体
+     * SQL 按列集合缓存, 见 EntityMeta
+     */
+    public static <T> boolean insertEntity(Class<T> entityClass, Map<String, Object> fieldMap) {
+        if (MapUtils.isEmpty(fieldMap)) {
+            LOGGER.error("can not insert entity: fieldMap is empty");
+            return false;
+        }
+        if (isSharded(entityClass)) {
+            Object id = getShardKey(EntityMeta.of(entityClass), fieldMap);
+            return onShard(SHARD_ROUTER.route(id), () -> insertEntity(entityClass, fieldMap));
+        }
+
+        SqlTemplate sqlTemplate = EntityMeta.of(entityClass).getInsertTemplate(fieldMap.keySet());
+        return update(sqlTemplate.getSql(), sqlTemplate.getParams(fieldMap)) == 1;
+    }
+
+    /**
+     * 更新实体
+     * 带有 @WriteBehind 注解的实体类在事务外只合并到延迟写入缓冲区, 稍后批量写入, 见 WriteBehindBuffer
+     */
+    public static <T> boolean updateEntity(Class<T> entityClass, long id, Map<String, Object> fieldMap) {
+        if (MapUtils.isEmpty(fieldMap)) {
+            LOGGER.error("can not update entity: fieldMap is empty");
+            return false;
+        }
+        if (isSharded(entityClass)) {
+            Map<String, Object> shardFieldMap = fieldMap;
+            return onShard(SHARD_ROUTER.route(id), () -> updateEntity(entityClass, id, shardFieldMap));
+        }
+
+        WriteBehindBuffer writeBehindBuffer = getWriteBehindBuffer(entityClass);
+        if (writeBehindBuffer != null) {
+            if (!isTransactionActive()) {
+                //延迟写入, 不知道行是否存在; 先检查属性, 不让未知属性进入缓冲区
+                EntityMeta.of(entityClass).getUpdateTemplate(fieldMap.keySet());
+                writeBehindBuffer.update(id, fieldMap);
+                return true;
+            }
+            //事务中直接写入: 缓冲中未写入的属性先在事务外写入, 事务回滚时不会丢失
+            writeBehindBuffer.flush(Collections.singleton(id));
+        }
+
+        SqlTemplate sqlTemplate = EntityMeta.of(entityClass).getUpdateTemplate(fieldMap.keySet());
+        boolean updated = update(sqlTemplate.getSql(), sqlTemplate.getParams(fieldMap, id)) == 1;
+        invalidateEntity(entityClass, id);
+        return updated;
     }
 
     /**
      * 删除实体
      */
     public static <T> boolean deleteEntity(Class<T> entityClass, long id) {
-        String sql = "DELETE FROM " + entityClass.getSimpleName() + " WHERE id = ?";
-        return update(sql, id) == 1;
+        if (isSharded(entityClass)) {
+            return onShard(SHARD_ROUTER.route(id), () -> deleteEntity(entityClass, id));
+        }
+        discardWriteBehind(entityClass, id);
+        boolean deleted = update(EntityMeta.of(entityClass).getDeleteSql(), id) == 1;
+        invalidateEntity(entityClass, id);
+        return deleted;
+    }
+
+    /**
+     * 批量插入实体
+     * 按列集合分组, 每组使用同一条 SQL 批量执行; 在当前线程的事务（如果有）中执行
+     * @return 每一行影响的行数, 顺序与 fieldMapList 一致; 驱动不返回行数时为 Statement.SUCCESS_NO_INFO
+     */
+    public static <T> int[] insertEntities(Class<T> entityClass, List<Map<String, Object>> fieldMapList) {
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        SqlTemplate[] sqlTemplates = new SqlTemplate[fieldMapList.size()];
+        Object[][] paramsArray = new Object[fieldMapList.size()][];
+        Object[] ids = new Object[fieldMapList.size()];
+        boolean sharded = isSharded(entityClass);
+        for (int i = 0; i < sqlTemplates.length; i++) {
+            Map<String, Object> fieldMap = fieldMapList.get(i);
+            if (MapUtils.isEmpty(fieldMap)) {
+                throw new RuntimeException("can not insert entities: fieldMap at index " + i + " is empty");
+            }
+            sqlTemplates[i] = entityMeta.getInsertTemplate(fieldMap.keySet());
+            paramsArray[i] = sqlTemplates[i].getParams(fieldMap);
+            ids[i] = sharded ? getShardKey(entityMeta, fieldMap) : null;
+        }
+        return executeBatch(entityClass, ids, sqlTemplates, paramsArray);
+    }
+
+    /**
+     * 批量更新实体
+     * @param idFieldMap 主键 - 要更新的属性, 按列集合分组批量执行
+     * @return 每一行影响的行数, 顺序与 idFieldMap 的迭代顺序一致
+     */
+    public static <T> int[] updateEntities(Class<T> entityClass, Map<Long, Map<String, Object>> idFieldMap) {
+        WriteBehindBuffer writeBehindBuffer = getWriteBehindBuffer(entityClass);
+        if (writeBehindBuffer != null) {
+            //缓冲中未写入的属性先在事务外写入, 之后不会覆盖这次写入的值, 事务回滚时也不会丢失
+            writeBehindBuffer.flush(idFieldMap.keySet());
+        }
+        return doUpdateEntities(entityClass, idFieldMap);
+    }
+
+    private static <T> int[] doUpdateEntities(Class<T> entityClass, Map<Long, Map<String, Object>> idFieldMap) {
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        SqlTemplate[] sqlTemplates = new SqlTemplate[idFieldMap.size()];
+        Object[][] paramsArray = new Object[idFieldMap.size()][];
+        Object[] ids = new Object[idFieldMap.size()];
+        int i = 0;
+        for (Map.Entry<Long, Map<String, Object>> idFieldEntry : idFieldMap.entrySet()) {
+            Map<String, Object> fieldMap = idFieldEntry.getValue();
+            if (MapUtils.isEmpty(fieldMap)) {
+                throw new RuntimeException("can not update entities: fieldMap of id " + idFieldEntry.getKey() + " is empty");
+            }
+            sqlTemplates[i] = entityMeta.getUpdateTemplate(fieldMap.keySet());
+            paramsArray[i] = sqlTemplates[i].getParams(fieldMap, idFieldEntry.getKey());
+            ids[i] = idFieldEntry.getKey();
+            i++;
+        }
+        int[] counts = executeBatch(entityClass, ids, sqlTemplates, paramsArray);
+        for (Long id : idFieldMap.keySet()) {
+            invalidateEntity(entityClass, id);
+        }
+        return counts;
+    }
+
+    /**
+     * 批量删除实体
+     * @return 每一行影响的行数, 顺序与 idList 一致
+     */
+    public static <T> int[] deleteEntities(Class<T> entityClass, List<Long> idList) {
+        for (Long id : idList) {
+            discardWriteBehind(entityClass, id);
+        }
+        String sql = EntityMeta.of(entityClass).getDeleteSql();
+        SqlTemplate sqlTemplate = new SqlTemplate(sql, new String[0]);
+        SqlTemplate[] sqlTemplates = new SqlTemplate[idList.size()];
+        Object[][] paramsArray = new Object[idList.size()][];
+        for (int i = 0; i < sqlTemplates.length; i++) {
+            sqlTemplates[i] = sqlTemplate;
+            paramsArray[i] = new Object[]{idList.get(i)};
+        }
+        int[] counts = executeBatch(entityClass, idList.toArray(), sqlTemplates, paramsArray);
+        for (Long id : idList) {
+            invalidateEntity(entityClass, id);
+        }
+        return counts;
+    }
+
+    /**
+     * 获取实体类的延迟写入缓冲区, 实体类没有 @WriteBehind 注解时返回 null
+     * 第一次创建缓冲区时注册 JVM 关闭钩子, 关闭时写入所有缓冲的更新
+     */
+    public static WriteBehindBuffer getWriteBehindBuffer(Class<?> entityClass) {
+        Optional<WriteBehindBuffer> writeBehindBuffer = WRITE_BEHIND_BUFFER_MAP.get(entityClass);
+        if (writeBehindBuffer == null) {
+            writeBehindBuffer = WRITE_BEHIND_BUFFER_MAP.computeIfAbsent(entityClass, DatabaseHelper::createWriteBehindBuffer);
+        }
+        return writeBehindBuffer.orElse(null);
+    }
+
+    /**
+     * 写入所有延迟写入缓冲区中的更新, 应用关闭时调用
+     */
+    public static void flushWriteBehind() {
+        for (Optional<WriteBehindBuffer> writeBehindBuffer : WRITE_BEHIND_BUFFER_MAP.values()) {
+            if (writeBehindBuffer.isPresent()) {
+                try {
+                    writeBehindBuffer.get().flush();
+                } catch (RuntimeException e) {
+                    LOGGER.error("flush write behind buffer failure", e);
+                }
+            }
+        }
+    }
+
+    private static Optional<WriteBehindBuffer> createWriteBehindBuffer(Class<?> entityClass) {
+        WriteBehind writeBehind = entityClass.getAnnotation(WriteBehind.class);
+        if (writeBehind == null) {
+            return Optional.empty();
+        }
+        WriteBehindHookHolder.register();
+        return Optional.of(new WriteBehindBuffer(entityClass, idFieldMap -> runOutsideTransaction(() -> doUpdateEntities(entityClass, idFieldMap)),
+                writeBehind.flushSize(), writeBehind.maxSize(), writeBehind.flushInterval()));
+    }
+
+    /**
+     * 删除实体之前丢弃缓冲中未写入的更新; 在事务中时改为先在事务外写入, 删除回滚时更新不会丢失
+     */
+    private static void discardWriteBehind(Class<?> entityClass, long id) {
+        WriteBehindBuffer writeBehindBuffer = getWriteBehindBuffer(entityClass);
+        if (writeBehindBuffer == null) {
+            return;
+        }
+        if (isTransactionActive()) {
+            writeBehindBuffer.flush(Collections.singleton(id));
+        } else {
+            writeBehindBuffer.take(id);
+        }
+    }
+
+    /**
+     * 在事务外执行: 暂时解除线程上绑定的连接和事务, 其中的语句借出新连接自动提交, 结束后恢复
+     */
+    private static <R> R runOutsideTransaction(Supplier<R> action) {
+        Connection previousConn = CONNECTION_HOLDER.get();
+        TransactionContext previousContext = TRANSACTION_CONTEXT_HOLDER.get();
+        Boolean previousGroupCommitUnit = GROUP_COMMIT_UNIT_HOLDER.get();
+        if (previousConn == null && previousContext == null) {
+            return action.get();
+        }
+        CONNECTION_HOLDER.remove();
+        TRANSACTION_CONTEXT_HOLDER.remove();
+        GROUP_COMMIT_UNIT_HOLDER.remove();
+        try {
+            return action.get();
+        } finally {
+            //请求作用域时执行期间绑定的新连接
+            Connection conn = CONNECTION_HOLDER.get();
+            if (conn != null) {
+                CONNECTION_HOLDER.remove();
+                returnConnection(conn);
+            }
+            if (previousConn != null) {
+                CONNECTION_HOLDER.set(previousConn);
+            }
+            if (previousContext != null) {
+                TRANSACTION_CONTEXT_HOLDER.set(previousContext);
+            }
+            if (previousGroupCommitUnit != null) {
+                GROUP_COMMIT_UNIT_HOLDER.set(previousGroupCommitUnit);
+            }
+        }
+    }
+
+    /**
+     * 异步查询实体, 见 supplyAsync
+     */
+    public static <T> CompletableFuture<T> queryEntityAsync(Class<T> entityClass, String sql, Object... params) {
+        return supplyAsync(() -> queryEntity(entityClass, sql, params));
+    }
+
+    /**
+     * 异步查询实体列表, 见 supplyAsync
+     */
+    public static <T> CompletableFuture<List<T>> queryEntityListAsync(Class<T> entityClass, String sql, Object... params) {
+        return supplyAsync(() -> queryEntityList(entityClass, sql, params));
+    }
+
+    /**
+     * 异步执行更新语句, 见 supplyAsync
+     */
+    public static CompletableFuture<Integer> updateAsync(String sql, Object... params) {
+        return supplyAsync(() -> update(sql, params));
+    }
+
+    /**
+     * 在数据库线程池中执行数据库操作, 请求线程不等待数据库
+     * 线程数默认与连接池大小相同, 等待队列有界, 队列已满时返回的 CompletableFuture 以 RejectedExecutionException 失败.
+     * 当前线程在事务中时, 操作作为事务的子任务加入同一个事务（见 TransactionContext）, 提交事务之前会等待这些操作完成.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> action) {
+        DatabaseExecutor executor = DatabaseExecutorHolder.EXECUTOR;
+        TransactionContext transactionContext = getTransactionContext();
+        if (transactionContext == null) {
+            //使用当前请求的截止时间
+            Supplier<T> deadlineAction = DeadlineHelper.wrap(action);
+            return executor.submit(() -> {
+                try {
+                    return deadlineAction.get();
+                } finally {
+                    //请求范围的连接或者未结束的事务
+                    closeConnection();
+                }
+            });
+        }
+        TransactionContext.Task<T> task = transactionContext.wrap((Callable<T>) action::get);
+        CompletableFuture<T> future = executor.submit(task);
+        if (future.isCompletedExceptionally()) {
+            //被拒绝时任务不会执行
+            task.cancel();
+        }
+        return future;
+    }
+
+    /**
+     * 获取数据库线程池
+     */
+    public static DatabaseExecutor getDatabaseExecutor() {
+        return DatabaseExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * 批量执行实体的语句, 分片实体按每一行的主键分到各分片, 依次在各分片上批量执行
+     */
+    private static int[] executeBatch(Class<?> entityClass, Object[] ids, SqlTemplate[] sqlTemplates, Object[][] paramsArray) {
+        if (!isSharded(entityClass)) {
+            return executeBatch(sqlTemplates, paramsArray);
+        }
+        //分片 - 该分片的行号
+        Map<Integer, List<Integer>> shardRowMap = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            shardRowMap.computeIfAbsent(SHARD_ROUTER.route(ids[i]), k -> new ArrayList<>()).add(i);
+        }
+        int[] counts = new int[ids.length];
+        for (Map.Entry<Integer, List<Integer>> shardRowEntry : shardRowMap.entrySet()) {
+            List<Integer> rowList = shardRowEntry.getValue();
+            SqlTemplate[] shardSqlTemplates = new SqlTemplate[rowList.size()];
+            Object[][] shardParamsArray = new Object[rowList.size()][];
+            for (int i = 0; i < shardSqlTemplates.length; i++) {
+                shardSqlTemplates[i] = sqlTemplates[rowList.get(i)];
+                shardParamsArray[i] = paramsArray[rowList.get(i)];
+            }
+            int[] shardCounts = onShard(shardRowEntry.getKey(), () -> executeBatch(shardSqlTemplates, shardParamsArray));
+            for (int i = 0; i < shardCounts.length; i++) {
+                counts[rowList.get(i)] = shardCounts[i];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 批量执行: 使用同一个 SQL 模板的行放到同一个 PreparedStatement 中, 每 batch_size 行执行一次 executeBatch
+     */
+    private static int[] executeBatch(SqlTemplate[] sqlTemplates, Object[][] paramsArray) {
+        checkNoShardWriteInTransaction();
+        int[] counts = new int[sqlTemplates.length];
+        if (counts.length == 0) {
+            return counts;
+        }
+        //SQL 模板 - 使用该模板的行号, SQL 模板由 EntityMeta 缓存, 同一列集合是同一个对象
+        Map<SqlTemplate, List<Integer>> rowIndexMap = new LinkedHashMap<>();
+        for (int i = 0; i < sqlTemplates.length; i++) {
+            rowIndexMap.computeIfAbsent(sqlTemplates[i], k -> new ArrayList<>()).add(i);
+        }
+
+        int batchSize = Math.max(ConfigHelper.getJdbcBatchSize(), 1);
+        Connection conn = acquireConnection();
+        try {
+            for (Map.Entry<SqlTemplate, List<Integer>> rowIndexEntry : rowIndexMap.entrySet()) {
+                List<Integer> rowIndexList = rowIndexEntry.getValue();
+                try (PreparedStatement stmt = conn.prepareStatement(rowIndexEntry.getKey().getSql())) {
+                    int batchStart = 0;
+                    for (int i = 0; i < rowIndexList.size(); i++) {
+                        QUERY_RUNNER.fillStatement(stmt, paramsArray[rowIndexList.get(i)]);
+                        stmt.addBatch();
+                        if (i + 1 - batchStart == batchSize || i + 1 == rowIndexList.size()) {
+                            String sql = rowIndexEntry.getKey().getSql();
+                            Object[] sampleParams = sampleBatchParams(paramsArray, rowIndexList, batchStart, i + 1);
+                            //每次执行前按剩余时间重新设置查询超时
+                            DeadlineHelper.applyQueryTimeout(stmt);
+                            long startNanos = System.nanoTime();
+                            int[] batchCounts;
+                            try {
+                                batchCounts = stmt.executeBatch();
+                            } catch (SQLException e) {
+                                SqlStatistics.record(sql, sampleParams, startNanos, -1);
+                                throw e;
+                            }
+                            long rows = 0;
+                            for (int j = 0; j < batchCounts.length; j++) {
+                                counts[rowIndexList.get(batchStart + j)] = batchCounts[j];
+                                //驱动不返回行数（SUCCESS_NO_INFO）时按一行计
+                                rows += batchCounts[j] >= 0 ? batchCounts[j] : 1;
+                            }
+                            SqlStatistics.record(sql, sampleParams, startNanos, rows);
+                            batchStart = i + 1;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.error("execute batch failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            releaseConnection(conn);
+        }
+        for (SqlTemplate sqlTemplate : rowIndexMap.keySet()) {
+            invalidateQueryCache(sqlTemplate.getSql());
+        }
+        return counts;
+    }
+
+    /**
+     * 慢查询日志中记录的批量执行的参数: 这一次 executeBatch 的前 MAX_LOGGED_BATCH_ROWS 行参数, 每行是一个参数数组
+     */
+    private static Object[] sampleBatchParams(Object[][] paramsArray, List<Integer> rowIndexList, int fromIndex, int toIndex) {
+        Object[] sampleParams = new Object[Math.min(toIndex - fromIndex, MAX_LOGGED_BATCH_ROWS)];
+        for (int i = 0; i < sampleParams.length; i++) {
+            sampleParams[i] = paramsArray[rowIndexList.get(fromIndex + i)];
+        }
+        return sampleParams;
+    }
+
+    /**
+     * 流式查询的 fetch size: 配置的值; 未配置时, MySQL 在未开启 useCursorFetch 时使用 Integer.MIN_VALUE（逐行流式读取）
+     */
+    private static int getStreamFetchSize() {
+        int fetchSize = ConfigHelper.getJdbcFetchSize();
+        if (fetchSize != 0) {
+            return fetchSize;
+        }
+        String url = ConfigHelper.getJdbcUrl();
+        if (url != null && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return DEFAULT_STREAM_FETCH_SIZE;
+    }
+
+    /**
+     * 获取执行一条语句的连接: 在 onShard 中时借出一个分片的连接; 线程上已绑定的连接（事务或请求内）;
+     * 请求作用域时绑定一个新连接; 否则借出一个新连接
+     */
+    private static Connection acquireConnection() {
+        DataSource shard = SHARD_HOLDER.get();
+        if (shard != null) {
+            return borrowConnection(shard);
+        }
+        Connection conn = CONNECTION_HOLDER.get();
+        if (conn != null) {
+            //多个线程共用事务的连接时, 依次执行语句
+            TransactionContext transactionContext = TRANSACTION_CONTEXT_HOLDER.get();
+            if (transactionContext != null) {
+                transactionContext.lock();
+            }
+            return conn;
+        }
+        return REQUEST_SCOPED_CONNECTION ? getConnection() : borrowConnection(DATA_SOURCE);
+    }
+
+    /**
+     * 获取执行一条查询的连接: 线程上已绑定的连接; 配置了事务外读从库时借出一个从库连接; 否则同 acquireConnection()
+     */
+    private static Connection acquireReadConnection() {
+        if (SHARD_HOLDER.get() == null && CONNECTION_HOLDER.get() == null && READ_DATA_SOURCE != null && NON_TRANSACTIONAL_READ) {
+            return borrowConnection(READ_DATA_SOURCE);
+        }
+        return acquireConnection();
+    }
+
+    /**
+     * 事务外查询使用的数据源
+     */
+    private static DataSource getReadDataSourceOutsideTransaction() {
+        return READ_DATA_SOURCE != null && NON_TRANSACTIONAL_READ ? READ_DATA_SOURCE : DATA_SOURCE;
+    }
+
+    /**
+     * 语句执行完后归还连接, 线程上绑定的连接除外
+     */
+    private static void releaseConnection(Connection conn) {
+        if (conn != CONNECTION_HOLDER.get()) {
+            returnConnection(conn);
+            return;
+        }
+        TransactionContext transactionContext = TRANSACTION_CONTEXT_HOLDER.get();
+        if (transactionContext != null) {
+            transactionContext.unlock();
+        }
+    }
+
+    /**
+     * 从连接池借出连接
+     * 内置连接池最多等待到请求截止时间, 因截止时间超时时抛出 DeadlineExceededException;
+     * DBCP 不能按次限制等待时间, 借出后已超过截止时间时归还连接并抛出 DeadlineExceededException
+     */
+    private static Connection borrowConnection(DataSource dataSource) {
+        DeadlineHelper.check("getting connection");
+        Connection conn;
+        try {
+            if (!DeadlineHelper.hasDeadline()) {
+                conn = dataSource.getConnection();
+            } else if (dataSource instanceof PooledDataSource) {
+                conn = ((PooledDataSource) dataSource).getConnection(DeadlineHelper.getRemainingMillis());
+            } else if (dataSource instanceof ReplicaRoutingDataSource) {
+                conn = ((ReplicaRoutingDataSource) dataSource).getConnection(DeadlineHelper.getRemainingMillis());
+            } else {
+                conn = dataSource.getConnection();
+            }
+        } catch (SQLException e) {
+            if (DeadlineHelper.isExpired()) {
+                throw new DeadlineHelper.DeadlineExceededException("deadline exceeded while getting connection");
+            }
+            LOGGER.error("get connection failure", e);
+            throw new RuntimeException(e);
+        }
+        if (DeadlineHelper.isExpired()) {
+            DbUtils.closeQuietly(conn);
+            throw new DeadlineHelper.DeadlineExceededException("deadline exceeded while getting connection");
+        }
+        if (LEAK_DETECTOR != null) {
+            LEAK_DETECTOR.onAcquire(conn);
+        }
+        return conn;
+    }
+
+    /**
+     * 结束当前线程的事务上下文（如果有）: 只能在开启事务的线程中调用, 提交时先等待子任务结束
+     */
+    private static void completeTransactionContext(boolean commit) {
+        TransactionContext transactionContext = TRANSACTION_CONTEXT_HOLDER.get();
+        if (transactionContext == null) {
+            return;
+        }
+        checkTransactionOwner(commit ? "commit transaction" : "rollback transaction");
+        if (commit) {
+            transactionContext.awaitTasks();
+        }
+        transactionContext.complete();
+    }
+
+    /**
+     * 加入其它线程事务的子任务不能执行的操作
+     */
+    private static void checkTransactionOwner(String operation) {
+        TransactionContext transactionContext = TRANSACTION_CONTEXT_HOLDER.get();
+        if (transactionContext != null && !transactionContext.isOwnerThread()) {
+            throw new IllegalStateException("can not " + operation + " in a sub task of a transaction");
+        }
+    }
+
+    /**
+     * 分片上的语句不在当前线程的事务中（自动提交）, 事务中不能写入分片, 避免事务回滚后分片上的修改仍然生效
+     */
+    private static void checkNoShardWriteInTransaction() {
+        if (SHARD_HOLDER.get() != null && isTransactionActive()) {
+            throw new IllegalStateException("can not write to a shard in a transaction: shard statements are not part of the transaction");
+        }
+    }
+
+    /**
+     * 组提交的单元不能单独开启, 提交或回滚事务
+     */
+    private static void checkNotGroupCommitUnit(String operation) {
+        if (isGroupCommitUnit()) {
+            throw new IllegalStateException("can not " + operation + " in a group commit unit");
+        }
+    }
+
+    /**
+     * 组提交的单元执行期间, 把组的连接绑定到当前线程, 返回恢复原来的连接的操作
+     */
+    private static Runnable bindGroupCommitConnection(Connection conn) {
+        Connection previous = CONNECTION_HOLDER.get();
+        CONNECTION_HOLDER.set(conn);
+        GROUP_COMMIT_UNIT_HOLDER.set(Boolean.TRUE);
+        return () -> {
+            try {
+                //单元中通过事务上下文提交的子任务结束后才能继续
+                completeTransactionContext(true);
+            } finally {
+                TRANSACTION_CONTEXT_HOLDER.remove();
+                GROUP_COMMIT_UNIT_HOLDER.remove();
+                if (previous != null) {
+                    CONNECTION_HOLDER.set(previous);
+                } else {
+                    CONNECTION_HOLDER.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * 归还组提交的连接
+     */
+    private static void returnGroupCommitConnection(Connection conn) {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            LOGGER.error("reset auto commit failure", e);
+        } finally {
+            returnConnection(conn);
+        }
+    }
+
+    /**
+     * 使实体缓存失效, 在事务中时事务结束后再失效一次
+     */
+    private static void invalidateEntity(Class<?> entityClass, Object id) {
+        if (EntityCache.isCacheable(entityClass)) {
+            EntityCache.invalidate(entityClass, id, isTransactionActive());
+        }
+    }
+
+    /**
+     * 使读取了更新语句目标表的查询结果缓存失效, 在事务中时事务结束后失效
+     */
+    private static void invalidateQueryCache(String sql) {
+        if (QueryCache.isEnabled()) {
+            QueryCache.invalidate(sql, isTransactionActive());
+        }
+    }
+
+    /**
+     * 当前线程是否在事务中
+     */
+    private static boolean isTransactionActive() {
+        if (TRANSACTION_CONTEXT_HOLDER.get() != null) {
+            return true;
+        }
+        Connection conn = CONNECTION_HOLDER.get();
+        try {
+            return conn != null && !conn.getAutoCommit();
+        } catch (SQLException e) {
+            LOGGER.error("get auto commit failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 事务结束（或请求结束）时解除线程上绑定的连接, 恢复只读状态后归还
+     */
+    private static void returnBoundConnection(Connection conn) {
+        CONNECTION_HOLDER.remove();
+        TRANSACTION_CONTEXT_HOLDER.remove();
+        EntityCache.afterCompletion();
+        QueryCache.afterCompletion();
+        try {
+            if (conn.isReadOnly()) {
+                conn.setReadOnly(false);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("reset read only failure", e);
+        } finally {
+            returnConnection(conn);
+        }
+    }
+
+    /**
+     * 把连接归还到连接池
+     */
+    private static void returnConnection(Connection conn) {
+        if (LEAK_DETECTOR != null) {
+            LEAK_DETECTOR.onRelease(conn);
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOGGER.error("close connection failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 数据库线程池, 第一次使用异步操作时创建
+     */
+    private static final class DatabaseExecutorHolder {
+
+        private static final DatabaseExecutor EXECUTOR = new DatabaseExecutor(Math.max(ConfigHelper.getJdbcAsyncThreads(), 1),
+                Math.max(ConfigHelper.getJdbcAsyncQueueSize(), 1));
+    }
+
+    /**
+     * 写入延迟写入缓冲区的 JVM 关闭钩子, 第一次调用 register() 时注册
+     */
+    private static final class WriteBehindHookHolder {
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(DatabaseHelper::flushWriteBehind, "write-behind-shutdown"));
+        }
+
+        private static void register() {
+        }
+    }
+
+    /**
+     * 组提交, 第一次使用时创建
+     */
+    private static final class GroupCommitterHolder {
+
+        private static final GroupCommitter COMMITTER = new GroupCommitter(() -> borrowConnection(DATA_SOURCE),
+                DatabaseHelper::returnGroupCommitConnection, DatabaseHelper::bindGroupCommitConnection,
+                TimeUnit.MICROSECONDS.toNanos(Math.max(ConfigHelper.getJdbcGroupCommitWindow(), 0)),
+                Math.max(ConfigHelper.getJdbcGroupCommitMaxSize(), 1));
     }
 }
@@ -0,0 +1,154 @@
+package cn.egret.helper;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 请求截止时间助手类
+ * DispatcherServlet 在请求开始时按 @RequestMapping(timeout) 或请求头设置截止时间, 请求结束时清除.
+ * DatabaseHelper 执行每条语句之前检查截止时间: 已经超过时不再执行, 抛出 DeadlineExceededException;
+ * 否则把剩余时间设置为语句的查询超时（Statement.setQueryTimeout, 秒, 向上取整）, 没有截止时间时把查询超时重置为 0（DBCP 缓存的语句保留上一次的超时）.
+ * 获取连接时: 内置连接池最多等待到截止时间; DBCP 不支持按次设置等待时间, 只在借出前后检查截止时间.
+ * @author egret
+ */
+public final class DeadlineHelper {
+
+    /**
+     * 当前线程的截止时间（System.nanoTime()）, 没有截止时间时为 null
+     */
+    private static final ThreadLocal<Long> DEADLINE_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 设置当前线程的截止时间
+     * @param timeoutMillis 从现在开始的毫秒数
+     */
+    public static void setTimeout(long timeoutMillis) {
+        DEADLINE_HOLDER.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * 获取当前线程的截止时间（System.nanoTime()）, 没有截止时间时返回 null; 用于把截止时间带到其它线程, 见 setDeadline
+     */
+    public static Long getDeadline() {
+        return DEADLINE_HOLDER.get();
+    }
+
+    /**
+     * 设置当前线程的截止时间, null 表示清除
+     */
+    public static void setDeadline(Long deadline) {
+        if (deadline != null) {
+            DEADLINE_HOLDER.set(deadline);
+        } else {
+            DEADLINE_HOLDER.remove();
+        }
+    }
+
+    /**
+     * 清除当前线程的截止时间
+     */
+    public static void clear() {
+        DEADLINE_HOLDER.remove();
+    }
+
+    /**
+     * 当前线程是否有截止时间
+     */
+    public static boolean hasDeadline() {
+        return DEADLINE_HOLDER.get() != null;
+    }
+
+    /**
+     * 剩余的毫秒数, 没有截止时间时返回 Long.MAX_VALUE
+     */
+    public static long getRemainingMillis() {
+        Long deadline = DEADLINE_HOLDER.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * 是否已经超过截止时间
+     */
+    public static boolean isExpired() {
+        Long deadline = DEADLINE_HOLDER.get();
+        return deadline != null && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * 已经超过截止时间时抛出 DeadlineExceededException
+     */
+    public static void check(String operation) {
+        if (isExpired()) {
+            throw new DeadlineExceededException("deadline exceeded before " + operation);
+        }
+    }
+
+    /**
+     * 检查截止时间, 并把剩余时间设置为语句的查询超时; 没有截止时间时重置为不超时
+     */
+    public static void applyQueryTimeout(Statement stmt) throws SQLException {
+        Long deadline = DEADLINE_HOLDER.get();
+        if (deadline == null) {
+            stmt.setQueryTimeout(0);
+            return;
+        }
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new DeadlineExceededException("deadline exceeded before executing statement");
+        }
+        long timeoutSeconds = (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        stmt.setQueryTimeout((int) Math.min(timeoutSeconds, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 包装任务, 在其它线程中执行时使用当前线程的截止时间
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> task) {
+        Long deadline = DEADLINE_HOLDER.get();
+        if (deadline == null) {
+            return task;
+        }
+        return () -> {
+            Long previous = DEADLINE_HOLDER.get();
+            DEADLINE_HOLDER.set(deadline);
+            try {
+                return task.get();
+            } finally {
+                setDeadline(previous);
+            }
+        };
+    }
+
+    /**
+     * 异常是否由超过截止时间引起: 异常链中有 DeadlineExceededException, 或者截止时间已过且有语句超时（SQLTimeoutException）
+     */
+    public static boolean isDeadlineExceeded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return true;
+            }
+            if (cause instanceof SQLTimeoutException && hasDeadline()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 超过请求截止时间
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+}
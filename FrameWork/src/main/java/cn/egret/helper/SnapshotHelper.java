@@ -0,0 +1,467 @@
+package cn.egret.helper;
+
+import cn.egret.ApplicationContext;
+import cn.egret.annotation.BeanScope;
+import cn.egret.bean.BeanDefinition;
+import cn.egret.bean.ContainerSnapshot;
+import cn.egret.bean.Handler;
+import cn.egret.bean.Request;
+import cn.egret.util.ClassUtil;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 启动快照助手类
+ *
+ * 配置了快照目录后, 应用上下文启动成功时会把各个 Helper 计算出的容器元数据写入一个二进制快照文件,
+ * 文件以类路径和基础包名的哈希值命名. 下次启动时如果类路径和基础包名完全相同, 就直接读取快照,
+ * 跳过类扫描, 基于反射的注解查找以及织入决策.
+ *
+ * 类路径的哈希值由类路径上每个 jar 包和 class 文件的路径, 大小和修改时间计算得出, 只需要读取文件属性, 不需要加载类.
+ *
+ * 快照文件格式: 魔数, 版本, 类路径哈希, 字符串表, 然后是各部分数据（字符串都以字符串表下标保存）.
+ * @author egret
+ */
+public final class SnapshotHelper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotHelper.class);
+
+    /**
+     * 快照文件魔数 "EGRT"
+     */
+    private static final int MAGIC = 0x45475254;
+
+    /**
+     * 快照文件格式版本, 格式变化时需要加一
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * 类路径的哈希值, 未开启快照时为 null
+     */
+    private static final String CLASSPATH_HASH;
+
+    static {
+        if (StringUtils.isEmpty(ConfigHelper.getAppSnapshotDir())) {
+            CLASSPATH_HASH = null;
+        } else {
+            CLASSPATH_HASH = computeClasspathHash();
+        }
+    }
+
+    /**
+     * 是否开启了启动快照
+     */
+    public static boolean isEnabled() {
+        return CLASSPATH_HASH != null;
+    }
+
+    /**
+     * 读取基础包名对应的快照, 未开启快照或没有可用快照时返回 null
+     */
+    public static ContainerSnapshot load(String basePackage) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return load(basePackage, new File(ConfigHelper.getAppSnapshotDir()), CLASSPATH_HASH);
+    }
+
+    /**
+     * 从指定目录读取基础包名和类路径哈希对应的快照, 没有可用快照时返回 null
+     */
+    public static ContainerSnapshot load(String basePackage, File snapshotDir, String classpathHash) {
+        String snapshotKey = computeSnapshotKey(classpathHash, basePackage);
+        return read(getSnapshotFile(snapshotDir, snapshotKey), snapshotKey);
+    }
+
+    /**
+     * 保存快照, 在应用上下文的所有启动阶段成功后调用. 已经从快照启动或未开启快照时不做任何事情
+     */
+    public static void save(ApplicationContext context) {
+        if (!isEnabled() || context.getSnapshot() != null) {
+            return;
+        }
+        save(context, new File(ConfigHelper.getAppSnapshotDir()), CLASSPATH_HASH);
+    }
+
+    /**
+     * 把应用上下文的快照保存到指定目录, 以类路径哈希和基础包名作为快照键
+     */
+    public static void save(ApplicationContext context, File snapshotDir, String classpathHash) {
+        String snapshotKey = computeSnapshotKey(classpathHash, context.getBasePackage());
+        File snapshotFile = getSnapshotFile(snapshotDir, snapshotKey);
+        try {
+            ContainerSnapshot snapshot = createSnapshot(context, snapshotKey);
+            File parent = snapshotFile.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("can not create snapshot directory: " + parent);
+            }
+            //先写临时文件再重命名, 避免其它进程读到写了一半的快照
+            File tempFile = File.createTempFile(snapshotFile.getName(), ".tmp", parent);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                write(snapshot, out);
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("save startup snapshot: {}", snapshotFile);
+        } catch (Exception e) {
+            //快照只是启动优化, 保存失败不影响启动
+            LOGGER.warn("save startup snapshot failure", e);
+        }
+    }
+
+    /**
+     * 根据类名加载类（不初始化）
+     */
+    public static Class<?> loadClass(String className) {
+        try {
+            return ClassUtils.getClass(ClassUtil.getClassLoader(), className, false);
+        } catch (ClassNotFoundException e) {
+            LOGGER.error("load class from snapshot failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 根据类名列表加载类集合（不初始化）
+     */
+    public static Set<Class<?>> loadClassSet(Collection<String> classNames) {
+        Set<Class<?>> classSet = new HashSet<>();
+        for (String className : classNames) {
+            classSet.add(loadClass(className));
+        }
+        return classSet;
+    }
+
+    /**
+     * 根据类名列表按顺序加载类数组（不初始化）
+     */
+    private static Class<?>[] loadClassArray(List<String> classNameList) {
+        Class<?>[] classes = new Class<?>[classNameList.size()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = loadClass(classNameList.get(i));
+        }
+        return classes;
+    }
+
+    /**
+     * 根据快照中的 bean 记录生成 bean 定义
+     */
+    public static BeanDefinition toBeanDefinition(ContainerSnapshot.BeanRecord beanRecord) {
+        Class<?> beanClass = loadClass(beanRecord.getBeanClassName());
+        BeanDefinition beanDefinition = new BeanDefinition(beanClass, beanRecord.isLazy(), BeanScope.valueOf(beanRecord.getScope()));
+        try {
+            if (!beanRecord.getConstructorParameterTypeNameList().isEmpty()) {
+                Class<?>[] parameterTypes = loadClassArray(beanRecord.getConstructorParameterTypeNameList());
+                List<Class<?>> dependencyList = Arrays.asList(loadClassArray(beanRecord.getConstructorDependencyNameList()));
+                beanDefinition.setConstructor(beanClass.getDeclaredConstructor(parameterTypes), dependencyList);
+            }
+            for (Map.Entry<String, String> fieldEntry : beanRecord.getInjectFieldMap().entrySet()) {
+                Field field = beanClass.getDeclaredField(fieldEntry.getKey());
+                beanDefinition.addInjectField(field, loadClass(fieldEntry.getValue()));
+            }
+        } catch (NoSuchFieldException | NoSuchMethodException e) {
+            LOGGER.error("load bean definition from snapshot failure", e);
+            throw new RuntimeException(e);
+        }
+        return beanDefinition;
+    }
+
+    /**
+     * 根据快照中的路由记录生成处理器
+     */
+    public static Handler toHandler(ContainerSnapshot.RouteRecord routeRecord) {
+        Class<?> controllerClass = loadClass(routeRecord.getControllerClassName());
+        Class<?>[] parameterTypes = loadClassArray(routeRecord.getParameterTypeNameList());
+        try {
+            Method method = controllerClass.getDeclaredMethod(routeRecord.getMethodName(), parameterTypes);
+            return new Handler(controllerClass, method);
+        } catch (NoSuchMethodException e) {
+            LOGGER.error("load handler from snapshot failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从应用上下文中收集容器元数据
+     */
+    private static ContainerSnapshot createSnapshot(ApplicationContext context, String snapshotKey) {
+        ContainerSnapshot snapshot = new ContainerSnapshot(snapshotKey);
+        snapshot.getClassNameList().addAll(toSortedNameList(context.getClassSet()));
+        snapshot.getServiceClassNameList().addAll(toSortedNameList(context.getServiceClassSet()));
+        snapshot.getControllerClassNameList().addAll(toSortedNameList(context.getControllerClassSet()));
+
+        for (BeanDefinition beanDefinition : context.getBeanDefinitionMap().values()) {
+            ContainerSnapshot.BeanRecord beanRecord = new ContainerSnapshot.BeanRecord(beanDefinition.getBeanClass().getName(),
+                    beanDefinition.isLazy(), beanDefinition.getScope().name());
+            if (beanDefinition.getConstructor() != null) {
+                for (Class<?> parameterType : beanDefinition.getConstructor().getParameterTypes()) {
+                    beanRecord.getConstructorParameterTypeNameList().add(parameterType.getName());
+                }
+                for (Class<?> dependencyClass : beanDefinition.getConstructorDependencyList()) {
+                    beanRecord.getConstructorDependencyNameList().add(dependencyClass.getName());
+                }
+            }
+            for (Map.Entry<Field, Class<?>> fieldEntry : beanDefinition.getInjectFieldMap().entrySet()) {
+                beanRecord.getInjectFieldMap().put(fieldEntry.getKey().getName(), fieldEntry.getValue().getName());
+            }
+            snapshot.getBeanRecordList().add(beanRecord);
+        }
+
+        for (Map.Entry<Class<?>, Set<Class<?>>> aspectEntry : context.getAspectMap().entrySet()) {
+            snapshot.getAspectMap().put(aspectEntry.getKey().getName(), toSortedNameList(aspectEntry.getValue()));
+        }
+
+        for (Map.Entry<Request, Handler> requestEntry : context.getRequestMap().entrySet()) {
+            Request request = requestEntry.getKey();
+            Handler handler = requestEntry.getValue();
+            Method method = handler.getControllerMethod();
+            List<String> parameterTypeNameList = new ArrayList<>();
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                parameterTypeNameList.add(parameterType.getName());
+            }
+            snapshot.getRouteRecordList().add(new ContainerSnapshot.RouteRecord(request.getRequestMethod(), request.getRequestPath(),
+                    handler.getControllerClass().getName(), method.getName(), parameterTypeNameList));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 读取快照, 文件不存在, 已损坏或类路径不一致时返回 null
+     */
+    private static ContainerSnapshot read(File snapshotFile, String snapshotKey) {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !snapshotKey.equals(in.readUTF())) {
+                LOGGER.info("startup snapshot is stale, ignore it: {}", snapshotFile);
+                return null;
+            }
+            String[] stringTable = new String[in.readInt()];
+            for (int i = 0; i < stringTable.length; i++) {
+                stringTable[i] = in.readUTF();
+            }
+
+            ContainerSnapshot snapshot = new ContainerSnapshot(snapshotKey);
+            snapshot.getClassNameList().addAll(readStringList(in, stringTable));
+            snapshot.getServiceClassNameList().addAll(readStringList(in, stringTable));
+            snapshot.getControllerClassNameList().addAll(readStringList(in, stringTable));
+
+            int beanCount = in.readInt();
+            for (int i = 0; i < beanCount; i++) {
+                ContainerSnapshot.BeanRecord beanRecord = new ContainerSnapshot.BeanRecord(stringTable[in.readInt()], in.readBoolean(),
+                        stringTable[in.readInt()]);
+                beanRecord.getConstructorParameterTypeNameList().addAll(readStringList(in, stringTable));
+                beanRecord.getConstructorDependencyNameList().addAll(readStringList(in, stringTable));
+                int fieldCount = in.readInt();
+                for (int j = 0; j < fieldCount; j++) {
+                    beanRecord.getInjectFieldMap().put(stringTable[in.readInt()], stringTable[in.readInt()]);
+                }
+                snapshot.getBeanRecordList().add(beanRecord);
+            }
+
+            int aspectCount = in.readInt();
+            for (int i = 0; i < aspectCount; i++) {
+                snapshot.getAspectMap().put(stringTable[in.readInt()], readStringList(in, stringTable));
+            }
+
+            int routeCount = in.readInt();
+            for (int i = 0; i < routeCount; i++) {
+                snapshot.getRouteRecordList().add(new ContainerSnapshot.RouteRecord(stringTable[in.readInt()], stringTable[in.readInt()],
+                        stringTable[in.readInt()], stringTable[in.readInt()], readStringList(in, stringTable)));
+            }
+            LOGGER.info("load startup snapshot: {}", snapshotFile);
+            return snapshot;
+        } catch (Exception e) {
+            LOGGER.warn("read startup snapshot failure, ignore it: " + snapshotFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入快照, 先把数据部分写到内存并建立字符串表, 再依次写入文件头, 字符串表和数据部分
+     */
+    private static void write(ContainerSnapshot snapshot, DataOutputStream out) throws IOException {
+        Map<String, Integer> stringTable = new LinkedHashMap<>();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        writeStringList(body, stringTable, snapshot.getClassNameList());
+        writeStringList(body, stringTable, snapshot.getServiceClassNameList());
+        writeStringList(body, stringTable, snapshot.getControllerClassNameList());
+
+        body.writeInt(snapshot.getBeanRecordList().size());
+        for (ContainerSnapshot.BeanRecord beanRecord : snapshot.getBeanRecordList()) {
+            writeString(body, stringTable, beanRecord.getBeanClassName());
+            body.writeBoolean(beanRecord.isLazy());
+            writeString(body, stringTable, beanRecord.getScope());
+            writeStringList(body, stringTable, beanRecord.getConstructorParameterTypeNameList());
+            writeStringList(body, stringTable, beanRecord.getConstructorDependencyNameList());
+            body.writeInt(beanRecord.getInjectFieldMap().size());
+            for (Map.Entry<String, String> fieldEntry : beanRecord.getInjectFieldMap().entrySet()) {
+                writeString(body, stringTable, fieldEntry.getKey());
+                writeString(body, stringTable, fieldEntry.getValue());
+            }
+        }
+
+        body.writeInt(snapshot.getAspectMap().size());
+        for (Map.Entry<String, List<String>> aspectEntry : snapshot.getAspectMap().entrySet()) {
+            writeString(body, stringTable, aspectEntry.getKey());
+            writeStringList(body, stringTable, aspectEntry.getValue());
+        }
+
+        body.writeInt(snapshot.getRouteRecordList().size());
+        for (ContainerSnapshot.RouteRecord routeRecord : snapshot.getRouteRecordList()) {
+            writeString(body, stringTable, routeRecord.getRequestMethod());
+            writeString(body, stringTable, routeRecord.getRequestPath());
+            writeString(body, stringTable, routeRecord.getControllerClassName());
+            writeString(body, stringTable, routeRecord.getMethodName());
+            writeStringList(body, stringTable, routeRecord.getParameterTypeNameList());
+        }
+        body.flush();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(snapshot.getClasspathHash());
+        out.writeInt(stringTable.size());
+        for (String value : stringTable.keySet()) {
+            out.writeUTF(value);
+        }
+        bodyBytes.writeTo(out);
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> stringTable, String value) throws IOException {
+        Integer index = stringTable.get(value);
+        if (index == null) {
+            index = stringTable.size();
+            stringTable.put(value, index);
+        }
+        out.writeInt(index);
+    }
+
+    private static void writeStringList(DataOutputStream out, Map<String, Integer> stringTable, List<String> valueList) throws IOException {
+        out.writeInt(valueList.size());
+        for (String value : valueList) {
+            writeString(out, stringTable, value);
+        }
+    }
+
+    private static List<String> readStringList(DataInputStream in, String[] stringTable) throws IOException {
+        int size = in.readInt();
+        List<String> valueList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            valueList.add(stringTable[in.readInt()]);
+        }
+        return valueList;
+    }
+
+    private static List<String> toSortedNameList(Collection<Class<?>> classes) {
+        List<String> nameList = new ArrayList<>();
+        for (Class<?> cls : classes) {
+            nameList.add(cls.getName());
+        }
+        Collections.sort(nameList);
+        return nameList;
+    }
+
+    /**
+     * 快照文件, 以快照键的前 16 位命名
+     */
+    private static File getSnapshotFile(File snapshotDir, String snapshotKey) {
+        return new File(snapshotDir, "container-" + snapshotKey.substring(0, 16) + ".snapshot");
+    }
+
+    /**
+     * 计算快照键: 类路径的哈希值加上基础包名, 不同基础包名的应用上下文使用不同的快照
+     */
+    private static String computeSnapshotKey(String classpathHash, String basePackage) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            updateDigest(digest, classpathHash);
+            updateDigest(digest, basePackage);
+            return toHex(digest.digest());
+        } catch (Exception e) {
+            LOGGER.error("compute snapshot key failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 计算类路径的哈希值: 快照格式版本, 以及类路径上所有 jar 包和 class 文件的路径, 大小和修改时间
+     */
+    private static String computeClasspathHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            updateDigest(digest, String.valueOf(VERSION));
+            for (File root : getClasspathRoots()) {
+                updateDigest(digest, root);
+            }
+            return toHex(digest.digest());
+        } catch (Exception e) {
+            LOGGER.error("compute classpath hash failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 获取类路径上的所有目录和 jar 包
+     */
+    private static Collection<File> getClasspathRoots() throws Exception {
+        Set<File> rootSet = new LinkedHashSet<>();
+        for (ClassLoader classLoader = ClassUtil.getClassLoader(); classLoader != null; classLoader = classLoader.getParent()) {
+            if (classLoader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        rootSet.add(new File(url.toURI()));
+                    }
+                }
+            }
+        }
+        if (rootSet.isEmpty()) {
+            for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                rootSet.add(new File(path));
+            }
+        }
+        return rootSet;
+    }
+
+    private static void updateDigest(MessageDigest digest, File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    updateDigest(digest, child);
+                }
+            }
+        } else if (file.isFile()) {
+            updateDigest(digest, file.getPath() + ":" + file.length() + ":" + file.lastModified());
+        }
+    }
+
+    private static void updateDigest(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
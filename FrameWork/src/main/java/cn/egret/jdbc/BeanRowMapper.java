@@ -0,0 +1,270 @@
+package cn.egret.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体行映射器
+ * 针对一个实体类和一种结果集结构（列的顺序和名称）生成: 列的位置在生成时就确定, 每一列对应一个 setter 的 MethodHandle,
+ * 基本类型的属性使用对应的 ResultSet.getXxx(int) 读取并直接传给 setter, 不经过装箱.
+ *
+ * 列名与属性名的匹配规则与 DbUtils 相同（忽略大小写）, 另外忽略下划线, 如 user_name 匹配 userName;
+ * 带有 @Column 的属性还匹配指定的列名（见 EntityMeta）. 没有对应属性的列会被忽略.
+ * 生成后的映射器是无状态的, 可以被多个线程共用, 见 RowMapperCache.
+ * @author egret
+ */
+public final class BeanRowMapper<T> implements RowMapper<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanRowMapper.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final int TYPE_OBJECT = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_DOUBLE = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_SHORT = 5;
+    private static final int TYPE_BYTE = 6;
+    private static final int TYPE_BOOLEAN = 7;
+
+    private final Class<T> entityClass;
+
+    /**
+     * 无参构造器句柄, 类型为 ()Object
+     */
+    private final MethodHandle constructorHandle;
+
+    private final ColumnMapper[] columnMappers;
+
+    private BeanRowMapper(Class<T> entityClass, MethodHandle constructorHandle, ColumnMapper[] columnMappers) {
+        this.entityClass = entityClass;
+        this.constructorHandle = constructorHandle;
+        this.columnMappers = columnMappers;
+    }
+
+    /**
+     * 根据实体类和结果集结构生成行映射器
+     */
+    public static <T> BeanRowMapper<T> create(Class<T> entityClass, ResultSetMetaData metaData) throws SQLException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            MethodHandle constructorHandle = lookup.findConstructor(entityClass, MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+
+            Map<String, PropertyDescriptor> propertyMap = new HashMap<>();
+            BeanInfo beanInfo = Introspector.getBeanInfo(entityClass);
+            for (PropertyDescriptor property : beanInfo.getPropertyDescriptors()) {
+                if (property.getWriteMethod() != null) {
+                    propertyMap.put(normalize(property.getName()), property);
+                }
+            }
+            //@Column 指定的列名
+            for (Map.Entry<String, String> columnEntry : EntityMeta.of(entityClass).getColumnMap().entrySet()) {
+                PropertyDescriptor property = propertyMap.get(normalize(columnEntry.getKey()));
+                if (property != null && !columnEntry.getKey().equals(columnEntry.getValue())) {
+                    propertyMap.put(normalize(columnEntry.getValue()), property);
+                }
+            }
+
+            List<ColumnMapper> columnMapperList = new ArrayList<>();
+            for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                PropertyDescriptor property = propertyMap.get(normalize(getColumnLabel(metaData, column)));
+                if (property != null) {
+                    columnMapperList.add(createColumnMapper(lookup, column, property));
+                }
+            }
+            return new BeanRowMapper<>(entityClass, constructorHandle, columnMapperList.toArray(new ColumnMapper[0]));
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("create row mapper failure: " + entityClass.getName(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet rs) throws SQLException {
+        Object entity;
+        try {
+            entity = (Object) constructorHandle.invokeExact();
+        } catch (Throwable e) {
+            LOGGER.error("new instance failure: " + entityClass.getName(), e);
+            throw new RuntimeException(e);
+        }
+        for (ColumnMapper columnMapper : columnMappers) {
+            columnMapper.map(rs, entity);
+        }
+        return (T) entity;
+    }
+
+    /**
+     * 获取列名, 优先使用别名
+     */
+    static String getColumnLabel(ResultSetMetaData metaData, int column) throws SQLException {
+        String label = metaData.getColumnLabel(column);
+        if (label == null || label.isEmpty()) {
+            label = metaData.getColumnName(column);
+        }
+        return label;
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase();
+    }
+
+    private static ColumnMapper createColumnMapper(MethodHandles.Lookup lookup, int column, PropertyDescriptor property) throws IllegalAccessException {
+        Method writeMethod = property.getWriteMethod();
+        Class<?> propertyType = property.getPropertyType();
+        MethodHandle setter = lookup.unreflect(writeMethod);
+        int type = getType(propertyType);
+        if (type == TYPE_OBJECT) {
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        } else {
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, propertyType));
+        }
+        return new ColumnMapper(column, type, propertyType, setter);
+    }
+
+    private static int getType(Class<?> propertyType) {
+        if (propertyType == int.class) {
+            return TYPE_INT;
+        } else if (propertyType == long.class) {
+            return TYPE_LONG;
+        } else if (propertyType == double.class) {
+            return TYPE_DOUBLE;
+        } else if (propertyType == float.class) {
+            return TYPE_FLOAT;
+        } else if (propertyType == short.class) {
+            return TYPE_SHORT;
+        } else if (propertyType == byte.class) {
+            return TYPE_BYTE;
+        } else if (propertyType == boolean.class) {
+            return TYPE_BOOLEAN;
+        }
+        return TYPE_OBJECT;
+    }
+
+    /**
+     * 一列到一个属性的映射
+     */
+    private static final class ColumnMapper {
+
+        private final int column;
+
+        private final int type;
+
+        private final Class<?> propertyType;
+
+        private final MethodHandle setter;
+
+        ColumnMapper(int column, int type, Class<?> propertyType, MethodHandle setter) {
+            this.column = column;
+            this.type = type;
+            this.propertyType = propertyType;
+            this.setter = setter;
+        }
+
+        void map(ResultSet rs, Object entity) throws SQLException {
+            try {
+                switch (type) {
+                    case TYPE_INT:
+                        setter.invokeExact(entity, rs.getInt(column));
+                        break;
+                    case TYPE_LONG:
+                        setter.invokeExact(entity, rs.getLong(column));
+                        break;
+                    case TYPE_DOUBLE:
+                        setter.invokeExact(entity, rs.getDouble(column));
+                        break;
+                    case TYPE_FLOAT:
+                        setter.invokeExact(entity, rs.getFloat(column));
+                        break;
+                    case TYPE_SHORT:
+                        setter.invokeExact(entity, rs.getShort(column));
+                        break;
+                    case TYPE_BYTE:
+                        setter.invokeExact(entity, rs.getByte(column));
+                        break;
+                    case TYPE_BOOLEAN:
+                        setter.invokeExact(entity, rs.getBoolean(column));
+                        break;
+                    default:
+                        Object value = readObject(rs);
+                        if (value != null) {
+                            setter.invokeExact(entity, value);
+                        }
+                        break;
+                }
+            } catch (SQLException | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                LOGGER.error("set property failure", e);
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * 按属性类型读取列值, SQL NULL 返回 null（属性保持默认值）
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readObject(ResultSet rs) throws SQLException {
+            Object value;
+            if (propertyType == String.class) {
+                return rs.getString(column);
+            } else if (propertyType == Integer.class) {
+                value = rs.getInt(column);
+            } else if (propertyType == Long.class) {
+                value = rs.getLong(column);
+            } else if (propertyType == Double.class) {
+                value = rs.getDouble(column);
+            } else if (propertyType == Float.class) {
+                value = rs.getFloat(column);
+            } else if (propertyType == Short.class) {
+                value = rs.getShort(column);
+            } else if (propertyType == Byte.class) {
+                value = rs.getByte(column);
+            } else if (propertyType == Boolean.class) {
+                value = rs.getBoolean(column);
+            } else if (propertyType == BigDecimal.class) {
+                return rs.getBigDecimal(column);
+            } else if (propertyType == java.sql.Date.class) {
+                return rs.getDate(column);
+            } else if (propertyType == java.sql.Time.class) {
+                return rs.getTime(column);
+            } else if (propertyType == Timestamp.class || propertyType == java.util.Date.class) {
+                return rs.getTimestamp(column);
+            } else if (propertyType == byte[].class) {
+                return rs.getBytes(column);
+            } else if (propertyType.isEnum()) {
+                String name = rs.getString(column);
+                return name == null ? null : Enum.valueOf((Class<? extends Enum>) propertyType, name);
+            } else {
+                value = rs.getObject(column);
+                if (value != null && !propertyType.isInstance(value)) {
+                    value = rs.getObject(column, propertyType);
+                }
+                return value;
+            }
+            return rs.wasNull() ? null : value;
+        }
+    }
+}
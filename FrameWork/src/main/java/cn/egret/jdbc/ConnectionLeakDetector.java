@@ -0,0 +1,169 @@
+package cn.egret.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接泄漏检测
+ * 记录每个借出的连接的借出线程和借出时间. 后台线程定期检查, 持有时间超过阈值的连接以 WARN 日志报告一次,
+ * 连接归还时如果持有时间超过阈值, 同样报告实际的持有时间.
+ * 借出时的调用栈按 stackSampleInterval 采样记录（每次都记录的开销太大）; 没有记录调用栈的连接报告持有线程当前的调用栈.
+ * 借出和归还只访问 ConcurrentHashMap, 不加全局锁.
+ * @author egret
+ */
+public class ConnectionLeakDetector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionLeakDetector.class);
+
+    private final long thresholdNanos;
+
+    /**
+     * 每借出多少个连接记录一次调用栈, 0 表示不记录
+     */
+    private final int stackSampleInterval;
+
+    /**
+     * 连接 - 借出记录, 按对象标识比较
+     */
+    private final ConcurrentMap<IdentityKey, Lease> leaseMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong acquireCount = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler;
+
+    public ConnectionLeakDetector(long thresholdMillis) {
+        this(thresholdMillis, 1);
+    }
+
+    public ConnectionLeakDetector(long thresholdMillis, int stackSampleInterval) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.stackSampleInterval = Math.max(stackSampleInterval, 0);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = Math.max(thresholdMillis / 2, 10);
+        scheduler.scheduleWithFixedDelay(this::check, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 连接借出
+     */
+    public void onAcquire(Connection conn) {
+        boolean sampled = stackSampleInterval > 0 && acquireCount.getAndIncrement() % stackSampleInterval == 0;
+        leaseMap.put(new IdentityKey(conn), new Lease(sampled ? new Exception("connection acquired here") : null));
+    }
+
+    /**
+     * 连接归还
+     */
+    public void onRelease(Connection conn) {
+        Lease lease = leaseMap.remove(new IdentityKey(conn));
+        if (lease == null) {
+            return;
+        }
+        long heldNanos = System.nanoTime() - lease.acquireNanos;
+        if (lease.reported) {
+            LOGGER.warn(String.format("leaked connection returned by thread %s after %d ms", lease.thread.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(heldNanos)));
+        } else if (heldNanos > thresholdNanos) {
+            LOGGER.warn(String.format("connection held by thread %s for %d ms", lease.thread.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(heldNanos)), lease.stack);
+        }
+    }
+
+    /**
+     * 获取当前借出未归还的连接数量
+     */
+    public int getLeasedCount() {
+        return leaseMap.size();
+    }
+
+    /**
+     * 获取持有时间超过阈值, 疑似泄漏的连接数量
+     */
+    public int getLeakedCount() {
+        long now = System.nanoTime();
+        int leakedCount = 0;
+        for (Lease lease : leaseMap.values()) {
+            if (now - lease.acquireNanos > thresholdNanos) {
+                leakedCount++;
+            }
+        }
+        return leakedCount;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Lease lease : leaseMap.values()) {
+            long heldNanos = now - lease.acquireNanos;
+            if (!lease.reported && heldNanos > thresholdNanos) {
+                lease.reported = true;
+                Throwable stack = lease.stack;
+                if (stack == null) {
+                    //没有采样借出时的调用栈, 报告持有线程现在的位置
+                    stack = new Exception("connection holder is currently here");
+                    stack.setStackTrace(lease.thread.getStackTrace());
+                }
+                LOGGER.warn(String.format("connection leak suspected: held by thread %s for %d ms", lease.thread.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(heldNanos)), stack);
+            }
+        }
+    }
+
+    /**
+     * 按对象标识比较的键, 连接代理的 equals 和 hashCode 可能被转发到物理连接
+     */
+    private static final class IdentityKey {
+
+        private final Object target;
+
+        private IdentityKey(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && ((IdentityKey) obj).target == target;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(target);
+        }
+    }
+
+    /**
+     * 借出记录
+     */
+    private static class Lease {
+
+        private final Thread thread = Thread.currentThread();
+
+        private final long acquireNanos = System.nanoTime();
+
+        /**
+         * 借出时的调用栈, 未采样时为 null
+         */
+        private final Throwable stack;
+
+        private volatile boolean reported;
+
+        private Lease(Throwable stack) {
+            this.stack = stack;
+        }
+    }
+}
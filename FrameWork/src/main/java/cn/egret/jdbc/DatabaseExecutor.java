@@ -0,0 +1,96 @@
+package cn.egret.jdbc;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 数据库线程池
+ * 执行阻塞的数据库操作, 使请求线程不必等待数据库. 线程数一般与连接池大小相同, 等待队列有界,
+ * 队列已满时不阻塞提交的线程, 而是让返回的 CompletableFuture 以 RejectedExecutionException 失败.
+ * 注意: 不带 Async 后缀的后续操作（如 thenApply）可能在数据库线程中执行.
+ * @author egret
+ */
+public class DatabaseExecutor {
+
+    /**
+     * 当前线程所属的数据库线程池
+     */
+    private static final ThreadLocal<DatabaseExecutor> CURRENT_EXECUTOR = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public DatabaseExecutor(int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(() -> {
+                CURRENT_EXECUTOR.set(this);
+                r.run();
+            }, "database-executor-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交数据库操作
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> action) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(action.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 当前线程是否是这个线程池的线程, 线程池中的操作不应提交并等待其它操作, 以免线程都在等待队列中的操作
+     */
+    public boolean isExecutorThread() {
+        return CURRENT_EXECUTOR.get() == this;
+    }
+
+    /**
+     * 正在执行的操作数量
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 排队等待的操作数量
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 因队列已满被拒绝的操作数量
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
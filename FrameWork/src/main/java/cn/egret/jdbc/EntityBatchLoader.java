@@ -0,0 +1,238 @@
+package cn.egret.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 实体批量加载器
+ * 收集对同一实体类按主键的查询, 合并为一条 WHERE 主键 IN (...) 查询, 结果按主键分发给每个调用者, 重复的主键只查询一次.
+ * 合并查询在以下时机执行: 第一个主键加入后经过 window 毫秒; 收集的主键达到 MAX_BATCH_SIZE;
+ * 或者对 load 返回的 LoadFuture 调用 join/get（同一线程先 load 多个主键再逐个 join 时只查询一次）.
+ * @author egret
+ */
+public class EntityBatchLoader<T> {
+
+    /**
+     * 一次合并查询最多的主键数量
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "entity-batch-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Class<T> entityClass;
+
+    /**
+     * 按主键列表查询实体列表
+     */
+    private final Function<List<Object>, List<T>> batchFunction;
+
+    private final long windowMillis;
+
+    /**
+     * 执行到时的合并查询
+     */
+    private final Executor executor;
+
+    /**
+     * 等待查询的主键 - Future, 只能在持有 this 的锁时访问
+     */
+    private Map<Object, LoadFuture<T>> pendingMap = new LinkedHashMap<>();
+
+    private final LongAdder loadCount = new LongAdder();
+
+    private final LongAdder batchCount = new LongAdder();
+
+    public EntityBatchLoader(Class<T> entityClass, Function<List<Object>, List<T>> batchFunction, long windowMillis, Executor executor) {
+        this.entityClass = entityClass;
+        this.batchFunction = batchFunction;
+        this.windowMillis = windowMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * 按主键加载实体, 实体不存在时结果为 null
+     */
+    public LoadFuture<T> load(Object id) {
+        Object key = toKey(id);
+        LoadFuture<T> future;
+        Map<Object, LoadFuture<T>> batch = null;
+        synchronized (this) {
+            future = pendingMap.get(key);
+            if (future == null) {
+                future = new LoadFuture<>(this);
+                pendingMap.put(key, future);
+                if (pendingMap.size() >= MAX_BATCH_SIZE) {
+                    batch = takePending();
+                } else if (pendingMap.size() == 1) {
+                    TIMER.schedule(() -> executor.execute(this::dispatch), windowMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        loadCount.increment();
+        if (batch != null) {
+            execute(batch);
+        }
+        return future;
+    }
+
+    /**
+     * 按主键列表加载实体, 所有主键在一次加锁中加入, 不会被时间窗口分到两次查询中（超过 MAX_BATCH_SIZE 时除外）
+     */
+    public List<LoadFuture<T>> loadAll(Collection<?> idList) {
+        List<LoadFuture<T>> futureList = new ArrayList<>(idList.size());
+        List<Map<Object, LoadFuture<T>>> batchList = new ArrayList<>();
+        synchronized (this) {
+            boolean schedule = pendingMap.isEmpty();
+            for (Object id : idList) {
+                Object key = toKey(id);
+                LoadFuture<T> future = pendingMap.get(key);
+                if (future == null) {
+                    future = new LoadFuture<>(this);
+                    pendingMap.put(key, future);
+                    if (pendingMap.size() >= MAX_BATCH_SIZE) {
+                        batchList.add(takePending());
+                    }
+                }
+                futureList.add(future);
+            }
+            if (schedule && !pendingMap.isEmpty()) {
+                TIMER.schedule(() -> executor.execute(this::dispatch), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        loadCount.add(idList.size());
+        for (Map<Object, LoadFuture<T>> batch : batchList) {
+            execute(batch);
+        }
+        return futureList;
+    }
+
+    /**
+     * 立即执行收集到的查询
+     */
+    public void dispatch() {
+        Map<Object, LoadFuture<T>> batch;
+        synchronized (this) {
+            if (pendingMap.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        execute(batch);
+    }
+
+    /**
+     * load 调用次数
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * 执行合并查询的次数
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    private Map<Object, LoadFuture<T>> takePending() {
+        Map<Object, LoadFuture<T>> batch = pendingMap;
+        pendingMap = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void execute(Map<Object, LoadFuture<T>> batch) {
+        batchCount.increment();
+        try {
+            List<T> entityList = batchFunction.apply(new ArrayList<>(batch.keySet()));
+            EntityMeta entityMeta = EntityMeta.of(entityClass);
+            String idFieldName = entityMeta.getIdFieldName();
+            for (T entity : entityList) {
+                LoadFuture<T> future = batch.remove(toKey(entityMeta.getFieldValue(entity, idFieldName)));
+                if (future != null) {
+                    future.complete(entity);
+                }
+            }
+            for (LoadFuture<T> future : batch.values()) {
+                future.complete(null);
+            }
+        } catch (Throwable e) {
+            for (LoadFuture<T> future : batch.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 主键统一转换为 Long（整数主键）, 使 Integer 和 Long 的主键视为同一个
+     */
+    public static Object toKey(Object id) {
+        return id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte ? ((Number) id).longValue() : id;
+    }
+
+    /**
+     * load 返回的 Future, join 或 get 时先执行收集到的查询
+     */
+    public static final class LoadFuture<T> extends CompletableFuture<T> {
+
+        private final EntityBatchLoader<T> loader;
+
+        private LoadFuture(EntityBatchLoader<T> loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public T join() {
+            if (!isDone()) {
+                loader.dispatch();
+            }
+            return super.join();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            if (!isDone()) {
+                loader.dispatch();
+            }
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!isDone()) {
+                loader.dispatch();
+            }
+            return super.get(timeout, unit);
+        }
+
+        /**
+         * 等待合并查询, 不提前执行, 以便合并时间窗口内其它线程的查询
+         */
+        public T await() {
+            try {
+                return super.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cn.egret.jdbc;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 把结果集的第一行转换为实体, 没有数据时返回 null. 替代 DbUtils 的 BeanHandler, 使用缓存的行映射器
+ * @author egret
+ */
+public class EntityHandler<T> implements ResultSetHandler<T> {
+
+    private final Class<T> entityClass;
+
+    public EntityHandler(Class<T> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    @Override
+    public T handle(ResultSet rs) throws SQLException {
+        if (!rs.next()) {
+            return null;
+        }
+        return RowMapperCache.getRowMapper(entityClass, rs).mapRow(rs);
+    }
+}
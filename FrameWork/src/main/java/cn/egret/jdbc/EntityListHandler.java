@@ -0,0 +1,34 @@
+package cn.egret.jdbc;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把结果集的所有行转换为实体列表. 替代 DbUtils 的 BeanListHandler, 使用缓存的行映射器
+ * @author egret
+ */
+public class EntityListHandler<T> implements ResultSetHandler<List<T>> {
+
+    private final Class<T> entityClass;
+
+    public EntityListHandler(Class<T> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    @Override
+    public List<T> handle(ResultSet rs) throws SQLException {
+        List<T> entityList = new ArrayList<>();
+        if (!rs.next()) {
+            return entityList;
+        }
+        RowMapper<T> rowMapper = RowMapperCache.getRowMapper(entityClass, rs);
+        do {
+            entityList.add(rowMapper.mapRow(rs));
+        } while (rs.next());
+        return entityList;
+    }
+}
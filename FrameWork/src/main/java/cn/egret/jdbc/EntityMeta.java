@@ -0,0 +1,446 @@
+package cn.egret.jdbc;
+
+import cn.egret.annotation.Column;
+import cn.egret.annotation.Id;
+import cn.egret.annotation.Table;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 实体元数据
+ * 每个实体类只解析一次: 表名（@Table, 默认为类名）, 列（@Column, 默认为属性名, 按属性声明顺序排列）, 主键列（@Id, 默认为 id 属性）.
+ *
+ * insert 和 update 的 SQL 按列集合编译并缓存. 列集合相同的 fieldMap 无论键的顺序如何, 都得到同一条 SQL（列按声明顺序排列）,
+ * 这样数据库驱动和连接池才能复用预编译语句. fieldMap 的键为属性名或列名, 不是实体的属性或列时抛出异常.
+ * 查询结果按列名映射到属性, @Column 指定的列映射到对应的属性, 见 BeanRowMapper.
+ * @author egret
+ */
+public final class EntityMeta {
+
+    /**
+     * 实体类 - 实体元数据
+     */
+    private static final ConcurrentMap<Class<?>, EntityMeta> ENTITY_META_MAP = new ConcurrentHashMap<>();
+
+    private final Class<?> entityClass;
+
+    private final String tableName;
+
+    /**
+     * 属性名 - 列名, 按属性声明顺序排列
+     */
+    private final Map<String, String> columnMap;
+
+    /**
+     * 属性名 - 在 columnMap 中的位置
+     */
+    private final Map<String, Integer> fieldIndexMap = new HashMap<>();
+
+    /**
+     * 列名 - 在 columnMap 中的位置, fieldMap 的键也可以是列名
+     */
+    private final Map<String, Integer> columnIndexMap = new HashMap<>();
+
+    private final String[] fieldNames;
+
+    private final String idFieldName;
+
+    private final String idColumn;
+
+    /**
+     * 列集合 - insert 语句
+     */
+    private final ConcurrentMap<BitSet, SqlTemplate> insertTemplateMap = new ConcurrentHashMap<>();
+
+    /**
+     * 列集合 - update 语句
+     */
+    private final ConcurrentMap<BitSet, SqlTemplate> updateTemplateMap = new ConcurrentHashMap<>();
+
+    private final String deleteSql;
+
+    private final String selectByIdSql;
+
+    /**
+     * 主键数量 - 按主键列表查询的 select 语句
+     */
+    private final ConcurrentMap<Integer, String> selectByIdsSqlMap = new ConcurrentHashMap<>();
+
+    /**
+     * 排序属性和方向 - 键集分页的 select 语句
+     */
+    private final ConcurrentMap<String, String> keysetSqlMap = new ConcurrentHashMap<>();
+
+    /**
+     * 所有属性, 与 fieldNames 顺序相同
+     */
+    private final Field[] fields;
+
+    /**
+     * 复制实体用的属性读写方法, 第一次复制时创建
+     */
+    private volatile MethodHandle[][] fieldAccessors;
+
+    private EntityMeta(Class<?> entityClass) {
+        this.entityClass = entityClass;
+        Table table = entityClass.getAnnotation(Table.class);
+        this.tableName = table != null ? table.value() : entityClass.getSimpleName();
+
+        Map<String, String> columnMap = new LinkedHashMap<>();
+        String idFieldName = null;
+        List<Field> fieldList = getFields(entityClass);
+        this.fields = fieldList.toArray(new Field[0]);
+        for (Field field : fieldList) {
+            Column column = field.getAnnotation(Column.class);
+            columnMap.put(field.getName(), column != null ? column.value() : field.getName());
+            if (field.isAnnotationPresent(Id.class) || (idFieldName == null && "id".equals(field.getName()))) {
+                idFieldName = field.getName();
+            }
+        }
+        this.columnMap = Collections.unmodifiableMap(columnMap);
+        this.fieldNames = columnMap.keySet().toArray(new String[0]);
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldIndexMap.put(fieldNames[i], i);
+            columnIndexMap.put(columnMap.get(fieldNames[i]), i);
+        }
+        this.idFieldName = idFieldName;
+        this.idColumn = idFieldName != null ? columnMap.get(idFieldName) : "id";
+        this.deleteSql = "DELETE FROM " + tableName + " WHERE " + idColumn + " = ?";
+        this.selectByIdSql = "SELECT * FROM " + tableName + " WHERE " + idColumn + " = ?";
+    }
+
+    /**
+     * 获取实体元数据, 每个实体类只解析一次
+     */
+    public static EntityMeta of(Class<?> entityClass) {
+        EntityMeta entityMeta = ENTITY_META_MAP.get(entityClass);
+        if (entityMeta == null) {
+            entityMeta = new EntityMeta(entityClass);
+            EntityMeta existing = ENTITY_META_MAP.putIfAbsent(entityClass, entityMeta);
+            if (existing != null) {
+                entityMeta = existing;
+            }
+        }
+        return entityMeta;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * 获取 "属性名-列名" 映射, 按属性声明顺序排列
+     */
+    public Map<String, String> getColumnMap() {
+        return columnMap;
+    }
+
+    /**
+     * 获取属性对应的列名
+     */
+    public String getColumn(String fieldName) {
+        String column = columnMap.get(fieldName);
+        if (column == null) {
+            throw new RuntimeException("unknown field " + fieldName + " of entity " + entityClass.getName());
+        }
+        return column;
+    }
+
+    /**
+     * 获取主键属性名, 没有主键属性时为 null
+     */
+    public String getIdFieldName() {
+        return idFieldName;
+    }
+
+    public String getIdColumn() {
+        return idColumn;
+    }
+
+    /**
+     * 获取 insert 语句: INSERT INTO 表名 (列...) VALUES (?...)
+     */
+    public SqlTemplate getInsertTemplate(Collection<String> fieldNameSet) {
+        BitSet columnSet = toColumnSet(fieldNameSet);
+        SqlTemplate sqlTemplate = insertTemplateMap.get(columnSet);
+        if (sqlTemplate == null) {
+            String[] templateFieldNames = toFieldNames(columnSet);
+            StringBuilder columns = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (String fieldName : templateFieldNames) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                    values.append(", ");
+                }
+                columns.append(columnMap.get(fieldName));
+                values.append('?');
+            }
+            String sql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + values + ")";
+            sqlTemplate = putIfAbsent(insertTemplateMap, columnSet, new SqlTemplate(sql, templateFieldNames, toColumnAliases(templateFieldNames)));
+        }
+        return sqlTemplate;
+    }
+
+    /**
+     * 获取按主键更新的 update 语句: UPDATE 表名 SET 列 = ?... WHERE 主键列 = ?
+     */
+    public SqlTemplate getUpdateTemplate(Collection<String> fieldNameSet) {
+        BitSet columnSet = toColumnSet(fieldNameSet);
+        SqlTemplate sqlTemplate = updateTemplateMap.get(columnSet);
+        if (sqlTemplate == null) {
+            String[] templateFieldNames = toFieldNames(columnSet);
+            StringBuilder columns = new StringBuilder();
+            for (String fieldName : templateFieldNames) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append(columnMap.get(fieldName)).append(" = ?");
+            }
+            String sql = "UPDATE " + tableName + " SET " + columns + " WHERE " + idColumn + " = ?";
+            sqlTemplate = putIfAbsent(updateTemplateMap, columnSet, new SqlTemplate(sql, templateFieldNames, toColumnAliases(templateFieldNames)));
+        }
+        return sqlTemplate;
+    }
+
+    /**
+     * 获取按主键删除的 delete 语句: DELETE FROM 表名 WHERE 主键列 = ?
+     */
+    public String getDeleteSql() {
+        return deleteSql;
+    }
+
+    /**
+     * 获取按主键查询的 select 语句: SELECT * FROM 表名 WHERE 主键列 = ?
+     */
+    public String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    /**
+     * 获取按主键列表查询的 select 语句: SELECT * FROM 表名 WHERE 主键列 IN (?, ?, ...)
+     */
+    public String getSelectByIdsSql(int idCount) {
+        String sql = selectByIdsSqlMap.get(idCount);
+        if (sql == null) {
+            StringBuilder sqlBuilder = new StringBuilder("SELECT * FROM ").append(tableName).append(" WHERE ").append(idColumn).append(" IN (");
+            for (int i = 0; i < idCount; i++) {
+                sqlBuilder.append(i == 0 ? "?" : ", ?");
+            }
+            sql = sqlBuilder.append(')').toString();
+            selectByIdsSqlMap.putIfAbsent(idCount, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 判断 SQL 是否为按主键查询的 select 语句（忽略大小写和多余的空白）
+     */
+    public boolean isSelectByIdSql(String sql) {
+        return selectByIdSql.equals(sql) || selectByIdSql.equalsIgnoreCase(StringUtils.normalizeSpace(sql));
+    }
+
+    /**
+     * 获取键集分页的 select 语句, 按排序属性和主键排序（排序属性为主键时只按主键）, 参数为上一页最后一行的值和每页行数:
+     * 第一页: SELECT * FROM 表名 ORDER BY 列 ASC, 主键列 ASC LIMIT ?
+     * 后续页: SELECT * FROM 表名 WHERE 列 >= ? AND (列 > ? OR 主键列 > ?) ORDER BY 列 ASC, 主键列 ASC LIMIT ?
+     * 按主键排序的后续页: SELECT * FROM 表名 WHERE 主键列 > ? ORDER BY 主键列 ASC LIMIT ?
+     */
+    public String getKeysetSql(String orderField, boolean ascending, boolean firstPage) {
+        String key = orderField + (ascending ? " ASC" : " DESC") + (firstPage ? "" : " SEEK");
+        String sql = keysetSqlMap.get(key);
+        if (sql == null) {
+            if (idFieldName == null) {
+                throw new RuntimeException("entity " + entityClass.getName() + " has no id field");
+            }
+            String column = getColumn(orderField);
+            String direction = ascending ? " ASC" : " DESC";
+            String comparator = ascending ? " > ?" : " < ?";
+            boolean orderById = orderField.equals(idFieldName);
+            StringBuilder sqlBuilder = new StringBuilder("SELECT * FROM ").append(tableName);
+            if (!firstPage) {
+                sqlBuilder.append(" WHERE ");
+                if (orderById) {
+                    sqlBuilder.append(idColumn).append(comparator);
+                } else {
+                    sqlBuilder.append(column).append(ascending ? " >= ?" : " <= ?").append(" AND (")
+                            .append(column).append(comparator).append(" OR ").append(idColumn).append(comparator).append(')');
+                }
+            }
+            sqlBuilder.append(" ORDER BY ");
+            if (!orderById) {
+                sqlBuilder.append(column).append(direction).append(", ");
+            }
+            sqlBuilder.append(idColumn).append(direction).append(" LIMIT ?");
+            sql = sqlBuilder.toString();
+            keysetSqlMap.putIfAbsent(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 获取属性的类型
+     */
+    public Type getFieldType(String fieldName) {
+        return fields[getFieldIndex(fieldName)].getGenericType();
+    }
+
+    /**
+     * 读取实体的属性值
+     */
+    public Object getFieldValue(Object entity, String fieldName) {
+        try {
+            return getFieldAccessors()[getFieldIndex(fieldName)][0].invoke(entity);
+        } catch (Throwable e) {
+            throw new RuntimeException("get field " + fieldName + " of entity " + entityClass.getName() + " failure", e);
+        }
+    }
+
+    /**
+     * 复制实体的所有属性到一个新实例（浅复制）, 实体类需要有无参构造器
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T copy(T entity) {
+        MethodHandle[][] accessors = getFieldAccessors();
+        try {
+            Object copy = entityClass.getDeclaredConstructor().newInstance();
+            for (MethodHandle[] accessor : accessors) {
+                accessor[1].invoke(copy, accessor[0].invoke(entity));
+            }
+            return (T) copy;
+        } catch (Throwable e) {
+            throw new RuntimeException("copy entity " + entityClass.getName() + " failure", e);
+        }
+    }
+
+    /**
+     * 估算实体占用的内存字节数: 对象头和每个属性的引用, 加上属性值本身（字符串按长度计算）
+     */
+    public long estimateSize(Object entity) {
+        MethodHandle[][] accessors = getFieldAccessors();
+        long size = 16 + 8L * accessors.length;
+        try {
+            for (MethodHandle[] accessor : accessors) {
+                Object value = accessor[0].invoke(entity);
+                if (value instanceof CharSequence) {
+                    size += 40 + 2L * ((CharSequence) value).length();
+                } else if (value instanceof byte[]) {
+                    size += 16 + ((byte[]) value).length;
+                } else if (value != null) {
+                    size += 24;
+                }
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("estimate size of entity " + entityClass.getName() + " failure", e);
+        }
+        return size;
+    }
+
+    private MethodHandle[][] getFieldAccessors() {
+        MethodHandle[][] accessors = fieldAccessors;
+        if (accessors == null) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            accessors = new MethodHandle[fields.length][];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i].setAccessible(true);
+                    accessors[i] = new MethodHandle[]{lookup.unreflectGetter(fields[i]), lookup.unreflectSetter(fields[i])};
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            fieldAccessors = accessors;
+        }
+        return accessors;
+    }
+
+    /**
+     * 与属性名不同的列名, 相同时为 null; fieldMap 的键是列名时按列名取参数, 见 SqlTemplate
+     */
+    private String[] toColumnAliases(String[] templateFieldNames) {
+        String[] aliases = new String[templateFieldNames.length];
+        for (int i = 0; i < aliases.length; i++) {
+            String column = columnMap.get(templateFieldNames[i]);
+            aliases[i] = column.equals(templateFieldNames[i]) ? null : column;
+        }
+        return aliases;
+    }
+
+    /**
+     * 把属性名（或列名）集合转换为列位置的集合, 与属性名的顺序无关
+     */
+    private BitSet toColumnSet(Collection<String> fieldNameSet) {
+        BitSet columnSet = new BitSet(fieldNames.length);
+        for (String fieldName : fieldNameSet) {
+            columnSet.set(getFieldIndex(fieldName));
+        }
+        return columnSet;
+    }
+
+    private String[] toFieldNames(BitSet columnSet) {
+        String[] result = new String[columnSet.cardinality()];
+        int i = 0;
+        for (int index = columnSet.nextSetBit(0); index >= 0; index = columnSet.nextSetBit(index + 1)) {
+            result[i++] = fieldNames[index];
+        }
+        return result;
+    }
+
+    /**
+     * 获取属性的位置, 先按属性名, 再按列名查找
+     */
+    private int getFieldIndex(String fieldName) {
+        Integer index = fieldIndexMap.get(fieldName);
+        if (index == null) {
+            index = columnIndexMap.get(fieldName);
+        }
+        if (index == null) {
+            throw new RuntimeException("unknown field or column " + fieldName + " of entity " + entityClass.getName());
+        }
+        return index;
+    }
+
+    private static SqlTemplate putIfAbsent(ConcurrentMap<BitSet, SqlTemplate> templateMap, BitSet columnSet, SqlTemplate sqlTemplate) {
+        SqlTemplate existing = templateMap.putIfAbsent(columnSet, sqlTemplate);
+        return existing != null ? existing : sqlTemplate;
+    }
+
+    /**
+     * 获取实体类及其父类的所有实例属性（不包括 static 和 transient 属性）, 父类的属性在前
+     */
+    private static List<Field> getFields(Class<?> entityClass) {
+        List<Class<?>> classList = new ArrayList<>();
+        for (Class<?> cls = entityClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            classList.add(0, cls);
+        }
+        List<Field> fieldList = new ArrayList<>();
+        for (Class<?> cls : classList) {
+            for (Field field : cls.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    fieldList.add(field);
+                }
+            }
+        }
+        return fieldList;
+    }
+}
@@ -0,0 +1,359 @@
+package cn.egret.jdbc;
+
+import cn.egret.annotation.Sharded;
+import cn.egret.helper.DatabaseHelper;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 实体查询构造器
+ * 按实体元数据生成只查询指定列的 select 语句（不使用 SELECT *）, 结果映射为实体或投影类型（有无参构造器和对应 setter 的任意类）:
+ * <pre>
+ * List&lt;UserName&gt; list = EntityQuery.from(User.class).select("id", "name").where("age", "&gt;", 20)
+ *         .orderBy("age", false).limit(10).into(UserName.class).list();
+ * </pre>
+ * 没有调用 select 时查询实体（或投影类型）的所有属性对应的列. 列名与属性名不同时使用属性名作为别名.
+ * 同一种查询（实体类, 结果类型, 列, 条件的属性和运算符, 排序, 是否 limit）的 SQL 和行映射器只生成一次, 条件的值和行数作为参数.
+ * 分片实体在每个分片上执行同一条 SQL, 合并后按排序属性重新排序并截取 limit 行; 排序属性总是被查询, 投影类型需要有排序属性.
+ * @author egret
+ */
+public final class EntityQuery<T, R> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityQuery.class);
+
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("=", "<>", "!=", "<", "<=", ">", ">=", "LIKE"));
+
+    /**
+     * 查询结构 - 编译后的查询
+     */
+    private static final ConcurrentMap<String, CompiledQuery<?>> COMPILED_QUERY_MAP = new ConcurrentHashMap<>();
+
+    private final Class<T> entityClass;
+
+    private final Class<R> resultClass;
+
+    private String[] fieldNames;
+
+    /**
+     * 条件: 属性名和运算符
+     */
+    private final List<String[]> conditionList = new ArrayList<>();
+
+    private final List<Object> paramList = new ArrayList<>();
+
+    /**
+     * 排序: 属性名和方向
+     */
+    private final List<String[]> orderList = new ArrayList<>();
+
+    private int limit = -1;
+
+    private EntityQuery(Class<T> entityClass, Class<R> resultClass) {
+        this.entityClass = entityClass;
+        this.resultClass = resultClass;
+    }
+
+    /**
+     * 查询实体类对应的表, 结果映射为实体
+     */
+    public static <T> EntityQuery<T, T> from(Class<T> entityClass) {
+        return new EntityQuery<>(entityClass, entityClass);
+    }
+
+    /**
+     * 只查询指定属性对应的列
+     */
+    public EntityQuery<T, R> select(String... fieldNames) {
+        if (fieldNames.length == 0) {
+            throw new IllegalArgumentException("no field is selected");
+        }
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        for (String fieldName : fieldNames) {
+            entityMeta.getColumn(fieldName);
+        }
+        this.fieldNames = fieldNames.clone();
+        return this;
+    }
+
+    /**
+     * 把结果映射为投影类型, 投影类型通过与属性同名的 setter 接收列值
+     */
+    public <P> EntityQuery<T, P> into(Class<P> projectionClass) {
+        EntityQuery<T, P> query = new EntityQuery<>(entityClass, projectionClass);
+        query.fieldNames = fieldNames;
+        query.conditionList.addAll(conditionList);
+        query.paramList.addAll(paramList);
+        query.orderList.addAll(orderList);
+        query.limit = limit;
+        return query;
+    }
+
+    /**
+     * 添加条件: 属性 运算符 ?, 运算符为 =, &lt;&gt;, !=, &lt;, &lt;=, &gt;, &gt;= 或 LIKE, 多个条件以 AND 连接
+     */
+    public EntityQuery<T, R> where(String fieldName, String operator, Object value) {
+        String normalizedOperator = operator.trim().toUpperCase();
+        if (!OPERATORS.contains(normalizedOperator)) {
+            throw new IllegalArgumentException("unsupported operator: " + operator);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value of condition on " + fieldName + " is null");
+        }
+        EntityMeta.of(entityClass).getColumn(fieldName);
+        conditionList.add(new String[]{fieldName, normalizedOperator});
+        paramList.add(value);
+        return this;
+    }
+
+    /**
+     * 添加排序
+     */
+    public EntityQuery<T, R> orderBy(String fieldName, boolean ascending) {
+        EntityMeta.of(entityClass).getColumn(fieldName);
+        orderList.add(new String[]{fieldName, ascending ? "ASC" : "DESC"});
+        return this;
+    }
+
+    /**
+     * 最多返回的行数
+     */
+    public EntityQuery<T, R> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * 执行查询
+     */
+    public List<R> list() {
+        CompiledQuery<R> compiledQuery = compile();
+        Object[] params = paramList.toArray(new Object[paramList.size() + (limit >= 0 ? 1 : 0)]);
+        if (limit >= 0) {
+            params[params.length - 1] = limit;
+        }
+        List<R> resultList = DatabaseHelper.queryList(entityClass, compiledQuery, compiledQuery.getSql(), params);
+        return isSharded() ? mergeShards(resultList) : resultList;
+    }
+
+    /**
+     * 执行查询, 返回第一行, 没有结果时返回 null; 没有指定 limit 时只查询一行
+     */
+    public R one() {
+        if (limit < 0) {
+            limit = 1;
+        }
+        List<R> resultList = list();
+        return resultList.isEmpty() ? null : resultList.get(0);
+    }
+
+    /**
+     * 获取生成的 SQL
+     */
+    public String getSql() {
+        return compile().getSql();
+    }
+
+    /**
+     * 清空编译后的查询（如表结构变化后）
+     */
+    public static void clearCache() {
+        COMPILED_QUERY_MAP.clear();
+    }
+
+    private boolean isSharded() {
+        return DatabaseHelper.getShardRouter() != null && entityClass.isAnnotationPresent(Sharded.class);
+    }
+
+    /**
+     * 合并各分片的结果: 每个分片的结果已经排序并截取, 合并后按排序属性重新排序, 再截取 limit 行
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<R> mergeShards(List<R> resultList) {
+        if (!orderList.isEmpty()) {
+            EntityMeta resultMeta = EntityMeta.of(resultClass);
+            Comparator<Object> comparator = null;
+            for (String[] order : orderList) {
+                //与 MySQL 相同, 升序时 NULL 在前
+                Comparator<Object> orderComparator = Comparator.comparing(result -> (Comparable) resultMeta.getFieldValue(result, order[0]),
+                        Comparator.nullsFirst(Comparator.naturalOrder()));
+                if ("DESC".equals(order[1])) {
+                    orderComparator = orderComparator.reversed();
+                }
+                comparator = comparator == null ? orderComparator : comparator.thenComparing(orderComparator);
+            }
+            resultList.sort(comparator);
+        }
+        return limit >= 0 && resultList.size() > limit ? new ArrayList<>(resultList.subList(0, limit)) : resultList;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompiledQuery<R> compile() {
+        String shape = getShape();
+        CompiledQuery<?> compiledQuery = COMPILED_QUERY_MAP.get(shape);
+        if (compiledQuery == null) {
+            compiledQuery = new CompiledQuery<>(resultClass, buildSql());
+            CompiledQuery<?> existing = COMPILED_QUERY_MAP.putIfAbsent(shape, compiledQuery);
+            if (existing != null) {
+                compiledQuery = existing;
+            }
+        }
+        return (CompiledQuery<R>) compiledQuery;
+    }
+
+    /**
+     * 查询结构: 实体类, 结果类型, 列, 条件的属性和运算符, 排序, 是否 limit
+     */
+    private String getShape() {
+        StringBuilder shape = new StringBuilder(64).append(entityClass.getName()).append('>').append(resultClass.getName()).append('|');
+        if (fieldNames != null) {
+            for (String fieldName : fieldNames) {
+                shape.append(fieldName).append(',');
+            }
+        }
+        shape.append('|');
+        for (String[] condition : conditionList) {
+            shape.append(condition[0]).append(' ').append(condition[1]).append(',');
+        }
+        shape.append('|');
+        for (String[] order : orderList) {
+            shape.append(order[0]).append(' ').append(order[1]).append(',');
+        }
+        return shape.append('|').append(limit >= 0).toString();
+    }
+
+    private String buildSql() {
+        EntityMeta entityMeta = EntityMeta.of(entityClass);
+        StringBuilder sql = new StringBuilder("SELECT ");
+        String[] selectFieldNames = fieldNames != null ? fieldNames : getDefaultFieldNames(entityMeta);
+        if (isSharded() && !orderList.isEmpty()) {
+            selectFieldNames = addOrderFieldNames(selectFieldNames);
+        }
+        for (int i = 0; i < selectFieldNames.length; i++) {
+            String column = entityMeta.getColumn(selectFieldNames[i]);
+            sql.append(i == 0 ? "" : ", ").append(column);
+            if (!column.equals(selectFieldNames[i])) {
+                sql.append(" AS ").append(selectFieldNames[i]);
+            }
+        }
+        sql.append(" FROM ").append(entityMeta.getTableName());
+        for (int i = 0; i < conditionList.size(); i++) {
+            String[] condition = conditionList.get(i);
+            sql.append(i == 0 ? " WHERE " : " AND ").append(entityMeta.getColumn(condition[0])).append(' ').append(condition[1]).append(" ?");
+        }
+        for (int i = 0; i < orderList.size(); i++) {
+            String[] order = orderList.get(i);
+            sql.append(i == 0 ? " ORDER BY " : ", ").append(entityMeta.getColumn(order[0])).append(' ').append(order[1]);
+        }
+        if (limit >= 0) {
+            sql.append(" LIMIT ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 分片实体合并结果时按排序属性排序, 排序属性必须被查询并且在结果类型中
+     */
+    private String[] addOrderFieldNames(String[] selectFieldNames) {
+        Set<String> fieldNameSet = new LinkedHashSet<>(Arrays.asList(selectFieldNames));
+        Set<String> resultFieldNameSet = EntityMeta.of(resultClass).getColumnMap().keySet();
+        for (String[] order : orderList) {
+            if (!resultFieldNameSet.contains(order[0])) {
+                throw new IllegalArgumentException("order field " + order[0] + " of sharded entity " + entityClass.getName()
+                        + " is not a field of " + resultClass.getName());
+            }
+            fieldNameSet.add(order[0]);
+        }
+        return fieldNameSet.toArray(new String[0]);
+    }
+
+    /**
+     * 没有指定列时: 查询实体的所有属性; 投影类型只查询它有 setter 的属性
+     */
+    private String[] getDefaultFieldNames(EntityMeta entityMeta) {
+        Set<String> fieldNameSet = entityMeta.getColumnMap().keySet();
+        if (resultClass == entityClass) {
+            return fieldNameSet.toArray(new String[0]);
+        }
+        Set<String> propertySet = new HashSet<>();
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(resultClass).getPropertyDescriptors()) {
+                if (property.getWriteMethod() != null) {
+                    propertySet.add(property.getName());
+                }
+            }
+        } catch (IntrospectionException e) {
+            LOGGER.error("get properties failure: " + resultClass.getName(), e);
+            throw new RuntimeException(e);
+        }
+        List<String> selectFieldNameList = new ArrayList<>();
+        for (String fieldName : fieldNameSet) {
+            if (propertySet.contains(fieldName)) {
+                selectFieldNameList.add(fieldName);
+            }
+        }
+        if (selectFieldNameList.isEmpty()) {
+            throw new RuntimeException("projection " + resultClass.getName() + " has no property of entity " + entityClass.getName());
+        }
+        return selectFieldNameList.toArray(new String[0]);
+    }
+
+    /**
+     * 编译后的查询: SQL 和行映射器, 同时作为把结果集转换为列表的处理器
+     */
+    private static final class CompiledQuery<R> implements ResultSetHandler<List<R>> {
+
+        private final Class<R> resultClass;
+
+        private final String sql;
+
+        /**
+         * 第一次执行时按结果集元数据生成
+         */
+        private volatile RowMapper<R> rowMapper;
+
+        private CompiledQuery(Class<R> resultClass, String sql) {
+            this.resultClass = resultClass;
+            this.sql = sql;
+        }
+
+        private String getSql() {
+            return sql;
+        }
+
+        @Override
+        public List<R> handle(ResultSet rs) throws SQLException {
+            List<R> resultList = new ArrayList<>();
+            if (!rs.next()) {
+                return resultList;
+            }
+            RowMapper<R> mapper = rowMapper;
+            if (mapper == null) {
+                mapper = BeanRowMapper.create(resultClass, rs.getMetaData());
+                rowMapper = mapper;
+            }
+            do {
+                resultList.add(mapper.mapRow(rs));
+            } while (rs.next());
+            return resultList;
+        }
+    }
+}
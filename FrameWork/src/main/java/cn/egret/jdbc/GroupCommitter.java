@@ -0,0 +1,310 @@
+package cn.egret.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 组提交
+ * 把不同线程在一个时间窗口内提交的小事务（单元）合并到同一个连接的同一个数据库事务中, 只提交一次.
+ * 第一个加入的线程是组长: 执行完自己的单元后等到时间窗口结束, 关闭这一组, 等待所有单元执行完再提交.
+ * 各单元在自己的线程中依次使用共用的连接执行, 每个单元前设置保存点, 单元失败时回滚到保存点, 只有这个单元的调用者得到异常;
+ * 其它调用者在提交之后返回, 提交失败时都得到异常.
+ * @author egret
+ */
+public class GroupCommitter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitter.class);
+
+    /**
+     * 组提交的单元
+     */
+    public interface Unit<T> {
+
+        T execute() throws Throwable;
+    }
+
+    /**
+     * 借出一个连接
+     */
+    private final Supplier<Connection> connectionSupplier;
+
+    /**
+     * 归还连接
+     */
+    private final Consumer<Connection> connectionReleaser;
+
+    /**
+     * 单元执行期间把连接绑定到当前线程, 返回解除绑定的操作
+     */
+    private final Function<Connection, Runnable> connectionBinder;
+
+    private final long windowNanos;
+
+    private final int maxGroupSize;
+
+    /**
+     * 正在接受单元的组, 只能在持有 this 的锁时访问
+     */
+    private Group currentGroup;
+
+    private final LongAdder groupCount = new LongAdder();
+
+    private final LongAdder unitCount = new LongAdder();
+
+    public GroupCommitter(Supplier<Connection> connectionSupplier, Consumer<Connection> connectionReleaser,
+                          Function<Connection, Runnable> connectionBinder, long windowNanos, int maxGroupSize) {
+        this.connectionSupplier = connectionSupplier;
+        this.connectionReleaser = connectionReleaser;
+        this.connectionBinder = connectionBinder;
+        this.windowNanos = windowNanos;
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    /**
+     * 在组提交中执行单元, 单元所在的事务提交后返回
+     */
+    public <T> T execute(Unit<T> unit) throws Throwable {
+        Group group;
+        boolean leader;
+        synchronized (this) {
+            group = currentGroup;
+            leader = group == null;
+            if (leader) {
+                group = new Group(System.nanoTime() + windowNanos);
+                currentGroup = group;
+                groupCount.increment();
+            }
+            //组满后之后的单元进入新的一组
+            if (++group.memberCount >= maxGroupSize) {
+                currentGroup = null;
+            }
+        }
+        unitCount.increment();
+
+        T result = null;
+        Throwable failure = null;
+        group.unitLock.lock();
+        try {
+            Connection conn = group.getConnection();
+            Savepoint savepoint = conn.setSavepoint();
+            Runnable unbinder = connectionBinder.apply(conn);
+            try {
+                result = unit.execute();
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                unbinder.run();
+            }
+            if (failure == null) {
+                releaseSavepoint(conn, savepoint);
+            } else {
+                rollback(group, conn, savepoint);
+            }
+        } catch (Throwable e) {
+            //借出连接或设置保存点失败
+            failure = e;
+        } finally {
+            group.unitLock.unlock();
+        }
+        group.unitFinished(failure == null);
+
+        if (leader) {
+            lead(group);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        group.awaitCommit();
+        return result;
+    }
+
+    /**
+     * 组的数量（数据库事务数）
+     */
+    public long getGroupCount() {
+        return groupCount.sum();
+    }
+
+    /**
+     * 单元的数量
+     */
+    public long getUnitCount() {
+        return unitCount.sum();
+    }
+
+    /**
+     * 组长等到时间窗口结束后关闭这一组, 等待所有单元执行完, 提交
+     */
+    private void lead(Group group) {
+        for (long waitNanos = group.closeNanos - System.nanoTime(); waitNanos > 0; waitNanos = group.closeNanos - System.nanoTime()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        synchronized (this) {
+            if (currentGroup == group) {
+                currentGroup = null;
+            }
+        }
+        group.awaitUnits();
+
+        Throwable commitFailure = null;
+        Connection conn = group.connection;
+        if (conn != null) {
+            try {
+                if (group.rollbackOnly) {
+                    conn.rollback();
+                    commitFailure = new IllegalStateException("group commit is rolled back because a unit could not be rolled back to its savepoint");
+                } else if (group.successCount > 0) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                LOGGER.error("group commit failure", e);
+                commitFailure = e;
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackException) {
+                    LOGGER.error("rollback group commit failure", rollbackException);
+                }
+            } finally {
+                connectionReleaser.accept(conn);
+            }
+        }
+        group.complete(commitFailure);
+    }
+
+    private static void releaseSavepoint(Connection conn, Savepoint savepoint) {
+        try {
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            //有的驱动不支持释放保存点, 保存点在事务结束时释放
+            LOGGER.debug("release savepoint failure", e);
+        }
+    }
+
+    private static void rollback(Group group, Connection conn, Savepoint savepoint) {
+        try {
+            conn.rollback(savepoint);
+        } catch (SQLException e) {
+            LOGGER.error("rollback to savepoint failure", e);
+            group.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * 一组单元
+     */
+    private final class Group {
+
+        private final long closeNanos;
+
+        /**
+         * 执行单元时持有的锁, 各单元依次使用连接
+         */
+        private final ReentrantLock unitLock = new ReentrantLock();
+
+        /**
+         * 第一个单元执行时借出, 只能在持有 unitLock 时修改
+         */
+        private Connection connection;
+
+        /**
+         * 加入的单元数量, 只能在持有 GroupCommitter 的锁时修改
+         */
+        private int memberCount;
+
+        private boolean rollbackOnly;
+
+        /**
+         * 以下属性只能在持有 this 的锁时访问
+         */
+        private int finishedCount;
+
+        private int successCount;
+
+        private boolean done;
+
+        private Throwable commitFailure;
+
+        private Group(long closeNanos) {
+            this.closeNanos = closeNanos;
+        }
+
+        private Connection getConnection() throws SQLException {
+            if (connection == null) {
+                Connection conn = connectionSupplier.get();
+                try {
+                    conn.setAutoCommit(false);
+                } catch (SQLException e) {
+                    connectionReleaser.accept(conn);
+                    throw e;
+                }
+                connection = conn;
+            }
+            return connection;
+        }
+
+        private synchronized void unitFinished(boolean success) {
+            finishedCount++;
+            if (success) {
+                successCount++;
+            }
+            notifyAll();
+        }
+
+        private synchronized void awaitUnits() {
+            int members;
+            synchronized (GroupCommitter.this) {
+                members = memberCount;
+            }
+            boolean interrupted = false;
+            while (finishedCount < members) {
+                interrupted |= waitUninterruptibly();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized void complete(Throwable commitFailure) {
+            this.commitFailure = commitFailure;
+            this.done = true;
+            notifyAll();
+        }
+
+        private synchronized void awaitCommit() {
+            boolean interrupted = false;
+            while (!done) {
+                interrupted |= waitUninterruptibly();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (commitFailure != null) {
+                throw new RuntimeException("group commit failure", commitFailure);
+            }
+        }
+
+        /**
+         * 单元已经执行, 必须等到事务结束, 被中断时返回 true, 由调用者在等待结束后恢复中断状态
+         */
+        private boolean waitUninterruptibly() {
+            try {
+                wait();
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package cn.egret.jdbc;
+
+import cn.egret.jdbc.pool.PooledDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 从库路由数据源
+ * 按轮询或最少未完成请求选择一个从库获取连接; 获取连接或使用连接时出现连接级别的错误（SQLState 08 开头）时,
+ * 把从库摘除 ejectMillis 毫秒, 之后重新参与选择. 其它获取连接的失败（如连接池已满等待超时）不摘除, 只是改用下一个从库,
+ * 避免负载高时摘除从库把压力转移到其它从库和主库. 所有从库都不可用时使用主库.
+ * @author egret
+ */
+public class ReplicaRoutingDataSource implements DataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    /**
+     * 从库选择策略
+     */
+    public enum Balance {
+
+        /**
+         * 轮询
+         */
+        ROUND_ROBIN,
+
+        /**
+         * 未归还连接最少的从库
+         */
+        LEAST_OUTSTANDING
+    }
+
+    private final List<Replica> replicaList = new ArrayList<>();
+
+    private final DataSource primary;
+
+    private final Balance balance;
+
+    private final long ejectNanos;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final LongAdder primaryFallbackCount = new LongAdder();
+
+    public ReplicaRoutingDataSource(List<String> nameList, List<DataSource> replicaDataSourceList, DataSource primary,
+                                    Balance balance, long ejectMillis) {
+        for (int i = 0; i < replicaDataSourceList.size(); i++) {
+            replicaList.add(new Replica(nameList.get(i), replicaDataSourceList.get(i)));
+        }
+        this.primary = primary;
+        this.balance = balance;
+        this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(ejectMillis);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(-1);
+    }
+
+    /**
+     * 获取连接, 从库和主库是内置连接池时, 所有尝试合计最多等待 waitMillis 毫秒, 小于 0 表示不限制
+     */
+    public Connection getConnection(long waitMillis) throws SQLException {
+        long startNanos = System.nanoTime();
+        List<Replica> failedList = null;
+        for (int i = 0; i < replicaList.size(); i++) {
+            Replica replica = select(failedList);
+            if (replica == null) {
+                break;
+            }
+            Connection conn;
+            try {
+                conn = getConnection(replica.dataSource, getRemainingMillis(waitMillis, startNanos));
+            } catch (SQLException e) {
+                if (isFatal(e)) {
+                    replica.eject(e);
+                } else {
+                    LOGGER.warn(String.format("get connection from replica %s failure, try next replica", replica.name), e);
+                }
+                if (failedList == null) {
+                    failedList = new ArrayList<>(replicaList.size());
+                }
+                failedList.add(replica);
+                continue;
+            }
+            replica.outstanding.incrementAndGet();
+            replica.routedCount.increment();
+            return (Connection) Proxy.newProxyInstance(ReplicaRoutingDataSource.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if ("close".equals(method.getName())) {
+                            if (!conn.isClosed()) {
+                                replica.outstanding.decrementAndGet();
+                            }
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            Throwable cause = e.getCause();
+                            if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                                replica.eject((SQLException) cause);
+                            }
+                            throw cause;
+                        }
+                    });
+        }
+        primaryFallbackCount.increment();
+        return getConnection(primary, getRemainingMillis(waitMillis, startNanos));
+    }
+
+    /**
+     * 获取每个从库的状态
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder();
+        long now = System.nanoTime();
+        for (Replica replica : replicaList) {
+            status.append(String.format("%s: outstanding=%d, routed=%d, ejected=%s%n", replica.name, replica.outstanding.get(),
+                    replica.routedCount.sum(), replica.isEjected(now)));
+        }
+        status.append(String.format("primary fallback: %d%n", primaryFallbackCount.sum()));
+        return status.toString();
+    }
+
+    /**
+     * 获取因从库不可用而使用主库的次数
+     */
+    public long getPrimaryFallbackCount() {
+        return primaryFallbackCount.sum();
+    }
+
+    /**
+     * 按策略选择一个未被摘除并且这次没有失败过的从库, 没有可选的从库时返回 null
+     */
+    private Replica select(List<Replica> failedList) {
+        long now = System.nanoTime();
+        int size = replicaList.size();
+        if (balance == Balance.LEAST_OUTSTANDING) {
+            Replica selected = null;
+            //从轮询位置开始比较, 未归还连接数相同时轮流选择
+            int start = nextIndex.getAndIncrement() & Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicaList.get((start + i) % size);
+                if (isAvailable(replica, now, failedList)
+                        && (selected == null || replica.outstanding.get() < selected.outstanding.get())) {
+                    selected = replica;
+                }
+            }
+            return selected;
+        }
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicaList.get((nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size);
+            if (isAvailable(replica, now, failedList)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static long getRemainingMillis(long waitMillis, long startNanos) {
+        if (waitMillis < 0) {
+            return -1;
+        }
+        return Math.max(0, waitMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private static Connection getConnection(DataSource dataSource, long waitMillis) throws SQLException {
+        if (waitMillis >= 0 && dataSource instanceof PooledDataSource) {
+            return ((PooledDataSource) dataSource).getConnection(waitMillis);
+        }
+        return dataSource.getConnection();
+    }
+
+    private static boolean isAvailable(Replica replica, long now, List<Replica> failedList) {
+        return !replica.isEjected(now) && (failedList == null || !failedList.contains(replica));
+    }
+
+    /**
+     * 是否为连接级别的错误: 异常链中有 SQLState 08 开头的异常（包括 SQLNonTransientConnectionException 和 SQLTransientConnectionException）
+     */
+    private static boolean isFatal(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLNonTransientConnectionException || cause instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("getConnection(username, password)");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * 从库
+     */
+    private class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        /**
+         * 借出未归还的连接数
+         */
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final LongAdder routedCount = new LongAdder();
+
+        /**
+         * 摘除截止时间, 0 表示未摘除
+         */
+        private volatile long ejectedUntilNanos;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        boolean isEjected(long now) {
+            long until = ejectedUntilNanos;
+            return until != 0 && now - until < 0;
+        }
+
+        void eject(SQLException e) {
+            if (!isEjected(System.nanoTime())) {
+                LOGGER.warn(String.format("replica %s ejected for %d ms", name, TimeUnit.NANOSECONDS.toMillis(ejectNanos)), e);
+            }
+            ejectedUntilNanos = System.nanoTime() + ejectNanos;
+        }
+    }
+}
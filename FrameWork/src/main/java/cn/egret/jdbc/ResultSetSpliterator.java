@@ -0,0 +1,75 @@
+package cn.egret.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 逐行读取打开的结果集, 把每一行转换为实体
+ * 读完最后一行或者出错时自动调用 onClose（参数为读取的行数）, 提前结束时由 Stream.close() 调用. onClose 只会执行一次.
+ * @author egret
+ */
+public class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultSetSpliterator.class);
+
+    private final Class<T> entityClass;
+
+    private final ResultSet rs;
+
+    private final LongConsumer onClose;
+
+    private RowMapper<T> rowMapper;
+
+    private boolean closed;
+
+    private long rowCount;
+
+    public ResultSetSpliterator(Class<T> entityClass, ResultSet rs, LongConsumer onClose) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.entityClass = entityClass;
+        this.rs = rs;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        T entity;
+        try {
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            if (rowMapper == null) {
+                rowMapper = RowMapperCache.getRowMapper(entityClass, rs);
+            }
+            entity = rowMapper.mapRow(rs);
+            rowCount++;
+        } catch (SQLException e) {
+            LOGGER.error("read result set failure", e);
+            close();
+            throw new RuntimeException(e);
+        }
+        action.accept(entity);
+        return true;
+    }
+
+    /**
+     * 释放结果集以及相关资源
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            onClose.accept(rowCount);
+        }
+    }
+}
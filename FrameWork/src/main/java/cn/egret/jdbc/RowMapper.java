@@ -0,0 +1,16 @@
+package cn.egret.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 行映射器, 把结果集的当前行转换为一个对象
+ * @author egret
+ */
+public interface RowMapper<T> {
+
+    /**
+     * 转换结果集的当前行, 不移动游标
+     */
+    T mapRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,66 @@
+package cn.egret.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 行映射器缓存
+ * 以实体类和结果集结构（按顺序排列的列名）为键缓存 BeanRowMapper, 同一个实体类的同一种查询只在第一次时生成映射器,
+ * 之后每次查询只需要读取结果集元数据里的列名.
+ * @author egret
+ */
+public final class RowMapperCache {
+
+    /**
+     * 实体类 - (结果集结构 - 行映射器)
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, RowMapper<?>>> ROW_MAPPER_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 获取实体类对应当前结果集结构的行映射器
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> getRowMapper(Class<T> entityClass, ResultSet rs) throws SQLException {
+        ConcurrentMap<String, RowMapper<?>> shapeMap = ROW_MAPPER_MAP.get(entityClass);
+        if (shapeMap == null) {
+            shapeMap = new ConcurrentHashMap<>();
+            ConcurrentMap<String, RowMapper<?>> existing = ROW_MAPPER_MAP.putIfAbsent(entityClass, shapeMap);
+            if (existing != null) {
+                shapeMap = existing;
+            }
+        }
+        ResultSetMetaData metaData = rs.getMetaData();
+        String shape = getShape(metaData);
+        RowMapper<?> rowMapper = shapeMap.get(shape);
+        if (rowMapper == null) {
+            rowMapper = BeanRowMapper.create(entityClass, metaData);
+            RowMapper<?> existing = shapeMap.putIfAbsent(shape, rowMapper);
+            if (existing != null) {
+                rowMapper = existing;
+            }
+        }
+        return (RowMapper<T>) rowMapper;
+    }
+
+    /**
+     * 清空缓存（如表结构变化后）
+     */
+    public static void clear() {
+        ROW_MAPPER_MAP.clear();
+    }
+
+    /**
+     * 结果集结构: 按顺序排列的列名
+     */
+    private static String getShape(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        StringBuilder shape = new StringBuilder(columnCount * 8);
+        for (int column = 1; column <= columnCount; column++) {
+            shape.append(BeanRowMapper.getColumnLabel(metaData, column)).append(',');
+        }
+        return shape.toString();
+    }
+}
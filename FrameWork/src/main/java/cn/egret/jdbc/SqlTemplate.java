@@ -0,0 +1,61 @@
+package cn.egret.jdbc;
+
+import java.util.Map;
+
+/**
+ * 编译好的 SQL 模板: SQL 语句, 以及按参数顺序排列的属性名
+ * @author egret
+ */
+public final class SqlTemplate {
+
+    private final String sql;
+
+    /**
+     * 按参数顺序排列的属性名
+     */
+    private final String[] fieldNames;
+
+    /**
+     * 与属性名不同的列名（相同时为 null）, fieldMap 中没有属性名时按列名取参数
+     */
+    private final String[] columnAliases;
+
+    public SqlTemplate(String sql, String[] fieldNames) {
+        this(sql, fieldNames, new String[fieldNames.length]);
+    }
+
+    public SqlTemplate(String sql, String[] fieldNames, String[] columnAliases) {
+        this.sql = sql;
+        this.fieldNames = fieldNames;
+        this.columnAliases = columnAliases;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * 按参数顺序从 fieldMap 中取出参数（键为属性名或列名）, 再追加额外的参数（如 WHERE 条件里的 id）
+     */
+    public Object[] getParams(Map<String, Object> fieldMap, Object... extraParams) {
+        Object[] params = new Object[fieldNames.length + extraParams.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            Object param = fieldMap.get(fieldNames[i]);
+            if (param == null && columnAliases[i] != null) {
+                param = fieldMap.get(columnAliases[i]);
+            }
+            params[i] = param;
+        }
+        System.arraycopy(extraParams, 0, params, fieldNames.length, extraParams.length);
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
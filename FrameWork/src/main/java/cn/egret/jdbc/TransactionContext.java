@@ -0,0 +1,224 @@
+package cn.egret.jdbc;
+
+import cn.egret.helper.DatabaseHelper;
+import cn.egret.helper.DeadlineHelper;
+
+import java.sql.Connection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 事务上下文
+ * 一个事务的连接和缓存失效记录. 事务绑定在开启它的线程上, 其它线程通过 DatabaseHelper.getTransactionContext() 获取上下文后,
+ * 用 wrap 包装的任务（或 TransactionContextExecutor 提交的任务）在执行期间加入同一个事务.
+ *
+ * 多个线程共用一个连接: DatabaseHelper 在事务中执行每条语句时持有上下文的锁, 不同线程的语句依次执行.
+ * 不能共用的操作在子任务中被拒绝（抛出 IllegalStateException）: 开启, 提交或回滚事务, getConnection() 直接使用连接, 流式查询.
+ * 开启事务的线程提交时先等待所有子任务结束; 事务结束后提交的子任务, 以及仍在执行的子任务的后续语句也被拒绝.
+ * @author egret
+ */
+public final class TransactionContext {
+
+    private static final int NEW = 0;
+
+    private static final int STARTED = 1;
+
+    private static final int CANCELLED = 2;
+
+    private final Connection connection;
+
+    private final Thread ownerThread;
+
+    private final Object entityCacheState;
+
+    private final Object queryCacheState;
+
+    /**
+     * 执行语句时持有的锁
+     */
+    private final ReentrantLock statementLock = new ReentrantLock();
+
+    /**
+     * 已提交未结束的子任务数量, 只能在持有 this 的锁时访问
+     */
+    private int pendingTaskCount;
+
+    private volatile boolean completed;
+
+    public TransactionContext(Connection connection, Object entityCacheState, Object queryCacheState) {
+        this.connection = connection;
+        this.ownerThread = Thread.currentThread();
+        this.entityCacheState = entityCacheState;
+        this.queryCacheState = queryCacheState;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public Object getEntityCacheState() {
+        return entityCacheState;
+    }
+
+    public Object getQueryCacheState() {
+        return queryCacheState;
+    }
+
+    /**
+     * 当前线程是否是开启事务的线程
+     */
+    public boolean isOwnerThread() {
+        return Thread.currentThread() == ownerThread;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public synchronized int getPendingTaskCount() {
+        return pendingTaskCount;
+    }
+
+    /**
+     * 包装任务, 任务执行期间加入这个事务
+     */
+    public Task<Void> wrap(Runnable task) {
+        return new Task<>(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 包装任务, 任务执行期间加入这个事务
+     */
+    public <T> Task<T> wrap(Callable<T> task) {
+        return new Task<>(task);
+    }
+
+    /**
+     * 执行语句之前调用, 事务已结束时抛出 IllegalStateException
+     */
+    public void lock() {
+        statementLock.lock();
+        if (completed) {
+            statementLock.unlock();
+            throw new IllegalStateException("transaction is already completed");
+        }
+    }
+
+    /**
+     * 执行语句之后调用
+     */
+    public void unlock() {
+        statementLock.unlock();
+    }
+
+    /**
+     * 等待所有子任务结束
+     */
+    public synchronized void awaitTasks() {
+        while (pendingTaskCount > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting for sub tasks of the transaction", e);
+            }
+        }
+    }
+
+    /**
+     * 结束事务: 不再接受新的子任务和语句, 并等待正在执行的语句结束
+     */
+    public void complete() {
+        synchronized (this) {
+            completed = true;
+        }
+        statementLock.lock();
+        statementLock.unlock();
+    }
+
+    private synchronized void taskSubmitted() {
+        if (completed) {
+            throw new IllegalStateException("transaction is already completed");
+        }
+        pendingTaskCount++;
+    }
+
+    private synchronized void taskFinished() {
+        if (--pendingTaskCount == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 加入事务执行的任务, 可以作为 Runnable, Callable 或 Supplier 提交
+     */
+    public final class Task<T> implements Runnable, Callable<T>, Supplier<T> {
+
+        private final Callable<T> action;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        /**
+         * 提交任务的线程的请求截止时间
+         */
+        private final Long deadline = DeadlineHelper.getDeadline();
+
+        private Task(Callable<T> action) {
+            taskSubmitted();
+            this.action = action;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (!state.compareAndSet(NEW, STARTED)) {
+                throw new CancellationException("task is cancelled");
+            }
+            boolean attached = false;
+            Long previousDeadline = DeadlineHelper.getDeadline();
+            DeadlineHelper.setDeadline(deadline);
+            try {
+                attached = DatabaseHelper.attachTransactionContext(TransactionContext.this);
+                return action.call();
+            } finally {
+                if (attached) {
+                    DatabaseHelper.detachTransactionContext();
+                }
+                DeadlineHelper.setDeadline(previousDeadline);
+                taskFinished();
+            }
+        }
+
+        @Override
+        public T get() {
+            try {
+                return call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            get();
+        }
+
+        /**
+         * 取消未开始的任务（如线程池拒绝执行时）, 使事务不再等待它
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(NEW, CANCELLED)) {
+                taskFinished();
+                return true;
+            }
+            return false;
+        }
+    }
+}
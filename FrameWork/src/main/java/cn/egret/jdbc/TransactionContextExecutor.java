@@ -0,0 +1,74 @@
+package cn.egret.jdbc;
+
+import cn.egret.helper.DatabaseHelper;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传播事务的线程池
+ * 包装一个线程池, 提交任务时如果当前线程在事务中, 任务执行期间加入同一个事务（见 TransactionContext）,
+ * 否则按原样执行. submit, invokeAll 等方法都通过 execute 提交.
+ * @author egret
+ */
+public class TransactionContextExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    public TransactionContextExecutor(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        TransactionContext transactionContext = DatabaseHelper.getTransactionContext();
+        if (transactionContext == null) {
+            delegate.execute(command);
+            return;
+        }
+        TransactionContext.Task<Void> task = transactionContext.wrap(command);
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 未执行的任务被取消, 事务不再等待它们
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> taskList = delegate.shutdownNow();
+        for (Runnable task : taskList) {
+            if (task instanceof TransactionContext.Task) {
+                ((TransactionContext.Task<?>) task).cancel();
+            }
+        }
+        return taskList;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
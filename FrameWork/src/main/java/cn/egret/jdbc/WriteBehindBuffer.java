@@ -0,0 +1,331 @@
+package cn.egret.jdbc;
+
+import cn.egret.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 延迟写入缓冲区
+ * 一个实体类的更新按主键合并（同一属性后写入的值覆盖先写入的）, 缓冲的实体数量达到 flushSize 或者经过 flushInterval 毫秒时批量写入.
+ * 缓冲的实体数量（包括正在写入的）达到 maxSize 时, 新实体的更新由更新的线程同步写入一次, 仍然没有空间时拒绝（数据库不可用时内存有界）;
+ * 已缓冲实体的更新总是合并. 同一时间只有一次写入, 保证同一行的更新按顺序写入;
+ * 批量写入失败时逐行重试: 有行写入成功时（数据库可用）仍然失败的行是坏数据, 记录日志后丢弃, 不阻塞其它行;
+ * 所有行都失败时更新放回缓冲区（之后的更新优先）, 记录日志, 由定时写入重试. 事务中直接写入实体之前先写入（事务外）它缓冲的更新, 见 flush(Collection).
+ * @author egret
+ */
+public class WriteBehindBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "write-behind-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Class<?> entityClass;
+
+    /**
+     * 批量写入: 主键 - 要更新的属性
+     */
+    private final Consumer<Map<Long, Map<String, Object>>> flushAction;
+
+    private final int flushSize;
+
+    private final int maxSize;
+
+    /**
+     * 主键 - 未写入的属性, 只能在持有 this 的锁时访问
+     */
+    private Map<Long, Map<String, Object>> pendingMap = new LinkedHashMap<>();
+
+    /**
+     * 是否已经提交了达到 flushSize 触发的写入, 只能在持有 this 的锁时访问
+     */
+    private boolean flushScheduled;
+
+    /**
+     * 正在写入的实体数量, 只能在持有 this 的锁时访问
+     */
+    private int inFlightCount;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final LongAdder updateCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder flushCount = new LongAdder();
+
+    private final LongAdder flushedRows = new LongAdder();
+
+    private final LongAdder failedFlushCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * 每次写入的耗时（微秒）
+     */
+    private final Histogram flushLatency = new Histogram();
+
+    public WriteBehindBuffer(Class<?> entityClass, Consumer<Map<Long, Map<String, Object>>> flushAction, int flushSize, int maxSize,
+                             long flushIntervalMillis) {
+        this.entityClass = entityClass;
+        this.flushAction = flushAction;
+        this.flushSize = Math.max(flushSize, 1);
+        this.maxSize = Math.max(maxSize, this.flushSize);
+        FLUSHER.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, Math.max(flushIntervalMillis, 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 合并一次更新
+     * 缓冲区已满时同步写入一次（失败时只记录日志）, 仍然没有空间时抛出 IllegalStateException
+     */
+    public void update(long id, Map<String, Object> fieldMap) {
+        boolean accepted = tryUpdate(id, fieldMap);
+        if (!accepted) {
+            flushQuietly();
+            accepted = tryUpdate(id, fieldMap);
+        }
+        if (!accepted) {
+            rejectedCount.increment();
+            throw new IllegalStateException("write behind buffer of " + entityClass.getName() + " is full: " + maxSize + " entities");
+        }
+        updateCount.increment();
+    }
+
+    /**
+     * 取出一个实体未写入的属性, 没有时返回 null
+     * 事务外删除实体之前调用, 等待正在进行的写入结束, 避免之后写入旧值
+     */
+    public Map<String, Object> take(long id) {
+        flushLock.lock();
+        try {
+            synchronized (this) {
+                return pendingMap.remove(id);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 把缓冲的更新写入数据库, 失败时放回缓冲区并抛出异常
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Map<String, Object>> batch;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pendingMap.isEmpty()) {
+                    return;
+                }
+                batch = pendingMap;
+                pendingMap = new LinkedHashMap<>();
+            }
+            write(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 只把指定实体缓冲的更新写入数据库, 失败时放回缓冲区并抛出异常
+     * 事务中直接写入或删除实体之前调用: 缓冲的更新不随事务回滚而丢失, 也不会在之后覆盖事务写入的值
+     */
+    public void flush(Collection<Long> ids) {
+        flushLock.lock();
+        try {
+            Map<Long, Map<String, Object>> batch = new LinkedHashMap<>();
+            synchronized (this) {
+                for (Long id : ids) {
+                    Map<String, Object> fieldMap = pendingMap.remove(id);
+                    if (fieldMap != null) {
+                        batch.put(id, fieldMap);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 缓冲的实体数量（队列深度）
+     */
+    public synchronized int getPendingCount() {
+        return pendingMap.size();
+    }
+
+    /**
+     * 更新次数
+     */
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    /**
+     * 合并到已缓冲实体的更新次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * 写入次数
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * 写入的实体数量
+     */
+    public long getFlushedRows() {
+        return flushedRows.sum();
+    }
+
+    /**
+     * 写入失败次数
+     */
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    /**
+     * 缓冲区已满而被拒绝的更新次数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * 逐行重试仍然失败而被丢弃的实体数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 写入耗时分布（微秒）
+     */
+    public Histogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("flush write behind buffer of " + entityClass.getName() + " failure", e);
+        }
+    }
+
+    /**
+     * 合并一次更新, 缓冲区已满并且是新实体时返回 false
+     */
+    private boolean tryUpdate(long id, Map<String, Object> fieldMap) {
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            Map<String, Object> pendingFieldMap = pendingMap.get(id);
+            if (pendingFieldMap != null) {
+                pendingFieldMap.putAll(fieldMap);
+                coalescedCount.increment();
+            } else if (pendingMap.size() + inFlightCount >= maxSize) {
+                return false;
+            } else {
+                pendingMap.put(id, new LinkedHashMap<>(fieldMap));
+            }
+            if (pendingMap.size() >= flushSize && !flushScheduled) {
+                flushScheduled = true;
+                scheduleFlush = true;
+            }
+        }
+        if (scheduleFlush) {
+            FLUSHER.execute(this::flushQuietly);
+        }
+        return true;
+    }
+
+    /**
+     * 写入一批已经从缓冲区取出的更新, 只能在持有 flushLock 时调用
+     */
+    private void write(Map<Long, Map<String, Object>> batch) {
+        synchronized (this) {
+            inFlightCount = batch.size();
+        }
+        long startNanos = System.nanoTime();
+        int writtenRows = batch.size();
+        try {
+            flushAction.accept(batch);
+        } catch (RuntimeException e) {
+            failedFlushCount.increment();
+            writtenRows = batch.size() > 1 ? writeEachRow(batch) : 0;
+            if (writtenRows == 0) {
+                restore(batch);
+                throw e;
+            }
+        } finally {
+            synchronized (this) {
+                inFlightCount = 0;
+            }
+        }
+        flushLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        flushCount.increment();
+        flushedRows.add(writtenRows);
+    }
+
+    /**
+     * 批量写入失败后逐行写入, 返回写入成功的行数
+     * 有行写入成功时丢弃失败的行（坏数据, 重试也会失败）; 都失败时（如数据库不可用）不丢弃, 由调用者放回缓冲区
+     */
+    private int writeEachRow(Map<Long, Map<String, Object>> batch) {
+        Map<Long, RuntimeException> failureMap = new LinkedHashMap<>();
+        for (Map.Entry<Long, Map<String, Object>> entry : batch.entrySet()) {
+            try {
+                flushAction.accept(Collections.singletonMap(entry.getKey(), entry.getValue()));
+            } catch (RuntimeException e) {
+                failureMap.put(entry.getKey(), e);
+            }
+        }
+        int writtenRows = batch.size() - failureMap.size();
+        if (writtenRows > 0) {
+            for (Map.Entry<Long, RuntimeException> failureEntry : failureMap.entrySet()) {
+                droppedCount.increment();
+                LOGGER.error("drop write behind update of " + entityClass.getName() + " " + failureEntry.getKey() + ": "
+                        + batch.get(failureEntry.getKey()), failureEntry.getValue());
+            }
+        }
+        return writtenRows;
+    }
+
+    /**
+     * 写入失败的更新放回缓冲区, 写入期间的新更新优先
+     */
+    private synchronized void restore(Map<Long, Map<String, Object>> batch) {
+        for (Map.Entry<Long, Map<String, Object>> entry : batch.entrySet()) {
+            Map<String, Object> newerFieldMap = pendingMap.get(entry.getKey());
+            if (newerFieldMap != null) {
+                entry.getValue().putAll(newerFieldMap);
+            }
+            pendingMap.put(entry.getKey(), entry.getValue());
+        }
+    }
+}
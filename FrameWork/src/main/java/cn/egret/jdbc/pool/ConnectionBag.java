@@ -0,0 +1,147 @@
+package cn.egret.jdbc.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 连接容器
+ * 借出时先查找当前线程最近归还的连接（线程亲和）, 再遍历共享列表, 都通过 CAS 修改连接状态抢占, 不加锁.
+ * 没有空闲连接时在 SynchronousQueue 上等待, 归还连接的线程发现有等待者时直接把连接交给等待者.
+ * @author egret
+ */
+final class ConnectionBag {
+
+    /**
+     * 每个线程最多记住的连接数量
+     */
+    private static final int THREAD_LIST_CAPACITY = 16;
+
+    private final CopyOnWriteArrayList<PoolEntry> sharedList = new CopyOnWriteArrayList<>();
+
+    /**
+     * 当前线程最近归还的连接
+     */
+    private final ThreadLocal<List<PoolEntry>> threadList = ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LIST_CAPACITY));
+
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>(true);
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 不等待地借出一个空闲连接, 没有时返回 null
+     */
+    PoolEntry borrow() {
+        List<PoolEntry> list = threadList.get();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            PoolEntry entry = list.remove(i);
+            if (entry.compareAndSetState(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)) {
+                return entry;
+            }
+        }
+        for (PoolEntry entry : sharedList) {
+            if (entry.compareAndSetState(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 等待其它线程归还或新建连接, 超时返回 null
+     */
+    PoolEntry poll(long timeoutNanos) throws InterruptedException {
+        waiters.incrementAndGet();
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            do {
+                //开始等待之前归还的连接不会交给等待者, 重新查找一次
+                PoolEntry entry = borrow();
+                if (entry != null) {
+                    return entry;
+                }
+                entry = handoffQueue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+                if (entry != null && entry.compareAndSetState(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)) {
+                    return entry;
+                }
+                timeoutNanos = deadline - System.nanoTime();
+            } while (timeoutNanos > 0);
+            return null;
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还连接: 有等待者时直接交给等待者, 否则记到当前线程上
+     */
+    void requite(PoolEntry entry) {
+        entry.lastAccessNanos = System.nanoTime();
+        entry.setState(PoolEntry.STATE_NOT_IN_USE);
+        for (int i = 0; waiters.get() > 0; i++) {
+            if (entry.getState() != PoolEntry.STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+                return;
+            }
+            if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            } else {
+                Thread.yield();
+            }
+        }
+        List<PoolEntry> list = threadList.get();
+        if (list.size() < THREAD_LIST_CAPACITY) {
+            list.add(entry);
+        }
+    }
+
+    /**
+     * 加入一个连接, 连接为空闲状态时优先交给等待者
+     */
+    void add(PoolEntry entry) {
+        sharedList.add(entry);
+        while (waiters.get() > 0 && entry.getState() == PoolEntry.STATE_NOT_IN_USE && !handoffQueue.offer(entry)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 移除一个借出中或被占用的连接
+     */
+    boolean remove(PoolEntry entry) {
+        if (!entry.compareAndSetState(PoolEntry.STATE_IN_USE, PoolEntry.STATE_REMOVED)
+                && !entry.compareAndSetState(PoolEntry.STATE_RESERVED, PoolEntry.STATE_REMOVED)) {
+            return false;
+        }
+        sharedList.remove(entry);
+        return true;
+    }
+
+    /**
+     * 占用一个空闲连接, 使它不能被借出
+     */
+    boolean reserve(PoolEntry entry) {
+        return entry.compareAndSetState(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_RESERVED);
+    }
+
+    List<PoolEntry> values() {
+        return new ArrayList<>(sharedList);
+    }
+
+    int count(int state) {
+        int count = 0;
+        for (PoolEntry entry : sharedList) {
+            if (entry.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getWaiters() {
+        return waiters.get();
+    }
+}
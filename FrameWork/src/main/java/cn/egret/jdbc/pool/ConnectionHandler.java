@@ -0,0 +1,103 @@
+package cn.egret.jdbc.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 借出连接的代理
+ * 每次借出创建一个代理对象, close() 时把物理连接归还给连接池, 之后代理不能再使用.
+ * @author egret
+ */
+final class ConnectionHandler implements InvocationHandler {
+
+    private final PooledDataSource pool;
+
+    private final PoolEntry entry;
+
+    /**
+     * 是否修改过自动提交, 只读或事务隔离级别, 归还时需要恢复
+     */
+    private boolean dirty;
+
+    private volatile boolean closed;
+
+    ConnectionHandler(PooledDataSource pool, PoolEntry entry) {
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                close();
+                return null;
+            case "isClosed":
+                return closed;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "pooled " + entry.connection;
+            case "setAutoCommit":
+            case "setReadOnly":
+            case "setTransactionIsolation":
+                dirty = true;
+                break;
+            default:
+                break;
+        }
+        if (closed) {
+            throw new SQLException("connection is closed");
+        }
+        try {
+            return method.invoke(entry.connection, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                entry.evicted = true;
+            }
+            throw cause;
+        }
+    }
+
+    /**
+     * 恢复连接状态并归还给连接池
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (dirty) {
+            try {
+                Connection conn = entry.connection;
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                if (conn.isReadOnly()) {
+                    conn.setReadOnly(false);
+                }
+                if (conn.getTransactionIsolation() != entry.defaultIsolation) {
+                    conn.setTransactionIsolation(entry.defaultIsolation);
+                }
+            } catch (SQLException e) {
+                entry.evicted = true;
+            }
+        }
+        pool.release(entry);
+    }
+
+    /**
+     * 连接级别的错误（SQLState 08 开头）, 连接不能再使用
+     */
+    private static boolean isFatal(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && sqlState.startsWith("08");
+    }
+}
@@ -0,0 +1,62 @@
+package cn.egret.jdbc.pool;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 连接池中的一个物理连接
+ * 状态通过 CAS 修改, 借出和归还都不需要加锁.
+ * @author egret
+ */
+final class PoolEntry {
+
+    static final int STATE_NOT_IN_USE = 0;
+
+    static final int STATE_IN_USE = 1;
+
+    static final int STATE_REMOVED = -1;
+
+    /**
+     * 被后台清理线程占用, 准备关闭
+     */
+    static final int STATE_RESERVED = -2;
+
+    private static final AtomicIntegerFieldUpdater<PoolEntry> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PoolEntry.class, "state");
+
+    final Connection connection;
+
+    final long createNanos = System.nanoTime();
+
+    /**
+     * 连接的默认事务隔离级别, 归还时恢复
+     */
+    final int defaultIsolation;
+
+    volatile long lastAccessNanos = createNanos;
+
+    /**
+     * 是否需要在归还时关闭（超过最大存活时间, 或者出现了连接级别的错误）
+     */
+    volatile boolean evicted;
+
+    private volatile int state;
+
+    PoolEntry(Connection connection, int state, int defaultIsolation) {
+        this.connection = connection;
+        this.state = state;
+        this.defaultIsolation = defaultIsolation;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    void setState(int state) {
+        this.state = state;
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return STATE_UPDATER.compareAndSet(this, expect, update);
+    }
+}
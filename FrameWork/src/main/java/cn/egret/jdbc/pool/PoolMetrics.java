@@ -0,0 +1,134 @@
+package cn.egret.jdbc.pool;
+
+import cn.egret.metrics.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池指标快照
+ * @author egret
+ */
+public class PoolMetrics {
+
+    private final int totalConnections;
+
+    private final int activeConnections;
+
+    private final int idleConnections;
+
+    private final int pendingThreads;
+
+    private final int maxTotal;
+
+    private final long createdCount;
+
+    private final long closedCount;
+
+    private final long timeoutCount;
+
+    private final long waitCount;
+
+    private final double waitMeanNanos;
+
+    private final long waitP50Nanos;
+
+    private final long waitP99Nanos;
+
+    private final long waitMaxNanos;
+
+    PoolMetrics(int totalConnections, int activeConnections, int idleConnections, int pendingThreads, int maxTotal,
+                long createdCount, long closedCount, long timeoutCount, Histogram waitHistogram) {
+        this.totalConnections = totalConnections;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.pendingThreads = pendingThreads;
+        this.maxTotal = maxTotal;
+        this.createdCount = createdCount;
+        this.closedCount = closedCount;
+        this.timeoutCount = timeoutCount;
+        this.waitCount = waitHistogram.getCount();
+        this.waitMeanNanos = waitHistogram.getMean();
+        this.waitP50Nanos = waitHistogram.getPercentile(0.5);
+        this.waitP99Nanos = waitHistogram.getPercentile(0.99);
+        this.waitMaxNanos = waitHistogram.getMax();
+    }
+
+    /**
+     * 物理连接总数（包括正在创建的）
+     */
+    public int getTotalConnections() {
+        return totalConnections;
+    }
+
+    /**
+     * 借出中的连接数
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * 空闲连接数
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * 等待连接的线程数
+     */
+    public int getPendingThreads() {
+        return pendingThreads;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getClosedCount() {
+        return closedCount;
+    }
+
+    /**
+     * 获取连接超时的次数
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * 获取连接的次数（包括超时的）
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    public double getWaitMeanNanos() {
+        return waitMeanNanos;
+    }
+
+    public long getWaitP50Nanos() {
+        return waitP50Nanos;
+    }
+
+    public long getWaitP99Nanos() {
+        return waitP99Nanos;
+    }
+
+    public long getWaitMaxNanos() {
+        return waitMaxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool[total=%d, active=%d, idle=%d, pending=%d, max=%d, created=%d, closed=%d, timeouts=%d, "
+                        + "wait(us) count=%d mean=%.1f p50=%d p99=%d max=%d]",
+                totalConnections, activeConnections, idleConnections, pendingThreads, maxTotal, createdCount, closedCount,
+                timeoutCount, waitCount, waitMeanNanos / 1000, TimeUnit.NANOSECONDS.toMicros(waitP50Nanos),
+                TimeUnit.NANOSECONDS.toMicros(waitP99Nanos), TimeUnit.NANOSECONDS.toMicros(waitMaxNanos));
+    }
+}
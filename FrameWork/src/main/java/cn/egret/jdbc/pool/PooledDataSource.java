@@ -0,0 +1,427 @@
+package cn.egret.jdbc.pool;
+
+import cn.egret.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内置连接池
+ * 借出连接时依次查找当前线程最近归还的连接, 共享列表中的空闲连接, 未达到最大连接数时新建连接, 最后等待其它线程归还,
+ * 整个过程只使用 CAS, 不加锁. 空闲超过一定时间的连接在借出时校验; 后台线程关闭空闲超时和超过最大存活时间的连接,
+ * 并把空闲连接补充到 minIdle. 与 BasicDataSource 一样通过 setter 配置, 第一次获取连接时启动.
+ * getConnection(waitMillis) 可以按次缩短等待时间（如请求截止时间）, 因此超时时不计入获取连接超时.
+ * @author egret
+ */
+public class PooledDataSource implements DataSource, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledDataSource.class);
+
+    /**
+     * 空闲时间小于该值的连接借出时不校验
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final long MAX_HOUSEKEEPING_PERIOD_MILLIS = 30000;
+
+    private String driverClassName;
+
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    private int maxTotal = 8;
+
+    private int minIdle;
+
+    private long maxWaitMillis = 30000;
+
+    private long idleTimeoutMillis = 600000;
+
+    private long maxLifetimeMillis = 1800000;
+
+    private int validationTimeoutSeconds = 5;
+
+    private String validationQuery;
+
+    private final ConnectionBag bag = new ConnectionBag();
+
+    /**
+     * 物理连接总数（包括正在创建的）
+     */
+    private final AtomicInteger totalCount = new AtomicInteger();
+
+    private final LongAdder createdCount = new LongAdder();
+
+    private final LongAdder closedCount = new LongAdder();
+
+    private final LongAdder timeoutCount = new LongAdder();
+
+    /**
+     * 获取连接的等待时间(纳秒)
+     */
+    private final Histogram waitHistogram = new Histogram();
+
+    private volatile ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(maxWaitMillis);
+    }
+
+    /**
+     * 获取连接, 最多等待 waitMillis 与 maxWaitMillis 中较短的时间, 小于 0 表示不限制
+     */
+    public Connection getConnection(long waitMillis) throws SQLException {
+        if (housekeeper == null) {
+            start();
+        }
+        if (closed) {
+            throw new SQLException("pool is closed");
+        }
+        long startNanos = System.nanoTime();
+        long timeoutNanos = maxWaitMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        boolean callerBound = waitMillis >= 0 && TimeUnit.MILLISECONDS.toNanos(waitMillis) < timeoutNanos;
+        if (callerBound) {
+            timeoutNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        }
+        long remainingNanos = timeoutNanos;
+        do {
+            PoolEntry entry = bag.borrow();
+            if (entry == null) {
+                entry = tryCreate();
+            }
+            if (entry == null) {
+                try {
+                    entry = bag.poll(remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("interrupted while waiting for connection", e);
+                }
+            }
+            if (entry == null) {
+                break;
+            }
+            long now = System.nanoTime();
+            if (entry.evicted || isExpired(entry, now)
+                    || (now - entry.lastAccessNanos > VALIDATION_BYPASS_NANOS && !isValid(entry))) {
+                closeEntry(entry);
+            } else {
+                waitHistogram.record(now - startNanos);
+                return newProxy(entry);
+            }
+            remainingNanos = timeoutNanos - (System.nanoTime() - startNanos);
+        } while (remainingNanos > 0);
+
+        waitHistogram.record(System.nanoTime() - startNanos);
+        if (!callerBound) {
+            timeoutCount.increment();
+        }
+        throw new SQLTimeoutException(String.format("get connection timeout after %d ms, %s",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), getMetrics()));
+    }
+
+    /**
+     * 获取连接池的指标
+     */
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(totalCount.get(), bag.count(PoolEntry.STATE_IN_USE), bag.count(PoolEntry.STATE_NOT_IN_USE),
+                bag.getWaiters(), maxTotal, createdCount.sum(), closedCount.sum(), timeoutCount.sum(), waitHistogram);
+    }
+
+    /**
+     * 关闭连接池和所有空闲连接, 借出中的连接在归还时关闭
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        for (PoolEntry entry : bag.values()) {
+            if (bag.reserve(entry)) {
+                closeEntry(entry);
+            } else {
+                entry.evicted = true;
+            }
+        }
+    }
+
+    /**
+     * 归还连接, 由连接代理的 close() 调用
+     */
+    void release(PoolEntry entry) {
+        if (closed || entry.evicted || isExpired(entry, System.nanoTime())) {
+            closeEntry(entry);
+        } else {
+            bag.requite(entry);
+        }
+    }
+
+    private synchronized void start() {
+        if (housekeeper != null) {
+            return;
+        }
+        if (driverClassName != null) {
+            try {
+                Class.forName(driverClassName);
+            } catch (ClassNotFoundException e) {
+                LOGGER.error("load jdbc driver failure", e);
+                throw new RuntimeException(e);
+            }
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = MAX_HOUSEKEEPING_PERIOD_MILLIS;
+        if (idleTimeoutMillis > 0) {
+            periodMillis = Math.min(periodMillis, idleTimeoutMillis / 2);
+        }
+        if (maxLifetimeMillis > 0) {
+            periodMillis = Math.min(periodMillis, maxLifetimeMillis / 2);
+        }
+        periodMillis = Math.max(periodMillis, 10);
+        executor.scheduleWithFixedDelay(this::housekeep, 0, periodMillis, TimeUnit.MILLISECONDS);
+        housekeeper = executor;
+    }
+
+    /**
+     * 关闭空闲超时和超过最大存活时间的连接, 补充空闲连接
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        int idleCount = bag.count(PoolEntry.STATE_NOT_IN_USE);
+        for (PoolEntry entry : bag.values()) {
+            if (isExpired(entry, now)) {
+                if (bag.reserve(entry)) {
+                    closeEntry(entry);
+                    idleCount--;
+                } else {
+                    entry.evicted = true;
+                }
+            } else if (idleTimeoutMillis > 0 && idleCount > minIdle && now - entry.lastAccessNanos > idleTimeoutNanos
+                    && bag.reserve(entry)) {
+                closeEntry(entry);
+                idleCount--;
+            }
+        }
+        fill();
+    }
+
+    /**
+     * 补充空闲连接到 minIdle, 有线程在等待时至少补充一个
+     */
+    private void fill() {
+        while (!closed && (bag.count(PoolEntry.STATE_NOT_IN_USE) < minIdle || bag.getWaiters() > 0)) {
+            if (!reserveSlot()) {
+                return;
+            }
+            try {
+                bag.add(createEntry(PoolEntry.STATE_NOT_IN_USE));
+            } catch (SQLException e) {
+                totalCount.decrementAndGet();
+                LOGGER.error("create connection failure", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 未达到最大连接数时, 在当前线程上新建一个连接并借出
+     */
+    private PoolEntry tryCreate() throws SQLException {
+        if (!reserveSlot()) {
+            return null;
+        }
+        PoolEntry entry;
+        try {
+            entry = createEntry(PoolEntry.STATE_IN_USE);
+        } catch (SQLException e) {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+        bag.add(entry);
+        return entry;
+    }
+
+    private boolean reserveSlot() {
+        while (true) {
+            int total = totalCount.get();
+            if (total >= maxTotal) {
+                return false;
+            }
+            if (totalCount.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private PoolEntry createEntry(int state) throws SQLException {
+        Connection conn = DriverManager.getConnection(url, username, password);
+        createdCount.increment();
+        return new PoolEntry(conn, state, conn.getTransactionIsolation());
+    }
+
+    private void closeEntry(PoolEntry entry) {
+        if (!bag.remove(entry)) {
+            return;
+        }
+        totalCount.decrementAndGet();
+        closedCount.increment();
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("close connection failure", e);
+        }
+        //腾出了位置, 为等待中的线程新建连接
+        ScheduledExecutorService executor = housekeeper;
+        if (!closed && bag.getWaiters() > 0 && executor != null) {
+            executor.execute(this::fill);
+        }
+    }
+
+    private boolean isExpired(PoolEntry entry, long now) {
+        return maxLifetimeMillis > 0 && now - entry.createNanos > TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis);
+    }
+
+    private boolean isValid(PoolEntry entry) {
+        try {
+            if (validationQuery == null) {
+                return entry.connection.isValid(validationTimeoutSeconds);
+            }
+            try (Statement stmt = entry.connection.createStatement()) {
+                stmt.setQueryTimeout(validationTimeoutSeconds);
+                stmt.execute(validationQuery);
+            }
+            return true;
+        } catch (SQLException e) {
+            LOGGER.warn("connection validation failure", e);
+            return false;
+        }
+    }
+
+    private Connection newProxy(PoolEntry entry) {
+        return (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(this, entry));
+    }
+
+    public void setDriverClassName(String driverClassName) {
+        this.driverClassName = driverClassName;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * 获取连接的最长等待毫秒数, 小于 0 时一直等待
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * 空闲超过该毫秒数的连接被关闭（保留 minIdle 个）, 小于等于 0 时不关闭
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * 连接的最大存活毫秒数, 小于等于 0 时不限制
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * 校验连接的 SQL, 为空时使用 Connection.isValid()
+     */
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("getConnection(username, password)");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,66 @@
+package cn.egret.jdbc.shard;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希分片
+ * 每个分片在哈希环上放置 VIRTUAL_NODES 个虚拟节点, 主键的哈希值顺时针找到的第一个虚拟节点所属的分片即为所在分片.
+ * 增加一个分片时只有约 1/N 的实体需要迁移.
+ * @author egret
+ */
+public class ConsistentHashShardFunction implements ShardFunction {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    /**
+     * 哈希环, 按分片数量创建
+     */
+    private volatile Ring ring;
+
+    @Override
+    public int shard(Object id, int shardCount) {
+        Ring current = ring;
+        if (current == null || current.shardCount != shardCount) {
+            current = new Ring(shardCount);
+            ring = current;
+        }
+        return current.get(hash(ShardFunction.toLong(id)));
+    }
+
+    /**
+     * 64 位混合哈希（MurmurHash3 的 fmix64）, 使相邻的主键分散到环上
+     */
+    private static long hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static final class Ring {
+
+        private final int shardCount;
+
+        /**
+         * 虚拟节点的哈希值 - 分片
+         */
+        private final TreeMap<Long, Integer> nodeMap = new TreeMap<>();
+
+        private Ring(int shardCount) {
+            this.shardCount = shardCount;
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (int node = 0; node < VIRTUAL_NODES; node++) {
+                    nodeMap.put(hash(((long) shard << 32) | node), shard);
+                }
+            }
+        }
+
+        private int get(long hash) {
+            Map.Entry<Long, Integer> entry = nodeMap.ceilingEntry(hash);
+            return entry != null ? entry.getValue() : nodeMap.firstEntry().getValue();
+        }
+    }
+}
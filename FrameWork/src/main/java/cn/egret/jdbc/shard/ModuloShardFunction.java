@@ -0,0 +1,14 @@
+package cn.egret.jdbc.shard;
+
+/**
+ * 取模分片: 主键对分片数量取模
+ * 主键连续时各分片均匀, 但增加分片时几乎所有实体都要迁移.
+ * @author egret
+ */
+public class ModuloShardFunction implements ShardFunction {
+
+    @Override
+    public int shard(Object id, int shardCount) {
+        return (int) Math.floorMod(ShardFunction.toLong(id), (long) shardCount);
+    }
+}
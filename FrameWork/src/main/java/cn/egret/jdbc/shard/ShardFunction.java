@@ -0,0 +1,24 @@
+package cn.egret.jdbc.shard;
+
+/**
+ * 分片函数
+ * 根据主键计算实体所在的分片, 同一个主键必须总是得到同一个分片. 实现类需要有无参构造器, 通过 jdbc.shard.function 配置.
+ * @author egret
+ */
+public interface ShardFunction {
+
+    /**
+     * 计算主键所在的分片
+     * @param id 主键, 不为 null
+     * @param shardCount 分片数量
+     * @return 分片下标, 从 0 到 shardCount - 1
+     */
+    int shard(Object id, int shardCount);
+
+    /**
+     * 整数主键转换为 long, 其它主键使用 hashCode
+     */
+    static long toLong(Object id) {
+        return id instanceof Number ? ((Number) id).longValue() : id.toString().hashCode();
+    }
+}
@@ -0,0 +1,53 @@
+package cn.egret.jdbc.shard;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分片路由
+ * 持有每个分片的数据源（各自的连接池）, 按分片函数把主键路由到分片.
+ * @author egret
+ */
+public class ShardRouter {
+
+    private final List<String> nameList;
+
+    private final List<DataSource> shardList;
+
+    private final ShardFunction shardFunction;
+
+    public ShardRouter(List<String> nameList, List<DataSource> shardList, ShardFunction shardFunction) {
+        this.nameList = Collections.unmodifiableList(new ArrayList<>(nameList));
+        this.shardList = Collections.unmodifiableList(new ArrayList<>(shardList));
+        this.shardFunction = shardFunction;
+    }
+
+    public int getShardCount() {
+        return shardList.size();
+    }
+
+    public DataSource getShard(int index) {
+        return shardList.get(index);
+    }
+
+    public String getShardName(int index) {
+        return nameList.get(index);
+    }
+
+    /**
+     * 计算主键所在的分片
+     */
+    public int route(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("shard key must not be null");
+        }
+        int shard = shardFunction.shard(id, shardList.size());
+        if (shard < 0 || shard >= shardList.size()) {
+            throw new IllegalStateException("shard function " + shardFunction.getClass().getName() + " returned " + shard
+                    + " for " + shardList.size() + " shards");
+        }
+        return shard;
+    }
+}
@@ -0,0 +1,111 @@
+package cn.egret.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁直方图
+ * 小于 16 的值每个值一个桶, 之后每个 2 的幂区间再均分为 8 个桶, 相对误差不超过 12.5%.
+ * 记录只需要一次原子自增, 可以在请求路径上由多个线程同时记录; 读取百分位时遍历所有桶, 结果是近似值.
+ * @author egret
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 小于该值时每个值一个桶
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+    private static final int LINEAR_EXPONENT = SUB_BUCKET_BITS + 1;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - LINEAR_EXPONENT) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值, 负数按 0 记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * 获取百分位数（近似值, 取所在桶的上界）
+     * @param percentile 0 ~ 1, 如 0.99
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max((long) Math.ceil(percentile * total), 1);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + LINEAR_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
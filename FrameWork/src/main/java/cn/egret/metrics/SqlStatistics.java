@@ -0,0 +1,204 @@
+package cn.egret.metrics;
+
+import cn.egret.helper.ConfigHelper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 执行统计
+ * 按规范化的 SQL（合并空白, 字面量替换为 ?, IN 列表合并为一个 ?）统计执行次数, 行数, 失败次数和耗时分布（无锁直方图, 微秒）.
+ * 耗时超过 slow_query_threshold 毫秒的语句连同参数写入慢查询日志（logger 名称为 cn.egret.metrics.SlowQuery）.
+ * @author egret
+ */
+public final class SqlStatistics {
+
+    private static final Logger SLOW_QUERY_LOGGER = LoggerFactory.getLogger("cn.egret.metrics.SlowQuery");
+
+    /**
+     * 最多统计的 SQL 数量, 超过后归入 OTHER_SQL
+     */
+    private static final int MAX_SQL_COUNT = 1000;
+
+    private static final String OTHER_SQL = "(other)";
+
+    /**
+     * 最多缓存的原始 SQL 数量
+     */
+    private static final int MAX_NORMALIZED_CACHE_SIZE = 10000;
+
+    private static final int MAX_LOGGED_PARAM_LENGTH = 200;
+
+    private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern NUMBER_LITERAL_PATTERN = Pattern.compile("(?<![\\w.?])-?\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern IN_LIST_PATTERN = Pattern.compile("\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private static final boolean ENABLED = ConfigHelper.isJdbcSqlStats();
+
+    private static final long SLOW_QUERY_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(ConfigHelper.getJdbcSlowQueryThreshold());
+
+    /**
+     * 原始 SQL - 规范化的 SQL
+     */
+    private static final ConcurrentMap<String, String> NORMALIZED_SQL_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 规范化的 SQL - 统计
+     */
+    private static final ConcurrentMap<String, SqlStat> SQL_STAT_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一条语句的执行
+     * @param startNanos 开始执行时的 System.nanoTime()
+     * @param rows 查询返回或更新影响的行数, 负数表示执行失败
+     */
+    public static void record(String sql, Object[] params, long startNanos, long rows) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (SLOW_QUERY_THRESHOLD_NANOS > 0 && elapsedNanos >= SLOW_QUERY_THRESHOLD_NANOS) {
+            SLOW_QUERY_LOGGER.warn("slow query {} ms, rows {}: {} params: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    rows, sql, formatParams(params));
+        }
+        if (ENABLED) {
+            getSqlStat(sql).record(elapsedNanos, rows);
+        }
+    }
+
+    /**
+     * 获取总耗时最多的 n 条 SQL 的统计
+     */
+    public static List<SqlStat> getTop(int n) {
+        List<SqlStat> sqlStatList = new ArrayList<>(SQL_STAT_MAP.values());
+        sqlStatList.sort(Comparator.comparingLong(SqlStat::getTotalMicros).reversed());
+        return sqlStatList.subList(0, Math.min(n, sqlStatList.size()));
+    }
+
+    /**
+     * 获取一条 SQL 的统计, 没有执行过时返回 null
+     */
+    public static SqlStat getSqlStat(String sql, boolean normalized) {
+        return SQL_STAT_MAP.get(normalized ? sql : normalize(sql));
+    }
+
+    /**
+     * 清空统计
+     */
+    public static void reset() {
+        SQL_STAT_MAP.clear();
+    }
+
+    /**
+     * 规范化 SQL
+     */
+    public static String normalize(String sql) {
+        String normalizedSql = StringUtils.normalizeSpace(sql);
+        normalizedSql = STRING_LITERAL_PATTERN.matcher(normalizedSql).replaceAll("?");
+        normalizedSql = NUMBER_LITERAL_PATTERN.matcher(normalizedSql).replaceAll("?");
+        return IN_LIST_PATTERN.matcher(normalizedSql).replaceAll("IN (?)");
+    }
+
+    private static SqlStat getSqlStat(String sql) {
+        String normalizedSql = NORMALIZED_SQL_MAP.get(sql);
+        if (normalizedSql == null) {
+            normalizedSql = normalize(sql);
+            if (NORMALIZED_SQL_MAP.size() < MAX_NORMALIZED_CACHE_SIZE) {
+                NORMALIZED_SQL_MAP.put(sql, normalizedSql);
+            }
+        }
+        SqlStat sqlStat = SQL_STAT_MAP.get(normalizedSql);
+        if (sqlStat == null) {
+            String key = SQL_STAT_MAP.size() < MAX_SQL_COUNT ? normalizedSql : OTHER_SQL;
+            sqlStat = SQL_STAT_MAP.computeIfAbsent(key, SqlStat::new);
+        }
+        return sqlStat;
+    }
+
+    private static String formatParams(Object[] params) {
+        if (params == null) {
+            return "[]";
+        }
+        String formattedParams = Arrays.deepToString(params);
+        return formattedParams.length() > MAX_LOGGED_PARAM_LENGTH
+                ? formattedParams.substring(0, MAX_LOGGED_PARAM_LENGTH) + "...(" + params.length + " params)" : formattedParams;
+    }
+
+    /**
+     * 一条规范化 SQL 的统计
+     */
+    public static final class SqlStat {
+
+        private final String sql;
+
+        private final Histogram latency = new Histogram();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder errorCount = new LongAdder();
+
+        SqlStat(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long elapsedNanos, long rowCount) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+            if (rowCount < 0) {
+                errorCount.increment();
+            } else {
+                rows.add(rowCount);
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getTotalMicros() {
+            return latency.getSum();
+        }
+
+        public long getMeanMicros() {
+            return Math.round(latency.getMean());
+        }
+
+        public long getP50Micros() {
+            return latency.getPercentile(0.5);
+        }
+
+        public long getP99Micros() {
+            return latency.getPercentile(0.99);
+        }
+
+        public long getMaxMicros() {
+            return latency.getMax();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [count=%d, errors=%d, rows=%d, total=%d us, p50=%d us, p99=%d us, max=%d us]", sql,
+                    getCount(), getErrorCount(), getRows(), getTotalMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cn.egret.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 启动过程的 JFR 事件
+ * 只有在 JVM 支持 JFR 时才会被 StartupTimeline 加载, 事件对象以 Object 类型传递, 避免在不支持 JFR 的 JVM 上加载 jdk.jfr 的类.
+ * 开启 JFR 录制（如 -XX:StartFlightRecording）后, 可以在 JMC 的 "HandWrittenSpring/Startup" 分类下查看.
+ * @author egret
+ */
+final class StartupEvents {
+
+    static Object beginPhase() {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitPhase(Object event, String phase, int itemCount, long allocatedBytes) {
+        PhaseEvent phaseEvent = (PhaseEvent) event;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase;
+            phaseEvent.itemCount = itemCount;
+            phaseEvent.allocatedBytes = allocatedBytes;
+            phaseEvent.commit();
+        }
+    }
+
+    static Object beginStep() {
+        StepEvent event = new StepEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitStep(Object event, String phase, String type, String name, long allocatedBytes) {
+        StepEvent stepEvent = (StepEvent) event;
+        stepEvent.end();
+        if (stepEvent.shouldCommit()) {
+            stepEvent.phase = phase;
+            stepEvent.type = type;
+            stepEvent.name = name;
+            stepEvent.allocatedBytes = allocatedBytes;
+            stepEvent.commit();
+        }
+    }
+
+    /**
+     * 启动阶段事件
+     */
+    @Name("cn.egret.StartupPhase")
+    @Label("Startup Phase")
+    @Category({"HandWrittenSpring", "Startup"})
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Item Count")
+        int itemCount;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    /**
+     * 启动步骤事件
+     */
+    @Name("cn.egret.StartupStep")
+    @Label("Startup Step")
+    @Category({"HandWrittenSpring", "Startup"})
+    @StackTrace(false)
+    static class StepEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Type")
+        String type;
+
+        @Label("Name")
+        String name;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+}
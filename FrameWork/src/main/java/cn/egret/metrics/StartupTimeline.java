@@ -0,0 +1,325 @@
+package cn.egret.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时间线
+ * 记录启动过程中每个阶段（每个 Helper 的初始化）以及每个步骤（每个 bean 的实例化和注入, 每个代理的创建）的
+ * 耗时, 分配的内存和处理的数量. 启动完成后以日志的形式输出报告; JVM 支持 JFR 时, 同时产生 JFR 事件.
+ *
+ * 分配的内存通过 com.sun.management.ThreadMXBean 按线程统计, 步骤可能在其它线程上执行,
+ * 所以阶段的内存 = 阶段所在线程分配的内存 + 在其它线程上执行的步骤分配的内存.
+ * @author egret
+ */
+public class StartupTimeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimeline.class);
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * 是否支持按线程统计分配的内存
+     */
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    /**
+     * 是否支持 JFR
+     */
+    private static final boolean JFR_SUPPORTED = isJfrSupported();
+
+    /**
+     * 报告中列出的最慢步骤数量
+     */
+    private static final int SLOWEST_STEP_COUNT = 10;
+
+    private final List<Phase> phaseList = Collections.synchronizedList(new ArrayList<Phase>());
+
+    /**
+     * 正在执行的阶段
+     */
+    private volatile Phase currentPhase;
+
+    /**
+     * 开始一个阶段
+     */
+    public Phase beginPhase(String name) {
+        Phase phase = new Phase(name);
+        phaseList.add(phase);
+        currentPhase = phase;
+        return phase;
+    }
+
+    /**
+     * 开始一个步骤, 步骤属于当前正在执行的阶段
+     */
+    public Step beginStep(String type, String name) {
+        return new Step(currentPhase, type, name);
+    }
+
+    /**
+     * 设置当前阶段处理的数量（默认为阶段内的步骤数量）
+     */
+    public void setItemCount(int itemCount) {
+        Phase phase = currentPhase;
+        if (phase != null) {
+            phase.itemCount = itemCount;
+        }
+    }
+
+    /**
+     * 获取所有阶段
+     */
+    public List<Phase> getPhaseList() {
+        synchronized (phaseList) {
+            return new ArrayList<>(phaseList);
+        }
+    }
+
+    /**
+     * 获取 "阶段名-耗时(纳秒)" 的映射, 只包含 JDK 类型, 可以跨类加载器使用
+     */
+    public Map<String, Long> getPhaseNanosMap() {
+        Map<String, Long> phaseNanosMap = new LinkedHashMap<>();
+        for (Phase phase : getPhaseList()) {
+            phaseNanosMap.put(phase.getName(), phase.getDurationNanos());
+        }
+        return phaseNanosMap;
+    }
+
+    /**
+     * 获取所有阶段的总耗时(纳秒)
+     */
+    public long getTotalNanos() {
+        long totalNanos = 0;
+        for (Phase phase : getPhaseList()) {
+            totalNanos += phase.getDurationNanos();
+        }
+        return totalNanos;
+    }
+
+    /**
+     * 输出启动报告
+     */
+    public void logReport() {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(createReport());
+        }
+    }
+
+    /**
+     * 生成启动报告: 每个阶段的耗时, 分配的内存和数量, 以及最慢的步骤
+     */
+    public String createReport() {
+        List<Phase> phases = getPhaseList();
+        long totalBytes = 0;
+        for (Phase phase : phases) {
+            totalBytes += Math.max(phase.getAllocatedBytes(), 0);
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("startup timeline: %.1f ms, %s allocated%n", getTotalNanos() / 1e6, formatBytes(totalBytes)));
+        report.append(String.format("  %-20s %12s %12s %8s%n", "phase", "time(ms)", "allocated", "items"));
+        List<Step> steps = new ArrayList<>();
+        for (Phase phase : phases) {
+            report.append(String.format("  %-20s %12.1f %12s %8d%n", phase.getName(), phase.getDurationNanos() / 1e6,
+                    formatBytes(phase.getAllocatedBytes()), phase.getItemCount()));
+            steps.addAll(phase.getStepList());
+        }
+        if (!steps.isEmpty()) {
+            steps.sort(Comparator.comparingLong(Step::getDurationNanos).reversed());
+            report.append(String.format("  slowest steps:%n"));
+            for (Step step : steps.subList(0, Math.min(SLOWEST_STEP_COUNT, steps.size()))) {
+                report.append(String.format("  %-6s %-60s %8.1f ms %12s  [%s]%n", step.getType(), step.getName(),
+                        step.getDurationNanos() / 1e6, formatBytes(step.getAllocatedBytes()), step.getThreadName()));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * 获取当前线程已分配的内存总量, 不支持时返回 -1
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "n/a";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private static boolean isAllocationSupported() {
+        try {
+            if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+                return threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled();
+            }
+        } catch (Throwable e) {
+            LOGGER.debug("thread allocated memory is not supported", e);
+        }
+        return false;
+    }
+
+    private static boolean isJfrSupported() {
+        try {
+            Class.forName("jdk.jfr.Event", false, StartupTimeline.class.getClassLoader());
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 启动阶段
+     */
+    public static class Phase {
+
+        private final String name;
+
+        private final long startNanos = System.nanoTime();
+
+        private final long startAllocatedBytes = currentThreadAllocatedBytes();
+
+        private final Thread thread = Thread.currentThread();
+
+        private final List<Step> stepList = Collections.synchronizedList(new ArrayList<Step>());
+
+        private final Object event;
+
+        private volatile long durationNanos = -1;
+
+        private volatile long allocatedBytes = -1;
+
+        private volatile int itemCount = -1;
+
+        Phase(String name) {
+            this.name = name;
+            this.event = JFR_SUPPORTED ? StartupEvents.beginPhase() : null;
+        }
+
+        /**
+         * 结束阶段
+         */
+        public void end() {
+            durationNanos = System.nanoTime() - startNanos;
+            if (startAllocatedBytes >= 0) {
+                long bytes = currentThreadAllocatedBytes() - startAllocatedBytes;
+                for (Step step : getStepList()) {
+                    if (step.thread != thread) {
+                        bytes += Math.max(step.getAllocatedBytes(), 0);
+                    }
+                }
+                allocatedBytes = bytes;
+            }
+            if (event != null) {
+                StartupEvents.commitPhase(event, name, getItemCount(), allocatedBytes);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getItemCount() {
+            return itemCount >= 0 ? itemCount : stepList.size();
+        }
+
+        public List<Step> getStepList() {
+            synchronized (stepList) {
+                return new ArrayList<>(stepList);
+            }
+        }
+    }
+
+    /**
+     * 启动步骤, 如一个 bean 的实例化或一个代理的创建
+     */
+    public static class Step {
+
+        private final Phase phase;
+
+        private final String type;
+
+        private final String name;
+
+        private final long startNanos = System.nanoTime();
+
+        private final long startAllocatedBytes = currentThreadAllocatedBytes();
+
+        private final Thread thread = Thread.currentThread();
+
+        private final Object event;
+
+        private volatile long durationNanos = -1;
+
+        private volatile long allocatedBytes = -1;
+
+        Step(Phase phase, String type, String name) {
+            this.phase = phase;
+            this.type = type;
+            this.name = name;
+            this.event = JFR_SUPPORTED ? StartupEvents.beginStep() : null;
+        }
+
+        /**
+         * 结束步骤
+         */
+        public void end() {
+            durationNanos = System.nanoTime() - startNanos;
+            if (startAllocatedBytes >= 0) {
+                allocatedBytes = currentThreadAllocatedBytes() - startAllocatedBytes;
+            }
+            if (phase != null) {
+                phase.stepList.add(this);
+            }
+            if (event != null) {
+                StartupEvents.commitStep(event, phase != null ? phase.name : "", type, name, allocatedBytes);
+            }
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public String getThreadName() {
+            return thread.getName();
+        }
+    }
+}
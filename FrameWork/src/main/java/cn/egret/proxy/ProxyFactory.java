@@ -1,6 +1,7 @@
 package cn.egret.proxy;
 
 import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 
@@ -21,9 +22,18 @@ public class ProxyFactory {
     /**
      * 输入一个目标类和一组Proxy接口实现, 输出一个代理对象
      */
-    @SuppressWarnings("unchecked")
     public static <T> T createProxy(final Class<?> targetClass, final List<Proxy> proxyList) {
-        return (T) Enhancer.create(targetClass, new MethodInterceptor() {
+        return createProxy(targetClass, proxyList, new Class<?>[0], new Object[0]);
+    }
+
+    /**
+     * 输入一个目标类和一组Proxy接口实现, 以及构造器参数, 输出一个代理对象（用于构造器注入的 bean）
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T createProxy(final Class<?> targetClass, final List<Proxy> proxyList, Class<?>[] argumentTypes, Object[] arguments) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(targetClass);
+        enhancer.setCallback(new MethodInterceptor() {
             /**
              * 代理方法, 每次调用目标方法时都会先创建一个 ProxyChain 对象, 然后调用该对象的 doProxyChain() 方法.
              */
@@ -33,5 +43,16 @@ public class ProxyFactory {
                         .doProxyChain();
             }
         });
+        return (T) enhancer.create(argumentTypes, arguments);
+    }
+
+    /**
+     * 以已有的代理对象为模板, 创建同一个代理类的新实例（共用同一组切面）.
+     * 不再经过 Enhancer 查找代理类, 原型和请求作用域的 bean 反复创建时使用
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newProxyInstance(Object proxyTemplate, Class<?>[] argumentTypes, Object[] arguments) {
+        Factory factory = (Factory) proxyTemplate;
+        return (T) factory.newInstance(argumentTypes, arguments, factory.getCallbacks());
     }
 }
\ No newline at end of file
@@ -20,9 +20,16 @@ public class TransactionProxy implements Proxy {
         Object result;
         Method method = proxyChain.getTargetMethod();
         //加了@Transactional注解的方法要做事务处理
-        if (method.isAnnotationPresent(Transactional.class)) {
+        Transactional transactional = method.getAnnotation(Transactional.class);
+        if (transactional != null && transactional.groupCommit() && !transactional.readOnly()) {
+            result = DatabaseHelper.executeInGroupCommit(proxyChain::doProxyChain);
+            LOGGER.debug("group commit transaction");
+        } else if (transactional != null && DatabaseHelper.isGroupCommitUnit()) {
+            //组提交单元中调用的事务方法加入这个单元
+            result = proxyChain.doProxyChain();
+        } else if (transactional != null) {
             try {
-                DatabaseHelper.beginTransaction();
+                DatabaseHelper.beginTransaction(transactional.readOnly());
                 LOGGER.debug("begin transaction");
                 result = proxyChain.doProxyChain();
                 DatabaseHelper.commitTransaction();
@@ -79,6 +79,17 @@ public final class PropsUtil {
         return value;
     }
 
+    /**
+     * 获取 long 类型的属性值（可指定默认值）
+     */
+    public static long getLong(Properties props, String key, long defaultValue) {
+        long value = defaultValue;
+        if (props.containsKey(key)) {
+            value = Long.parseLong(props.getProperty(key));
+        }
+        return value;
+    }
+
     /**
      * 获取 boolean 类型属性（默认值为 false）
      */